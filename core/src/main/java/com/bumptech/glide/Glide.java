@@ -22,6 +22,7 @@ import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.engine.cache.DiskCache;
 import com.bumptech.glide.load.engine.cache.DiskLruCacheFactory;
 import com.bumptech.glide.load.engine.cache.MemoryCache;
+import com.bumptech.glide.load.engine.executor.LaneScheduler;
 import com.bumptech.glide.load.engine.prefill.BitmapPreFiller;
 import com.bumptech.glide.load.engine.prefill.PreFillType;
 import com.bumptech.glide.load.model.GenericLoaderFactory;
@@ -50,6 +51,8 @@ import com.bumptech.glide.load.resource.drawable.GlideDrawable;
 import com.bumptech.glide.load.resource.file.StreamFileDataLoadProvider;
 import com.bumptech.glide.load.resource.gif.GifDrawable;
 import com.bumptech.glide.load.resource.gif.GifDrawableLoadProvider;
+import com.bumptech.glide.load.resource.gif.GifFrameCache;
+import com.bumptech.glide.load.resource.gif.GifScratchArrayPool;
 import com.bumptech.glide.load.resource.gifbitmap.GifBitmapWrapper;
 import com.bumptech.glide.load.resource.gifbitmap.GifBitmapWrapperTransformation;
 import com.bumptech.glide.load.resource.gifbitmap.ImageVideoGifDrawableLoadProvider;
@@ -74,6 +77,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A singleton to present a simple static interface for building requests with {@link BitmapRequestBuilder} and
@@ -100,6 +104,8 @@ public class Glide {
     private final Handler mainHandler;
     private final BitmapPreFiller bitmapPreFiller;
     private final DiskCache.Factory diskCacheFactory;
+    private final ExecutorService gifFrameService;
+    private final LaneScheduler laneScheduler;
 
     /**
      * Returns a directory with a default name in the private cache directory of the application to use to store
@@ -202,12 +208,15 @@ public class Glide {
         glide = null;
     }
 
-    Glide(Engine engine, MemoryCache memoryCache, BitmapPool bitmapPool, Context context, DecodeFormat decodeFormat, DiskCache.Factory diskCacheFactory) {
+    Glide(Engine engine, MemoryCache memoryCache, BitmapPool bitmapPool, Context context, DecodeFormat decodeFormat,
+            DiskCache.Factory diskCacheFactory, ExecutorService gifFrameService, LaneScheduler laneScheduler) {
         this.engine = engine;
         this.bitmapPool = bitmapPool;
         this.memoryCache = memoryCache;
         this.decodeFormat = decodeFormat;
         this.diskCacheFactory = diskCacheFactory;
+        this.gifFrameService = gifFrameService;
+        this.laneScheduler = laneScheduler;
         loaderFactory = new GenericLoaderFactory(context);
         mainHandler = new Handler(Looper.getMainLooper());
         bitmapPreFiller = new BitmapPreFiller(memoryCache, bitmapPool, decodeFormat);
@@ -373,6 +382,8 @@ public class Glide {
         Util.assertMainThread();
         // memory cache needs to be cleared before bitmap pool to clear re-pooled Bitmaps too. See #687.
         memoryCache.clearMemory();
+        GifFrameCache.get().clearMemory();
+        GifScratchArrayPool.get().clear();
         bitmapPool.clearMemory();
     }
 
@@ -386,6 +397,8 @@ public class Glide {
         Util.assertMainThread();
         // memory cache needs to be trimmed before bitmap pool to trim re-pooled Bitmaps too. See #687.
         memoryCache.trimMemory(level);
+        GifFrameCache.get().trimMemory(level);
+        GifScratchArrayPool.get().trimMemory(level);
         bitmapPool.trimMemory(level);
     }
 
@@ -424,6 +437,21 @@ public class Glide {
         return diskCacheFactory;
     }
 
+    /**
+     * Returns the {@link ExecutorService} used to decode the frames of playing GIFs.
+     */
+    public ExecutorService getGifFrameService() {
+        return gifFrameService;
+    }
+
+    /**
+     * Returns a snapshot of the queue wait times of the executors Glide created itself, see
+     * {@link LaneScheduler#getStats()}. Executors set on the {@link GlideBuilder} are not included.
+     */
+    public List<LaneScheduler.LaneStats> getExecutorStats() {
+        return laneScheduler.getStats();
+    }
+
     /**
      * Cancel any pending loads Glide may have for the target and free any resources (such as {@link Bitmap}s) that may
      * have been loaded for the target so they may be reused.
@@ -16,6 +16,7 @@ import com.bumptech.glide.load.engine.cache.LruResourceCache;
 import com.bumptech.glide.load.engine.cache.MemoryCache;
 import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
 import com.bumptech.glide.load.engine.executor.FifoPriorityThreadPoolExecutor;
+import com.bumptech.glide.load.engine.executor.LaneScheduler;
 
 import java.util.concurrent.ExecutorService;
 
@@ -30,6 +31,7 @@ public class GlideBuilder {
     private MemoryCache memoryCache;
     private ExecutorService sourceService;
     private ExecutorService diskCacheService;
+    private ExecutorService gifFrameService;
     private DecodeFormat decodeFormat;
     private DiskCache.Factory diskCacheFactory;
 
@@ -114,6 +116,23 @@ public class GlideBuilder {
         return this;
     }
 
+    /**
+     * Sets the {@link ExecutorService} implementation to use to decode the frames of animated GIFs while they are
+     * playing.
+     *
+     * <p>
+     *     Frame decodes implement {@link com.bumptech.glide.load.engine.executor.Prioritized}, GIFs that are about to
+     *     run out of decoded frames return lower priorities.
+     * </p>
+     *
+     * @param service The ExecutorService to use.
+     * @return This builder.
+     */
+    public GlideBuilder setGifFrameService(ExecutorService service) {
+        this.gifFrameService = service;
+        return this;
+    }
+
     /**
      * Sets the {@link DecodeFormat} that will be the default format for all the default
      * decoders that can change the {@link android.graphics.Bitmap.Config} of the {@link android.graphics.Bitmap}s they
@@ -148,12 +167,18 @@ public class GlideBuilder {
     }
 
     Glide createGlide() {
+        // Services that weren't set share the threads of a single scheduler, but each gets its own queue and
+        // concurrency limit so slow network loads can't hold up cache hits or GIF playback.
+        final int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+        LaneScheduler laneScheduler = new LaneScheduler();
         if (sourceService == null) {
-            final int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
-            sourceService = new FifoPriorityThreadPoolExecutor(cores);
+            sourceService = laneScheduler.newLane("source", Math.max(2, cores));
         }
         if (diskCacheService == null) {
-            diskCacheService = new FifoPriorityThreadPoolExecutor(1);
+            diskCacheService = laneScheduler.newLane("disk-cache", Math.max(1, cores / 2));
+        }
+        if (gifFrameService == null) {
+            gifFrameService = laneScheduler.newLane("gif-frame", Math.max(1, cores / 2));
         }
 
         MemorySizeCalculator calculator = new MemorySizeCalculator(context);
@@ -186,6 +211,7 @@ public class GlideBuilder {
             decodeFormat = DecodeFormat.DEFAULT;
         }
 
-        return new Glide(engine, memoryCache, bitmapPool, context, decodeFormat, diskCacheFactory);
+        return new Glide(engine, memoryCache, bitmapPool, context, decodeFormat, diskCacheFactory, gifFrameService,
+                laneScheduler);
     }
 }
\ No newline at end of file
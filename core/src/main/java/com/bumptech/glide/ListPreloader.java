@@ -29,6 +29,7 @@ public class ListPreloader<T> implements AbsListView.OnScrollListener {
     private final PreloadModelProvider<T> preloadModelProvider;
     private final PreloadSizeProvider<T> preloadDimensionProvider;
 
+    private int preloadCount;
     private int lastEnd;
     private int lastStart;
     private int lastFirstVisible;
@@ -119,6 +120,7 @@ public class ListPreloader<T> implements AbsListView.OnScrollListener {
             }
         };
         this.maxPreload = maxPreload;
+        this.preloadCount = maxPreload;
         preloadTargetQueue = new PreloadTargetQueue(maxPreload + 1);
 
     }
@@ -136,9 +138,32 @@ public class ListPreloader<T> implements AbsListView.OnScrollListener {
         this.preloadModelProvider = preloadModelProvider;
         this.preloadDimensionProvider = preloadDimensionProvider;
         this.maxPreload = maxPreload;
+        this.preloadCount = maxPreload;
         preloadTargetQueue = new PreloadTargetQueue(maxPreload + 1);
     }
 
+    /**
+     * Sets the number of items to preload ahead of the visible items on the next scroll, for example to preload
+     * fewer items while scrolling slowly and more during a fling.
+     *
+     * @param preloadCount The number of items to preload, clamped to between 0 and the maximum given to the
+     *                     constructor.
+     */
+    public void setPreloadCount(int preloadCount) {
+        this.preloadCount = Math.max(0, Math.min(maxPreload, preloadCount));
+    }
+
+    /**
+     * Clears all outstanding preloads, for example when the user starts scrolling in the opposite direction before
+     * the list noticed the change in the first visible item.
+     */
+    public void cancelPreloads() {
+        cancelAll();
+        // Let the next preload in either direction start again right next to the visible items.
+        lastStart = Integer.MAX_VALUE;
+        lastEnd = 0;
+    }
+
     @Override
     public void onScrollStateChanged(AbsListView absListView, int scrollState) {
         // Do nothing.
@@ -218,7 +243,7 @@ public class ListPreloader<T> implements AbsListView.OnScrollListener {
             isIncreasing = increasing;
             cancelAll();
         }
-        preload(start, start + (increasing ? maxPreload : -maxPreload));
+        preload(start, start + (increasing ? preloadCount : -preloadCount));
     }
 
     private void preload(int from, int to) {
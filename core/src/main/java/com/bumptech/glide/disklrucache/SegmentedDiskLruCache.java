@@ -0,0 +1,991 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bumptech.glide.disklrucache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DiskLruCache} for caches that are read and written from many
+ * threads at once. Keys are split by hash between independent segments, each
+ * with its own lock, LRU order, share of the size limit and journal, so that
+ * operations on keys in different segments never wait for each other.
+ *
+ * <p>Compared to {@link DiskLruCache}:
+ * <ul>
+ * <li>Each segment's journal is a compact binary file named "journal-N"
+ * rather than a text file.
+ * <li>Reads update the LRU order in memory and are appended to the journal
+ * in batches rather than one line per read.
+ * <li>Journals are compacted on a background thread, and the segment's lock
+ * isn't held while the compacted journal is written to disk.
+ * </ul>
+ *
+ * <p>Values are stored exactly like {@link DiskLruCache} stores them, as files
+ * named {@code key.index} directly in the cache directory. If the journals are
+ * missing or corrupt, for example the first time a directory used by
+ * {@link DiskLruCache} is opened, the cache is rebuilt from the value files
+ * found in the directory, ordered by modification time.
+ *
+ * <p>The keys of readable entries and their sizes are also kept in a
+ * concurrent index, so that {@link #contains(String)} and
+ * {@link #getLength(String)} are answered from memory without taking a
+ * segment's lock or touching the filesystem.
+ *
+ * <p>Segments are picked using {@link String#hashCode()}, which is stable
+ * across runs, so the segment count must not change between runs for the same
+ * directory; if it does, the cache is rebuilt from its files.
+ */
+public final class SegmentedDiskLruCache implements Closeable {
+  static final String JOURNAL_FILE_PREFIX = "journal-";
+  static final String JOURNAL_FILE_TEMP_SUFFIX = ".tmp";
+  static final int MAGIC = 0x534c5255;
+  static final int VERSION_1 = 1;
+  /** The default number of segments, enough for Glide's disk cache and source executors. */
+  public static final int DEFAULT_SEGMENT_COUNT = 8;
+  private static final byte DIRTY = 1;
+  private static final byte CLEAN = 2;
+  private static final byte REMOVE = 3;
+  private static final byte READ = 4;
+  /** Reads are appended to the journal once this many have been recorded. */
+  private static final int READ_BATCH_SIZE = 64;
+  private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+  private final File directory;
+  private final int appVersion;
+  private final int valueCount;
+  private final Segment[] segments;
+  /** Total value length of every readable entry, updated on commit, removal and eviction. */
+  private final ConcurrentHashMap<String, Long> index = new ConcurrentHashMap<String, Long>();
+  private volatile long maxSize;
+
+  /** This cache uses a single background thread to evict entries and compact journals. */
+  final ThreadPoolExecutor executorService =
+      new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+  private SegmentedDiskLruCache(File directory, int appVersion, int valueCount, long maxSize,
+      int segmentCount) {
+    this.directory = directory;
+    this.appVersion = appVersion;
+    this.valueCount = valueCount;
+    this.maxSize = maxSize;
+    segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment(i);
+    }
+  }
+
+  /**
+   * Opens the cache in {@code directory} with {@link #DEFAULT_SEGMENT_COUNT}
+   * segments, creating a cache if none exists there.
+   *
+   * @see #open(File, int, int, long, int)
+   */
+  public static SegmentedDiskLruCache open(File directory, int appVersion, int valueCount,
+      long maxSize) throws IOException {
+    return open(directory, appVersion, valueCount, maxSize, DEFAULT_SEGMENT_COUNT);
+  }
+
+  /**
+   * Opens the cache in {@code directory}, creating a cache if none exists
+   * there.
+   *
+   * @param directory a writable directory
+   * @param valueCount the number of values per cache entry. Must be positive.
+   * @param maxSize the maximum number of bytes this cache should use to store,
+   *     split evenly between segments
+   * @param segmentCount the number of independently locked segments. Must be
+   *     positive.
+   * @throws IOException if reading or writing the cache directory fails
+   */
+  public static SegmentedDiskLruCache open(File directory, int appVersion, int valueCount,
+      long maxSize, int segmentCount) throws IOException {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize <= 0");
+    }
+    if (valueCount <= 0) {
+      throw new IllegalArgumentException("valueCount <= 0");
+    }
+    if (segmentCount <= 0) {
+      throw new IllegalArgumentException("segmentCount <= 0");
+    }
+
+    SegmentedDiskLruCache cache =
+        new SegmentedDiskLruCache(directory, appVersion, valueCount, maxSize, segmentCount);
+    directory.mkdirs();
+    try {
+      // Prefer to pick up where we left off.
+      cache.readJournals();
+    } catch (IOException journalIsMissingOrCorrupt) {
+      for (Segment segment : cache.segments) {
+        Util.closeQuietly(segment.journalWriter);
+      }
+      cache = new SegmentedDiskLruCache(directory, appVersion, valueCount, maxSize, segmentCount);
+      cache.rebuildFromDirectory();
+    }
+    return cache;
+  }
+
+  private void readJournals() throws IOException {
+    for (Segment segment : segments) {
+      if (!segment.journalFile.exists()) {
+        throw new IOException("missing journal: " + segment.journalFile);
+      }
+    }
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.readJournal();
+        segment.processJournal();
+      }
+    }
+  }
+
+  /**
+   * Recreates every segment from the value files in the directory. Partially
+   * written entries and stale journals, including a {@link DiskLruCache}
+   * journal, are deleted.
+   */
+  private void rebuildFromDirectory() throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("not a readable directory: " + directory);
+    }
+    // Least recently modified first, to approximate the LRU order.
+    final long[] lastModified = new long[files.length];
+    Integer[] order = new Integer[files.length];
+    for (int i = 0; i < files.length; i++) {
+      lastModified[i] = files[i].lastModified();
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer lhs, Integer rhs) {
+        return lastModified[lhs] < lastModified[rhs] ? -1
+            : (lastModified[lhs] == lastModified[rhs] ? 0 : 1);
+      }
+    });
+
+    Map<String, long[]> found = new LinkedHashMap<String, long[]>();
+    Map<String, boolean[]> present = new LinkedHashMap<String, boolean[]>();
+    for (Integer i : order) {
+      File file = files[i];
+      String name = file.getName();
+      if (file.isDirectory()) {
+        continue;
+      }
+      if (name.startsWith(DiskLruCache.JOURNAL_FILE) || name.endsWith(".tmp")) {
+        deleteIfExists(file);
+        continue;
+      }
+      int dot = name.lastIndexOf('.');
+      if (dot <= 0) {
+        continue;
+      }
+      int index;
+      try {
+        index = Integer.parseInt(name.substring(dot + 1));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      if (index < 0 || index >= valueCount) {
+        continue;
+      }
+      String key = name.substring(0, dot);
+      long[] lengths = found.get(key);
+      if (lengths == null) {
+        lengths = new long[valueCount];
+        found.put(key, lengths);
+        present.put(key, new boolean[valueCount]);
+      }
+      lengths[index] = file.length();
+      present.get(key)[index] = true;
+    }
+
+    for (Map.Entry<String, long[]> keyAndLengths : found.entrySet()) {
+      String key = keyAndLengths.getKey();
+      Segment segment = segmentFor(key);
+      Entry entry = new Entry(key);
+      boolean complete = true;
+      for (boolean valuePresent : present.get(key)) {
+        complete &= valuePresent;
+      }
+      if (!complete) {
+        for (int i = 0; i < valueCount; i++) {
+          deleteIfExists(entry.getCleanFile(i));
+        }
+        continue;
+      }
+      System.arraycopy(keyAndLengths.getValue(), 0, entry.lengths, 0, valueCount);
+      entry.readable = true;
+      synchronized (segment) {
+        segment.lruEntries.put(key, entry);
+        segment.size += entry.getTotalLength();
+        index.put(key, entry.getTotalLength());
+      }
+    }
+
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.writeJournal();
+        segment.scheduleCleanupIfNeeded();
+      }
+    }
+  }
+
+  private Segment segmentFor(String key) {
+    return segments[(key.hashCode() & Integer.MAX_VALUE) % segments.length];
+  }
+
+  private long getSegmentMaxSize() {
+    return Math.max(1, maxSize / segments.length);
+  }
+
+  private static void writeHeader(DataOutputStream out, int appVersion, int valueCount)
+      throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION_1);
+    out.writeInt(appVersion);
+    out.writeInt(valueCount);
+  }
+
+  private static void writeRecord(DataOutputStream out, byte op, String key, long[] lengths)
+      throws IOException {
+    out.writeByte(op);
+    out.writeUTF(key);
+    if (lengths != null) {
+      for (long length : lengths) {
+        out.writeLong(length);
+      }
+    }
+  }
+
+  private static void deleteIfExists(File file) throws IOException {
+    if (file.exists() && !file.delete()) {
+      throw new IOException("failed to delete " + file);
+    }
+  }
+
+  /**
+   * Returns a snapshot of the entry named {@code key}, or null if it doesn't
+   * exist is not currently readable. If a value is returned, it is moved to
+   * the head of the LRU queue.
+   */
+  public Value get(String key) throws IOException {
+    Segment segment = segmentFor(key);
+    File[] files;
+    long[] lengths;
+    synchronized (segment) {
+      segment.checkNotClosed();
+      Entry entry = segment.lruEntries.get(key);
+      if (entry == null || !entry.readable) {
+        return null;
+      }
+      files = entry.cleanFiles;
+      lengths = entry.lengths.clone();
+      segment.recordRead(key);
+    }
+
+    // Checked without holding the lock, the files are only replaced by atomic renames.
+    for (File file : files) {
+      // A file must have been deleted manually!
+      if (!file.exists()) {
+        return null;
+      }
+    }
+    return new Value(files, lengths);
+  }
+
+  /**
+   * Returns an editor for the entry named {@code key}, or null if another
+   * edit is in progress.
+   */
+  public Editor edit(String key) throws IOException {
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      segment.checkNotClosed();
+      Entry entry = segment.lruEntries.get(key);
+      if (entry == null) {
+        entry = new Entry(key);
+        segment.lruEntries.put(key, entry);
+      } else if (entry.currentEditor != null) {
+        return null; // Another edit is in progress.
+      }
+
+      Editor editor = new Editor(segment, entry);
+      entry.currentEditor = editor;
+
+      // Flush the journal before creating files to prevent file leaks.
+      segment.writeRecord(DIRTY, key, null);
+      segment.journalWriter.flush();
+      return editor;
+    }
+  }
+
+  /**
+   * Drops the entry for {@code key} if it exists and can be removed. Entries
+   * actively being edited cannot be removed.
+   *
+   * @return true if an entry was removed.
+   */
+  public boolean remove(String key) throws IOException {
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      segment.checkNotClosed();
+      return segment.remove(key);
+    }
+  }
+
+  /**
+   * Returns true if a readable entry named {@code key} exists. Answered from
+   * memory without taking any lock, and doesn't affect the LRU order.
+   */
+  public boolean contains(String key) {
+    return index.containsKey(key);
+  }
+
+  /**
+   * Returns the total byte length of the values of the entry named
+   * {@code key}, or -1 if there is no readable entry. Answered from memory
+   * without taking any lock, and doesn't affect the LRU order.
+   */
+  public long getLength(String key) {
+    Long length = index.get(key);
+    return length != null ? length : -1;
+  }
+
+  /**
+   * Returns the file the value at {@code valueIndex} of the entry named
+   * {@code key} is stored in, whether or not the entry exists.
+   */
+  public File getCleanFile(String key, int valueIndex) {
+    return new File(directory, key + "." + valueIndex);
+  }
+
+  /** Returns the directory where this cache stores its data. */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the maximum number of bytes that this cache should use to store
+   * its data.
+   */
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Changes the maximum number of bytes the cache can store and queues a job
+   * to trim the existing store, if necessary.
+   */
+  public void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.scheduleCleanupIfNeeded();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of bytes currently being used to store the values in
+   * this cache. This may be greater than the max size if a background
+   * deletion is pending.
+   */
+  public long size() {
+    long size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size;
+      }
+    }
+    return size;
+  }
+
+  /** Returns true if this cache has been closed. */
+  public boolean isClosed() {
+    Segment segment = segments[0];
+    synchronized (segment) {
+      return segment.journalWriter == null;
+    }
+  }
+
+  /** Force buffered operations to the filesystem. */
+  public void flush() throws IOException {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.checkNotClosed();
+        segment.trimToSize();
+        segment.writePendingReads();
+        segment.journalWriter.flush();
+      }
+    }
+  }
+
+  /** Closes this cache. Stored values will remain on the filesystem. */
+  public void close() throws IOException {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.close();
+      }
+    }
+  }
+
+  /**
+   * Closes the cache and deletes all of its stored values. This will delete
+   * all files in the cache directory including files that weren't created by
+   * the cache.
+   */
+  public void delete() throws IOException {
+    close();
+    index.clear();
+    Util.deleteContents(directory);
+  }
+
+  /**
+   * A share of the cache's entries with its own lock and journal. All fields
+   * are guarded by the segment's monitor.
+   */
+  private final class Segment {
+    private final File journalFile;
+    private final File journalFileTmp;
+    private final LinkedHashMap<String, Entry> lruEntries =
+        new LinkedHashMap<String, Entry>(0, 0.75f, true);
+    private final List<String> pendingReads = new ArrayList<String>();
+    private long size;
+    private DataOutputStream journalWriter;
+    private int redundantOpCount;
+    /** Records appended while the journal is being compacted, or null if it isn't. */
+    private ByteArrayOutputStream compactionTail;
+    private DataOutputStream compactionTailWriter;
+    private boolean cleanupScheduled;
+
+    private final Runnable cleanupRunnable = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          synchronized (Segment.this) {
+            cleanupScheduled = false;
+            if (journalWriter == null) {
+              return; // Closed.
+            }
+            trimToSize();
+            if (!journalRebuildRequired()) {
+              return;
+            }
+          }
+          compact();
+        } catch (IOException e) {
+          // The journal will be compacted again on a later edit, or rebuilt when the cache is next opened.
+        }
+      }
+    };
+
+    Segment(int index) {
+      journalFile = new File(directory, JOURNAL_FILE_PREFIX + index);
+      journalFileTmp = new File(directory, JOURNAL_FILE_PREFIX + index + JOURNAL_FILE_TEMP_SUFFIX);
+    }
+
+    void readJournal() throws IOException {
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+      boolean truncated = false;
+      try {
+        int magic = in.readInt();
+        int version = in.readInt();
+        int appVersionInJournal = in.readInt();
+        int valueCountInJournal = in.readInt();
+        if (magic != MAGIC
+            || version != VERSION_1
+            || appVersionInJournal != appVersion
+            || valueCountInJournal != valueCount) {
+          throw new IOException("unexpected journal header: [" + magic + ", " + version + ", "
+              + appVersionInJournal + ", " + valueCountInJournal + "]");
+        }
+
+        int recordCount = 0;
+        int op;
+        while ((op = in.read()) != -1) {
+          try {
+            readJournalRecord((byte) op, in);
+          } catch (EOFException truncatedRecord) {
+            truncated = true;
+            break;
+          }
+          recordCount++;
+        }
+        redundantOpCount = recordCount - lruEntries.size();
+      } catch (EOFException truncatedHeader) {
+        throw new IOException("truncated journal header: " + journalFile);
+      } finally {
+        Util.closeQuietly(in);
+      }
+
+      // If we ended on a truncated record, rebuild the journal before appending to it.
+      if (truncated) {
+        writeJournal();
+      } else {
+        journalWriter = openJournalWriter();
+      }
+    }
+
+    private void readJournalRecord(byte op, DataInputStream in) throws IOException {
+      String key = in.readUTF();
+      if (op == REMOVE) {
+        lruEntries.remove(key);
+        return;
+      }
+
+      Entry entry = lruEntries.get(key);
+      if (entry == null) {
+        entry = new Entry(key);
+        lruEntries.put(key, entry);
+      }
+
+      if (op == CLEAN) {
+        for (int i = 0; i < valueCount; i++) {
+          entry.lengths[i] = in.readLong();
+        }
+        entry.readable = true;
+        entry.currentEditor = null;
+      } else if (op == DIRTY) {
+        entry.currentEditor = new Editor(this, entry);
+      } else if (op != READ) {
+        // Reads were already applied by calling lruEntries.get().
+        throw new IOException("unexpected journal record: " + op);
+      }
+    }
+
+    /**
+     * Computes the initial size and collects garbage as a part of opening the
+     * cache. Dirty entries are assumed to be inconsistent and will be deleted.
+     */
+    void processJournal() throws IOException {
+      deleteIfExists(journalFileTmp);
+      for (Iterator<Entry> i = lruEntries.values().iterator(); i.hasNext(); ) {
+        Entry entry = i.next();
+        if (entry.currentEditor == null) {
+          size += entry.getTotalLength();
+          index.put(entry.key, entry.getTotalLength());
+        } else {
+          entry.currentEditor = null;
+          for (int t = 0; t < valueCount; t++) {
+            deleteIfExists(entry.getCleanFile(t));
+            deleteIfExists(entry.getDirtyFile(t));
+          }
+          i.remove();
+        }
+      }
+    }
+
+    private DataOutputStream openJournalWriter() throws IOException {
+      return new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+    }
+
+    /**
+     * Writes the current entries to a new journal, replacing the current one.
+     * Only used while opening, afterwards journals are compacted with
+     * {@link #compact()}.
+     */
+    void writeJournal() throws IOException {
+      if (journalWriter != null) {
+        journalWriter.close();
+      }
+      DataOutputStream writer = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(journalFileTmp)));
+      try {
+        writeEntries(writer);
+      } finally {
+        writer.close();
+      }
+      replaceJournal();
+    }
+
+    private void writeEntries(DataOutputStream out) throws IOException {
+      writeHeader(out, appVersion, valueCount);
+      for (Entry entry : lruEntries.values()) {
+        if (entry.currentEditor != null) {
+          SegmentedDiskLruCache.writeRecord(out, DIRTY, entry.key, null);
+        } else {
+          SegmentedDiskLruCache.writeRecord(out, CLEAN, entry.key, entry.lengths);
+        }
+      }
+      // The order of the entries already includes these reads.
+      pendingReads.clear();
+      redundantOpCount = 0;
+    }
+
+    private void replaceJournal() throws IOException {
+      deleteIfExists(journalFile);
+      if (!journalFileTmp.renameTo(journalFile)) {
+        throw new IOException("failed to rename " + journalFileTmp);
+      }
+      journalWriter = openJournalWriter();
+    }
+
+    /**
+     * Creates a new journal that omits redundant information. The entries are
+     * serialized in memory while holding the lock, but written to disk without
+     * it. Records appended in the meantime are copied to the end of the new
+     * journal before it replaces the current one.
+     */
+    void compact() throws IOException {
+      ByteArrayOutputStream compacted = new ByteArrayOutputStream();
+      synchronized (this) {
+        if (journalWriter == null || compactionTail != null) {
+          return; // Closed, or already being compacted.
+        }
+        writeEntries(new DataOutputStream(compacted));
+        compactionTail = new ByteArrayOutputStream();
+        compactionTailWriter = new DataOutputStream(compactionTail);
+      }
+
+      FileOutputStream writer = null;
+      try {
+        writer = new FileOutputStream(journalFileTmp);
+        compacted.writeTo(writer);
+        synchronized (this) {
+          if (journalWriter == null) {
+            return; // Closed while compacting.
+          }
+          compactionTailWriter.flush();
+          compactionTail.writeTo(writer);
+          writer.close();
+          writer = null;
+          journalWriter.close();
+          replaceJournal();
+        }
+      } finally {
+        Util.closeQuietly(writer);
+        synchronized (this) {
+          compactionTail = null;
+          compactionTailWriter = null;
+        }
+        if (journalFileTmp.exists()) {
+          journalFileTmp.delete();
+        }
+      }
+    }
+
+    void writeRecord(byte op, String key, long[] lengths) throws IOException {
+      SegmentedDiskLruCache.writeRecord(journalWriter, op, key, lengths);
+      if (compactionTailWriter != null) {
+        SegmentedDiskLruCache.writeRecord(compactionTailWriter, op, key, lengths);
+      }
+    }
+
+    void recordRead(String key) throws IOException {
+      pendingReads.add(key);
+      if (pendingReads.size() >= READ_BATCH_SIZE) {
+        writePendingReads();
+        scheduleCleanupIfNeeded();
+      }
+    }
+
+    void writePendingReads() throws IOException {
+      for (int i = 0, count = pendingReads.size(); i < count; i++) {
+        writeRecord(READ, pendingReads.get(i), null);
+      }
+      redundantOpCount += pendingReads.size();
+      pendingReads.clear();
+    }
+
+    void completeEdit(Editor editor, boolean success) throws IOException {
+      Entry entry = editor.entry;
+      if (entry.currentEditor != editor) {
+        throw new IllegalStateException();
+      }
+
+      // If this edit is creating the entry for the first time, every index must have a value.
+      if (success && !entry.readable) {
+        for (int i = 0; i < valueCount; i++) {
+          if (!editor.written[i]) {
+            editor.abort();
+            throw new IllegalStateException("Newly created entry didn't create value for index " + i);
+          }
+          if (!entry.getDirtyFile(i).exists()) {
+            editor.abort();
+            return;
+          }
+        }
+      }
+
+      for (int i = 0; i < valueCount; i++) {
+        File dirty = entry.getDirtyFile(i);
+        if (success) {
+          if (dirty.exists()) {
+            File clean = entry.getCleanFile(i);
+            dirty.renameTo(clean);
+            long oldLength = entry.lengths[i];
+            long newLength = clean.length();
+            entry.lengths[i] = newLength;
+            size = size - oldLength + newLength;
+          }
+        } else {
+          deleteIfExists(dirty);
+        }
+      }
+
+      redundantOpCount++;
+      entry.currentEditor = null;
+      if (entry.readable | success) {
+        entry.readable = true;
+        writeRecord(CLEAN, entry.key, entry.lengths);
+        index.put(entry.key, entry.getTotalLength());
+      } else {
+        lruEntries.remove(entry.key);
+        writeRecord(REMOVE, entry.key, null);
+      }
+      journalWriter.flush();
+
+      scheduleCleanupIfNeeded();
+    }
+
+    boolean remove(String key) throws IOException {
+      Entry entry = lruEntries.get(key);
+      if (entry == null || entry.currentEditor != null) {
+        return false;
+      }
+
+      for (int i = 0; i < valueCount; i++) {
+        File file = entry.getCleanFile(i);
+        if (file.exists() && !file.delete()) {
+          throw new IOException("failed to delete " + file);
+        }
+        size -= entry.lengths[i];
+        entry.lengths[i] = 0;
+      }
+
+      redundantOpCount++;
+      writeRecord(REMOVE, key, null);
+      lruEntries.remove(key);
+      index.remove(key);
+
+      scheduleCleanupIfNeeded();
+      return true;
+    }
+
+    void trimToSize() throws IOException {
+      long segmentMaxSize = getSegmentMaxSize();
+      Iterator<Entry> iterator = lruEntries.values().iterator();
+      List<String> toEvict = new ArrayList<String>();
+      long remaining = size;
+      while (remaining > segmentMaxSize && iterator.hasNext()) {
+        Entry entry = iterator.next();
+        // Entries being edited can't be evicted, skip them rather than waiting.
+        if (entry.currentEditor == null) {
+          toEvict.add(entry.key);
+          for (long length : entry.lengths) {
+            remaining -= length;
+          }
+        }
+      }
+      for (String key : toEvict) {
+        remove(key);
+      }
+    }
+
+    /**
+     * We only compact the journal when it will halve the size of the journal
+     * and eliminate at least 2000 ops.
+     */
+    boolean journalRebuildRequired() {
+      return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+          && redundantOpCount >= lruEntries.size();
+    }
+
+    void scheduleCleanupIfNeeded() {
+      if (!cleanupScheduled && (size > getSegmentMaxSize() || journalRebuildRequired())) {
+        cleanupScheduled = true;
+        executorService.execute(cleanupRunnable);
+      }
+    }
+
+    void checkNotClosed() {
+      if (journalWriter == null) {
+        throw new IllegalStateException("cache is closed");
+      }
+    }
+
+    void close() throws IOException {
+      if (journalWriter == null) {
+        return; // Already closed.
+      }
+      for (Entry entry : new ArrayList<Entry>(lruEntries.values())) {
+        if (entry.currentEditor != null) {
+          entry.currentEditor.abort();
+        }
+      }
+      trimToSize();
+      writePendingReads();
+      journalWriter.close();
+      journalWriter = null;
+    }
+  }
+
+  /** A snapshot of the values for an entry. */
+  public static final class Value {
+    private final File[] files;
+    private final long[] lengths;
+
+    private Value(File[] files, long[] lengths) {
+      this.files = files;
+      this.lengths = lengths;
+    }
+
+    public File getFile(int index) {
+      return files[index];
+    }
+
+    /** Returns the byte length of the value for {@code index}. */
+    public long getLength(int index) {
+      return lengths[index];
+    }
+  }
+
+  /** Edits the values for an entry. */
+  public final class Editor {
+    private final Segment segment;
+    private final Entry entry;
+    private final boolean[] written;
+    private boolean committed;
+
+    private Editor(Segment segment, Entry entry) {
+      this.segment = segment;
+      this.entry = entry;
+      this.written = (entry.readable) ? null : new boolean[valueCount];
+    }
+
+    public File getFile(int index) throws IOException {
+      synchronized (segment) {
+        if (entry.currentEditor != this) {
+          throw new IllegalStateException();
+        }
+        if (!entry.readable) {
+          written[index] = true;
+        }
+        File dirtyFile = entry.getDirtyFile(index);
+        if (!directory.exists()) {
+          directory.mkdirs();
+        }
+        return dirtyFile;
+      }
+    }
+
+    /**
+     * Commits this edit so it is visible to readers.  This releases the
+     * edit lock so another edit may be started on the same key.
+     */
+    public void commit() throws IOException {
+      synchronized (segment) {
+        segment.completeEdit(this, true);
+      }
+      committed = true;
+    }
+
+    /**
+     * Aborts this edit. This releases the edit lock so another edit may be
+     * started on the same key.
+     */
+    public void abort() throws IOException {
+      synchronized (segment) {
+        segment.completeEdit(this, false);
+      }
+    }
+
+    public void abortUnlessCommitted() {
+      if (!committed) {
+        try {
+          abort();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private final class Entry {
+    private final String key;
+
+    /** Lengths of this entry's files. */
+    private final long[] lengths;
+
+    /** Memoized File objects for this entry to avoid char[] allocations. */
+    private final File[] cleanFiles;
+    private final File[] dirtyFiles;
+
+    /** True if this entry has ever been published. */
+    private boolean readable;
+
+    /** The ongoing edit or null if this entry is not being edited. */
+    private Editor currentEditor;
+
+    private Entry(String key) {
+      this.key = key;
+      this.lengths = new long[valueCount];
+      cleanFiles = new File[valueCount];
+      dirtyFiles = new File[valueCount];
+
+      // The names are repetitive so re-use the same builder to avoid allocations.
+      StringBuilder fileBuilder = new StringBuilder(key).append('.');
+      int truncateTo = fileBuilder.length();
+      for (int i = 0; i < valueCount; i++) {
+        fileBuilder.append(i);
+        cleanFiles[i] = new File(directory, fileBuilder.toString());
+        fileBuilder.append(".tmp");
+        dirtyFiles[i] = new File(directory, fileBuilder.toString());
+        fileBuilder.setLength(truncateTo);
+      }
+    }
+
+    long getTotalLength() {
+      long total = 0;
+      for (long length : lengths) {
+        total += length;
+      }
+      return total;
+    }
+
+    File getCleanFile(int i) {
+      return cleanFiles[i];
+    }
+
+    File getDirtyFile(int i) {
+      return dirtyFiles[i];
+    }
+  }
+}
@@ -26,6 +26,7 @@ package com.bumptech.glide.gifdecoder;
 
 import android.annotation.TargetApi;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Build;
 import android.util.Log;
 
@@ -38,8 +39,10 @@ import java.util.Arrays;
 
 /**
  * Reads frame data from a GIF image source and decodes it into individual frames
- * for animation purposes.  Image data can be read from either and InputStream source
- * or a byte[].
+ * for animation purposes.  Image data can be read from either and InputStream source,
+ * a byte[] or a {@link ByteBuffer}. A {@link java.nio.MappedByteBuffer} obtained from a
+ * {@link java.nio.channels.FileChannel} keeps the compressed data off the Java heap and lets
+ * the OS page it in on demand, the byte[] variants are thin adapters around a heap buffer.
  *
  * This class is optimized for running animations with the frames, there
  * are no methods to get individual frame images, only to decode the next frame in the
@@ -107,7 +110,7 @@ public class GifDecoder {
     // Active color table.
     private int[] act;
 
-    // Raw GIF data from input source.
+    // Raw GIF data from input source, a private view of data so that position changes don't leak.
     private ByteBuffer rawData;
 
     // Raw data read working array.
@@ -115,15 +118,22 @@ public class GifDecoder {
 
     private GifHeaderParser parser;
 
-    // LZW decoder working arrays.
-    private short[] prefix;
+    // LZW decoder working arrays, obtained from and released to the BitmapProvider.
+    private int[] prefix;
     private byte[] suffix;
     private byte[] pixelStack;
     private byte[] mainPixels;
     private int[] mainScratch;
 
+    // The area of mainScratch that changed since it was last copied into previousImage.
+    private final Rect unsavedRect = new Rect();
+
     private int framePointer;
-    private byte[] data;
+    // Frames are decoded at 1/sampleSize of the GIF's size in each dimension.
+    private int sampleSize = 1;
+    private int downsampledWidth;
+    private int downsampledHeight;
+    private ByteBuffer data;
     private GifHeader header;
     private BitmapProvider bitmapProvider;
     private Bitmap previousImage;
@@ -150,6 +160,26 @@ public class GifDecoder {
          * Releases the given Bitmap back to the pool.
          */
         public void release(Bitmap bitmap);
+
+        /**
+         * Returns a byte array of exactly the given size, which may contain data from a previous use.
+         */
+        public byte[] obtainByteArray(int size);
+
+        /**
+         * Releases the given byte array back to the pool.
+         */
+        public void release(byte[] bytes);
+
+        /**
+         * Returns an int array of exactly the given size, which may contain data from a previous use.
+         */
+        public int[] obtainIntArray(int size);
+
+        /**
+         * Releases the given int array back to the pool.
+         */
+        public void release(int[] array);
     }
 
     public GifDecoder(BitmapProvider provider) {
@@ -166,7 +196,33 @@ public class GifDecoder {
         return header.height;
     }
 
+    /**
+     * Returns the width of the decoded frames, which is the width of the GIF divided by the sample size.
+     */
+    public int getDownsampledWidth() {
+        return downsampledWidth;
+    }
+
+    /**
+     * Returns the height of the decoded frames, which is the height of the GIF divided by the sample size.
+     */
+    public int getDownsampledHeight() {
+        return downsampledHeight;
+    }
+
+    /**
+     * Returns the raw GIF data as a byte[]. If the data isn't backed by an accessible array of exactly the right size
+     * (for example when it was memory mapped), a copy is returned, prefer {@link #getDataBuffer()} in that case.
+     */
     public byte[] getData() {
+        return toBytes(data);
+    }
+
+    /**
+     * Returns the raw GIF data. The returned buffer is shared, use {@link ByteBuffer#duplicate()} before changing its
+     * position.
+     */
+    public ByteBuffer getDataBuffer() {
         return data;
     }
 
@@ -240,6 +296,24 @@ public class GifDecoder {
         framePointer = -1;
     }
 
+    /**
+     * Moves the animation frame counter to the given frame, so that {@link #getNextFrame()} decodes it next.
+     *
+     * <p>
+     *     Frames are composed onto the ones before them, so skipping frames gives incorrect results unless the frames
+     *     in between are decoded as well.
+     * </p>
+     *
+     * @return true if the index is valid, false otherwise.
+     */
+    public boolean setFrameIndex(int frame) {
+        if (frame < INITIAL_FRAME_POINTER || frame >= getFrameCount()) {
+            return false;
+        }
+        framePointer = frame;
+        return true;
+    }
+
     /**
      * Gets the "Netscape" iteration count, if any. A count of 0 means repeat indefinitely.
      *
@@ -255,6 +329,39 @@ public class GifDecoder {
      * @return Bitmap representation of frame.
      */
     public synchronized Bitmap getNextFrame() {
+        if (!drawNextFrame()) {
+            return null;
+        }
+        Bitmap result = getNextBitmap();
+        result.setPixels(mainScratch, 0, downsampledWidth, 0, 0, downsampledWidth, downsampledHeight);
+        return result;
+    }
+
+    /**
+     * Decodes the next frame in the animation sequence like {@link #getNextFrame()}, but copies its ARGB pixels into
+     * the given array instead of a {@link Bitmap}.
+     *
+     * @param pixels An array of at least {@link #getDownsampledWidth()} * {@link #getDownsampledHeight()} pixels,
+     *               rows are {@link #getDownsampledWidth()} pixels apart.
+     * @return true if the frame was decoded, false otherwise, see {@link #getStatus()}.
+     */
+    public synchronized boolean getNextFramePixels(int[] pixels) {
+        if (!drawNextFrame()) {
+            return false;
+        }
+        System.arraycopy(mainScratch, 0, pixels, 0, downsampledWidth * downsampledHeight);
+        return true;
+    }
+
+    /**
+     * Draws the current frame onto the canvas in mainScratch, returning false if it can't be decoded.
+     */
+    private boolean drawNextFrame() {
+        if (header == null || rawData == null) {
+            // The decoder was cleared, possibly while a frame load was still queued.
+            status = STATUS_OPEN_ERROR;
+            return false;
+        }
         if (header.frameCount <= 0 || framePointer < 0) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "unable to decode frame, frameCount=" + header.frameCount + " framePointer=" + framePointer);
@@ -265,7 +372,7 @@ public class GifDecoder {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "Unable to decode frame, status=" + status);
             }
-            return null;
+            return false;
         }
         status = STATUS_OK;
 
@@ -298,18 +405,18 @@ public class GifDecoder {
             }
             // No color table defined.
             status = STATUS_FORMAT_ERROR;
-            return null;
+            return false;
         }
 
-        // Transfer pixel data to image.
-        Bitmap result = setPixels(currentFrame, previousFrame);
+        // Transfer pixel data to the canvas.
+        setPixels(currentFrame, previousFrame);
 
         // Reset the transparent pixel in the color table
         if (currentFrame.transparency) {
             act[currentFrame.transIndex] = save;
         }
 
-        return result;
+        return true;
     }
 
     /**
@@ -322,7 +429,7 @@ public class GifDecoder {
         if (is != null) {
             try {
                 int capacity = (contentLength > 0) ? (contentLength + 4096) : 16384;
-                ByteArrayOutputStream buffer = new ByteArrayOutputStream(capacity);
+                ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream(capacity);
                 int nRead;
                 byte[] data = new byte[16384];
                 while ((nRead = is.read(data, 0, data.length)) != -1) {
@@ -330,7 +437,8 @@ public class GifDecoder {
                 }
                 buffer.flush();
 
-                read(buffer.toByteArray());
+                // Wrap the stream's own array rather than copying it again with toByteArray().
+                read(buffer.toByteBuffer());
             } catch (IOException e) {
                 Log.w(TAG, "Error reading data from stream", e);
             }
@@ -349,11 +457,10 @@ public class GifDecoder {
         return status;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         header = null;
         data = null;
-        mainPixels = null;
-        mainScratch = null;
+        releaseScratch();
         if (previousImage != null) {
             bitmapProvider.release(previousImage);
         }
@@ -362,15 +469,36 @@ public class GifDecoder {
     }
 
     public void setData(GifHeader header, byte[] data) {
+        setData(header, data != null ? ByteBuffer.wrap(data) : null);
+    }
+
+    /**
+     * Sets the header and the raw GIF data to decode frames from. The buffer is not copied, this decoder reads from a
+     * private view of it, so the same buffer can be shared by several decoders.
+     */
+    public void setData(GifHeader header, ByteBuffer data) {
+        setData(header, data, 1);
+    }
+
+    /**
+     * Sets the header and the raw GIF data to decode frames from, decoding frames at 1/sampleSize of the GIF's width
+     * and height. Each pixel of a downsampled frame is the average of the opaque pixels it covers.
+     *
+     * @param sampleSize The factor to reduce the width and height by, at least 1.
+     */
+    public void setData(GifHeader header, ByteBuffer data, int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be >=1, not: " + sampleSize);
+        }
         this.header = header;
+        this.sampleSize = sampleSize;
+        downsampledWidth = Math.max(1, header.width / sampleSize);
+        downsampledHeight = Math.max(1, header.height / sampleSize);
         this.data = data;
         this.status = STATUS_OK;
         framePointer = INITIAL_FRAME_POINTER;
         // Initialize the raw data buffer.
-        rawData = ByteBuffer.wrap(data);
-        rawData.rewind();
-        rawData.order(ByteOrder.LITTLE_ENDIAN);
-
+        rawData = newRawData(data);
 
         // No point in specially saving an old frame if we're never going to use it.
         savePrevious = false;
@@ -382,8 +510,7 @@ public class GifDecoder {
         }
 
         // Now that we know the size, init scratch arrays.
-        mainPixels = new byte[header.width * header.height];
-        mainScratch = new int[header.width * header.height];
+        initScratch();
     }
 
     private GifHeaderParser getHeaderParser() {
@@ -400,17 +527,27 @@ public class GifDecoder {
      * @return read status code (0 = no errors).
      */
     public int read(byte[] data) {
+        return read(data != null ? ByteBuffer.wrap(data) : null);
+    }
+
+    /**
+     * Reads GIF image from a buffer, for example a {@link java.nio.MappedByteBuffer} of a cached file.
+     *
+     * @param data containing GIF file.
+     * @return read status code (0 = no errors).
+     */
+    public int read(ByteBuffer data) {
         this.data = data;
         this.header = getHeaderParser().setData(data).parseHeader();
         if (data != null) {
             // Initialize the raw data buffer.
-            rawData = ByteBuffer.wrap(data);
-            rawData.rewind();
-            rawData.order(ByteOrder.LITTLE_ENDIAN);
+            rawData = newRawData(data);
+            sampleSize = 1;
+            downsampledWidth = header.width;
+            downsampledHeight = header.height;
 
             // Now that we know the size, init scratch arrays.
-            mainPixels = new byte[header.width * header.height];
-            mainScratch = new int[header.width * header.height];
+            initScratch();
 
             // No point in specially saving an old frame if we're never going to use it.
             savePrevious = false;
@@ -426,12 +563,85 @@ public class GifDecoder {
     }
 
     /**
-     * Creates new frame image from current data (and previous frames as specified by their disposition codes).
+     * Obtains canvas sized scratch arrays from the provider, replacing any held for previous data.
+     */
+    private void initScratch() {
+        releaseScratch();
+        if (previousImage != null) {
+            // The saved frame belongs to the previous data and may not even have the same size.
+            bitmapProvider.release(previousImage);
+            previousImage = null;
+        }
+        mainPixels = bitmapProvider.obtainByteArray(header.width * header.height);
+        mainScratch = bitmapProvider.obtainIntArray(downsampledWidth * downsampledHeight);
+        // Pooled arrays are dirty, the first frame is drawn onto a transparent canvas.
+        Arrays.fill(mainScratch, 0);
+    }
+
+    private void releaseScratch() {
+        if (mainPixels != null) {
+            bitmapProvider.release(mainPixels);
+        }
+        if (mainScratch != null) {
+            bitmapProvider.release(mainScratch);
+        }
+        if (prefix != null) {
+            bitmapProvider.release(prefix);
+        }
+        if (suffix != null) {
+            bitmapProvider.release(suffix);
+        }
+        if (pixelStack != null) {
+            bitmapProvider.release(pixelStack);
+        }
+        mainPixels = null;
+        mainScratch = null;
+        prefix = null;
+        suffix = null;
+        pixelStack = null;
+        unsavedRect.setEmpty();
+    }
+
+    private static ByteBuffer newRawData(ByteBuffer data) {
+        if (data == null) {
+            return null;
+        }
+        ByteBuffer rawData = data.duplicate();
+        rawData.rewind();
+        rawData.order(ByteOrder.LITTLE_ENDIAN);
+        return rawData;
+    }
+
+    /**
+     * Returns the content of the given buffer as a byte[], without copying if the buffer wraps an entire array.
      */
-    private Bitmap setPixels(GifFrame currentFrame, GifFrame previousFrame) {
+    public static byte[] toBytes(ByteBuffer data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.hasArray() && data.arrayOffset() == 0 && data.array().length == data.limit()) {
+            return data.array();
+        }
+        ByteBuffer view = data.duplicate();
+        view.rewind();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
 
-        int width = header.width;
-        int height = header.height;
+    /**
+     * Draws the current frame onto the canvas in mainScratch (and previous frames as specified by their disposition
+     * codes).
+     *
+     * <p>
+     *     mainScratch holds the canvas across frames, so only the areas covered by the previous and the current frame
+     *     are touched here.
+     * </p>
+     */
+    private void setPixels(GifFrame currentFrame, GifFrame previousFrame) {
+
+        int width = downsampledWidth;
+        int height = downsampledHeight;
 
         // Final location of blended pixels.
         final int[] dest = mainScratch;
@@ -441,29 +651,80 @@ public class GifDecoder {
             // We don't need to do anything for DISPOSAL_NONE, if it has the correct pixels so will our mainScratch
             // and therefore so will our dest array.
             if (previousFrame.dispose == DISPOSAL_BACKGROUND) {
-                // Start with a canvas filled with the background color
+                // Only the area of the previous frame is restored to the background color.
                 int c = 0;
                 if (!currentFrame.transparency) {
                     c = header.bgColor;
                 }
-                Arrays.fill(dest, c);
+                int left = toSampledStart(previousFrame.ix);
+                int top = toSampledStart(previousFrame.iy);
+                int right = Math.min(toSampledEnd(previousFrame.ix + previousFrame.iw), width);
+                int bottom = Math.min(toSampledEnd(previousFrame.iy + previousFrame.ih), height);
+                if (left < right) {
+                    for (int y = top; y < bottom; y++) {
+                        int k = y * width;
+                        Arrays.fill(dest, k + left, k + right, c);
+                    }
+                    markUnsaved(left, top, right, bottom);
+                }
             } else if (previousFrame.dispose == DISPOSAL_PREVIOUS && previousImage != null) {
-                // Start with the previous frame
-                previousImage.getPixels(dest, 0, width, 0, 0, width, height);
+                // Start with the previous frame, only the pixels changed since it was saved can differ from it.
+                if (!unsavedRect.isEmpty()) {
+                    previousImage.getPixels(dest, unsavedRect.top * width + unsavedRect.left, width,
+                            unsavedRect.left, unsavedRect.top, unsavedRect.width(), unsavedRect.height());
+                    unsavedRect.setEmpty();
+                }
             }
         }
 
         // Decode pixels for this frame  into the global pixels[] scratch.
         decodeBitmapData(currentFrame);
 
+        if (sampleSize == 1) {
+            copyFrame(currentFrame, dest);
+        } else {
+            copyFrameDownsampled(currentFrame, dest);
+        }
+        markUnsaved(toSampledStart(currentFrame.ix), toSampledStart(currentFrame.iy),
+                Math.min(toSampledEnd(currentFrame.ix + currentFrame.iw), width),
+                Math.min(toSampledEnd(currentFrame.iy + currentFrame.ih), height));
+
+        // Copy pixels into previous image
+        if (savePrevious && (currentFrame.dispose == DISPOSAL_UNSPECIFIED
+            || currentFrame.dispose == DISPOSAL_NONE)) {
+            if (previousImage == null) {
+                // A Bitmap from the pool has undefined content, so it needs the whole canvas once.
+                previousImage = getNextBitmap();
+                previousImage.setPixels(dest, 0, width, 0, 0, width, height);
+            } else if (!unsavedRect.isEmpty()) {
+                previousImage.setPixels(dest, unsavedRect.top * width + unsavedRect.left, width,
+                        unsavedRect.left, unsavedRect.top, unsavedRect.width(), unsavedRect.height());
+            }
+            unsavedRect.setEmpty();
+        }
+    }
+
+    /**
+     * Copies the decoded pixels of the given frame onto the canvas at full size.
+     */
+    private void copyFrame(GifFrame currentFrame, int[] dest) {
+        final byte[] pixels = mainPixels;
+        final int[] colors = act;
+        final int iw = currentFrame.iw;
+        final int ih = currentFrame.ih;
+        final int ix = currentFrame.ix;
+        final int iy = currentFrame.iy;
+        final int width = downsampledWidth;
+        final int height = downsampledHeight;
+
         // Copy each source line to the appropriate place in the destination.
         int pass = 1;
         int inc = 8;
         int iline = 0;
-        for (int i = 0; i < currentFrame.ih; i++) {
+        for (int i = 0; i < ih; i++) {
             int line = i;
             if (currentFrame.interlace) {
-                if (iline >= currentFrame.ih) {
+                if (iline >= ih) {
                     pass++;
                     switch (pass) {
                         case 2:
@@ -484,23 +745,22 @@ public class GifDecoder {
                 line = iline;
                 iline += inc;
             }
-            line += currentFrame.iy;
-            if (line < header.height) {
-                int k = line * header.width;
+            line += iy;
+            if (line < height) {
+                int k = line * width;
                 // Start of line in dest.
-                int dx = k + currentFrame.ix;
+                int dx = k + ix;
                 // End of dest line.
-                int dlim = dx + currentFrame.iw;
-                if ((k + header.width) < dlim) {
+                int dlim = dx + iw;
+                if ((k + width) < dlim) {
                     // Past dest edge.
-                    dlim = k + header.width;
+                    dlim = k + width;
                 }
                 // Start of line in source.
-                int sx = i * currentFrame.iw;
+                int sx = i * iw;
                 while (dx < dlim) {
                     // Map color and insert in destination.
-                    int index = ((int) mainPixels[sx++]) & 0xff;
-                    int c = act[index];
+                    int c = colors[((int) pixels[sx++]) & 0xff];
                     if (c != 0) {
                         dest[dx] = c;
                     }
@@ -508,20 +768,108 @@ public class GifDecoder {
                 }
             }
         }
+    }
 
-        // Copy pixels into previous image
-        if (savePrevious && (currentFrame.dispose == DISPOSAL_UNSPECIFIED
-            || currentFrame.dispose == DISPOSAL_NONE)) {
-            if (previousImage == null) {
-                previousImage = getNextBitmap();
+    /**
+     * Copies the decoded pixels of the given frame onto the downsampled canvas. Each canvas pixel is the average of
+     * the opaque frame pixels in the sampleSize x sampleSize block it covers, fully transparent blocks leave the canvas
+     * untouched just like transparent pixels do at full size.
+     */
+    private void copyFrameDownsampled(GifFrame currentFrame, int[] dest) {
+        final byte[] pixels = mainPixels;
+        final int[] colors = act;
+        final int sample = sampleSize;
+        final int width = downsampledWidth;
+        final int iw = currentFrame.iw;
+        final int ih = currentFrame.ih;
+        final int ix = currentFrame.ix;
+        final int iy = currentFrame.iy;
+        final int left = toSampledStart(ix);
+        final int top = toSampledStart(iy);
+        final int right = Math.min(toSampledEnd(ix + iw), width);
+        final int bottom = Math.min(toSampledEnd(iy + ih), downsampledHeight);
+
+        for (int y = top; y < bottom; y++) {
+            // Rows of the block in frame coordinates, blocks on the frame's edges are only partly inside it.
+            int fyEnd = Math.min(y * sample - iy + sample, ih);
+            int fyStart = Math.max(y * sample - iy, 0);
+            int k = y * width;
+            for (int x = left; x < right; x++) {
+                int fxEnd = Math.min(x * sample - ix + sample, iw);
+                int fxStart = Math.max(x * sample - ix, 0);
+                int alpha = 0;
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                int count = 0;
+                for (int fy = fyStart; fy < fyEnd; fy++) {
+                    int sx = (currentFrame.interlace ? interlacedRow(fy, ih) : fy) * iw;
+                    for (int fx = fxStart; fx < fxEnd; fx++) {
+                        int c = colors[((int) pixels[sx + fx]) & 0xff];
+                        if (c != 0) {
+                            alpha += c >>> 24;
+                            red += (c >> 16) & 0xff;
+                            green += (c >> 8) & 0xff;
+                            blue += c & 0xff;
+                            count++;
+                        }
+                    }
+                }
+                if (count > 0) {
+                    dest[k + x] = ((alpha / count) << 24) | ((red / count) << 16) | ((green / count) << 8)
+                            | (blue / count);
+                }
             }
-            previousImage.setPixels(dest, 0, width, 0, 0, width, height);
         }
+    }
 
-        // Set pixels for current image.
-        Bitmap result = getNextBitmap();
-        result.setPixels(dest, 0, width, 0, 0, width, height);
-        return result;
+    /**
+     * Returns the row the given display row of an interlaced frame is stored at. Rows are stored in four passes:
+     * every 8th row starting at 0, every 8th starting at 4, every 4th starting at 2 and every 2nd starting at 1.
+     */
+    private static int interlacedRow(int row, int height) {
+        if ((row & 7) == 0) {
+            return row >> 3;
+        }
+        int pass1 = (height + 7) >> 3;
+        if ((row & 7) == 4) {
+            return pass1 + (row >> 3);
+        }
+        int pass2 = (height + 3) >> 3;
+        if ((row & 3) == 2) {
+            return pass1 + pass2 + (row >> 2);
+        }
+        int pass3 = (height + 1) >> 2;
+        return pass1 + pass2 + pass3 + (row >> 1);
+    }
+
+    /**
+     * Maps the first coordinate of an area on the GIF's canvas to the downsampled pixel it falls into.
+     */
+    private int toSampledStart(int coordinate) {
+        return coordinate / sampleSize;
+    }
+
+    /**
+     * Maps the coordinate just past an area on the GIF's canvas to the downsampled pixel just past the last one the
+     * area touches.
+     */
+    private int toSampledEnd(int coordinate) {
+        return (coordinate + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * Adds the given area, clipped to the canvas, to the area that previousImage is missing.
+     */
+    private void markUnsaved(int left, int top, int right, int bottom) {
+        if (!savePrevious) {
+            return;
+        }
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        if (left < right && top < bottom) {
+            unsavedRect.union(left, top, right, bottom);
+        }
     }
 
     /**
@@ -538,18 +886,27 @@ public class GifDecoder {
                 dataSize, first, top, bi, pi;
 
         if (mainPixels == null || mainPixels.length < npix) {
-            // Allocate new pixel array.
-            mainPixels = new byte[npix];
+            // The frame is larger than the canvas, swap in a big enough pixel array.
+            if (mainPixels != null) {
+                bitmapProvider.release(mainPixels);
+            }
+            mainPixels = bitmapProvider.obtainByteArray(npix);
         }
         if (prefix == null) {
-            prefix = new short[MAX_STACK_SIZE];
+            prefix = bitmapProvider.obtainIntArray(MAX_STACK_SIZE);
         }
         if (suffix == null) {
-            suffix = new byte[MAX_STACK_SIZE];
+            suffix = bitmapProvider.obtainByteArray(MAX_STACK_SIZE);
         }
         if (pixelStack == null) {
-            pixelStack = new byte[MAX_STACK_SIZE + 1];
+            pixelStack = bitmapProvider.obtainByteArray(MAX_STACK_SIZE + 1);
         }
+        // Work on locals, field accesses in the hot loop below can't be optimized away.
+        final int[] prefix = this.prefix;
+        final byte[] suffix = this.suffix;
+        final byte[] pixelStack = this.pixelStack;
+        final byte[] mainPixels = this.mainPixels;
+        final byte[] block = this.block;
 
         // Initialize GIF data stream decoder.
         dataSize = read();
@@ -610,7 +967,9 @@ public class GifDecoder {
                 }
 
                 if (oldCode == NULL_CODE) {
-                    pixelStack[top++] = suffix[code];
+                    // Written straight away, anything left on the stack would come out after the next code's pixels.
+                    mainPixels[pi++] = suffix[code];
+                    i++;
                     oldCode = code;
                     first = code;
                     continue;
@@ -629,7 +988,7 @@ public class GifDecoder {
 
                 // Add a new string to the string table.
                 if (available < MAX_STACK_SIZE) {
-                    prefix[available] = (short) oldCode;
+                    prefix[available] = oldCode;
                     suffix[available] = (byte) first;
                     available++;
                     if (((available & codeMask) == 0) && (available < MAX_STACK_SIZE)) {
@@ -649,8 +1008,8 @@ public class GifDecoder {
         }
 
         // Clear missing pixels.
-        for (i = pi; i < npix; i++) {
-            mainPixels[i] = 0;
+        if (pi < npix) {
+            Arrays.fill(mainPixels, pi, npix, (byte) 0);
         }
     }
 
@@ -693,9 +1052,9 @@ public class GifDecoder {
     }
 
     private Bitmap getNextBitmap() {
-        Bitmap result = bitmapProvider.obtain(header.width, header.height, BITMAP_CONFIG);
+        Bitmap result = bitmapProvider.obtain(downsampledWidth, downsampledHeight, BITMAP_CONFIG);
         if (result == null) {
-            result = Bitmap.createBitmap(header.width, header.height, BITMAP_CONFIG);
+            result = Bitmap.createBitmap(downsampledWidth, downsampledHeight, BITMAP_CONFIG);
         }
         setAlpha(result);
         return result;
@@ -707,4 +1066,35 @@ public class GifDecoder {
             bitmap.setHasAlpha(true);
         }
     }
+
+    /**
+     * A {@link ByteArrayOutputStream} that can hand out its internal array without copying it.
+     */
+    public static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        /**
+         * The unused part of the array may be at most 1/MAX_SLACK_DIVISOR of it before the bytes are copied out.
+         */
+        private static final int MAX_SLACK_DIVISOR = 8;
+
+        public ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        /**
+         * Returns the written bytes as a buffer. The buffer is backed by this stream's array, which must not be written
+         * to afterwards, unless most of that array is unused: the array doubles as it grows, so wrapping it as-is could
+         * keep up to twice the data size alive for as long as the buffer is, and an exact-size copy is made instead.
+         */
+        public ByteBuffer toByteBuffer() {
+            // Wrap the exact array when possible so that toBytes(ByteBuffer) doesn't need to copy it.
+            if (buf.length == count) {
+                return ByteBuffer.wrap(buf);
+            }
+            if (buf.length - count > buf.length / MAX_SLACK_DIVISOR) {
+                return ByteBuffer.wrap(toByteArray());
+            }
+            return ByteBuffer.wrap(buf, 0, count).slice();
+        }
+    }
 }
@@ -48,6 +48,23 @@ public class GifHeader {
         return frameCount;
     }
 
+    /**
+     * Gets the "Netscape" iteration count, if any. A count of 0 means repeat indefinitely.
+     */
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * Gets display duration for the specified frame in milliseconds, or -1 if the index is out of range.
+     */
+    public int getDelay(int frame) {
+        if (frame >= 0 && frame < frameCount) {
+            return frames.get(frame).delay;
+        }
+        return -1;
+    }
+
     /**
      * Global status code of GIF data parsing.
      */
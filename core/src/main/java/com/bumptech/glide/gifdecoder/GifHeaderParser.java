@@ -30,9 +30,16 @@ public class GifHeaderParser {
     private int blockSize = 0;
 
     public GifHeaderParser setData(byte[] data) {
+        return setData(data != null ? ByteBuffer.wrap(data) : null);
+    }
+
+    /**
+     * Sets the data to parse. The buffer isn't modified, the parser reads from its own view of it.
+     */
+    public GifHeaderParser setData(ByteBuffer data) {
         reset();
         if (data != null) {
-            rawData = ByteBuffer.wrap(data);
+            rawData = data.duplicate();
             rawData.rewind();
             rawData.order(ByteOrder.LITTLE_ENDIAN);
         } else {
@@ -240,7 +247,9 @@ public class GifHeaderParser {
         readLSD();
         if (header.gctFlag && !err()) {
             header.gct = readColorTable(header.gctSize);
-            header.bgColor = header.gct[header.bgIndex];
+            if (!err()) {
+                header.bgColor = header.gct[header.bgIndex];
+            }
         }
     }
     /**
@@ -316,7 +325,8 @@ public class GifHeaderParser {
         int blockSize;
         do {
             blockSize = read();
-            rawData.position(rawData.position() + blockSize);
+            // Truncated data ends inside the block, the next read() reports the format error.
+            rawData.position(Math.min(rawData.position() + blockSize, rawData.limit()));
         } while (blockSize > 0);
     }
 
@@ -365,7 +375,13 @@ public class GifHeaderParser {
      */
     private int readShort() {
         // Read 16-bit value.
-        return rawData.getShort();
+        try {
+            return rawData.getShort();
+        } catch (BufferUnderflowException e) {
+            header.status = STATUS_FORMAT_ERROR;
+            rawData.position(rawData.limit());
+            return 0;
+        }
     }
 
     private boolean err() {
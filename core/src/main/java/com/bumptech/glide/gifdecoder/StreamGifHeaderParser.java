@@ -0,0 +1,372 @@
+package com.bumptech.glide.gifdecoder;
+
+import static com.bumptech.glide.gifdecoder.GifDecoder.STATUS_FORMAT_ERROR;
+import static com.bumptech.glide.gifdecoder.GifDecoder.STATUS_OPEN_ERROR;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * A streaming counterpart of {@link GifHeaderParser} that creates {@link GifHeader}s from an {@link InputStream} or
+ * {@link FileChannel} without buffering the whole gif in memory.
+ *
+ * <p>
+ *     Only the blocks that describe the gif (logical screen descriptor, color tables, graphic control and netscape
+ *     extensions) are read, image data sub-blocks are skipped, so memory use grows with the number of frames rather
+ *     than the size of the file. Parsing rules and the resulting status match {@link GifHeaderParser}, and
+ *     {@link GifFrame#bufferFrameStart} still holds the offset of each frame's image data from the start of the
+ *     stream.
+ * </p>
+ */
+public class StreamGifHeaderParser {
+    public static final String TAG = "StreamGifHeaderParser";
+
+    private static final int MAX_BLOCK_SIZE = 256;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // Raw data read working array.
+    private final byte[] block = new byte[MAX_BLOCK_SIZE];
+    // Color table read working array, large enough for 256 RGB entries.
+    private final byte[] colorTable = new byte[MAX_BLOCK_SIZE * 3];
+
+    private InputStream input;
+    private GifHeader header;
+    private int blockSize = 0;
+    // Number of bytes consumed from the start of the stream.
+    private int position = 0;
+
+    public StreamGifHeaderParser setData(InputStream is) {
+        reset();
+        if (is != null) {
+            input = is instanceof BufferedInputStream ? is : new BufferedInputStream(is, BUFFER_SIZE);
+        } else {
+            header.status = STATUS_OPEN_ERROR;
+        }
+        return this;
+    }
+
+    public StreamGifHeaderParser setData(FileChannel channel) {
+        return setData(channel != null ? Channels.newInputStream(channel) : null);
+    }
+
+    public void clear() {
+        input = null;
+        header = null;
+    }
+
+    private void reset() {
+        input = null;
+        header = new GifHeader();
+        blockSize = 0;
+        position = 0;
+    }
+
+    /**
+     * Parses the header from the current stream. The stream is left positioned right after the trailer (or wherever
+     * parsing stopped) and is not closed.
+     */
+    public GifHeader parseHeader() {
+        if (header == null) {
+            throw new IllegalStateException("You must call setData() before parseHeader()");
+        }
+        if (err()) {
+            return header;
+        }
+
+        try {
+            readHeader();
+            if (!err()) {
+                readContents();
+                if (header.frameCount < 0) {
+                    header.status = STATUS_FORMAT_ERROR;
+                }
+            }
+        } catch (EOFException e) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Unexpected end of gif data at " + position, e);
+            }
+            header.status = STATUS_FORMAT_ERROR;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading gif data", e);
+            header.status = STATUS_OPEN_ERROR;
+        }
+
+        return header;
+    }
+
+    /**
+     * Main file parser. Reads GIF content blocks.
+     */
+    private void readContents() throws IOException {
+        // Read GIF file content blocks.
+        boolean done = false;
+        while (!(done || err())) {
+            int code = read();
+            switch (code) {
+                // Image separator.
+                case 0x2C:
+                    // See GifHeaderParser, the graphics control extension is optional.
+                    if (header.currentFrame == null) {
+                        header.currentFrame = new GifFrame();
+                    }
+                    readBitmap();
+                    break;
+                // Extension.
+                case 0x21:
+                    code = read();
+                    switch (code) {
+                        // Graphics control extension.
+                        case 0xf9:
+                            // Start a new frame.
+                            header.currentFrame = new GifFrame();
+                            readGraphicControlExt();
+                            break;
+                        // Application extension.
+                        case 0xff:
+                            readBlock();
+                            String app = "";
+                            for (int i = 0; i < 11; i++) {
+                                app += (char) block[i];
+                            }
+                            if (app.equals("NETSCAPE2.0")) {
+                                readNetscapeExt();
+                            } else {
+                                // Don't care.
+                                skip();
+                            }
+                            break;
+                        // Comment, plain text and uninteresting extensions.
+                        default:
+                            skip();
+                    }
+                    break;
+                // Terminator.
+                case 0x3b:
+                    done = true;
+                    break;
+                // Bad byte.
+                case 0x00:
+                default:
+                    header.status = STATUS_FORMAT_ERROR;
+            }
+        }
+    }
+
+    /**
+     * Reads Graphics Control Extension values.
+     */
+    private void readGraphicControlExt() throws IOException {
+        // Block size.
+        read();
+        // Packed fields.
+        int packed = read();
+        // Disposal method.
+        header.currentFrame.dispose = (packed & 0x1c) >> 2;
+        if (header.currentFrame.dispose == 0) {
+            // Elect to keep old image if discretionary.
+            header.currentFrame.dispose = 1;
+        }
+        header.currentFrame.transparency = (packed & 1) != 0;
+        // Delay in milliseconds.
+        int delayInHundredthsOfASecond = readShort();
+        if (delayInHundredthsOfASecond < GifHeaderParser.MIN_FRAME_DELAY) {
+            delayInHundredthsOfASecond = GifHeaderParser.DEFAULT_FRAME_DELAY;
+        }
+        header.currentFrame.delay = delayInHundredthsOfASecond * 10;
+        // Transparent color index
+        header.currentFrame.transIndex = read();
+        // Block terminator
+        read();
+    }
+
+    /**
+     * Reads next frame image descriptor and skips its image data.
+     */
+    private void readBitmap() throws IOException {
+        // (sub)image position & size.
+        header.currentFrame.ix = readShort();
+        header.currentFrame.iy = readShort();
+        header.currentFrame.iw = readShort();
+        header.currentFrame.ih = readShort();
+
+        int packed = read();
+        // 1 - local color table flag interlace
+        boolean lctFlag = (packed & 0x80) != 0;
+        int lctSize = 2 << (packed & 0x07);
+        header.currentFrame.interlace = (packed & 0x40) != 0;
+        if (lctFlag) {
+            // Read table.
+            header.currentFrame.lct = readColorTable(lctSize);
+        } else {
+            // No local color table.
+            header.currentFrame.lct = null;
+        }
+
+        // Save this as the decoding position pointer.
+        header.currentFrame.bufferFrameStart = position;
+
+        // lzwMinCodeSize
+        read();
+        // Skip the data sub-blocks without keeping them.
+        skip();
+
+        header.frameCount++;
+        // Add image to frame.
+        header.frames.add(header.currentFrame);
+    }
+
+    /**
+     * Reads Netscape extension to obtain iteration count.
+     */
+    private void readNetscapeExt() throws IOException {
+        do {
+            readBlock();
+            if (block[0] == 1) {
+                // Loop count sub-block.
+                int b1 = ((int) block[1]) & 0xff;
+                int b2 = ((int) block[2]) & 0xff;
+                header.loopCount = (b2 << 8) | b1;
+            }
+        } while (blockSize > 0);
+    }
+
+    /**
+     * Reads GIF file header information.
+     */
+    private void readHeader() throws IOException {
+        String id = "";
+        for (int i = 0; i < 6; i++) {
+            id += (char) read();
+        }
+        if (!id.startsWith("GIF")) {
+            header.status = STATUS_FORMAT_ERROR;
+            return;
+        }
+        readLSD();
+        if (header.gctFlag) {
+            header.gct = readColorTable(header.gctSize);
+            header.bgColor = header.gct[header.bgIndex];
+        }
+    }
+
+    /**
+     * Reads Logical Screen Descriptor.
+     */
+    private void readLSD() throws IOException {
+        // Logical screen size.
+        header.width = readShort();
+        header.height = readShort();
+        // Packed fields
+        int packed = read();
+        // 1 : global color table flag.
+        header.gctFlag = (packed & 0x80) != 0;
+        // 6-8 : gct size.
+        header.gctSize = 2 << (packed & 7);
+        // Background color index.
+        header.bgIndex = read();
+        // Pixel aspect ratio
+        header.pixelAspect = read();
+    }
+
+    /**
+     * Reads color table as 256 RGB integer values.
+     *
+     * @param ncolors int number of colors to read.
+     * @return int array containing 256 colors (packed ARGB with full alpha).
+     */
+    private int[] readColorTable(int ncolors) throws IOException {
+        int nbytes = 3 * ncolors;
+        readFully(colorTable, nbytes);
+
+        // Max size to avoid bounds checks.
+        int[] tab = new int[MAX_BLOCK_SIZE];
+        int i = 0;
+        int j = 0;
+        while (i < ncolors) {
+            int r = ((int) colorTable[j++]) & 0xff;
+            int g = ((int) colorTable[j++]) & 0xff;
+            int b = ((int) colorTable[j++]) & 0xff;
+            tab[i++] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+        return tab;
+    }
+
+    /**
+     * Skips variable length blocks up to and including next zero length block.
+     */
+    private void skip() throws IOException {
+        int blockSize;
+        do {
+            blockSize = read();
+            skipFully(blockSize);
+        } while (blockSize > 0);
+    }
+
+    /**
+     * Reads next variable length block from input.
+     *
+     * @return number of bytes stored in "buffer"
+     */
+    private int readBlock() throws IOException {
+        blockSize = read();
+        if (blockSize > 0) {
+            readFully(block, blockSize);
+        }
+        return blockSize;
+    }
+
+    /**
+     * Reads a single byte from the input stream.
+     */
+    private int read() throws IOException {
+        int curByte = input.read();
+        if (curByte == -1) {
+            throw new EOFException();
+        }
+        position++;
+        return curByte;
+    }
+
+    /**
+     * Reads next 16-bit value, LSB first.
+     */
+    private int readShort() throws IOException {
+        return read() | (read() << 8);
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            int count = input.read(buffer, n, length - n);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            n += count;
+        }
+        position += length;
+    }
+
+    private void skipFully(int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                // skip() may legitimately return 0, fall back to read() to detect the end of the stream.
+                read();
+                remaining--;
+            } else {
+                remaining -= skipped;
+                position += skipped;
+            }
+        }
+    }
+
+    private boolean err() {
+        return header.status != GifDecoder.STATUS_OK;
+    }
+}
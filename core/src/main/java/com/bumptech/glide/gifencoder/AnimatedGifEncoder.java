@@ -7,9 +7,19 @@ import android.graphics.Color;
 import android.util.Log;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Class AnimatedGifEncoder - Encodes a GIF file consisting of one or more
@@ -25,6 +35,9 @@ import java.io.OutputStream;
  *     e.finish();
  * </pre>
  *
+ * Frames can optionally be quantized and compressed in parallel, see
+ * {@link #setExecutor(ExecutorService, int)}.
+ *
  * No copyright asserted on the source code of this class. May be used for any
  * purpose, however, refer to the Unisys LZW patent for restrictions on use of
  * the associated LZWEncoder class. Please forward any corrections to
@@ -47,8 +60,6 @@ public class AnimatedGifEncoder {
 
     private Integer transparent = null; // transparent color if given
 
-    private int transIndex; // transparent index in color table
-
     private int repeat = -1; // no repeat
 
     private int delay = 0; // frame delay (hundredths)
@@ -57,18 +68,6 @@ public class AnimatedGifEncoder {
 
     private OutputStream out;
 
-    private Bitmap image; // current frame
-
-    private byte[] pixels; // BGR byte array from frame
-
-    private byte[] indexedPixels; // converted frame indexed to palette
-
-    private int colorDepth; // number of bit planes
-
-    private byte[] colorTab; // RGB palette
-
-    private boolean[] usedEntry = new boolean[256]; // active palette entries
-
     private int palSize = 7; // color table size (bits-1)
 
     private int dispose = -1; // disposal code (-1 = use default)
@@ -81,7 +80,25 @@ public class AnimatedGifEncoder {
 
     private int sample = 10; // default sample interval for quantizer
 
-    private boolean hasTransparentPixels;
+    private ColorQuantizer.Factory quantizerFactory = ColorQuantizer.NEU_QUANT;
+
+    private double maxPaletteError = -1; // max error to reuse the previous palette, negative never reuses it
+
+    private PaletteSlot lastPalette; // palette of the most recently added frame if reusing palettes
+
+    private boolean differencing = false; // write only the pixels that changed since the previous frame
+
+    private int[] previousPixels; // ARGB pixels of the previous frame if differencing
+
+    private boolean previousKept; // whether the previous frame is left in place for the next one
+
+    private ExecutorService executor; // quantizes and compresses frames, or null to do so inline
+
+    private int maxFramesInFlight;
+
+    private final Queue<Future<Frame>> pending = new ArrayDeque<Future<Frame>>(); // frames not yet written, in order
+
+    private final Queue<Frame> framePool = new ArrayDeque<Frame>(); // frames whose buffers can be reused
 
     /**
      * Sets the delay time between each frame, or changes it for subsequent frames
@@ -136,6 +153,81 @@ public class AnimatedGifEncoder {
         transparent = color;
     }
 
+    /**
+     * Sets the algorithm used to build each frame's palette. Default is
+     * {@link ColorQuantizer#NEU_QUANT}.
+     *
+     * @param factory
+     *          builds a quantizer for each frame.
+     */
+    public void setQuantizer(ColorQuantizer.Factory factory) {
+        if (factory != null) {
+            quantizerFactory = factory;
+        }
+    }
+
+    /**
+     * Sets whether a frame may use the previous frame's palette instead of
+     * building its own. The previous palette is kept as long as the root mean
+     * square distance between a frame's sampled pixels and the palette colors
+     * they map to stays at or below <code>maxError</code>, in 0-255 RGB units.
+     * Consecutive frames of most animations share their colors, so this skips
+     * quantization for most frames. Default is -1, which never reuses palettes.
+     *
+     * <p>
+     *     When frames are encoded on an executor, each frame waits for the
+     *     previous one's palette, so the executor must start tasks in the order
+     *     they were submitted.
+     * </p>
+     *
+     * @param maxError
+     *          double maximum error, or a negative value to always build a new palette.
+     */
+    public void setPaletteReuse(double maxError) {
+        maxPaletteError = maxError;
+    }
+
+    /**
+     * Sets whether frames are written as the difference from the previous
+     * frame. Each frame then only covers the rectangle of pixels that changed,
+     * with pixels in it that didn't change left transparent, and frames are
+     * left in place rather than disposed. Frames that have transparent pixels
+     * of their own, and the frames after them, are still written in full. Must
+     * be invoked before the first image is added.
+     *
+     * @param differencing
+     *          true to write frames as differences.
+     */
+    public void setFrameDifferencing(boolean differencing) {
+        if (started && !firstFrame) {
+            return;
+        }
+        this.differencing = differencing;
+    }
+
+    /**
+     * Sets an executor on which subsequent frames are quantized and LZW compressed, so that several frames are
+     * encoded at once. Frames are still written to the output in the order they were added. Must be invoked before
+     * the first image is added.
+     *
+     * <p>
+     *     Each frame in flight holds on to its pixels, so at most <code>maxFramesInFlight</code> frames are queued on
+     *     the executor before {@link #addFrame(Bitmap)} blocks waiting for the oldest one to be written.
+     * </p>
+     *
+     * @param executor
+     *          the executor to encode frames on, or null to encode them on the calling thread.
+     * @param maxFramesInFlight
+     *          int maximum number of frames encoded at once.
+     */
+    public void setExecutor(ExecutorService executor, int maxFramesInFlight) {
+        if (started && !firstFrame) {
+            return;
+        }
+        this.executor = executor;
+        this.maxFramesInFlight = Math.max(1, maxFramesInFlight);
+    }
+
     /**
      * Adds next GIF frame. The frame is not written immediately, but is actually
      * deferred until the next frame is received so that timing data can be
@@ -151,30 +243,62 @@ public class AnimatedGifEncoder {
         if ((im == null) || !started) {
             return false;
         }
+        if (!sizeSet) {
+            // use first frame's size
+            setSize(im.getWidth(), im.getHeight());
+        }
+        Frame frame = obtainFrame();
+        getImagePixels(frame, im); // convert to correct format if necessary
+        return encodeFrame(frame);
+    }
+
+    /**
+     * Adds next GIF frame from ARGB pixels, in the same way as
+     * {@link #addFrame(Bitmap)}. All frames must have the same size.
+     *
+     * @param pixels
+     *          int[] ARGB pixels of the frame, row by row.
+     * @param w
+     *          int frame width.
+     * @param h
+     *          int frame height.
+     * @return true if successful.
+     */
+    public boolean addFrame(int[] pixels, int w, int h) {
+        if ((pixels == null) || !started) {
+            return false;
+        }
+        if (!sizeSet) {
+            // use first frame's size
+            setSize(w, h);
+        }
+        if ((w != width) || (h != height) || (pixels.length < w * h)) {
+            return false;
+        }
+        Frame frame = obtainFrame();
+        frame.ensureCapacity(w * h);
+        System.arraycopy(pixels, 0, frame.pixelsInt, 0, w * h);
+        analyzeImagePixels(frame, w, h);
+        return encodeFrame(frame);
+    }
+
+    /**
+     * Encodes a frame whose pixels have been extracted, inline or on the executor.
+     */
+    private boolean encodeFrame(Frame frame) {
         boolean ok = true;
         try {
-            if (!sizeSet) {
-                // use first frame's size
-                setSize(im.getWidth(), im.getHeight());
-            }
-            image = im;
-            getImagePixels(); // convert to correct format if necessary
-            analyzePixels(); // build color table & map pixels
-            if (firstFrame) {
-                writeLSD(); // logical screen descriptior
-                writePalette(); // global color table
-                if (repeat >= 0) {
-                    // use NS app extension to indicate reps
-                    writeNetscapeExt();
+            if (executor == null) {
+                frame.analyzePixels(); // build color table & map pixels
+                writeFrame(frame);
+            } else {
+                PendingFrame task = new PendingFrame(frame);
+                executor.execute(task);
+                pending.add(task);
+                while (ok && pending.size() > maxFramesInFlight) {
+                    ok = writePending();
                 }
             }
-            writeGraphicCtrlExt(); // write graphic control extension
-            writeImageDesc(); // image descriptor
-            if (!firstFrame) {
-                writePalette(); // local color table
-            }
-            writePixels(); // encode and write pixel data
-            firstFrame = false;
         } catch (IOException e) {
             ok = false;
         }
@@ -191,8 +315,14 @@ public class AnimatedGifEncoder {
             return false;
         boolean ok = true;
         started = false;
+        while (ok && !pending.isEmpty()) {
+            ok = writePending();
+        }
+        cancelPending();
         try {
-            out.write(0x3b); // gif trailer
+            if (ok) {
+                out.write(0x3b); // gif trailer
+            }
             out.flush();
             if (closeStream) {
                 out.close();
@@ -202,12 +332,11 @@ public class AnimatedGifEncoder {
         }
 
         // reset for subsequent use
-        transIndex = 0;
         out = null;
-        image = null;
-        pixels = null;
-        indexedPixels = null;
-        colorTab = null;
+        lastPalette = null;
+        previousPixels = null;
+        previousKept = false;
+        framePool.clear();
         closeStream = false;
         firstFrame = true;
 
@@ -305,72 +434,89 @@ public class AnimatedGifEncoder {
     }
 
     /**
-     * Analyzes image colors and creates color map.
+     * Returns a frame to encode into, reusing the buffers of an already written one if possible.
      */
-    private void analyzePixels() {
-        int len = pixels.length;
-        int nPix = len / 3;
-        indexedPixels = new byte[nPix];
-        NeuQuant nq = new NeuQuant(pixels, len, sample);
-        // initialize quantizer
-        colorTab = nq.process(); // create reduced palette
-        // convert map from BGR to RGB
-        for (int i = 0; i < colorTab.length; i += 3) {
-            byte temp = colorTab[i];
-            colorTab[i] = colorTab[i + 2];
-            colorTab[i + 2] = temp;
-            usedEntry[i / 3] = false;
+    private Frame obtainFrame() {
+        Frame frame = framePool.poll();
+        if (frame == null) {
+            frame = new Frame();
         }
-        // map image pixels to new palette
-        int k = 0;
-        for (int i = 0; i < nPix; i++) {
-            int index = nq.map(pixels[k++] & 0xff, pixels[k++] & 0xff, pixels[k++] & 0xff);
-            usedEntry[index] = true;
-            indexedPixels[i] = (byte) index;
+        frame.transparent = transparent;
+        frame.delay = delay;
+        frame.dispose = dispose;
+        frame.sample = sample;
+        frame.quantizerFactory = quantizerFactory;
+        frame.maxPaletteError = maxPaletteError;
+        frame.compressed = false;
+        if (maxPaletteError >= 0) {
+            frame.previousPalette = lastPalette;
+            frame.palette = new PaletteSlot();
+            lastPalette = frame.palette;
+        } else {
+            frame.previousPalette = null;
+            frame.palette = null;
         }
-        pixels = null;
-        colorDepth = 8;
-        palSize = 7;
-        // get closest match to transparent color if specified
-        if (transparent != null) {
-            transIndex = findClosest(transparent);
-        } else if (hasTransparentPixels) {
-            transIndex = findClosest(Color.TRANSPARENT);
+        return frame;
+    }
+
+    /**
+     * Writes the oldest pending frame once it has been encoded.
+     */
+    private boolean writePending() {
+        Future<Frame> future = pending.poll();
+        try {
+            writeFrame(future.get());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Failed to encode frame", e.getCause());
+            }
+        } catch (IOException e) {
+            // Fall through.
+        }
+        cancelPending();
+        return false;
+    }
+
+    private void cancelPending() {
+        Future<Frame> future;
+        while ((future = pending.poll()) != null) {
+            future.cancel(false);
         }
     }
 
     /**
-     * Returns index of palette color closest to c
-     *
+     * Writes an analyzed frame, compressing its pixels first if that hasn't already been done.
      */
-    private int findClosest(int color) {
-        if (colorTab == null)
-            return -1;
-        int r = Color.red(color);
-        int g = Color.green(color);
-        int b = Color.blue(color);
-        int minpos = 0;
-        int dmin = 256 * 256 * 256;
-        int len = colorTab.length;
-        for (int i = 0; i < len;) {
-            int dr = r - (colorTab[i++] & 0xff);
-            int dg = g - (colorTab[i++] & 0xff);
-            int db = b - (colorTab[i] & 0xff);
-            int d = dr * dr + dg * dg + db * db;
-            int index = i / 3;
-            if (usedEntry[index] && (d < dmin)) {
-                dmin = d;
-                minpos = index;
+    private void writeFrame(Frame frame) throws IOException {
+        if (firstFrame) {
+            writeLSD(); // logical screen descriptior
+            writePalette(frame); // global color table
+            if (repeat >= 0) {
+                // use NS app extension to indicate reps
+                writeNetscapeExt();
             }
-            i++;
         }
-        return minpos;
+        writeGraphicCtrlExt(frame); // write graphic control extension
+        writeImageDesc(frame); // image descriptor
+        if (!firstFrame) {
+            writePalette(frame); // local color table
+        }
+        if (frame.compressed) {
+            frame.imageData.writeTo(out); // write pixel data compressed ahead of time
+        } else {
+            writePixels(frame); // encode and write pixel data
+        }
+        firstFrame = false;
+        framePool.offer(frame);
     }
 
     /**
-     * Extracts image pixels into byte array "pixels"
+     * Extracts image pixels into the frame's byte array "pixels"
      */
-    private void getImagePixels() {
+    private void getImagePixels(Frame frame, Bitmap image) {
         int w = image.getWidth();
         int h = image.getHeight();
 
@@ -381,50 +527,171 @@ public class AnimatedGifEncoder {
             canvas.drawBitmap(temp, 0, 0, null);
             image = temp;
         }
-        int[] pixelsInt = new int[w * h];
-        image.getPixels(pixelsInt, 0, w, 0, 0, w, h);
+        frame.ensureCapacity(w * h);
+        image.getPixels(frame.pixelsInt, 0, w, 0, 0, w, h);
+        analyzeImagePixels(frame, w, h);
+    }
 
-        // The algorithm requires 3 bytes per pixel as RGB.
-        pixels = new byte[pixelsInt.length * 3];
+    /**
+     * Converts the frame's ARGB pixels into its BGR byte array "pixels", cropped
+     * to the pixels that changed if differencing.
+     */
+    private void analyzeImagePixels(Frame frame, int w, int h) {
+        int nPix = w * h;
+        int[] pixelsInt = frame.pixelsInt;
 
-        int pixelsIndex = 0;
-        hasTransparentPixels = false;
         int totalTransparentPixels = 0;
         for (final int pixel : pixelsInt) {
             if (pixel == Color.TRANSPARENT) {
                 totalTransparentPixels++;
             }
-            pixels[pixelsIndex++] = (byte) (pixel & 0xFF);
-            pixels[pixelsIndex++] = (byte) ((pixel >> 8) & 0xFF);
-            pixels[pixelsIndex++] = (byte) ((pixel >> 16) & 0xFF);
         }
 
         double transparentPercentage = 100 * totalTransparentPixels / (double) pixelsInt.length;
         // Assume images with greater where more than n% of the pixels are transparent actually have transparency.
         // See issue #214.
-        hasTransparentPixels = transparentPercentage > MIN_TRANSPARENT_PERCENTAGE;
+        frame.hasTransparentPixels = transparentPercentage > MIN_TRANSPARENT_PERCENTAGE;
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "got pixels for frame with " + transparentPercentage + "% transparent pixels");
         }
+
+        // A frame using its own transparency is disposed to the background, so the next one can't build on it.
+        frame.keepInPlace = differencing && frame.transparent == null && !frame.hasTransparentPixels
+                && frame.dispose < 0;
+        if (frame.keepInPlace && previousKept && previousPixels != null && w == width && h == height) {
+            getChangedPixels(frame, w, h);
+        } else {
+            frame.setBounds(0, 0, width, height);
+            frame.keepCount = 0;
+            // The algorithm requires 3 bytes per pixel as RGB.
+            byte[] pixels = frame.pixels;
+            int pixelsIndex = 0;
+            for (int i = 0; i < nPix; i++) {
+                int pixel = pixelsInt[i];
+                pixels[pixelsIndex++] = (byte) (pixel & 0xFF);
+                pixels[pixelsIndex++] = (byte) ((pixel >> 8) & 0xFF);
+                pixels[pixelsIndex++] = (byte) ((pixel >> 16) & 0xFF);
+            }
+        }
+
+        if (differencing) {
+            // Keep this frame's pixels to compare the next one against, and hand the frame the old ones to reuse.
+            int[] temp = previousPixels;
+            previousPixels = frame.pixelsInt;
+            frame.pixelsInt = temp;
+            previousKept = frame.keepInPlace;
+        }
+    }
+
+    /**
+     * Crops the frame to the rectangle of pixels that differ from the previous
+     * frame, marking pixels in it that are unchanged to be kept.
+     */
+    private void getChangedPixels(Frame frame, int w, int h) {
+        int[] current = frame.pixelsInt;
+        int[] previous = previousPixels;
+
+        int top = 0;
+        while (top < h && rowEquals(current, previous, top * w, w)) {
+            top++;
+        }
+        int left, right, bottom;
+        if (top == h) {
+            // Nothing changed, but a frame needs at least one pixel.
+            top = 0;
+            left = 0;
+            right = 0;
+            bottom = 0;
+        } else {
+            bottom = h - 1;
+            while (rowEquals(current, previous, bottom * w, w)) {
+                bottom--;
+            }
+            left = w - 1;
+            right = 0;
+            for (int y = top; y <= bottom; y++) {
+                int row = y * w;
+                for (int x = 0; x < left; x++) {
+                    if (current[row + x] != previous[row + x]) {
+                        left = x;
+                        break;
+                    }
+                }
+                for (int x = w - 1; x > right; x--) {
+                    if (current[row + x] != previous[row + x]) {
+                        right = x;
+                        break;
+                    }
+                }
+            }
+            right = Math.max(left, right);
+        }
+        frame.setBounds(left, top, right - left + 1, bottom - top + 1);
+
+        if (frame.keep == null) {
+            frame.changedPixels = new byte[frame.pixels.length];
+            frame.keep = new boolean[frame.indexedPixels.length];
+        }
+        byte[] pixels = frame.pixels;
+        byte[] changed = frame.changedPixels;
+        boolean[] keep = frame.keep;
+        int pixelsIndex = 0;
+        int changedIndex = 0;
+        int keepCount = 0;
+        int i = 0;
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++, i++) {
+                int pixel = current[y * w + x];
+                byte b = (byte) (pixel & 0xFF);
+                byte g = (byte) ((pixel >> 8) & 0xFF);
+                byte r = (byte) ((pixel >> 16) & 0xFF);
+                pixels[pixelsIndex++] = b;
+                pixels[pixelsIndex++] = g;
+                pixels[pixelsIndex++] = r;
+                // The first pixel is always written, so there is something to build a palette from.
+                keep[i] = pixel == previous[y * w + x] && i > 0;
+                if (keep[i]) {
+                    keepCount++;
+                } else {
+                    changed[changedIndex++] = b;
+                    changed[changedIndex++] = g;
+                    changed[changedIndex++] = r;
+                }
+            }
+        }
+        frame.keepCount = keepCount;
+        frame.changedLength = changedIndex;
+    }
+
+    private static boolean rowEquals(int[] current, int[] previous, int offset, int w) {
+        for (int i = offset, end = offset + w; i < end; i++) {
+            if (current[i] != previous[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
      * Writes Graphic Control Extension
      */
-    private void writeGraphicCtrlExt() throws IOException {
+    private void writeGraphicCtrlExt(Frame frame) throws IOException {
         out.write(0x21); // extension introducer
         out.write(0xf9); // GCE label
         out.write(4); // data block size
         int transp, disp;
-        if (transparent == null && !hasTransparentPixels) {
+        if (frame.keepInPlace) {
+            transp = frame.keepCount > 0 ? 1 : 0; // unchanged pixels are transparent
+            disp = 1; // leave in place for the next frame to build on
+        } else if (frame.transparent == null && !frame.hasTransparentPixels) {
             transp = 0;
             disp = 0; // dispose = no action
         } else {
             transp = 1;
             disp = 2; // force clear if using transparent color
         }
-        if (dispose >= 0) {
-            disp = dispose & 7; // user override
+        if (frame.dispose >= 0) {
+            disp = frame.dispose & 7; // user override
         }
         disp <<= 2;
 
@@ -434,20 +701,20 @@ public class AnimatedGifEncoder {
                 0 | // 7 user input - 0 = none
                 transp); // 8 transparency flag
 
-        writeShort(delay); // delay x 1/100 sec
-        out.write(transIndex); // transparent color index
+        writeShort(frame.delay); // delay x 1/100 sec
+        out.write(frame.transIndex); // transparent color index
         out.write(0); // block terminator
     }
 
     /**
      * Writes Image Descriptor
      */
-    private void writeImageDesc() throws IOException {
+    private void writeImageDesc(Frame frame) throws IOException {
         out.write(0x2c); // image separator
-        writeShort(0); // image position x,y = 0,0
-        writeShort(0);
-        writeShort(width); // image size
-        writeShort(height);
+        writeShort(frame.left); // image position x,y
+        writeShort(frame.top);
+        writeShort(frame.imageWidth); // image size
+        writeShort(frame.imageHeight);
         // packed fields
         if (firstFrame) {
             // no LCT - GCT is used for first (or only) frame
@@ -496,7 +763,8 @@ public class AnimatedGifEncoder {
     /**
      * Writes color table
      */
-    private void writePalette() throws IOException {
+    private void writePalette(Frame frame) throws IOException {
+        byte[] colorTab = frame.colorTab;
         out.write(colorTab, 0, colorTab.length);
         int n = (3 * 256) - colorTab.length;
         for (int i = 0; i < n; i++) {
@@ -507,8 +775,9 @@ public class AnimatedGifEncoder {
     /**
      * Encodes and writes pixel data
      */
-    private void writePixels() throws IOException {
-        LZWEncoder encoder = new LZWEncoder(width, height, indexedPixels, colorDepth);
+    private void writePixels(Frame frame) throws IOException {
+        LZWEncoder encoder = new LZWEncoder(frame.imageWidth, frame.imageHeight, frame.indexedPixels,
+                frame.colorDepth);
         encoder.encode(out);
     }
 
@@ -528,4 +797,307 @@ public class AnimatedGifEncoder {
             out.write((byte) s.charAt(i));
         }
     }
+
+    /**
+     * A frame queued to be quantized and compressed on the executor.
+     */
+    private final class PendingFrame extends FutureTask<Frame> {
+        private final PaletteSlot palette;
+
+        PendingFrame(Frame frame) {
+            super(new EncodeTask(frame));
+            palette = frame.palette;
+        }
+
+        @Override
+        protected void done() {
+            if (palette != null) {
+                // Don't leave the next frame waiting if this one failed or was cancelled.
+                palette.publish(null);
+            }
+        }
+    }
+
+    /**
+     * Quantizes and compresses a single frame, off of the thread adding frames.
+     */
+    private static final class EncodeTask implements Callable<Frame> {
+        private final Frame frame;
+
+        EncodeTask(Frame frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public Frame call() throws IOException {
+            frame.analyzePixels();
+            frame.imageData.reset();
+            LZWEncoder encoder = new LZWEncoder(frame.imageWidth, frame.imageHeight, frame.indexedPixels,
+                    frame.colorDepth);
+            encoder.encode(frame.imageData);
+            frame.compressed = true;
+            return frame;
+        }
+    }
+
+    /**
+     * The pixels, palette and settings of a single frame. The pixel buffers are reused for later frames once the
+     * frame has been written.
+     */
+    private static final class Frame {
+        private final boolean[] usedEntry = new boolean[256]; // active palette entries
+
+        private final ByteArrayOutputStream imageData = new ByteArrayOutputStream(); // compressed pixels
+
+        private int[] pixelsInt; // ARGB pixels from frame
+
+        private byte[] pixels; // BGR byte array from frame
+
+        private byte[] indexedPixels; // converted frame indexed to palette
+
+        private byte[] changedPixels; // BGR bytes of the pixels that changed, if differencing
+
+        private int changedLength;
+
+        private boolean[] keep; // pixels left unchanged from the previous frame, if differencing
+
+        private int keepCount;
+
+        private boolean keepInPlace; // disposal 1, so the next frame can be written as a difference
+
+        private int left; // bounds of the image within the canvas
+
+        private int top;
+
+        private int imageWidth;
+
+        private int imageHeight;
+
+        private byte[] colorTab; // RGB palette
+
+        private int colorDepth; // number of bit planes
+
+        private int transIndex; // transparent index in color table
+
+        private boolean hasTransparentPixels;
+
+        private boolean compressed; // whether imageData holds this frame's pixels
+
+        private Integer transparent; // settings in effect when the frame was added
+
+        private int delay;
+
+        private int dispose;
+
+        private int sample;
+
+        private ColorQuantizer.Factory quantizerFactory;
+
+        private double maxPaletteError;
+
+        private PaletteSlot previousPalette; // palette this frame may reuse, or null
+
+        private PaletteSlot palette; // this frame's palette, for the next frame to reuse, or null
+
+        void ensureCapacity(int nPix) {
+            if (pixelsInt == null || pixelsInt.length != nPix) {
+                pixelsInt = new int[nPix];
+            }
+            if (indexedPixels == null || indexedPixels.length != nPix) {
+                pixels = new byte[nPix * 3];
+                indexedPixels = new byte[nPix];
+                // Only needed when differencing, allocated on first use.
+                changedPixels = null;
+                keep = null;
+            }
+        }
+
+        void setBounds(int left, int top, int imageWidth, int imageHeight) {
+            this.left = left;
+            this.top = top;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+        }
+
+        /**
+         * Analyzes image colors and creates color map.
+         */
+        void analyzePixels() {
+            int nPix = Math.min(imageWidth * imageHeight, indexedPixels.length);
+            int len = nPix * 3;
+            // Only the changed pixels of a difference frame need palette entries.
+            byte[] sampled = keepCount > 0 ? changedPixels : pixels;
+            int sampledLen = keepCount > 0 ? changedLength : len;
+            Palette reused = previousPalette != null ? previousPalette.await() : null;
+            previousPalette = null;
+            Palette current = null;
+            try {
+                if (reused != null && estimateError(reused, sampled, sampledLen) <= maxPaletteError) {
+                    current = reused;
+                } else {
+                    // initialize quantizer
+                    ColorQuantizer quantizer = quantizerFactory.build(sampled, sampledLen, sample);
+                    // create reduced palette
+                    current = new Palette(quantizer, quantizer.process());
+                }
+            } finally {
+                if (palette != null) {
+                    // Publish even on failure so that the next frame doesn't wait forever.
+                    palette.publish(current);
+                }
+            }
+            colorTab = current.colorTab;
+            ColorQuantizer quantizer = current.quantizer;
+            Arrays.fill(usedEntry, false);
+            // map image pixels to new palette
+            int k = 0;
+            for (int i = 0; i < nPix; i++, k += 3) {
+                if (keepCount > 0 && keep[i]) {
+                    continue;
+                }
+                int index = quantizer.map(pixels[k] & 0xff, pixels[k + 1] & 0xff, pixels[k + 2] & 0xff);
+                usedEntry[index] = true;
+                indexedPixels[i] = (byte) index;
+            }
+            colorDepth = 8;
+            // get closest match to transparent color if specified
+            transIndex = 0;
+            if (keepCount > 0) {
+                mapKeptPixels(quantizer, nPix);
+            } else if (transparent != null) {
+                transIndex = findClosest(transparent);
+            } else if (hasTransparentPixels) {
+                transIndex = findClosest(Color.TRANSPARENT);
+            }
+        }
+
+        /**
+         * Makes an unused palette entry transparent and maps the kept pixels to
+         * it. If the palette is full they are mapped to their own colors instead.
+         */
+        private void mapKeptPixels(ColorQuantizer quantizer, int nPix) {
+            int spare = -1;
+            for (int i = 0; i < usedEntry.length; i++) {
+                if (!usedEntry[i]) {
+                    spare = i;
+                    break;
+                }
+            }
+            for (int i = 0, k = 0; i < nPix; i++, k += 3) {
+                if (keep[i]) {
+                    indexedPixels[i] = (byte) (spare >= 0 ? spare
+                            : quantizer.map(pixels[k] & 0xff, pixels[k + 1] & 0xff, pixels[k + 2] & 0xff));
+                }
+            }
+            if (spare >= 0) {
+                transIndex = spare;
+            } else {
+                keepCount = 0;
+            }
+        }
+
+        /**
+         * Returns the root mean square distance between sampled pixels and the
+         * palette colors they map to.
+         */
+        private double estimateError(Palette candidate, byte[] pixels, int len) {
+            byte[] rgb = candidate.colorTab;
+            int step = 3 * Math.max(1, sample);
+            long sum = 0;
+            int count = 0;
+            for (int k = 0; k + 2 < len; k += step) {
+                int b = pixels[k] & 0xff;
+                int g = pixels[k + 1] & 0xff;
+                int r = pixels[k + 2] & 0xff;
+                int j = 3 * candidate.quantizer.map(b, g, r);
+                int dr = r - (rgb[j] & 0xff);
+                int dg = g - (rgb[j + 1] & 0xff);
+                int db = b - (rgb[j + 2] & 0xff);
+                sum += dr * dr + dg * dg + db * db;
+                count++;
+            }
+            return count == 0 ? 0 : Math.sqrt(sum / (double) count);
+        }
+
+        /**
+         * Returns index of palette color closest to c
+         *
+         */
+        private int findClosest(int color) {
+            if (colorTab == null)
+                return -1;
+            int r = Color.red(color);
+            int g = Color.green(color);
+            int b = Color.blue(color);
+            int minpos = 0;
+            int dmin = 256 * 256 * 256;
+            int len = colorTab.length;
+            for (int i = 0; i < len;) {
+                int dr = r - (colorTab[i++] & 0xff);
+                int dg = g - (colorTab[i++] & 0xff);
+                int db = b - (colorTab[i] & 0xff);
+                int d = dr * dr + dg * dg + db * db;
+                int index = i / 3;
+                if (usedEntry[index] && (d < dmin)) {
+                    dmin = d;
+                    minpos = index;
+                }
+                i++;
+            }
+            return minpos;
+        }
+    }
+
+    /**
+     * A quantizer and the RGB color table it built. Never modified once built, so
+     * it can be shared by later frames.
+     */
+    private static final class Palette {
+        private final ColorQuantizer quantizer;
+
+        private final byte[] colorTab;
+
+        Palette(ColorQuantizer quantizer, byte[] bgr) {
+            this.quantizer = quantizer;
+            // convert map from BGR to RGB
+            colorTab = new byte[bgr.length];
+            for (int i = 0; i < bgr.length; i += 3) {
+                colorTab[i] = bgr[i + 2];
+                colorTab[i + 1] = bgr[i + 1];
+                colorTab[i + 2] = bgr[i];
+            }
+        }
+    }
+
+    /**
+     * Hands a frame's palette to the next frame, which may be analyzed at the
+     * same time on another thread.
+     */
+    private static final class PaletteSlot {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private Palette palette;
+
+        synchronized void publish(Palette palette) {
+            if (latch.getCount() > 0) {
+                this.palette = palette;
+                latch.countDown();
+            }
+        }
+
+        /**
+         * Waits for the palette, returning null if the frame it belongs to failed.
+         */
+        Palette await() {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            synchronized (this) {
+                return palette;
+            }
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package com.bumptech.glide.gifencoder;
+
+/**
+ * Reduces the colors of a frame to a palette of at most 256 colors and maps pixels to entries in that palette.
+ *
+ * <p>
+ *     Once {@link #process()} has returned, {@link #map(int, int, int)} may be called from multiple threads at once,
+ *     so that a palette can be shared by later frames encoded in parallel.
+ * </p>
+ *
+ * @see AnimatedGifEncoder#setQuantizer(ColorQuantizer.Factory)
+ */
+public interface ColorQuantizer {
+
+    /**
+     * Quantizes using Anthony Dekker's NeuQuant neural network, slow but producing good palettes.
+     */
+    Factory NEU_QUANT = new Factory() {
+        @Override
+        public ColorQuantizer build(byte[] pixels, int len, int sample) {
+            return new NeuQuant(pixels, len, sample);
+        }
+    };
+
+    /**
+     * Quantizes using an octree, much faster than {@link #NEU_QUANT} at the cost of some banding on gradients.
+     */
+    Factory OCTREE = new Factory() {
+        @Override
+        public ColorQuantizer build(byte[] pixels, int len, int sample) {
+            return new OctreeQuantizer(pixels, len, sample);
+        }
+    };
+
+    /**
+     * Builds the palette and returns it as BGR triplets, at most 256 of them.
+     */
+    byte[] process();
+
+    /**
+     * Returns the index in the palette of the color closest to the given one.
+     */
+    int map(int b, int g, int r);
+
+    /**
+     * Builds a {@link ColorQuantizer} for a single frame.
+     */
+    interface Factory {
+        /**
+         * @param pixels the frame's pixels as BGR triplets.
+         * @param len the number of bytes of pixels to use.
+         * @param sample the sampling interval, 1 uses every pixel and higher values trade quality for speed.
+         */
+        ColorQuantizer build(byte[] pixels, int len, int sample);
+    }
+}
@@ -22,7 +22,7 @@ package com.bumptech.glide.gifencoder;
  */
 
 // Ported to Java 12/00 K Weiner
-class NeuQuant {
+class NeuQuant implements ColorQuantizer {
 
     protected static final int netsize = 256; /* number of colours used */
 
@@ -308,6 +308,7 @@ class NeuQuant {
      * index
      * ----------------------------------------------------------------------------
      */
+    @Override
     public int map(int b, int g, int r) {
 
         int i, j, dist, a, bestd;
@@ -374,6 +375,7 @@ class NeuQuant {
         return (best);
     }
 
+    @Override
     public byte[] process() {
         learn();
         unbiasnet();
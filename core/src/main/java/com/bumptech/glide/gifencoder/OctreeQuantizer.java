@@ -0,0 +1,188 @@
+package com.bumptech.glide.gifencoder;
+
+/**
+ * A {@link ColorQuantizer} that builds its palette by inserting pixels into an octree and merging the deepest nodes
+ * until at most 256 leaves are left, see Gervautz and Purgathofer, "A Simple Method for Color Quantization: Octree
+ * Quantization" (1988).
+ *
+ * <p>
+ *     Building the tree takes a single pass over the sampled pixels, which is much cheaper than training
+ *     {@link NeuQuant}'s network.
+ * </p>
+ */
+class OctreeQuantizer implements ColorQuantizer {
+    private static final int MAX_COLORS = 256;
+    private static final int MAX_DEPTH = 8;
+    // Colors that aren't in the tree are cached by their top 5 bits per channel.
+    private static final int CACHE_BITS = 5;
+
+    private final byte[] pixels;
+    private final int len;
+    private final int sample;
+    private final Node root = new Node();
+    private final Node[] reducible = new Node[MAX_DEPTH];
+    private int leafCount;
+    private byte[] colorMap;
+    private int colorCount;
+    // The last color looked up in each bucket, packed with its nearest palette entry as (rgb << 8) | index. A single
+    // int can't tear, and an entry is only used for the exact color it holds, so the result of map() never depends on
+    // which of the threads sharing the palette wrote it.
+    private int[] nearestCache;
+
+    OctreeQuantizer(byte[] pixels, int len, int sample) {
+        this.pixels = pixels;
+        this.len = len;
+        this.sample = Math.max(1, sample);
+    }
+
+    @Override
+    public byte[] process() {
+        int step = 3 * sample;
+        for (int i = 0; i + 2 < len; i += step) {
+            insert(pixels[i] & 0xff, pixels[i + 1] & 0xff, pixels[i + 2] & 0xff);
+            while (leafCount > MAX_COLORS) {
+                reduce();
+            }
+        }
+
+        colorMap = new byte[3 * Math.max(1, leafCount)];
+        colorCount = 0;
+        buildColorMap(root);
+        if (colorCount == 0) {
+            // No pixels, use a single black entry.
+            colorCount = 1;
+        }
+        nearestCache = new int[1 << (3 * CACHE_BITS)];
+        // Empty entries must hold a color from another bucket. Zero is black, so black's own bucket starts out white.
+        nearestCache[0] = 0xffffffff;
+        return colorMap;
+    }
+
+    @Override
+    public int map(int b, int g, int r) {
+        Node node = root;
+        for (int level = 0; !node.leaf; level++) {
+            Node child = node.children != null ? node.children[childIndex(b, g, r, level)] : null;
+            if (child == null) {
+                return findNearest(b, g, r);
+            }
+            node = child;
+        }
+        return node.paletteIndex;
+    }
+
+    private void insert(int b, int g, int r) {
+        Node node = root;
+        int level = 0;
+        while (!node.leaf) {
+            if (level == MAX_DEPTH) {
+                node.leaf = true;
+                leafCount++;
+                break;
+            }
+            if (node.children == null) {
+                node.children = new Node[8];
+                node.nextReducible = reducible[level];
+                reducible[level] = node;
+            }
+            int index = childIndex(b, g, r, level);
+            Node child = node.children[index];
+            if (child == null) {
+                child = new Node();
+                node.children[index] = child;
+            }
+            node = child;
+            level++;
+        }
+        node.pixelCount++;
+        node.blue += b;
+        node.green += g;
+        node.red += r;
+    }
+
+    /**
+     * Merges the children of the most recently split node at the deepest level into a single leaf.
+     */
+    private void reduce() {
+        int level = MAX_DEPTH - 1;
+        while (reducible[level] == null) {
+            level--;
+        }
+        Node node = reducible[level];
+        reducible[level] = node.nextReducible;
+        node.nextReducible = null;
+
+        int merged = 0;
+        for (Node child : node.children) {
+            if (child != null) {
+                // Children of a reducible node at the deepest reducible level are always leaves.
+                node.pixelCount += child.pixelCount;
+                node.blue += child.blue;
+                node.green += child.green;
+                node.red += child.red;
+                merged++;
+            }
+        }
+        node.children = null;
+        node.leaf = true;
+        leafCount -= merged - 1;
+    }
+
+    private void buildColorMap(Node node) {
+        if (node.leaf) {
+            if (node.pixelCount > 0) {
+                int k = colorCount * 3;
+                colorMap[k] = (byte) (node.blue / node.pixelCount);
+                colorMap[k + 1] = (byte) (node.green / node.pixelCount);
+                colorMap[k + 2] = (byte) (node.red / node.pixelCount);
+                node.paletteIndex = colorCount++;
+            }
+        } else if (node.children != null) {
+            for (Node child : node.children) {
+                if (child != null) {
+                    buildColorMap(child);
+                }
+            }
+        }
+    }
+
+    private int findNearest(int b, int g, int r) {
+        int shift = 8 - CACHE_BITS;
+        int key = ((b >> shift) << (2 * CACHE_BITS)) | ((g >> shift) << CACHE_BITS) | (r >> shift);
+        int rgb = (r << 16) | (g << 8) | b;
+        int cached = nearestCache[key];
+        if (cached >>> 8 == rgb) {
+            return cached & 0xff;
+        }
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0, k = 0; i < colorCount; i++) {
+            int db = b - (colorMap[k++] & 0xff);
+            int dg = g - (colorMap[k++] & 0xff);
+            int dr = r - (colorMap[k++] & 0xff);
+            int distance = db * db + dg * dg + dr * dr;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        nearestCache[key] = (rgb << 8) | best;
+        return best;
+    }
+
+    private static int childIndex(int b, int g, int r, int level) {
+        int shift = 7 - level;
+        return (((r >> shift) & 1) << 2) | (((g >> shift) & 1) << 1) | ((b >> shift) & 1);
+    }
+
+    private static class Node {
+        Node[] children;
+        Node nextReducible;
+        boolean leaf;
+        int pixelCount;
+        long blue;
+        long green;
+        long red;
+        int paletteIndex;
+    }
+}
@@ -6,14 +6,15 @@ package com.bumptech.glide.load.engine.cache;
 
 import android.util.Log;
 
-import com.bumptech.glide.disklrucache.DiskLruCache;
+import com.bumptech.glide.disklrucache.SegmentedDiskLruCache;
 import com.bumptech.glide.load.Key;
 
 import java.io.File;
 import java.io.IOException;
 
 /**
- * The default DiskCache implementation. There must be no more than one active instance for a given
+ * The default DiskCache implementation, backed by a {@link SegmentedDiskLruCache} so that concurrent loads of
+ * different keys don't contend on a single lock. There must be no more than one active instance for a given
  * directory at a time.
  *
  * @see #get(File, int)
@@ -29,7 +30,7 @@ public class DiskLruCacheWrapper implements DiskCache {
     private final SafeKeyGenerator safeKeyGenerator;
     private final File directory;
     private final int maxSize;
-    private DiskLruCache diskLruCache;
+    private volatile SegmentedDiskLruCache diskLruCache;
 
     /**
      * Get a DiskCache in the given directory and size. If a disk cache has alread been created with
@@ -54,13 +55,22 @@ public class DiskLruCacheWrapper implements DiskCache {
         this.safeKeyGenerator = SafeKeyGenerator.getInstance();
     }
 
-    public synchronized DiskLruCache getDiskCache() throws IOException {
+    public synchronized SegmentedDiskLruCache getDiskCache() throws IOException {
         if (diskLruCache == null) {
-            diskLruCache = DiskLruCache.open(directory, APP_VERSION, VALUE_COUNT, maxSize);
+            diskLruCache = SegmentedDiskLruCache.open(directory, APP_VERSION, VALUE_COUNT, maxSize);
         }
         return diskLruCache;
     }
 
+    /**
+     * Returns the underlying cache if it has already been opened, or null otherwise. Unlike {@link #getDiskCache()}
+     * this never blocks or touches the filesystem, so it is safe to call on the main thread, for example to check
+     * {@link SegmentedDiskLruCache#contains(String)}.
+     */
+    public SegmentedDiskLruCache peekDiskCache() {
+        return diskLruCache;
+    }
+
     private synchronized void resetDiskCache() {
         diskLruCache = null;
     }
@@ -73,7 +83,7 @@ public class DiskLruCacheWrapper implements DiskCache {
             //It is possible that the there will be a put in between these two gets. If so that shouldn't be a problem
             //because we will always put the same value at the same key so our input streams will still represent
             //the same data
-            final DiskLruCache.Value value = getDiskCache().get(safeKey);
+            final SegmentedDiskLruCache.Value value = getDiskCache().get(safeKey);
             if (value != null) {
                 result = value.getFile(0);
             }
@@ -90,7 +100,7 @@ public class DiskLruCacheWrapper implements DiskCache {
         String safeKey = safeKeyGenerator.getSafeKey(key);
         writeLocker.acquire(key);
         try {
-            DiskLruCache.Editor editor = getDiskCache().edit(safeKey);
+            SegmentedDiskLruCache.Editor editor = getDiskCache().edit(safeKey);
             // Editor will be null if there are two concurrent puts. In the worst case we will just silently fail.
             if (editor != null) {
                 try {
@@ -10,42 +10,70 @@ import java.security.NoSuchAlgorithmException;
 
 /**
  * A class that generates and caches safe and unique string file names from {@link Key}s.
+ *
+ * <p>
+ *     Every disk cache read and write goes through this class, so the cache is split into independently locked
+ *     stripes by key hash and each thread reuses its own {@link MessageDigest} rather than looking one up per miss.
+ * </p>
  */
 public class SafeKeyGenerator {
-    private final LruCache<Key, String> loadIdToSafeHash = new LruCache<Key, String>(1000);
+    private static final SafeKeyGenerator SAFE_KEY_GENERATOR = new SafeKeyGenerator(1000, 16);
 
-    private static SafeKeyGenerator safeKeyGenerator;
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    };
 
-    private SafeKeyGenerator() {
+    private final LruCache<Key, String>[] stripes;
 
+    // Visible for testing.
+    @SuppressWarnings("unchecked")
+    SafeKeyGenerator(int maxSize, int stripeCount) {
+        stripes = new LruCache[stripeCount];
+        int stripeSize = Math.max(1, (maxSize + stripeCount - 1) / stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new LruCache<Key, String>(stripeSize);
+        }
     }
 
-    public synchronized static SafeKeyGenerator getInstance() {
-        if (safeKeyGenerator == null) {
-            safeKeyGenerator = new SafeKeyGenerator();
-        }
-        return safeKeyGenerator;
+    public static SafeKeyGenerator getInstance() {
+        return SAFE_KEY_GENERATOR;
     }
 
     public String getSafeKey(Key key) {
+        LruCache<Key, String> stripe = getStripe(key);
         String safeKey;
-        synchronized (loadIdToSafeHash) {
-            safeKey = loadIdToSafeHash.get(key);
+        synchronized (stripe) {
+            safeKey = stripe.get(key);
         }
         if (safeKey == null) {
+            MessageDigest messageDigest = DIGESTS.get();
             try {
-                MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
                 key.updateDiskCacheKey(messageDigest);
                 safeKey = Util.sha256BytesToHex(messageDigest.digest());
             } catch (UnsupportedEncodingException e) {
                 e.printStackTrace();
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
+            } finally {
+                // digest() resets the digest, but not if updating it failed part way.
+                messageDigest.reset();
             }
-            synchronized (loadIdToSafeHash) {
-                loadIdToSafeHash.put(key, safeKey);
+            synchronized (stripe) {
+                stripe.put(key, safeKey);
             }
         }
         return safeKey;
     }
+
+    private LruCache<Key, String> getStripe(Key key) {
+        int hash = key.hashCode();
+        // Spread the high bits, keys often differ only there.
+        hash ^= (hash >>> 16);
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
 }
@@ -0,0 +1,428 @@
+package com.bumptech.glide.load.engine.executor;
+
+import com.bumptech.glide.Priority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the work of several independent {@link Lane}s on one shared set of threads.
+ *
+ * <p>
+ *     Each lane is an {@link java.util.concurrent.ExecutorService} with its own queue and its own limit on the number
+ *     of tasks it may run at once, so a burst of slow network fetches can't starve disk cache reads or GIF frame
+ *     decodes. The scheduler starts one thread per unit of lane concurrency and an idle thread always takes the most
+ *     important queued task of any lane that is under its limit, so threads are never parked while another lane has
+ *     work it is allowed to run.
+ * </p>
+ *
+ * <p>
+ *     Tasks are ordered like in {@link FifoPriorityThreadPoolExecutor}: {@link Prioritized} tasks that return lower
+ *     values run first, tasks with the same priority run in FIFO order. Tasks that don't implement
+ *     {@link Prioritized} are treated as {@link Priority#NORMAL}. Cancelling a queued task removes it from its lane
+ *     immediately, so requests that were cleared before they started never occupy a thread.
+ * </p>
+ */
+public class LaneScheduler {
+    private static final int DEFAULT_PRIORITY = Priority.NORMAL.ordinal();
+
+    private final Object lock = new Object();
+    private final List<Lane> lanes = new ArrayList<Lane>();
+    private final ThreadFactory threadFactory;
+    private final FifoPriorityThreadPoolExecutor.UncaughtThrowableStrategy uncaughtThrowableStrategy;
+    // All guarded by lock.
+    private int maxThreads;
+    private int threadCount;
+    private int idleThreads;
+    // Idle threads that were already woken for a task but haven't taken it yet.
+    private int pendingWakeups;
+    private long ordering;
+
+    public LaneScheduler() {
+        this(new FifoPriorityThreadPoolExecutor.DefaultThreadFactory(),
+                FifoPriorityThreadPoolExecutor.UncaughtThrowableStrategy.LOG);
+    }
+
+    public LaneScheduler(ThreadFactory threadFactory,
+            FifoPriorityThreadPoolExecutor.UncaughtThrowableStrategy uncaughtThrowableStrategy) {
+        this.threadFactory = threadFactory;
+        this.uncaughtThrowableStrategy = uncaughtThrowableStrategy;
+    }
+
+    /**
+     * Adds a new lane that runs at most the given number of tasks at once.
+     *
+     * @param name A name for the lane, used in {@link LaneStats}.
+     * @param maxConcurrency The maximum number of tasks from this lane that may run at the same time.
+     */
+    public Lane newLane(String name, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Lanes must be able to run at least one task");
+        }
+        Lane lane = new Lane(name, maxConcurrency);
+        synchronized (lock) {
+            lanes.add(lane);
+            maxThreads += maxConcurrency;
+        }
+        return lane;
+    }
+
+    /**
+     * Returns a snapshot of the queue wait times and current load of every lane.
+     */
+    public List<LaneStats> getStats() {
+        synchronized (lock) {
+            List<LaneStats> result = new ArrayList<LaneStats>(lanes.size());
+            for (Lane lane : lanes) {
+                result.add(lane.getStatsLocked());
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+
+    private void enqueue(LaneTask<?> task) {
+        synchronized (lock) {
+            Lane lane = task.lane;
+            if (lane.isShutdown) {
+                throw new RejectedExecutionException("Lane " + lane.name + " has been shut down");
+            }
+            task.order = ordering++;
+            task.enqueuedNanos = System.nanoTime();
+            lane.queue.add(task);
+            if (idleThreads > pendingWakeups) {
+                pendingWakeups++;
+                lock.notifyAll();
+            } else if (threadCount < maxThreads) {
+                threadCount++;
+                threadFactory.newThread(new Worker()).start();
+            }
+        }
+    }
+
+    private void remove(LaneTask<?> task) {
+        synchronized (lock) {
+            if (task.lane.queue.remove(task)) {
+                // A shut down lane may have been waiting for its queue to drain.
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the most important task that may be run right now, or blocks until there is one.
+     */
+    private LaneTask<?> take() throws InterruptedException {
+        synchronized (lock) {
+            while (true) {
+                LaneTask<?> best = null;
+                for (Lane lane : lanes) {
+                    if (lane.active >= lane.maxConcurrency) {
+                        continue;
+                    }
+                    LaneTask<?> head = lane.queue.peek();
+                    if (head != null && (best == null || head.compareTo(best) < 0)) {
+                        best = head;
+                    }
+                }
+                if (best != null) {
+                    Lane lane = best.lane;
+                    lane.queue.poll();
+                    lane.active++;
+                    long waited = System.nanoTime() - best.enqueuedNanos;
+                    lane.started++;
+                    lane.totalWaitNanos += waited;
+                    lane.maxWaitNanos = Math.max(lane.maxWaitNanos, waited);
+                    return best;
+                }
+                idleThreads++;
+                try {
+                    lock.wait();
+                } finally {
+                    idleThreads--;
+                    // Any woken thread will look for a task, so it may as well count as the one that was asked to.
+                    pendingWakeups = Math.min(pendingWakeups, idleThreads);
+                }
+            }
+        }
+    }
+
+    private void finished(LaneTask<?> task) {
+        synchronized (lock) {
+            task.lane.active--;
+            // Either a thread is now allowed to run another task from this lane, or the lane may have terminated.
+            lock.notifyAll();
+        }
+    }
+
+    private void afterExecute(LaneTask<?> task) {
+        if (task.isDone() && !task.isCancelled()) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                uncaughtThrowableStrategy.handle(e);
+            } catch (ExecutionException e) {
+                uncaughtThrowableStrategy.handle(e);
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    LaneTask<?> task = take();
+                    try {
+                        // Cancelled tasks are removed when cancelled, but cancel may race with take.
+                        if (!task.isCancelled()) {
+                            task.run();
+                            afterExecute(task);
+                        }
+                    } finally {
+                        // Don't let an interrupt meant for a cancelled task leak into the next one.
+                        Thread.interrupted();
+                        finished(task);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Exit.
+            } finally {
+                // Also reached if the uncaught throwable strategy rethrows, the next enqueue replaces this thread.
+                synchronized (lock) {
+                    threadCount--;
+                }
+            }
+        }
+    }
+
+    /**
+     * An {@link java.util.concurrent.ExecutorService} whose tasks are run by the threads of the {@link LaneScheduler}
+     * that created it.
+     *
+     * <p>
+     *     Shutting down a lane stops it from accepting new tasks, the scheduler's threads are shared and keep running.
+     * </p>
+     */
+    public final class Lane extends AbstractExecutorService {
+        private final String name;
+        private final int maxConcurrency;
+        // All guarded by the scheduler's lock.
+        private final PriorityQueue<LaneTask<?>> queue = new PriorityQueue<LaneTask<?>>();
+        private boolean isShutdown;
+        private int active;
+        private long started;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        private Lane(String name, int maxConcurrency) {
+            this.name = name;
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LaneStats getStats() {
+            synchronized (lock) {
+                return getStatsLocked();
+            }
+        }
+
+        private LaneStats getStatsLocked() {
+            return new LaneStats(name, maxConcurrency, queue.size(), active, started, totalWaitNanos, maxWaitNanos);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            int priority = runnable instanceof Prioritized ? ((Prioritized) runnable).getPriority() : DEFAULT_PRIORITY;
+            return new LaneTask<T>(this, runnable, value, priority);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            int priority = callable instanceof Prioritized ? ((Prioritized) callable).getPriority() : DEFAULT_PRIORITY;
+            return new LaneTask<T>(this, callable, priority);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command instanceof LaneTask && ((LaneTask<?>) command).lane == this) {
+                enqueue((LaneTask<?>) command);
+            } else {
+                enqueue((LaneTask<?>) newTaskFor(command, null));
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (lock) {
+                isShutdown = true;
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (lock) {
+                isShutdown = true;
+                List<Runnable> pending = new ArrayList<Runnable>(queue);
+                queue.clear();
+                lock.notifyAll();
+                return pending;
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (lock) {
+                return isShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (lock) {
+                return isTerminatedLocked();
+            }
+        }
+
+        private boolean isTerminatedLocked() {
+            return isShutdown && queue.isEmpty() && active == 0;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (lock) {
+                while (!isTerminatedLocked()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * An immutable snapshot of the state of a single {@link Lane}.
+     */
+    public static final class LaneStats {
+        private final String name;
+        private final int maxConcurrency;
+        private final int queued;
+        private final int active;
+        private final long started;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+
+        LaneStats(String name, int maxConcurrency, int queued, int active, long started, long totalWaitNanos,
+                long maxWaitNanos) {
+            this.name = name;
+            this.maxConcurrency = maxConcurrency;
+            this.queued = queued;
+            this.active = active;
+            this.started = started;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        /** Returns the number of tasks waiting for a thread. */
+        public int getQueued() {
+            return queued;
+        }
+
+        /** Returns the number of tasks currently running. */
+        public int getActive() {
+            return active;
+        }
+
+        /** Returns the number of tasks that have been started since the lane was created. */
+        public long getStarted() {
+            return started;
+        }
+
+        public long getTotalWaitNanos() {
+            return totalWaitNanos;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        /** Returns the average time a started task spent in the queue, or 0 if no task has started yet. */
+        public long getAverageWaitNanos() {
+            return started == 0 ? 0 : totalWaitNanos / started;
+        }
+
+        @Override
+        public String toString() {
+            return "LaneStats{"
+                    + "name=" + name
+                    + ", maxConcurrency=" + maxConcurrency
+                    + ", queued=" + queued
+                    + ", active=" + active
+                    + ", started=" + started
+                    + ", averageWaitMs=" + TimeUnit.NANOSECONDS.toMillis(getAverageWaitNanos())
+                    + ", maxWaitMs=" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)
+                    + "}";
+        }
+    }
+
+    private final class LaneTask<T> extends FutureTask<T> implements Comparable<LaneTask<?>> {
+        private final Lane lane;
+        private final int priority;
+        // Both set under the scheduler's lock when the task is queued.
+        private long order;
+        private long enqueuedNanos;
+
+        LaneTask(Lane lane, Runnable runnable, T result, int priority) {
+            super(runnable, result);
+            this.lane = lane;
+            this.priority = priority;
+        }
+
+        LaneTask(Lane lane, Callable<T> callable, int priority) {
+            super(callable);
+            this.lane = lane;
+            this.priority = priority;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(LaneTask<?> other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+}
@@ -8,9 +8,15 @@ import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 
 class GifBitmapProvider implements GifDecoder.BitmapProvider {
     private final BitmapPool bitmapPool;
+    private final GifScratchArrayPool arrayPool;
 
     public GifBitmapProvider(BitmapPool bitmapPool) {
+        this(bitmapPool, GifScratchArrayPool.get());
+    }
+
+    private GifBitmapProvider(BitmapPool bitmapPool, GifScratchArrayPool arrayPool) {
         this.bitmapPool = bitmapPool;
+        this.arrayPool = arrayPool;
     }
 
     @Override
@@ -24,4 +30,24 @@ class GifBitmapProvider implements GifDecoder.BitmapProvider {
             bitmap.recycle();
         }
     }
+
+    @Override
+    public byte[] obtainByteArray(int size) {
+        return arrayPool.getBytes(size);
+    }
+
+    @Override
+    public void release(byte[] bytes) {
+        arrayPool.put(bytes);
+    }
+
+    @Override
+    public int[] obtainIntArray(int size) {
+        return arrayPool.getInts(size);
+    }
+
+    @Override
+    public void release(int[] array) {
+        arrayPool.put(array);
+    }
 }
@@ -19,6 +19,8 @@ import com.bumptech.glide.load.Transformation;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.resource.drawable.GlideDrawable;
 
+import java.nio.ByteBuffer;
+
 /**
  * An animated {@link Drawable} that plays the frames of an animated GIF.
  */
@@ -70,13 +72,41 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
     public GifDrawable(Context context, GifDecoder.BitmapProvider bitmapProvider, BitmapPool bitmapPool,
             Transformation<Bitmap> frameTransformation, int targetFrameWidth, int targetFrameHeight,
             GifHeader gifHeader, byte[] data, Bitmap firstFrame) {
-        this(new GifState(gifHeader, data, context, frameTransformation, targetFrameWidth, targetFrameHeight,
-                bitmapProvider, bitmapPool, firstFrame));
+        this(context, bitmapProvider, bitmapPool, frameTransformation, targetFrameWidth, targetFrameHeight, gifHeader,
+                ByteBuffer.wrap(data), firstFrame);
+    }
+
+    /**
+     * Constructor for GifDrawable that reads frames from a {@link ByteBuffer}, for example a
+     * {@link java.nio.MappedByteBuffer} of a file in the disk cache so that the compressed data stays off the heap.
+     *
+     * @see #GifDrawable(Context, GifDecoder.BitmapProvider, BitmapPool, Transformation, int, int, GifHeader, byte[],
+     * Bitmap)
+     */
+    public GifDrawable(Context context, GifDecoder.BitmapProvider bitmapProvider, BitmapPool bitmapPool,
+            Transformation<Bitmap> frameTransformation, int targetFrameWidth, int targetFrameHeight,
+            GifHeader gifHeader, ByteBuffer data, Bitmap firstFrame) {
+        this(context, bitmapProvider, bitmapPool, frameTransformation, targetFrameWidth, targetFrameHeight, gifHeader,
+                data, 1, firstFrame);
+    }
+
+    /**
+     * Constructor for GifDrawable that decodes its frames at 1/sampleSize of the GIF's width and height, see
+     * {@link GifDecoder#setData(GifHeader, ByteBuffer, int)}. The first frame must be decoded with the same sample size.
+     *
+     * @see #GifDrawable(Context, GifDecoder.BitmapProvider, BitmapPool, Transformation, int, int, GifHeader, byte[],
+     * Bitmap)
+     */
+    public GifDrawable(Context context, GifDecoder.BitmapProvider bitmapProvider, BitmapPool bitmapPool,
+            Transformation<Bitmap> frameTransformation, int targetFrameWidth, int targetFrameHeight,
+            GifHeader gifHeader, ByteBuffer data, int sampleSize, Bitmap firstFrame) {
+        this(new GifState(gifHeader, data, sampleSize, context, frameTransformation, targetFrameWidth,
+                targetFrameHeight, bitmapProvider, bitmapPool, firstFrame));
     }
 
     public GifDrawable(GifDrawable other, Bitmap firstFrame,
         Transformation<Bitmap> frameTransformation) {
-        this(new GifState(other.state.gifHeader, other.state.data, other.state.context,
+        this(new GifState(other.state.gifHeader, other.state.data, other.state.sampleSize, other.state.context,
             frameTransformation, other.state.targetWidth, other.state.targetHeight,
             other.state.bitmapProvider, other.state.bitmapPool, firstFrame));
     }
@@ -89,7 +119,7 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
         this.state = state;
         this.decoder = new GifDecoder(state.bitmapProvider);
         this.paint = new Paint();
-        decoder.setData(state.gifHeader, state.data);
+        decoder.setData(state.gifHeader, state.data, state.sampleSize);
         frameLoader = new GifFrameLoader(state.context, this, decoder, state.targetWidth, state.targetHeight);
         frameLoader.setFrameTransformation(state.frameTransformation);
     }
@@ -128,10 +158,29 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
         return state.frameTransformation;
     }
 
+    /**
+     * Returns the full bytes of the gif, copying them if the data isn't held in a heap array.
+     *
+     * @see #getDataBuffer()
+     */
     public byte[] getData() {
+        return GifDecoder.toBytes(state.data);
+    }
+
+    /**
+     * Returns the full data of the gif without copying it. The buffer is shared, duplicate it before reading.
+     */
+    public ByteBuffer getDataBuffer() {
         return state.data;
     }
 
+    /**
+     * Returns the number of bytes of the gif's data held on the Java heap, which is zero for memory mapped data.
+     */
+    public int getHeapDataSize() {
+        return state.data.isDirect() ? 0 : state.data.capacity();
+    }
+
     public int getFrameCount() {
         return decoder.getFrameCount();
     }
@@ -287,8 +336,8 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
     public void recycle() {
         isRecycled = true;
         state.bitmapPool.put(state.firstFrame);
-        frameLoader.clear();
-        frameLoader.stop();
+        // Also returns the decoder's scratch arrays to the pool, off the main thread.
+        frameLoader.recycle();
     }
 
     // For testing.
@@ -315,10 +364,37 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
         }
     }
 
+    /**
+     * Sets the cache key of this GIF's source, for example {@link com.bumptech.glide.load.model.GlideUrl#getCacheKey()},
+     * so that its decoded frames are shared through the {@link GifFrameCache} with other drawables of the same source,
+     * size and transformation. Call it before the animation starts, null stops sharing frames decoded afterwards.
+     */
+    public void setFrameCacheKey(String key) {
+        frameLoader.setFrameCacheKey(key);
+    }
+
+    /**
+     * Sets how many frames are decoded ahead of the frame on screen, trading memory for smoother playback of GIFs with
+     * short frame delays. Defaults to 3, frames beyond the first are only buffered while they fit the budget set with
+     * {@link #setLookAheadBudget(long)}.
+     */
+    public void setFrameLookAhead(int frames) {
+        frameLoader.setLookAhead(frames);
+    }
+
+    /**
+     * Sets the maximum number of bytes that all GIFs together may hold in frames decoded ahead of time, besides the
+     * one frame per GIF that is always decoded ahead.
+     */
+    public static void setLookAheadBudget(long bytes) {
+        GifFrameLoader.setLookAheadBudget(bytes);
+    }
+
     static class GifState extends ConstantState {
         private static final int GRAVITY = Gravity.FILL;
         GifHeader gifHeader;
-        byte[] data;
+        ByteBuffer data;
+        int sampleSize = 1;
         Context context;
         Transformation<Bitmap> frameTransformation;
         int targetWidth;
@@ -327,7 +403,7 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
         BitmapPool bitmapPool;
         Bitmap firstFrame;
 
-        public GifState(GifHeader header, byte[] data, Context context,
+        public GifState(GifHeader header, ByteBuffer data, int sampleSize, Context context,
                 Transformation<Bitmap> frameTransformation, int targetWidth, int targetHeight,
                 GifDecoder.BitmapProvider provider, BitmapPool bitmapPool, Bitmap firstFrame) {
             if (firstFrame == null) {
@@ -335,6 +411,7 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
             }
             gifHeader = header;
             this.data = data;
+            this.sampleSize = sampleSize;
             this.bitmapPool = bitmapPool;
             this.firstFrame = firstFrame;
             this.context = context.getApplicationContext();
@@ -348,6 +425,7 @@ public class GifDrawable extends GlideDrawable implements GifFrameLoader.FrameCa
             if (original != null) {
                 gifHeader = original.gifHeader;
                 data = original.data;
+                sampleSize = original.sampleSize;
                 context = original.context;
                 frameTransformation = original.frameTransformation;
                 targetWidth = original.targetWidth;
@@ -13,7 +13,7 @@ public class GifDrawableResource extends DrawableResource<GifDrawable> {
 
     @Override
     public int getSize() {
-        return drawable.getData().length + Util.getBitmapByteSize(drawable.getFirstFrame());
+        return drawable.getHeapDataSize() + Util.getBitmapByteSize(drawable.getFirstFrame());
     }
 
     @Override
@@ -0,0 +1,59 @@
+package com.bumptech.glide.load.resource.gif;
+
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@link ResourceDecoder} that decodes {@link GifDrawable} from a file by memory mapping it rather than reading it
+ * into a byte[], so the compressed data of cached GIFs stays off the Java heap and is paged in by the OS as frames are
+ * decoded.
+ *
+ * <p>
+ *     The mapping stays valid after the file is closed and even after it's deleted or replaced in the disk cache,
+ *     since the cache commits new entries by renaming a fresh file over the old one.
+ * </p>
+ */
+public class GifFileDecoder implements ResourceDecoder<File, GifDrawable> {
+    private final GifResourceDecoder decoder;
+
+    public GifFileDecoder(GifResourceDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    @Override
+    public Resource<GifDrawable> decode(File source, int width, int height) throws IOException {
+        ByteBuffer data = map(source);
+        return data != null ? decoder.decode(data, width, height) : null;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            long length = raf.length();
+            if (length <= 0 || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getId() {
+        return decoder.getId();
+    }
+}
@@ -0,0 +1,184 @@
+package com.bumptech.glide.load.resource.gif;
+
+import android.graphics.Bitmap;
+
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.util.LruCache;
+import com.bumptech.glide.util.Util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded GIF frames shared by all {@link GifDrawable}s, so that a GIF shown in several places, or shown
+ * again shortly after, doesn't decode every frame again.
+ *
+ * <p>
+ *     Frames are keyed by the cache key of the GIF's source, the size and transformation they were decoded for and
+ *     their index. Frames in use by a drawable are reference counted and never evicted, frames no longer in use are
+ *     kept in an LRU cache limited to a memory budget, similar to active resources and the memory cache in the
+ *     {@link com.bumptech.glide.load.engine.Engine}.
+ * </p>
+ */
+public final class GifFrameCache {
+    private static final GifFrameCache FRAME_CACHE = new GifFrameCache((int) (Runtime.getRuntime().maxMemory() / 16));
+
+    private final Map<Key, Entry> active = new HashMap<Key, Entry>();
+    private final IdleFrames idle;
+
+    /**
+     * Returns the frame cache shared by all GIFs.
+     */
+    public static GifFrameCache get() {
+        return FRAME_CACHE;
+    }
+
+    private GifFrameCache(int maxIdleSize) {
+        idle = new IdleFrames(maxIdleSize);
+    }
+
+    Key buildKey(String sourceKey, String transformationId, int width, int height, int index) {
+        return new Key(sourceKey, transformationId, width, height, index);
+    }
+
+    /**
+     * Returns the cached frame for the given key and takes a reference to it, or null if it isn't cached.
+     */
+    synchronized Resource<Bitmap> acquire(Key key) {
+        Entry entry = active.get(key);
+        if (entry == null) {
+            entry = idle.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            active.put(key, entry);
+        }
+        entry.acquired++;
+        return entry.resource;
+    }
+
+    /**
+     * Adds a freshly decoded frame and takes a reference to it. If the frame was cached in the meantime the cached
+     * one is returned instead and the given one is recycled.
+     */
+    synchronized Resource<Bitmap> put(Key key, Resource<Bitmap> resource) {
+        Resource<Bitmap> existing = acquire(key);
+        if (existing != null) {
+            resource.recycle();
+            return existing;
+        }
+        Entry entry = new Entry(resource);
+        entry.acquired = 1;
+        active.put(key, entry);
+        return resource;
+    }
+
+    /**
+     * Releases a reference taken with {@link #acquire(Key)} or {@link #put(Key, Resource)}.
+     */
+    synchronized void release(Key key) {
+        Entry entry = active.get(key);
+        if (entry == null) {
+            throw new IllegalStateException("Cannot release a frame that is not acquired: " + key);
+        }
+        if (--entry.acquired == 0) {
+            active.remove(key);
+            idle.put(key, entry);
+        }
+    }
+
+    /**
+     * Evicts all frames that are not currently in use.
+     */
+    public synchronized void clearMemory() {
+        idle.clearMemory();
+    }
+
+    /**
+     * Evicts some or all frames that are not currently in use depending on the given level.
+     *
+     * @see android.content.ComponentCallbacks2#onTrimMemory(int)
+     */
+    public synchronized void trimMemory(int level) {
+        idle.trimMemory(level);
+    }
+
+    private static class Entry {
+        final Resource<Bitmap> resource;
+        int acquired;
+
+        Entry(Resource<Bitmap> resource) {
+            this.resource = resource;
+        }
+    }
+
+    private static class IdleFrames extends LruCache<Key, Entry> {
+
+        IdleFrames(int size) {
+            super(size);
+        }
+
+        @Override
+        protected int getSize(Entry item) {
+            return Util.getBitmapByteSize(item.resource.get());
+        }
+
+        @Override
+        protected void onItemEvicted(Key key, Entry item) {
+            item.resource.recycle();
+        }
+
+        void trimMemory(int level) {
+            if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+                clearMemory();
+            } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                trimToSize(getCurrentSize() / 2);
+            }
+        }
+    }
+
+    static final class Key {
+        private final String sourceKey;
+        private final String transformationId;
+        private final int width;
+        private final int height;
+        private final int index;
+
+        Key(String sourceKey, String transformationId, int width, int height, int index) {
+            this.sourceKey = sourceKey;
+            this.transformationId = transformationId;
+            this.width = width;
+            this.height = height;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key other = (Key) o;
+                return sourceKey.equals(other.sourceKey)
+                        && transformationId.equals(other.transformationId)
+                        && width == other.width
+                        && height == other.height
+                        && index == other.index;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sourceKey.hashCode();
+            result = 31 * result + transformationId.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + index;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "GifFrameCache.Key{sourceKey=" + sourceKey + ", transformationId=" + transformationId + ", width="
+                    + width + ", height=" + height + ", index=" + index + "}";
+        }
+    }
+}
@@ -7,60 +7,122 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.SystemClock;
 
-import com.bumptech.glide.GenericRequestBuilder;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.gifdecoder.GifDecoder;
-import com.bumptech.glide.load.Encoder;
-import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.Transformation;
-import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.Resource;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
-import com.bumptech.glide.load.resource.NullEncoder;
-import com.bumptech.glide.request.animation.GlideAnimation;
-import com.bumptech.glide.request.target.SimpleTarget;
-
-import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
-import java.util.UUID;
-
+import com.bumptech.glide.load.engine.executor.Prioritized;
+import com.bumptech.glide.load.resource.UnitTransformation;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.bumptech.glide.util.Util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Decodes the frames of a {@link GifDecoder} ahead of time on a dedicated executor and hands them out on the main
+ * thread when they are due, so a slow decode only shows up as jank once the look-ahead buffer runs dry.
+ *
+ * <p>
+ *     Up to {@link #setLookAhead(int) look ahead} frames are kept ready besides the one on screen. The first frame
+ *     ahead is always decoded so playback can continue, any further frame is charged against a memory budget shared
+ *     by all GIFs, see {@link #setLookAheadBudget(long)}.
+ * </p>
+ *
+ * <p>
+ *     Once a {@link #setFrameCacheKey(String) frame cache key} is set, decoded frames are shared with other GIFs of
+ *     the same source through the {@link GifFrameCache}.
+ * </p>
+ */
 class GifFrameLoader {
+    static final int DEFAULT_LOOK_AHEAD = 3;
+    private static final FrameBudget BUDGET = new FrameBudget(Runtime.getRuntime().maxMemory() / 16);
 
     private final FrameCallback callback;
     private final GifDecoder gifDecoder;
     private final Handler handler;
-
+    private final BitmapPool bitmapPool;
+    private final ExecutorService executor;
+    private final FrameBudget budget;
+    private final GifFrameCache frameCache;
+    private final int width;
+    private final int height;
+    // Frames decoded ahead of current, only accessed on the main thread.
+    private final ArrayDeque<Frame> ready = new ArrayDeque<Frame>();
+
+    private volatile Transformation<Bitmap> transformation = UnitTransformation.get();
+    private volatile boolean isCleared;
+    private volatile String frameCacheKey;
+    // Index of the last frame composed onto the decoder's canvas, only accessed while holding the decoder's lock.
+    private int canvasIndex = -1;
+    private int lookAhead = DEFAULT_LOOK_AHEAD;
     private boolean isRunning = false;
-    private boolean isLoadPending = false;
-    private GenericRequestBuilder<GifDecoder, GifDecoder, Bitmap, Bitmap> requestBuilder;
-    private DelayTarget current;
-    private boolean isCleared;
+    private boolean isDecodePending = false;
+    private boolean isWaitingForFrame = false;
+    private boolean isFrameDueScheduled = false;
+    // Incremented by clear() so frames decoded before it are dropped.
+    private int generation;
+    private long nextFrameTime;
+    private long frameBytes;
+    private Frame current;
 
     public interface FrameCallback {
         void onFrameReady(int index);
     }
 
     public GifFrameLoader(Context context, FrameCallback callback, GifDecoder gifDecoder, int width, int height) {
-        this(callback, gifDecoder, null,
-                getRequestBuilder(context, gifDecoder, width, height, Glide.get(context).getBitmapPool()));
+        this(callback, gifDecoder, Glide.get(context).getBitmapPool(), Glide.get(context).getGifFrameService(),
+                BUDGET, GifFrameCache.get(), width, height);
     }
 
-    GifFrameLoader(FrameCallback callback, GifDecoder gifDecoder, Handler handler,
-            GenericRequestBuilder<GifDecoder, GifDecoder, Bitmap, Bitmap>  requestBuilder) {
-        if (handler == null) {
-            handler = new Handler(Looper.getMainLooper(), new FrameLoaderCallback());
-        }
+    private GifFrameLoader(FrameCallback callback, GifDecoder gifDecoder, BitmapPool bitmapPool,
+            ExecutorService executor, FrameBudget budget, GifFrameCache frameCache, int width, int height) {
         this.callback = callback;
         this.gifDecoder = gifDecoder;
-        this.handler = handler;
-        this.requestBuilder = requestBuilder;
+        this.handler = new Handler(Looper.getMainLooper(), new FrameLoaderCallback());
+        this.bitmapPool = bitmapPool;
+        this.executor = executor;
+        this.budget = budget;
+        this.frameCache = frameCache;
+        this.width = width;
+        this.height = height;
+        // Until a frame has been decoded assume the transformation keeps the size of the GIF.
+        this.frameBytes = (long) gifDecoder.getDownsampledWidth() * gifDecoder.getDownsampledHeight() * 4;
+    }
+
+    /**
+     * Sets the maximum number of bytes all GIFs together may hold in frames decoded ahead of the first one.
+     */
+    public static void setLookAheadBudget(long bytes) {
+        BUDGET.setMaxSize(bytes);
     }
 
-    @SuppressWarnings("unchecked")
     public void setFrameTransformation(Transformation<Bitmap> transformation) {
         if (transformation == null) {
             throw new NullPointerException("Transformation must not be null");
         }
-        requestBuilder = requestBuilder.transform(transformation);
+        this.transformation = transformation;
+    }
+
+    /**
+     * Sets the cache key of the GIF's source, or null to not share frames. Only frames decoded afterwards are shared.
+     */
+    public void setFrameCacheKey(String key) {
+        frameCacheKey = key;
+    }
+
+    /**
+     * Sets the number of frames to decode ahead of the frame on screen, at least one.
+     */
+    public void setLookAhead(int frames) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Look ahead must be at least one frame");
+        }
+        lookAhead = frames;
+        while (ready.size() > lookAhead) {
+            ready.pollLast().release();
+        }
     }
 
     public void start() {
@@ -70,150 +132,301 @@ class GifFrameLoader {
         isRunning = true;
         isCleared = false;
 
-        loadNextFrame();
+        scheduleFrameDue(Math.max(nextFrameTime, SystemClock.uptimeMillis()));
+        decodeAhead();
     }
 
     public void stop() {
         isRunning = false;
+        handler.removeMessages(FrameLoaderCallback.MSG_FRAME_DUE);
+        isFrameDueScheduled = false;
+        isWaitingForFrame = false;
     }
 
     public void clear() {
         stop();
+        generation++;
+        isDecodePending = false;
+        nextFrameTime = 0;
         if (current != null) {
-            Glide.clear(current);
+            current.release();
             current = null;
         }
+        while (!ready.isEmpty()) {
+            ready.poll().release();
+        }
         isCleared = true;
-        // test.
+    }
+
+    /**
+     * Clears the loader for good and returns the decoder's scratch arrays on the decode executor, a frame still being
+     * decoded holds the decoder's lock and the main thread shouldn't wait for it.
+     */
+    public void recycle() {
+        clear();
+        executor.execute(new ReleaseDecoderTask());
     }
 
     public Bitmap getCurrentFrame() {
-        return current != null ? current.getResource() : null;
+        return current != null ? current.resource.get() : null;
     }
 
-    private void loadNextFrame() {
-        if (!isRunning || isLoadPending) {
+    private void scheduleFrameDue(long time) {
+        if (isFrameDueScheduled) {
             return;
         }
-        isLoadPending = true;
+        isFrameDueScheduled = true;
+        handler.sendMessageAtTime(handler.obtainMessage(FrameLoaderCallback.MSG_FRAME_DUE), time);
+    }
 
-        gifDecoder.advance();
-        long targetTime = SystemClock.uptimeMillis() + gifDecoder.getNextDelay();
-        DelayTarget next = new DelayTarget(handler, gifDecoder.getCurrentFrameIndex(), targetTime);
-        requestBuilder
-                .signature(new FrameSignature())
-                .into(next);
+    private void decodeAhead() {
+        if (!isRunning || isDecodePending || isCleared) {
+            return;
+        }
+        int buffered = ready.size();
+        if (buffered >= lookAhead) {
+            return;
+        }
+        long reserved = 0;
+        if (buffered > 0) {
+            reserved = frameBytes;
+            if (!budget.tryReserve(reserved)) {
+                return;
+            }
+        }
+        isDecodePending = true;
+        executor.execute(new DecodeTask(generation, buffered, reserved));
     }
 
-    // Visible for testing.
-    void onFrameReady(DelayTarget delayTarget) {
-        if (isCleared) {
-            handler.obtainMessage(FrameLoaderCallback.MSG_CLEAR, delayTarget).sendToTarget();
+    private void onFrameDue() {
+        isFrameDueScheduled = false;
+        if (!isRunning) {
+            return;
+        }
+        Frame next = ready.poll();
+        if (next == null) {
+            // Decoding fell behind, show the next frame as soon as it arrives.
+            isWaitingForFrame = true;
+            decodeAhead();
             return;
         }
 
-        DelayTarget previous = current;
-        current = delayTarget;
-        callback.onFrameReady(delayTarget.index);
+        Frame previous = current;
+        current = next;
+        nextFrameTime = SystemClock.uptimeMillis() + Math.max(next.delay, 0);
+        callback.onFrameReady(next.index);
 
         if (previous != null) {
+            // Release after the callback has had a chance to invalidate, draw() now uses the new frame.
             handler.obtainMessage(FrameLoaderCallback.MSG_CLEAR, previous).sendToTarget();
         }
 
-        isLoadPending = false;
-        loadNextFrame();
+        if (isRunning) {
+            scheduleFrameDue(nextFrameTime);
+            decodeAhead();
+        }
     }
 
-    private class FrameLoaderCallback implements Handler.Callback {
-        public static final int MSG_DELAY = 1;
-        public static final int MSG_CLEAR = 2;
+    private void onFrameDecoded(Frame frame) {
+        if (frame.generation != generation) {
+            frame.release();
+            return;
+        }
+        isDecodePending = false;
+        if (frame.resource == null) {
+            // Like a failed load, stop here rather than decoding a broken frame over and over.
+            frame.release();
+            return;
+        }
+        frameBytes = Util.getBitmapByteSize(frame.resource.get());
+        ready.offer(frame);
+
+        if (isWaitingForFrame) {
+            isWaitingForFrame = false;
+            onFrameDue();
+        } else {
+            decodeAhead();
+        }
+    }
 
-        @Override
-        public boolean handleMessage(Message msg) {
-            if (msg.what == MSG_DELAY) {
-                DelayTarget target = (DelayTarget) msg.obj;
-                onFrameReady(target);
-                return true;
-            } else if (msg.what == MSG_CLEAR) {
-                DelayTarget target = (DelayTarget) msg.obj;
-                Glide.clear(target);
+    private Frame decodeFrame(int frameGeneration, long reserved) {
+        final Transformation<Bitmap> transformation = this.transformation;
+        final String sourceKey = frameCacheKey;
+        final int index;
+        final int delay;
+        final Bitmap bitmap;
+        GifFrameCache.Key key = null;
+        synchronized (gifDecoder) {
+            // The decoder itself is cleared after us when the drawable is recycled, don't touch it once that started.
+            if (isCleared) {
+                return new Frame(frameGeneration, -1, 0, null, null, reserved);
             }
-            return false;
+            gifDecoder.advance();
+            index = gifDecoder.getCurrentFrameIndex();
+            delay = gifDecoder.getNextDelay();
+            if (sourceKey != null) {
+                key = frameCache.buildKey(sourceKey, transformation.getId(), width, height, index);
+                Resource<Bitmap> cached = frameCache.acquire(key);
+                if (cached != null) {
+                    return new Frame(frameGeneration, index, delay, cached, key, reserved);
+                }
+                replaySkippedFrames(index);
+            }
+            bitmap = gifDecoder.getNextFrame();
+            canvasIndex = index;
         }
+
+        Resource<Bitmap> resource = BitmapResource.obtain(bitmap, bitmapPool);
+        if (resource != null) {
+            Resource<Bitmap> transformed = transformation.transform(resource, width, height);
+            if (!resource.equals(transformed)) {
+                resource.recycle();
+            }
+            resource = transformed;
+            if (key != null) {
+                resource = frameCache.put(key, resource);
+            }
+        }
+        return new Frame(frameGeneration, index, delay, resource, resource != null ? key : null, reserved);
+    }
+
+    /**
+     * Frames taken from the cache were never composed onto the decoder's canvas, so decode the ones the given frame
+     * is drawn on top of before decoding it.
+     */
+    private void replaySkippedFrames(int index) {
+        if (index == 0 || canvasIndex == index - 1) {
+            return;
+        }
+        int from = canvasIndex < index ? canvasIndex + 1 : 0;
+        for (int i = from; i < index; i++) {
+            gifDecoder.setFrameIndex(i);
+            Bitmap skipped = gifDecoder.getNextFrame();
+            if (skipped != null && !bitmapPool.put(skipped)) {
+                skipped.recycle();
+            }
+        }
+        gifDecoder.setFrameIndex(index);
     }
 
-    // Visible for testing.
-    static class DelayTarget extends SimpleTarget<Bitmap> {
-        private final Handler handler;
-        private final int index;
-        private final long targetTime;
-        private Bitmap resource;
+    private class DecodeTask implements Runnable, Prioritized {
+        private final int frameGeneration;
+        private final int buffered;
+        private final long reserved;
 
-        public DelayTarget(Handler handler, int index, long targetTime) {
-            this.handler = handler;
-            this.index = index;
-            this.targetTime = targetTime;
+        DecodeTask(int frameGeneration, int buffered, long reserved) {
+            this.frameGeneration = frameGeneration;
+            this.buffered = buffered;
+            this.reserved = reserved;
         }
 
-        public Bitmap getResource() {
-            return resource;
+        @Override
+        public void run() {
+            Frame frame = decodeFrame(frameGeneration, reserved);
+            handler.obtainMessage(FrameLoaderCallback.MSG_DECODED, frame).sendToTarget();
         }
 
         @Override
-        public void onResourceReady(Bitmap resource, GlideAnimation<? super Bitmap> glideAnimation) {
-            this.resource = resource;
-            Message msg = handler.obtainMessage(FrameLoaderCallback.MSG_DELAY, this);
-            handler.sendMessageAtTime(msg, targetTime);
+        public int getPriority() {
+            // GIFs that are about to run out of frames go first.
+            return buffered;
         }
     }
 
-    private static GenericRequestBuilder<GifDecoder, GifDecoder, Bitmap, Bitmap> getRequestBuilder(Context context,
-            GifDecoder gifDecoder, int width, int height, BitmapPool bitmapPool) {
-        GifFrameResourceDecoder frameResourceDecoder = new GifFrameResourceDecoder(bitmapPool);
-        GifFrameModelLoader frameLoader = new GifFrameModelLoader();
-        Encoder<GifDecoder> sourceEncoder = NullEncoder.get();
-        return Glide.with(context)
-                .using(frameLoader, GifDecoder.class)
-                .load(gifDecoder)
-                .as(Bitmap.class)
-                .sourceEncoder(sourceEncoder)
-                .decoder(frameResourceDecoder)
-                .skipMemoryCache(true)
-                .diskCacheStrategy(DiskCacheStrategy.NONE)
-                .override(width, height);
+    private class ReleaseDecoderTask implements Runnable, Prioritized {
+        @Override
+        public void run() {
+            // Decode tasks that start after this one see isCleared and leave the decoder alone.
+            gifDecoder.clear();
+        }
 
+        @Override
+        public int getPriority() {
+            // Nothing is waiting for the arrays, so anything else goes first.
+            return Integer.MAX_VALUE;
+        }
     }
 
-    // Visible for testing.
-    static class FrameSignature implements Key {
-        private final UUID uuid;
+    private class FrameLoaderCallback implements Handler.Callback {
+        public static final int MSG_FRAME_DUE = 1;
+        public static final int MSG_CLEAR = 2;
+        public static final int MSG_DECODED = 3;
 
-        public FrameSignature() {
-            this(UUID.randomUUID());
+        @Override
+        public boolean handleMessage(Message msg) {
+            if (msg.what == MSG_FRAME_DUE) {
+                onFrameDue();
+                return true;
+            } else if (msg.what == MSG_DECODED) {
+                onFrameDecoded((Frame) msg.obj);
+                return true;
+            } else if (msg.what == MSG_CLEAR) {
+                ((Frame) msg.obj).release();
+                return true;
+            }
+            return false;
         }
+    }
 
-        // VisibleForTesting.
-        FrameSignature(UUID uuid) {
-            this.uuid = uuid;
+    /**
+     * A decoded and transformed frame along with the share of the look ahead budget it holds. Its bitmap may be
+     * shared with other GIFs, so it must not be modified.
+     */
+    private class Frame {
+        final int generation;
+        final int index;
+        final int delay;
+        final Resource<Bitmap> resource;
+        // Set if the resource is shared through the frame cache.
+        private final GifFrameCache.Key cacheKey;
+        private long reserved;
+
+        Frame(int generation, int index, int delay, Resource<Bitmap> resource, GifFrameCache.Key cacheKey,
+                long reserved) {
+            this.generation = generation;
+            this.index = index;
+            this.delay = delay;
+            this.resource = resource;
+            this.cacheKey = cacheKey;
+            this.reserved = reserved;
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (o instanceof FrameSignature) {
-                FrameSignature other = (FrameSignature) o;
-                return other.uuid.equals(uuid);
+        void release() {
+            if (cacheKey != null) {
+                frameCache.release(cacheKey);
+            } else if (resource != null) {
+                resource.recycle();
             }
-            return false;
+            budget.release(reserved);
+            reserved = 0;
         }
+    }
 
-        @Override
-        public int hashCode() {
-            return uuid.hashCode();
+    /**
+     * Tracks the bytes of look ahead frames held by all GIFs.
+     */
+    private static class FrameBudget {
+        private long maxSize;
+        private long currentSize;
+
+        FrameBudget(long maxSize) {
+            this.maxSize = maxSize;
         }
 
-        @Override
-        public void updateDiskCacheKey(MessageDigest messageDigest) throws UnsupportedEncodingException {
-            throw new UnsupportedOperationException("Not implemented");
+        synchronized void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized boolean tryReserve(long bytes) {
+            if (currentSize + bytes > maxSize) {
+                return false;
+            }
+            currentSize += bytes;
+            return true;
+        }
+
+        synchronized void release(long bytes) {
+            currentSize = Math.max(0, currentSize - bytes);
         }
     }
 }
@@ -14,9 +14,9 @@ import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.resource.UnitTransformation;
 import com.bumptech.glide.util.Util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Queue;
 
 /**
@@ -54,7 +54,14 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifDrawa
 
     @Override
     public GifDrawableResource decode(InputStream source, int width, int height) {
-        byte[] data = inputStreamToBytes(source);
+        return decode(inputStreamToBuffer(source), width, height);
+    }
+
+    /**
+     * Decodes a {@link GifDrawable} that reads its frames directly from the given buffer, which may be a
+     * {@link java.nio.MappedByteBuffer}. The buffer is shared with the drawable and must not be modified afterwards.
+     */
+    public GifDrawableResource decode(ByteBuffer data, int width, int height) {
         final GifHeaderParser parser = parserPool.obtain(data);
         final GifDecoder decoder = decoderPool.obtain(provider);
         try {
@@ -65,14 +72,15 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifDrawa
         }
     }
 
-    private GifDrawableResource decode(byte[] data, int width, int height, GifHeaderParser parser, GifDecoder decoder) {
+    private GifDrawableResource decode(ByteBuffer data, int width, int height, GifHeaderParser parser, GifDecoder decoder) {
         final GifHeader header = parser.parseHeader();
         if (header.getNumFrames() <= 0 || header.getStatus() != GifDecoder.STATUS_OK) {
             // If we couldn't decode the GIF, we will end up with a frame count of 0.
             return null;
         }
 
-        Bitmap firstFrame = decodeFirstFrame(decoder, header, data);
+        int sampleSize = getSampleSize(header, width, height);
+        Bitmap firstFrame = decodeFirstFrame(decoder, header, data, sampleSize);
         if (firstFrame == null) {
             return null;
         }
@@ -80,13 +88,32 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifDrawa
         Transformation<Bitmap> unitTransformation = UnitTransformation.get();
 
         GifDrawable gifDrawable = new GifDrawable(context, provider, bitmapPool, unitTransformation, width, height,
-                header, data, firstFrame);
+                header, data, sampleSize, firstFrame);
 
         return new GifDrawableResource(gifDrawable);
     }
 
-    private Bitmap decodeFirstFrame(GifDecoder decoder, GifHeader header, byte[] data) {
-        decoder.setData(header, data);
+    /**
+     * Returns the largest power of two sample size that keeps the frames at least as large as the target, so list
+     * thumbnails don't pay for the full resolution of the GIF in memory and decode time.
+     */
+    // Visible for testing.
+    static int getSampleSize(GifHeader header, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            // Target.SIZE_ORIGINAL or an unknown size.
+            return 1;
+        }
+        int exactSampleSize = Math.min(header.getWidth() / targetWidth, header.getHeight() / targetHeight);
+        int sampleSize = exactSampleSize == 0 ? 1 : Integer.highestOneBit(exactSampleSize);
+        if (sampleSize > 1 && Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, "Downsampling gif, sampleSize: " + sampleSize + ", target: [" + targetWidth + "x"
+                    + targetHeight + "], actual: [" + header.getWidth() + "x" + header.getHeight() + "]");
+        }
+        return sampleSize;
+    }
+
+    private Bitmap decodeFirstFrame(GifDecoder decoder, GifHeader header, ByteBuffer data, int sampleSize) {
+        decoder.setData(header, data, sampleSize);
         decoder.advance();
         return decoder.getNextFrame();
     }
@@ -96,9 +123,10 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifDrawa
         return "";
     }
 
-    private static byte[] inputStreamToBytes(InputStream is) {
+    private static ByteBuffer inputStreamToBuffer(InputStream is) {
         final int bufferSize = 16384;
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bufferSize);
+        GifDecoder.ExposedByteArrayOutputStream buffer = new GifDecoder.ExposedByteArrayOutputStream(
+                initialCapacity(is, bufferSize));
         try {
             int nRead;
             byte[] data = new byte[bufferSize];
@@ -109,8 +137,21 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifDrawa
         } catch (IOException e) {
             Log.w(TAG, "Error reading data from stream", e);
         }
-        //TODO the returned byte[] may be partial if an IOException was thrown from read
-        return buffer.toByteArray();
+        //TODO the returned buffer may be partial if an IOException was thrown from read
+        return buffer.toByteBuffer();
+    }
+
+    /**
+     * Presizes the buffer from the stream's known length, which for cached files is the whole file, so that the bytes
+     * usually fit exactly and the buffer can be wrapped without copying.
+     */
+    private static int initialCapacity(InputStream is, int defaultSize) {
+        try {
+            int available = is.available();
+            return available > 0 ? available : defaultSize;
+        } catch (IOException e) {
+            return defaultSize;
+        }
     }
 
     // Visible for testing.
@@ -135,7 +176,7 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifDrawa
     static class GifHeaderParserPool {
         private final Queue<GifHeaderParser> pool = Util.createQueue(0);
 
-        public synchronized GifHeaderParser obtain(byte[] data) {
+        public synchronized GifHeaderParser obtain(ByteBuffer data) {
             GifHeaderParser result = pool.poll();
             if (result == null) {
                 result = new GifHeaderParser();
@@ -11,12 +11,18 @@ import com.bumptech.glide.load.ResourceEncoder;
 import com.bumptech.glide.load.Transformation;
 import com.bumptech.glide.load.engine.Resource;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.engine.executor.FifoPriorityThreadPoolExecutor;
 import com.bumptech.glide.load.resource.UnitTransformation;
 import com.bumptech.glide.load.resource.bitmap.BitmapResource;
 import com.bumptech.glide.util.LogTime;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An {@link ResourceEncoder} that can write
@@ -25,6 +31,11 @@ import java.io.OutputStream;
 public class GifResourceEncoder implements ResourceEncoder<GifDrawable> {
     private static final Factory FACTORY = new Factory();
     private static final String TAG = "GifEncoder";
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int ENCODE_THREADS = Math.max(1, Math.min(4,
+            Runtime.getRuntime().availableProcessors() - 1));
+    // Frames in flight hold their pixels, so keep just enough queued to keep every encode thread busy.
+    private static final int MAX_FRAMES_IN_FLIGHT = ENCODE_THREADS * 2;
     private final GifDecoder.BitmapProvider provider;
     private final BitmapPool bitmapPool;
     private final Factory factory;
@@ -47,11 +58,20 @@ public class GifResourceEncoder implements ResourceEncoder<GifDrawable> {
         GifDrawable drawable = resource.get();
         Transformation<Bitmap> transformation = drawable.getFrameTransformation();
         if (transformation instanceof UnitTransformation) {
-            return writeDataDirect(drawable.getData(), os);
+            return writeDataDirect(drawable.getDataBuffer(), os);
         }
 
-        GifDecoder decoder = decodeHeaders(drawable.getData());
+        GifDecoder decoder = decodeHeaders(drawable.getDataBuffer());
+        try {
+            return encodeFrames(decoder, drawable, transformation, os, startTime);
+        } finally {
+            // Hands the decoder's scratch arrays back to the pool.
+            decoder.clear();
+        }
+    }
 
+    private boolean encodeFrames(GifDecoder decoder, GifDrawable drawable, Transformation<Bitmap> transformation,
+            OutputStream os, long startTime) {
         AnimatedGifEncoder encoder = factory.buildEncoder();
         if (!encoder.start(os)) {
             return false;
@@ -77,17 +97,29 @@ public class GifResourceEncoder implements ResourceEncoder<GifDrawable> {
         boolean result = encoder.finish();
 
         if (Log.isLoggable(TAG, Log.VERBOSE)) {
-            Log.v(TAG, "Encoded gif with " + decoder.getFrameCount() + " frames and " + drawable.getData().length
-                    + " bytes in " + LogTime.getElapsedMillis(startTime) + " ms");
+            Log.v(TAG, "Encoded gif with " + decoder.getFrameCount() + " frames and "
+                    + drawable.getDataBuffer().capacity() + " bytes in " + LogTime.getElapsedMillis(startTime)
+                    + " ms");
         }
 
         return result;
     }
 
-    private boolean writeDataDirect(byte[] data, OutputStream os) {
+    private boolean writeDataDirect(ByteBuffer data, OutputStream os) {
         boolean success = true;
         try {
-            os.write(data);
+            if (data.hasArray()) {
+                os.write(data.array(), data.arrayOffset(), data.capacity());
+            } else {
+                ByteBuffer view = data.duplicate();
+                view.rewind();
+                byte[] buffer = new byte[Math.min(view.remaining(), WRITE_BUFFER_SIZE)];
+                while (view.hasRemaining()) {
+                    int count = Math.min(view.remaining(), buffer.length);
+                    view.get(buffer, 0, count);
+                    os.write(buffer, 0, count);
+                }
+            }
         } catch (IOException e) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "Failed to write data to output stream in GifResourceEncoder", e);
@@ -97,7 +129,7 @@ public class GifResourceEncoder implements ResourceEncoder<GifDrawable> {
         return success;
     }
 
-    private GifDecoder decodeHeaders(byte[] data) {
+    private GifDecoder decodeHeaders(ByteBuffer data) {
         GifHeaderParser parser = factory.buildParser();
         parser.setData(data);
         GifHeader header = parser.parseHeader();
@@ -128,6 +160,7 @@ public class GifResourceEncoder implements ResourceEncoder<GifDrawable> {
 
     // Visible for testing.
     static class Factory {
+        private static ExecutorService encodeExecutor;
 
         public GifDecoder buildDecoder(GifDecoder.BitmapProvider bitmapProvider) {
             return new GifDecoder(bitmapProvider);
@@ -138,7 +171,23 @@ public class GifResourceEncoder implements ResourceEncoder<GifDrawable> {
         }
 
         public AnimatedGifEncoder buildEncoder() {
-            return new AnimatedGifEncoder();
+            AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+            encoder.setExecutor(getEncodeExecutor(), MAX_FRAMES_IN_FLIGHT);
+            encoder.setFrameDifferencing(true);
+            return encoder;
+        }
+
+        private static synchronized ExecutorService getEncodeExecutor() {
+            if (encodeExecutor == null) {
+                // Frames are encoded as Callables, which FifoPriorityThreadPoolExecutor can't order, so use a plain
+                // fixed size pool with the same background priority threads.
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(ENCODE_THREADS, ENCODE_THREADS, 30,
+                        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new FifoPriorityThreadPoolExecutor.DefaultThreadFactory());
+                executor.allowCoreThreadTimeOut(true);
+                encodeExecutor = executor;
+            }
+            return encodeExecutor;
         }
 
         public Resource<Bitmap> buildFrameResource(Bitmap bitmap, BitmapPool bitmapPool) {
@@ -0,0 +1,132 @@
+package com.bumptech.glide.load.resource.gif;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import com.bumptech.glide.util.Util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A pool for the scratch arrays {@link com.bumptech.glide.gifdecoder.GifDecoder} needs to decode frames, keyed by their
+ * exact length. Most of those arrays are the size of the GIF's canvas, so GIFs of the same dimensions shown one after
+ * another in a list reuse them instead of allocating new ones for every decoder.
+ */
+public final class GifScratchArrayPool {
+    private static final String TAG = "GifScratchArrayPool";
+    // 4 MB, enough for the scratch arrays of a handful of large GIFs.
+    private static final int MAX_SIZE = 4 * 1024 * 1024;
+    private static final GifScratchArrayPool POOL = new GifScratchArrayPool();
+
+    private final Map<Integer, Queue<byte[]>> byteArrays = new HashMap<Integer, Queue<byte[]>>();
+    private final Map<Integer, Queue<int[]>> intArrays = new HashMap<Integer, Queue<int[]>>();
+    private int currentSize;
+
+    /**
+     * Returns the pool shared by all GIF decoders.
+     */
+    public static GifScratchArrayPool get() {
+        return POOL;
+    }
+
+    private GifScratchArrayPool() {  }
+
+    /**
+     * Returns a byte array of exactly the given length. Arrays from the pool are not cleared.
+     */
+    public byte[] getBytes(int length) {
+        byte[] result = null;
+        synchronized (this) {
+            Queue<byte[]> queue = byteArrays.get(length);
+            if (queue != null) {
+                result = queue.poll();
+            }
+            if (result != null) {
+                currentSize -= length;
+            }
+        }
+        if (result == null) {
+            result = new byte[length];
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "Created byte array of length " + length);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an int array of exactly the given length. Arrays from the pool are not cleared.
+     */
+    public int[] getInts(int length) {
+        int[] result = null;
+        synchronized (this) {
+            Queue<int[]> queue = intArrays.get(length);
+            if (queue != null) {
+                result = queue.poll();
+            }
+            if (result != null) {
+                currentSize -= length * 4;
+            }
+        }
+        if (result == null) {
+            result = new int[length];
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "Created int array of length " + length);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given array to the pool unless that would make the pool larger than its maximum size.
+     */
+    public synchronized void put(byte[] bytes) {
+        if (currentSize + bytes.length > MAX_SIZE) {
+            return;
+        }
+        Queue<byte[]> queue = byteArrays.get(bytes.length);
+        if (queue == null) {
+            queue = Util.createQueue(0);
+            byteArrays.put(bytes.length, queue);
+        }
+        queue.offer(bytes);
+        currentSize += bytes.length;
+    }
+
+    /**
+     * Adds the given array to the pool unless that would make the pool larger than its maximum size.
+     */
+    public synchronized void put(int[] ints) {
+        int size = ints.length * 4;
+        if (currentSize + size > MAX_SIZE) {
+            return;
+        }
+        Queue<int[]> queue = intArrays.get(ints.length);
+        if (queue == null) {
+            queue = Util.createQueue(0);
+            intArrays.put(ints.length, queue);
+        }
+        queue.offer(ints);
+        currentSize += size;
+    }
+
+    /**
+     * Removes all arrays from the pool.
+     */
+    public synchronized void clear() {
+        byteArrays.clear();
+        intArrays.clear();
+        currentSize = 0;
+    }
+
+    /**
+     * Removes all arrays from the pool once the app is in the background or memory is running low.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        }
+    }
+}
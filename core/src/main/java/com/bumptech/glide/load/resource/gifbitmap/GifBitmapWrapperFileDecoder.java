@@ -0,0 +1,67 @@
+package com.bumptech.glide.load.resource.gifbitmap;
+
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.ImageHeaderParser;
+import com.bumptech.glide.load.resource.gif.GifDrawable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link ResourceDecoder} that decodes {@link GifBitmapWrapper} from cached files. Animated GIFs are handed to a
+ * file based GIF decoder so they can be memory mapped, everything else goes through the given stream based decoder.
+ */
+public class GifBitmapWrapperFileDecoder implements ResourceDecoder<File, GifBitmapWrapper> {
+    // Enough for the header parser to recognize a GIF, see GifBitmapWrapperResourceDecoder#MARK_LIMIT_BYTES.
+    private static final int HEADER_BUFFER_SIZE = 64;
+
+    private final ResourceDecoder<File, GifDrawable> gifFileDecoder;
+    private final ResourceDecoder<File, GifBitmapWrapper> fallbackDecoder;
+    private final BitmapPool bitmapPool;
+
+    public GifBitmapWrapperFileDecoder(ResourceDecoder<File, GifDrawable> gifFileDecoder,
+            ResourceDecoder<File, GifBitmapWrapper> fallbackDecoder, BitmapPool bitmapPool) {
+        this.gifFileDecoder = gifFileDecoder;
+        this.fallbackDecoder = fallbackDecoder;
+        this.bitmapPool = bitmapPool;
+    }
+
+    @Override
+    public Resource<GifBitmapWrapper> decode(File source, int width, int height) throws IOException {
+        if (isGif(source)) {
+            GifBitmapWrapper wrapper = GifBitmapWrapperResourceDecoder.wrapGif(
+                    gifFileDecoder.decode(source, width, height), bitmapPool);
+            if (wrapper != null) {
+                return new GifBitmapWrapperResource(wrapper);
+            }
+        }
+        // Decoding the gif may fail even if the type matches.
+        return fallbackDecoder.decode(source, width, height);
+    }
+
+    private static boolean isGif(File file) throws IOException {
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(new FileInputStream(file), HEADER_BUFFER_SIZE);
+            return new ImageHeaderParser(is).getType() == ImageHeaderParser.ImageType.GIF;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getId() {
+        return fallbackDecoder.getId();
+    }
+}
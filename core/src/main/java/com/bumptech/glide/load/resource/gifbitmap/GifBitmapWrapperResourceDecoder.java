@@ -97,8 +97,12 @@ public class GifBitmapWrapperResourceDecoder implements ResourceDecoder<ImageVid
     }
 
     private GifBitmapWrapper decodeGifWrapper(InputStream bis, int width, int height) throws IOException {
+        return wrapGif(gifDecoder.decode(bis, width, height), bitmapPool);
+    }
+
+    // Shared with GifBitmapWrapperFileDecoder.
+    static GifBitmapWrapper wrapGif(Resource<GifDrawable> gifResource, BitmapPool bitmapPool) {
         GifBitmapWrapper result = null;
-        Resource<GifDrawable> gifResource = gifDecoder.decode(bis, width, height);
         if (gifResource != null) {
             GifDrawable drawable = gifResource.get();
             // We can more efficiently hold Bitmaps in memory, so for static GIFs, try to return Bitmaps
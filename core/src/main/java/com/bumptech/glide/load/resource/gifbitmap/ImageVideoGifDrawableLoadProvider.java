@@ -33,7 +33,13 @@ public class ImageVideoGifDrawableLoadProvider implements DataLoadProvider<Image
                 gifProvider.getSourceDecoder(),
                 bitmapPool
         );
-        cacheDecoder = new FileToStreamDecoder<GifBitmapWrapper>(new GifBitmapWrapperStreamResourceDecoder(decoder));
+        final ResourceDecoder<File, GifBitmapWrapper> streamCacheDecoder =
+                new FileToStreamDecoder<GifBitmapWrapper>(new GifBitmapWrapperStreamResourceDecoder(decoder));
+        // Map cached GIFs instead of reading them onto the heap when the gif provider supports it.
+        final ResourceDecoder<File, GifDrawable> gifCacheDecoder = gifProvider.getCacheDecoder();
+        cacheDecoder = gifCacheDecoder != null
+                ? new GifBitmapWrapperFileDecoder(gifCacheDecoder, streamCacheDecoder, bitmapPool)
+                : streamCacheDecoder;
         sourceDecoder = decoder;
         encoder = new GifBitmapWrapperResourceEncoder(bitmapProvider.getEncoder(), gifProvider.getEncoder());
 
@@ -48,6 +48,8 @@ public class GifFun {
 
     private static int loginType = -1;
 
+    private static volatile int loginStateVersion;
+
     public static String BASE_URL = isDebug ? "http://192.168.31.177:3000" : "http://api.quxianggif.com";
 
     public static final int GIF_MAX_SIZE = 20 * 1024 * 1024;
@@ -137,6 +139,14 @@ public class GifFun {
         return loginType;
     }
 
+    /**
+     * 获取登录状态的版本号，每次刷新登录状态之后都会加1，可以用于判断缓存的用户身份信息是否已经过期。
+     * @return 登录状态的版本号。
+     */
+    public static int getLoginStateVersion() {
+        return loginStateVersion;
+    }
+
     /**
      * 刷新用户的登录状态。
      */
@@ -150,6 +160,7 @@ public class GifFun {
             token = t;
             loginType = lt;
         }
+        loginStateVersion++;
     }
 
 }
\ No newline at end of file
@@ -37,6 +37,12 @@ private const val NOTHING = 6
 //    private val level = VERBOSE;
 private val level = if (GifFun.isDebug) VERBOSE else WARN
 
+/**
+ * 当前是否会输出VERBOSE级别的日志。用于在拼装日志内容本身代价比较高的时候提前做判断。
+ */
+val isVerboseLoggable: Boolean
+    get() = level <= VERBOSE
+
 fun Any.logVerbose(msg: String?) {
     if (level <= VERBOSE) {
         Log.v(javaClass.simpleName, msg.toString())
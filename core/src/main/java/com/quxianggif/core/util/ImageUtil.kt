@@ -23,7 +23,7 @@ import android.graphics.Bitmap
 import android.net.Uri
 import android.provider.MediaStore
 import com.bumptech.glide.gifdecoder.GifDecoder
-import com.bumptech.glide.gifdecoder.GifHeaderParser
+import com.bumptech.glide.gifdecoder.StreamGifHeaderParser
 import com.bumptech.glide.load.resource.bitmap.ImageHeaderParser
 import com.quxianggif.core.GifFun
 import com.quxianggif.core.extension.logDebug
@@ -84,8 +84,11 @@ object ImageUtil {
      */
     fun isGifValid(imagePath: String): Boolean {
         return try {
-            val gifHeader = GifHeaderParser().setData(getGifBytes(imagePath)).parseHeader()
-            gifHeader.status == GifDecoder.STATUS_OK
+            // 使用流式解析，只读取描述GIF结构的数据块，不需要将整张图片加载到内存当中
+            FileInputStream(imagePath).use {
+                val gifHeader = StreamGifHeaderParser().setData(it).parseHeader()
+                gifHeader.status == GifDecoder.STATUS_OK
+            }
         } catch (e: Exception) {
             false
         }
@@ -161,32 +164,4 @@ object ImageUtil {
         return uri
     }
 
-    private fun getGifBytes(imagePath: String): ByteArray {
-        var fis: FileInputStream? = null
-        val bufferSize = 16384
-        val buffer = ByteArrayOutputStream(bufferSize)
-        try {
-            val file = File(imagePath)
-            fis = FileInputStream(file)
-            val data = ByteArray(bufferSize)
-            var bytes = fis.read(data)
-            while (bytes >= 0) {
-                buffer.write(data, 0, bytes)
-                bytes = fis.read(data)
-            }
-        } catch (e: Exception) {
-            logWarn(TAG, e.message.toString(), e)
-        } finally {
-            try {
-                if (fis != null) {
-                    fis.close()
-                }
-            } catch (e: IOException) {
-                logWarn(TAG, e.message.toString(), e)
-            }
-
-        }
-        return buffer.toByteArray()
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.core.util;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import com.quxianggif.core.GifFun;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 带内存快照的设置存储，是SharedUtil的底层实现。
+ *
+ * 第一次使用时会将默认SharedPreferences文件中的所有值读取到内存中，之后的读取都只是一次内存中的查找。写入会同时更新内存快照
+ * 和SharedPreferences，并立即调用apply()，因此写入之后进程即使被杀掉也不会丢失修改（系统会在onPause/onStop时等待apply()
+ * 写完磁盘）。连续的多次写入可以放到{@link #batch(Runnable)}中，合并成一次Editor提交。SharedPreferences自身也会把短时间内
+ * 的多次apply()合并成一次磁盘写入。其它地方直接写入SharedPreferences的修改（比如设置界面）也会同步到内存快照中。
+ *
+ * 可以通过{@link #addListener(OnSettingChangeListener)}监听设置的变化，回调都在主线程中执行。
+ */
+public class SettingsStore {
+
+    /**
+     * 在快照的修改中表示删除某个键。
+     */
+    private static final Object REMOVED = new Object();
+
+    private static volatile SettingsStore instance;
+
+    private final SharedPreferences prefs;
+
+    private final Map<String, Object> snapshot = new ConcurrentHashMap<>();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final List<OnSettingChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object lock = new Object();
+
+    /**
+     * 当前批量写入使用的Editor，不在批量写入中时为null，由lock保护。
+     */
+    private SharedPreferences.Editor batchEditor;
+
+    /**
+     * 当前批量写入中修改过的键，由lock保护。
+     */
+    private final Set<String> batchKeys = new LinkedHashSet<>();
+
+    /**
+     * SharedPreferences只持有监听器的弱引用，因此这里必须保存一个强引用。
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    if (key == null) {
+                        // Android 11开始清空SharedPreferences时会回调null
+                        onPreferencesCleared();
+                    } else {
+                        onPreferenceChanged(key);
+                    }
+                }
+            };
+
+    /**
+     * 设置变化的监听器。
+     */
+    public interface OnSettingChangeListener {
+
+        /**
+         * 当设置发生变化时在主线程中回调。
+         * @param key
+         *          发生变化的键，清空所有设置时为null。
+         */
+        void onSettingChanged(String key);
+    }
+
+    private SettingsStore(SharedPreferences prefs) {
+        this.prefs = prefs;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getValue() != null) {
+                snapshot.put(entry.getKey(), entry.getValue());
+            }
+        }
+        prefs.registerOnSharedPreferenceChangeListener(preferenceListener);
+    }
+
+    /**
+     * 获取SettingsStore的实例，第一次调用时会读取默认SharedPreferences文件中的所有值。
+     */
+    public static SettingsStore getInstance() {
+        if (instance == null) {
+            synchronized (SettingsStore.class) {
+                if (instance == null) {
+                    instance = new SettingsStore(PreferenceManager.getDefaultSharedPreferences(GifFun.getContext()));
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = snapshot.get(key);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    public float getFloat(String key, float defValue) {
+        Object value = snapshot.get(key);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    public int getInt(String key, int defValue) {
+        Object value = snapshot.get(key);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    public long getLong(String key, long defValue) {
+        Object value = snapshot.get(key);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    public String getString(String key, String defValue) {
+        Object value = snapshot.get(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    public boolean contains(String key) {
+        return snapshot.containsKey(key);
+    }
+
+    public void put(String key, boolean value) {
+        write(key, value);
+    }
+
+    public void put(String key, float value) {
+        write(key, value);
+    }
+
+    public void put(String key, int value) {
+        write(key, value);
+    }
+
+    public void put(String key, long value) {
+        write(key, value);
+    }
+
+    /**
+     * 存储String类型的值，和SharedPreferences一样，value为null时相当于删除这个键。
+     */
+    public void put(String key, String value) {
+        write(key, value == null ? REMOVED : value);
+    }
+
+    /**
+     * 删除指定的键。
+     */
+    public void remove(String key) {
+        write(key, REMOVED);
+    }
+
+    /**
+     * 删除所有的设置。
+     */
+    public void clear() {
+        synchronized (lock) {
+            snapshot.clear();
+            if (batchEditor != null) {
+                // Editor总是先执行clear()再执行其它修改，所以要丢掉这次批量写入中之前的修改
+                batchEditor = prefs.edit().clear();
+            } else {
+                prefs.edit().clear().apply();
+            }
+        }
+        notifyListeners(null);
+    }
+
+    /**
+     * 执行writes中的所有写入，并把它们合并成一次Editor提交。writes执行期间其它线程的写入会等待。
+     */
+    public void batch(Runnable writes) {
+        List<String> keys;
+        synchronized (lock) {
+            if (batchEditor != null) {
+                // 已经在批量写入中了，直接合并到外层
+                writes.run();
+                return;
+            }
+            batchEditor = prefs.edit();
+            try {
+                writes.run();
+            } finally {
+                batchEditor.apply();
+                batchEditor = null;
+                keys = new ArrayList<>(batchKeys);
+                batchKeys.clear();
+            }
+        }
+        for (String key : keys) {
+            notifyListeners(key);
+        }
+    }
+
+    public void addListener(OnSettingChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(OnSettingChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void write(String key, Object value) {
+        synchronized (lock) {
+            Object old = value == REMOVED ? snapshot.remove(key) : snapshot.put(key, value);
+            if (value.equals(old) || (value == REMOVED && old == null)) {
+                return;
+            }
+            SharedPreferences.Editor editor = batchEditor != null ? batchEditor : prefs.edit();
+            if (value == REMOVED) {
+                editor.remove(key);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(key, (Float) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else if (value instanceof String) {
+                editor.putString(key, (String) value);
+            }
+            if (batchEditor != null) {
+                batchKeys.add(key);
+                return;
+            }
+            // apply()会立即更新SharedPreferences的内存状态，磁盘写入在后台完成
+            editor.apply();
+        }
+        notifyListeners(key);
+    }
+
+    /**
+     * 同步SharedPreferences中某个键的变化。快照中的值和SharedPreferences中的一致时，说明这是自己写入的回调，或者
+     * 已经被之后的写入覆盖了，直接忽略；否则是其它地方写入的，更新快照并通知监听器。
+     */
+    private void onPreferenceChanged(String key) {
+        synchronized (lock) {
+            if (batchEditor != null && batchKeys.contains(key)) {
+                // 批量写入结束时会把这个键提交上去
+                return;
+            }
+            Object ours = snapshot.get(key);
+            if (matchesPreference(key, ours)) {
+                return;
+            }
+            Object value = prefs.getAll().get(key);
+            if (value == null) {
+                snapshot.remove(key);
+            } else {
+                snapshot.put(key, value);
+            }
+        }
+        notifyListeners(key);
+    }
+
+    private void onPreferencesCleared() {
+        synchronized (lock) {
+            Map<String, ?> all = prefs.getAll();
+            if (snapshot.isEmpty() && all.isEmpty()) {
+                return;
+            }
+            snapshot.clear();
+            for (Map.Entry<String, ?> entry : all.entrySet()) {
+                if (entry.getValue() != null) {
+                    snapshot.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        notifyListeners(null);
+    }
+
+    /**
+     * 判断SharedPreferences中key的值是否和value相同，value为null表示这个键不存在。按value的类型读取，避免每次回调都
+     * 复制一遍getAll()。
+     */
+    private boolean matchesPreference(String key, Object value) {
+        if (value == null) {
+            return !prefs.contains(key);
+        }
+        if (!prefs.contains(key)) {
+            return false;
+        }
+        try {
+            if (value instanceof Boolean) {
+                return value.equals(prefs.getBoolean(key, false));
+            } else if (value instanceof Float) {
+                return value.equals(prefs.getFloat(key, 0));
+            } else if (value instanceof Integer) {
+                return value.equals(prefs.getInt(key, 0));
+            } else if (value instanceof Long) {
+                return value.equals(prefs.getLong(key, 0));
+            } else if (value instanceof String) {
+                return value.equals(prefs.getString(key, null));
+            }
+        } catch (ClassCastException e) {
+            // 其它地方写入了不同类型的值
+        }
+        return false;
+    }
+
+    private void notifyListeners(final String key) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            for (OnSettingChangeListener listener : listeners) {
+                listener.onSettingChanged(key);
+            }
+        } else {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (OnSettingChangeListener listener : new ArrayList<>(listeners)) {
+                        listener.onSettingChanged(key);
+                    }
+                }
+            });
+        }
+    }
+
+}
@@ -17,14 +17,12 @@
 
 package com.quxianggif.core.util;
 
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
-
-import com.quxianggif.core.GifFun;
-
 /**
  * SharedPreferences工具类，提供简单的封装接口，简化SharedPreferences的用法。
  *
+ * 所有的读写都通过{@link SettingsStore}完成，读取的是内存中的快照，写入会同时更新内存快照，并通过apply()提交到
+ * SharedPreferences文件当中。
+ *
  * @author guolin
  * @since 17/2/15
  */
@@ -38,10 +36,7 @@ public class SharedUtil {
      *          存储的值
      */
     public static void save(String key, boolean value) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(
-                GifFun.getContext()).edit();
-        editor.putBoolean(key, value);
-        editor.apply();
+        SettingsStore.getInstance().put(key, value);
     }
 
     /**
@@ -52,10 +47,7 @@ public class SharedUtil {
      *          存储的值
      */
     public static void save(String key, float value) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(
-                GifFun.getContext()).edit();
-        editor.putFloat(key, value);
-        editor.apply();
+        SettingsStore.getInstance().put(key, value);
     }
 
     /**
@@ -66,10 +58,7 @@ public class SharedUtil {
      *          存储的值
      */
     public static void save(String key, int value) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(
-                GifFun.getContext()).edit();
-        editor.putInt(key, value);
-        editor.apply();
+        SettingsStore.getInstance().put(key, value);
     }
 
     /**
@@ -80,10 +69,7 @@ public class SharedUtil {
      *          存储的值
      */
     public static void save(String key, long value) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(
-                GifFun.getContext()).edit();
-        editor.putLong(key, value);
-        editor.apply();
+        SettingsStore.getInstance().put(key, value);
     }
 
     /**
@@ -94,10 +80,7 @@ public class SharedUtil {
      *          存储的值
      */
     public static void save(String key, String value) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(
-                GifFun.getContext()).edit();
-        editor.putString(key, value);
-        editor.apply();
+        SettingsStore.getInstance().put(key, value);
     }
 
     /**
@@ -109,8 +92,7 @@ public class SharedUtil {
      * @return boolean类型的值，如果读取不到，则返回默认值
      */
     public static boolean read(String key, boolean defValue) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(GifFun.getContext());
-        return prefs.getBoolean(key, defValue);
+        return SettingsStore.getInstance().getBoolean(key, defValue);
     }
 
     /**
@@ -122,8 +104,7 @@ public class SharedUtil {
      * @return float类型的值，如果读取不到，则返回默认值
      */
     public static float read(String key, float defValue) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(GifFun.getContext());
-        return prefs.getFloat(key, defValue);
+        return SettingsStore.getInstance().getFloat(key, defValue);
     }
 
     /**
@@ -135,8 +116,7 @@ public class SharedUtil {
      * @return int类型的值，如果读取不到，则返回默认值
      */
     public static int read(String key, int defValue) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(GifFun.getContext());
-        return prefs.getInt(key, defValue);
+        return SettingsStore.getInstance().getInt(key, defValue);
     }
 
     /**
@@ -148,8 +128,7 @@ public class SharedUtil {
      * @return long类型的值，如果读取不到，则返回默认值
      */
     public static long read(String key, long defValue) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(GifFun.getContext());
-        return prefs.getLong(key, defValue);
+        return SettingsStore.getInstance().getLong(key, defValue);
     }
 
     /**
@@ -161,8 +140,7 @@ public class SharedUtil {
      * @return String类型的值，如果读取不到，则返回默认值
      */
     public static String read(String key, String defValue) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(GifFun.getContext());
-        return prefs.getString(key, defValue);
+        return SettingsStore.getInstance().getString(key, defValue);
     }
 
     /**
@@ -172,8 +150,7 @@ public class SharedUtil {
      * @return 键已存在返回true，否则返回false。
      */
     public static boolean contains(String key) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(GifFun.getContext());
-        return prefs.contains(key);
+        return SettingsStore.getInstance().contains(key);
     }
 
     /**
@@ -182,20 +159,14 @@ public class SharedUtil {
      *          想要清除的键
      */
     public static void clear(String key) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(
-                GifFun.getContext()).edit();
-        editor.remove(key);
-        editor.apply();
+        SettingsStore.getInstance().remove(key);
     }
 
     /**
      * 将SharedPreferences文件中存储的所有值清除。
      */
     public static void clearAll() {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(
-                GifFun.getContext()).edit();
-        editor.clear();
-        editor.apply();
+        SettingsStore.getInstance().clear();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bumptech.glide.disklrucache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(JUnit4.class)
+public final class SegmentedDiskLruCacheTest {
+  private static final int APP_VERSION = 100;
+  private static final int BENCHMARK_KEY_COUNT = 200;
+
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  private File cacheDir;
+  private SegmentedDiskLruCache cache;
+
+  @Before public void setUp() throws Exception {
+    cacheDir = tempDir.newFolder("SegmentedDiskLruCacheTest");
+  }
+
+  @After public void tearDown() throws Exception {
+    if (cache != null) {
+      cache.close();
+    }
+  }
+
+  @Test public void journalRoundTrip() throws Exception {
+    cache = open(2, Long.MAX_VALUE, 4);
+    set("k1", "a", "bb");
+    set("k2", "ccc", "dddd");
+    set("k3", "e", "f");
+    set("k2", "gg", "hhh");
+    assertTrue(cache.remove("k3"));
+    assertNotNull(cache.get("k1"));
+    cache.close();
+
+    cache = open(2, Long.MAX_VALUE, 4);
+    assertValue("k1", "a", "bb");
+    assertValue("k2", "gg", "hhh");
+    assertAbsent("k3");
+    assertEquals(3, cache.getLength("k1"));
+    assertEquals(5, cache.getLength("k2"));
+    assertEquals(-1, cache.getLength("k3"));
+    assertEquals(8, cache.size());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(new File(cacheDir, SegmentedDiskLruCache.JOURNAL_FILE_PREFIX + i).exists());
+    }
+  }
+
+  @Test public void journalRoundTripKeepsLruOrder() throws Exception {
+    cache = open(1, 30, 1);
+    set("a", "0123456789");
+    set("b", "0123456789");
+    set("c", "0123456789");
+    // Make "a" the most recently used entry, so "b" is the eldest.
+    assertNotNull(cache.get("a"));
+    cache.close();
+
+    cache = open(1, 30, 1);
+    set("d", "0123456789");
+    cache.flush();
+    assertAbsent("b");
+    assertValue("a", "0123456789");
+    assertValue("c", "0123456789");
+    assertValue("d", "0123456789");
+  }
+
+  @Test public void openWithDirtyEntryDeletesIt() throws Exception {
+    cache = open(1, Long.MAX_VALUE, 1);
+    set("k1", "a");
+    SegmentedDiskLruCache.Editor editor = cache.edit("k2");
+    writeFile(editor.getFile(0), "b");
+    // Simulate a crash while the edit is in progress: reopen without closing, which would abort it.
+    cache.flush();
+    cache = open(1, Long.MAX_VALUE, 1);
+
+    assertValue("k1", "a");
+    assertAbsent("k2");
+    assertFalse(new File(cacheDir, "k2.0.tmp").exists());
+  }
+
+  @Test public void truncatedRecordIsDroppedAndJournalRewritten() throws Exception {
+    cache = open(1, Long.MAX_VALUE, 1);
+    set("k1", "a");
+    set("k2", "bb");
+    cache.close();
+    File journal = new File(cacheDir, SegmentedDiskLruCache.JOURNAL_FILE_PREFIX + 0);
+    // Cut the last CLEAN record for "k2" in half, leaving only its DIRTY record intact.
+    truncate(journal, journal.length() - 4);
+
+    cache = open(1, Long.MAX_VALUE, 1);
+    assertValue("k1", "a");
+    assertAbsent("k2");
+    assertFalse(new File(cacheDir, "k2.0").exists());
+
+    // The rewritten journal can be appended to and read again.
+    set("k3", "ccc");
+    cache.close();
+    cache = open(1, Long.MAX_VALUE, 1);
+    assertValue("k1", "a");
+    assertValue("k3", "ccc");
+    assertEquals(4, cache.size());
+  }
+
+  @Test public void truncatedHeaderRebuildsFromFiles() throws Exception {
+    cache = open(1, Long.MAX_VALUE, 1);
+    set("k1", "a");
+    set("k2", "bb");
+    cache.close();
+    truncate(new File(cacheDir, SegmentedDiskLruCache.JOURNAL_FILE_PREFIX + 0), 6);
+
+    cache = open(1, Long.MAX_VALUE, 1);
+    assertValue("k1", "a");
+    assertValue("k2", "bb");
+    assertEquals(3, cache.size());
+  }
+
+  @Test public void changedSegmentCountRebuildsFromFiles() throws Exception {
+    cache = open(1, Long.MAX_VALUE, 2);
+    set("k1", "a");
+    set("k2", "bb");
+    cache.close();
+
+    cache = open(1, Long.MAX_VALUE, 3);
+    assertValue("k1", "a");
+    assertValue("k2", "bb");
+    assertEquals(3, cache.size());
+  }
+
+  @Test public void opensDirectoryWrittenByDiskLruCache() throws Exception {
+    DiskLruCache old = DiskLruCache.open(cacheDir, APP_VERSION, 2, Long.MAX_VALUE);
+    DiskLruCache.Editor editor = old.edit("k1");
+    editor.set(0, "a");
+    editor.set(1, "bb");
+    editor.commit();
+    editor = old.edit("k2");
+    editor.set(0, "ccc");
+    editor.set(1, "dddd");
+    editor.commit();
+    // An edit that never completed leaves a dirty file behind.
+    editor = old.edit("k3");
+    editor.set(0, "e");
+    old.flush();
+    // An entry that lost one of its values.
+    writeFile(new File(cacheDir, "k4.0"), "f");
+    old.close();
+    assertTrue(new File(cacheDir, DiskLruCache.JOURNAL_FILE).exists());
+
+    cache = open(2, Long.MAX_VALUE, 4);
+    assertValue("k1", "a", "bb");
+    assertValue("k2", "ccc", "dddd");
+    assertAbsent("k3");
+    assertAbsent("k4");
+    assertEquals(10, cache.size());
+    assertFalse(new File(cacheDir, DiskLruCache.JOURNAL_FILE).exists());
+    assertFalse(new File(cacheDir, "k3.0.tmp").exists());
+    assertFalse(new File(cacheDir, "k4.0").exists());
+
+    // The rebuilt journals are read back on the next open.
+    cache.close();
+    cache = open(2, Long.MAX_VALUE, 4);
+    assertValue("k1", "a", "bb");
+    assertValue("k2", "ccc", "dddd");
+  }
+
+  @Test public void evictionIsPerSegment() throws Exception {
+    // Each segment may hold 100 bytes.
+    cache = open(1, 200, 2);
+    List<String> first = keysInSegment(0, 2, 3);
+    List<String> second = keysInSegment(1, 2, 2);
+    String value = "0123456789012345678901234567890123456789";
+    set(first.get(0), value);
+    set(first.get(1), value);
+    set(second.get(0), value);
+    set(second.get(1), value);
+    // Make the eldest entry of the first segment the most recently used.
+    assertNotNull(cache.get(first.get(0)));
+    // 200 bytes in total, the cache as a whole isn't over its limit, but the first segment is.
+    set(first.get(2), value);
+    cache.flush();
+
+    assertValue(first.get(0), value);
+    assertAbsent(first.get(1));
+    assertValue(first.get(2), value);
+    assertValue(second.get(0), value);
+    assertValue(second.get(1), value);
+    assertEquals(160, cache.size());
+  }
+
+  @Test public void evictionRunsInBackground() throws Exception {
+    cache = open(1, 20, 1);
+    set("a", "0123456789");
+    set("b", "0123456789");
+    set("c", "0123456789");
+    awaitBackgroundTasks();
+
+    assertAbsent("a");
+    assertEquals(20, cache.size());
+  }
+
+  @Test public void commitsDuringCompactionAreKept() throws Exception {
+    cache = open(1, Long.MAX_VALUE, 1);
+    // Enough entries that writing the compacted journal to disk takes a while.
+    final int baseCount = 5000;
+    for (int i = 0; i < baseCount; i++) {
+      set("base" + i, "a");
+    }
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicInteger committed = new AtomicInteger();
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    Thread writer = new Thread() {
+      @Override public void run() {
+        try {
+          while (!stop.get()) {
+            set("race" + committed.get(), "b");
+            committed.incrementAndGet();
+          }
+        } catch (Exception e) {
+          failure.set(e);
+        }
+      }
+    };
+    writer.start();
+    // Reads are redundant journal records, enough of them schedule a compaction on the background
+    // thread while the writer keeps committing, so its commits are appended to the compaction's
+    // tail. Stop as soon as that compaction finishes, a later one would rewrite the whole journal
+    // from memory and hide records lost from the tail.
+    long completedTasks = cache.executorService.getCompletedTaskCount();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    int reads = 0;
+    while (cache.executorService.getCompletedTaskCount() == completedTasks) {
+      assertTrue("journal was never compacted", System.nanoTime() < deadline);
+      assertNotNull(cache.get("base" + (reads++ % baseCount)));
+    }
+    stop.set(true);
+    writer.join();
+    assertNull(failure.get());
+    cache.close();
+
+    cache = open(1, Long.MAX_VALUE, 1);
+    for (int i = 0; i < baseCount; i++) {
+      assertValue("base" + i, "a");
+    }
+    for (int i = 0; i < committed.get(); i++) {
+      assertValue("race" + i, "b");
+    }
+    assertFalse(new File(cacheDir, SegmentedDiskLruCache.JOURNAL_FILE_PREFIX + 0
+        + SegmentedDiskLruCache.JOURNAL_FILE_TEMP_SUFFIX).exists());
+  }
+
+  @Test public void throughputBenchmark() throws Exception {
+    File segmentedDir = tempDir.newFolder("segmented");
+    File singleDir = tempDir.newFolder("single");
+    final SegmentedDiskLruCache segmented =
+        SegmentedDiskLruCache.open(segmentedDir, APP_VERSION, 1, Long.MAX_VALUE);
+    final DiskLruCache single = DiskLruCache.open(singleDir, APP_VERSION, 1, Long.MAX_VALUE);
+    try {
+      CacheOperations segmentedOperations = new CacheOperations() {
+        @Override public boolean read(String key) throws IOException {
+          return segmented.get(key) != null;
+        }
+
+        @Override public void write(String key) throws IOException {
+          SegmentedDiskLruCache.Editor editor = segmented.edit(key);
+          if (editor == null) {
+            // Another thread is writing the same key, DiskLruCacheWrapper skips the write too.
+            return;
+          }
+          writeFile(editor.getFile(0), key);
+          editor.commit();
+        }
+      };
+      CacheOperations singleOperations = new CacheOperations() {
+        @Override public boolean read(String key) throws IOException {
+          return single.get(key) != null;
+        }
+
+        @Override public void write(String key) throws IOException {
+          DiskLruCache.Editor editor = single.edit(key);
+          if (editor == null) {
+            // Another thread is writing the same key, DiskLruCacheWrapper skips the write too.
+            return;
+          }
+          writeFile(editor.getFile(0), key);
+          editor.commit();
+        }
+      };
+      for (int i = 0; i < BENCHMARK_KEY_COUNT; i++) {
+        segmentedOperations.write("key" + i);
+        singleOperations.write("key" + i);
+      }
+      // Warm up the JIT for both before measuring.
+      measure(singleOperations, 4);
+      measure(segmentedOperations, 4);
+
+      for (int threads : new int[] { 1, 4, 8, 16 }) {
+        long singleOps = measure(singleOperations, threads);
+        long segmentedOps = measure(segmentedOperations, threads);
+        System.out.println(String.format(Locale.US,
+            "DiskLruCache %2d threads: single lock %,8d ops/s, segmented %,8d ops/s (%.2fx)",
+            threads, singleOps, segmentedOps, (double) segmentedOps / singleOps));
+        assertTrue(singleOps > 0);
+        assertTrue(segmentedOps > 0);
+      }
+    } finally {
+      segmented.close();
+      single.close();
+    }
+  }
+
+  private SegmentedDiskLruCache open(int valueCount, long maxSize, int segmentCount)
+      throws IOException {
+    return SegmentedDiskLruCache.open(cacheDir, APP_VERSION, valueCount, maxSize, segmentCount);
+  }
+
+  private void set(String key, String... values) throws IOException {
+    SegmentedDiskLruCache.Editor editor = cache.edit(key);
+    for (int i = 0; i < values.length; i++) {
+      writeFile(editor.getFile(i), values[i]);
+    }
+    editor.commit();
+  }
+
+  private void assertValue(String key, String... values) throws IOException {
+    SegmentedDiskLruCache.Value value = cache.get(key);
+    assertNotNull(key, value);
+    assertTrue(cache.contains(key));
+    for (int i = 0; i < values.length; i++) {
+      assertEquals(values[i], readFile(value.getFile(i)));
+      assertEquals(values[i].length(), value.getLength(i));
+    }
+  }
+
+  private void assertAbsent(String key) throws IOException {
+    assertNull(key, cache.get(key));
+    assertFalse(cache.contains(key));
+  }
+
+  /**
+   * Waits until the background thread has evicted and compacted everything it was asked to.
+   */
+  private void awaitBackgroundTasks() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (cache.executorService.getActiveCount() > 0
+        || !cache.executorService.getQueue().isEmpty()) {
+      assertTrue("background tasks didn't finish", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Returns keys that {@link SegmentedDiskLruCache} puts into {@code segment}.
+   */
+  private static List<String> keysInSegment(int segment, int segmentCount, int count) {
+    List<String> keys = new ArrayList<String>();
+    for (int i = 0; keys.size() < count; i++) {
+      String key = "key" + i;
+      if ((key.hashCode() & Integer.MAX_VALUE) % segmentCount == segment) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private static void truncate(File file, long length) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(length);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static void writeFile(File file, String content) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes(Util.UTF_8));
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String readFile(File file) throws IOException {
+    return Util.readFully(new InputStreamReader(new FileInputStream(file), Util.UTF_8));
+  }
+
+  /**
+   * Returns the number of operations {@code threads} threads complete per second between them.
+   * Nine out of ten operations are hits, like thumbnails scrolled back into view, the rest
+   * replace an entry.
+   */
+  private static long measure(final CacheOperations operations, int threads) throws Exception {
+    final long durationNanos = TimeUnit.MILLISECONDS.toNanos(300);
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Long>> results = new ArrayList<Future<Long>>();
+      for (int thread = 0; thread < threads; thread++) {
+        final int offset = thread * 31;
+        results.add(executor.submit(new Callable<Long>() {
+          @Override public Long call() throws Exception {
+            start.await();
+            long deadline = System.nanoTime() + durationNanos;
+            long ops = 0;
+            while (System.nanoTime() < deadline) {
+              String key = "key" + (offset + ops) % BENCHMARK_KEY_COUNT;
+              if (ops % 10 == 9) {
+                operations.write(key);
+              } else {
+                assertTrue(key, operations.read(key));
+              }
+              ops++;
+            }
+            return ops;
+          }
+        }));
+      }
+      start.countDown();
+      long ops = 0;
+      for (Future<Long> result : results) {
+        ops += result.get();
+      }
+      return ops * TimeUnit.SECONDS.toNanos(1) / durationNanos;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private interface CacheOperations {
+    boolean read(String key) throws IOException;
+
+    void write(String key) throws IOException;
+  }
+}
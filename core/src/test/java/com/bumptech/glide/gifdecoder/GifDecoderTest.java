@@ -0,0 +1,271 @@
+package com.bumptech.glide.gifdecoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes small generated gifs with {@link GifDecoder#getNextFramePixels(int[])} and checks the composed canvas,
+ * in particular for frames that don't line up with the blocks of a downsampled canvas.
+ */
+@RunWith(JUnit4.class)
+public class GifDecoderTest {
+    // Disposal methods as written in the graphic control extension.
+    private static final int DISPOSAL_NONE = 1;
+    private static final int DISPOSAL_BACKGROUND = 2;
+
+    private static final int A = 0xff102030;
+    private static final int B = 0xffd0e0f0;
+    private static final int C = 0xff804020;
+    private static final int D = 0xff00ff00;
+
+    @Test
+    public void testFullSizeSubFrame() {
+        byte[] gif = offsetSubFrameGif(DISPOSAL_NONE);
+
+        List<int[]> frames = decode(gif, 1);
+
+        int[] expected = fill(8, 8, A);
+        fillRect(expected, 8, 5, 3, 7, 5, B);
+        assertCanvas(expected, frames.get(1));
+    }
+
+    @Test
+    public void testOffsetNarrowSubFrameAtSampleSizeTwo() {
+        byte[] gif = offsetSubFrameGif(DISPOSAL_NONE);
+
+        List<int[]> frames = decode(gif, 2);
+
+        assertCanvas(fill(4, 4, A), frames.get(0));
+        // Canvas pixels 5-6 x 3-4 touch the 2x2 blocks in columns 2-3 and rows 1-2.
+        int[] expected = fill(4, 4, A);
+        fillRect(expected, 4, 2, 1, 4, 3, B);
+        assertCanvas(expected, frames.get(1));
+    }
+
+    @Test
+    public void testOffsetNarrowSubFrameAtSampleSizeFour() {
+        byte[] gif = offsetSubFrameGif(DISPOSAL_NONE);
+
+        List<int[]> frames = decode(gif, 4);
+
+        // The frame is narrower than a block and starts inside one, but still shows up in the blocks it touches.
+        assertCanvas(new int[] { A, B, A, B }, frames.get(1));
+    }
+
+    @Test
+    public void testDisposalBackgroundClearsPartialBlocks() {
+        byte[] gif = offsetSubFrameGif(DISPOSAL_BACKGROUND);
+
+        List<int[]> fullSize = decode(gif, 1);
+        List<int[]> sampledByTwo = decode(gif, 2);
+        List<int[]> sampledByFour = decode(gif, 4);
+
+        int[] expected = fill(8, 8, A);
+        fillRect(expected, 8, 5, 3, 7, 5, C);
+        expected[0] = D;
+        assertCanvas(expected, fullSize.get(2));
+        expected = fill(4, 4, A);
+        fillRect(expected, 4, 2, 1, 4, 3, C);
+        expected[0] = D;
+        assertCanvas(expected, sampledByTwo.get(2));
+        assertCanvas(new int[] { D, C, A, C }, sampledByFour.get(2));
+    }
+
+    /**
+     * An 8x8 gif filled with A, then a 2x2 frame of B at 5,3 with the given disposal, then a 1x1 frame of D at 0,0.
+     * The background color is C.
+     */
+    private static byte[] offsetSubFrameGif(int dispose) {
+        return new GifWriter(8, 8, new int[] { A, B, C, D }, 2)
+                .frame(0, 0, 8, 8, DISPOSAL_NONE, 0)
+                .frame(5, 3, 2, 2, dispose, 1)
+                .frame(0, 0, 1, 1, DISPOSAL_NONE, 3)
+                .build();
+    }
+
+    private static List<int[]> decode(byte[] gif, int sampleSize) {
+        GifHeader header = new GifHeaderParser().setData(gif).parseHeader();
+        assertEquals(GifDecoder.STATUS_OK, header.getStatus());
+        GifDecoder decoder = new GifDecoder(new ArrayBitmapProvider());
+        decoder.setData(header, ByteBuffer.wrap(gif), sampleSize);
+        List<int[]> frames = new ArrayList<int[]>();
+        for (int i = 0; i < decoder.getFrameCount(); i++) {
+            decoder.advance();
+            int[] pixels = new int[decoder.getDownsampledWidth() * decoder.getDownsampledHeight()];
+            assertTrue(decoder.getNextFramePixels(pixels));
+            assertEquals(GifDecoder.STATUS_OK, decoder.getStatus());
+            frames.add(pixels);
+        }
+        return frames;
+    }
+
+    private static int[] fill(int width, int height, int color) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, color);
+        return pixels;
+    }
+
+    private static void fillRect(int[] pixels, int width, int left, int top, int right, int bottom, int color) {
+        for (int y = top; y < bottom; y++) {
+            Arrays.fill(pixels, y * width + left, y * width + right, color);
+        }
+    }
+
+    private static void assertCanvas(int[] expected, int[] actual) {
+        assertEquals(toHex(expected), toHex(actual));
+    }
+
+    private static String toHex(int[] pixels) {
+        StringBuilder sb = new StringBuilder();
+        for (int pixel : pixels) {
+            sb.append(Integer.toHexString(pixel)).append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hands out new arrays and no Bitmaps, frames are only read through
+     * {@link GifDecoder#getNextFramePixels(int[])}.
+     */
+    private static class ArrayBitmapProvider implements GifDecoder.BitmapProvider {
+        @Override
+        public Bitmap obtain(int width, int height, Bitmap.Config config) {
+            return null;
+        }
+
+        @Override
+        public void release(Bitmap bitmap) {
+        }
+
+        @Override
+        public byte[] obtainByteArray(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] bytes) {
+        }
+
+        @Override
+        public int[] obtainIntArray(int size) {
+            return new int[size];
+        }
+
+        @Override
+        public void release(int[] array) {
+        }
+    }
+
+    /**
+     * Writes gifs with a four color global color table and solid frames.
+     */
+    private static class GifWriter {
+        private static final int MIN_CODE_SIZE = 2;
+        private static final int CLEAR_CODE = 1 << MIN_CODE_SIZE;
+        private static final int END_OF_INFORMATION = CLEAR_CODE + 1;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        GifWriter(int width, int height, int[] colors, int bgIndex) {
+            assertEquals(4, colors.length);
+            for (char c : "GIF89a".toCharArray()) {
+                out.write(c);
+            }
+            writeShort(width);
+            writeShort(height);
+            // Global color table of 4 colors.
+            out.write(0x81);
+            out.write(bgIndex);
+            out.write(0);
+            for (int color : colors) {
+                out.write((color >> 16) & 0xff);
+                out.write((color >> 8) & 0xff);
+                out.write(color & 0xff);
+            }
+        }
+
+        GifWriter frame(int ix, int iy, int iw, int ih, int dispose, int colorIndex) {
+            // Graphic control extension without transparency.
+            out.write(0x21);
+            out.write(0xf9);
+            out.write(4);
+            out.write(dispose << 2);
+            writeShort(10);
+            out.write(0);
+            out.write(0);
+
+            out.write(0x2c);
+            writeShort(ix);
+            writeShort(iy);
+            writeShort(iw);
+            writeShort(ih);
+            out.write(0);
+            int[] indexes = new int[iw * ih];
+            Arrays.fill(indexes, colorIndex);
+            writeImageData(indexes);
+            return this;
+        }
+
+        byte[] build() {
+            out.write(0x3b);
+            return out.toByteArray();
+        }
+
+        /**
+         * Writes every pixel as a literal code. The decoder still adds a table entry for each code after the first,
+         * so the code size grows just the same. Frames here are far too small to fill the table.
+         */
+        private void writeImageData(int[] indexes) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            int codeSize = MIN_CODE_SIZE + 1;
+            int available = END_OF_INFORMATION + 1;
+            int datum = 0;
+            int bits = 0;
+            for (int i = -1; i <= indexes.length; i++) {
+                int code = i < 0 ? CLEAR_CODE : i < indexes.length ? indexes[i] : END_OF_INFORMATION;
+                datum |= code << bits;
+                bits += codeSize;
+                while (bits >= 8) {
+                    data.write(datum & 0xff);
+                    datum >>>= 8;
+                    bits -= 8;
+                }
+                if (i > 0 && i < indexes.length) {
+                    available++;
+                    if (available == 1 << codeSize) {
+                        codeSize++;
+                    }
+                }
+            }
+            if (bits > 0) {
+                data.write(datum & 0xff);
+            }
+
+            out.write(MIN_CODE_SIZE);
+            byte[] bytes = data.toByteArray();
+            for (int offset = 0; offset < bytes.length; offset += 255) {
+                int size = Math.min(255, bytes.length - offset);
+                out.write(size);
+                out.write(bytes, offset, size);
+            }
+            out.write(0);
+        }
+
+        private void writeShort(int value) {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+        }
+    }
+}
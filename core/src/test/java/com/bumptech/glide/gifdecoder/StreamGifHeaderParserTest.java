@@ -0,0 +1,268 @@
+package com.bumptech.glide.gifdecoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Checks that {@link StreamGifHeaderParser} produces the same headers as {@link GifHeaderParser} for complete,
+ * malformed and truncated gifs.
+ */
+@RunWith(JUnit4.class)
+public class StreamGifHeaderParserTest {
+
+    @Test
+    public void testAnimatedGif() {
+        byte[] data = animatedGif();
+
+        GifHeader header = assertSameHeader(data);
+
+        assertEquals(GifDecoder.STATUS_OK, header.getStatus());
+        assertEquals(40, header.getWidth());
+        assertEquals(30, header.getHeight());
+        assertEquals(3, header.getNumFrames());
+        assertEquals(3, header.getLoopCount());
+        assertEquals(100, header.getDelay(0));
+        // Delays below the minimum are replaced with the default delay.
+        assertEquals(GifHeaderParser.DEFAULT_FRAME_DELAY * 10, header.getDelay(1));
+        assertEquals(500, header.getDelay(2));
+    }
+
+    @Test
+    public void testGifWithoutGraphicControlExtension() {
+        byte[] data = new GifBuilder(16, 16, false)
+                .frame(-1, false, 20)
+                .trailer()
+                .build();
+
+        GifHeader header = assertSameHeader(data);
+
+        assertEquals(GifDecoder.STATUS_OK, header.getStatus());
+        assertEquals(1, header.getNumFrames());
+        assertEquals(0, header.getDelay(0));
+        assertEquals(0, header.getLoopCount());
+    }
+
+    @Test
+    public void testNotAGif() {
+        byte[] data = "\u0089PNG\r\n\u001a\n0000000000000".getBytes();
+
+        GifHeader header = assertSameHeader(data);
+
+        assertEquals(GifDecoder.STATUS_FORMAT_ERROR, header.getStatus());
+        assertEquals(0, header.getNumFrames());
+    }
+
+    @Test
+    public void testBadBlockCode() {
+        byte[] data = new GifBuilder(16, 16, true)
+                .frame(10, false, 20)
+                .raw(0x00)
+                .build();
+
+        GifHeader header = assertSameHeader(data);
+
+        assertEquals(GifDecoder.STATUS_FORMAT_ERROR, header.getStatus());
+        assertEquals(1, header.getNumFrames());
+    }
+
+    @Test
+    public void testTruncatedGifs() {
+        byte[] data = animatedGif();
+        for (int length = 0; length < data.length; length++) {
+            GifHeader header = assertSameHeader(Arrays.copyOf(data, length));
+            assertEquals("length " + length, GifDecoder.STATUS_FORMAT_ERROR, header.getStatus());
+        }
+    }
+
+    @Test
+    public void testStreamWithoutSkipSupport() {
+        final byte[] data = animatedGif();
+        // An InputStream whose skip() never skips anything, forcing the parser to fall back to read().
+        InputStream is = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized long skip(long n) {
+                return 0;
+            }
+        };
+
+        GifHeader expected = new GifHeaderParser().setData(ByteBuffer.wrap(data)).parseHeader();
+        GifHeader actual = new StreamGifHeaderParser().setData(is).parseHeader();
+
+        assertSameHeader("", expected, actual);
+    }
+
+    @Test
+    public void testNullStream() {
+        GifHeader header = new StreamGifHeaderParser().setData((InputStream) null).parseHeader();
+
+        assertEquals(GifDecoder.STATUS_OPEN_ERROR, header.getStatus());
+    }
+
+    private static GifHeader assertSameHeader(byte[] data) {
+        GifHeader expected = new GifHeaderParser().setData(ByteBuffer.wrap(data)).parseHeader();
+        GifHeader actual = new StreamGifHeaderParser().setData(new ByteArrayInputStream(data)).parseHeader();
+        assertSameHeader("length " + data.length + ": ", expected, actual);
+        return actual;
+    }
+
+    private static void assertSameHeader(String message, GifHeader expected, GifHeader actual) {
+        assertEquals(message + "status", expected.getStatus(), actual.getStatus());
+        assertEquals(message + "width", expected.getWidth(), actual.getWidth());
+        assertEquals(message + "height", expected.getHeight(), actual.getHeight());
+        assertEquals(message + "loop count", expected.getLoopCount(), actual.getLoopCount());
+        assertEquals(message + "frame count", expected.getNumFrames(), actual.getNumFrames());
+        assertEquals(message + "frames", expected.frames.size(), actual.frames.size());
+        for (int i = 0; i < expected.getNumFrames(); i++) {
+            GifFrame expectedFrame = expected.frames.get(i);
+            GifFrame actualFrame = actual.frames.get(i);
+            String frameMessage = message + "frame " + i + " ";
+            assertEquals(frameMessage + "delay", expected.getDelay(i), actual.getDelay(i));
+            assertEquals(frameMessage + "dispose", expectedFrame.dispose, actualFrame.dispose);
+            assertEquals(frameMessage + "transparency", expectedFrame.transparency, actualFrame.transparency);
+            assertEquals(frameMessage + "transIndex", expectedFrame.transIndex, actualFrame.transIndex);
+            assertEquals(frameMessage + "bounds", Arrays.asList(expectedFrame.ix, expectedFrame.iy, expectedFrame.iw,
+                    expectedFrame.ih), Arrays.asList(actualFrame.ix, actualFrame.iy, actualFrame.iw, actualFrame.ih));
+            assertEquals(frameMessage + "frame start", expectedFrame.bufferFrameStart, actualFrame.bufferFrameStart);
+            if (expectedFrame.lct == null) {
+                assertNull(frameMessage + "lct", actualFrame.lct);
+            } else {
+                assertEquals(frameMessage + "lct", Arrays.toString(expectedFrame.lct), Arrays.toString(actualFrame.lct));
+            }
+        }
+        if (expected.gct != null || actual.gct != null) {
+            assertEquals(message + "gct", Arrays.toString(expected.gct), Arrays.toString(actual.gct));
+        }
+        assertEquals(message + "bgColor", expected.bgColor, actual.bgColor);
+    }
+
+    private static byte[] animatedGif() {
+        return new GifBuilder(40, 30, true)
+                .netscape(3)
+                .frame(10, false, 300)
+                .comment("GifFun")
+                .frame(2, true, 20)
+                .application("XMP DataXMP")
+                .frame(50, false, 700)
+                .trailer()
+                .build();
+    }
+
+    /**
+     * Writes the blocks of a gif. Image data is filler, neither parser decodes it.
+     */
+    private static class GifBuilder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final int width;
+        private final int height;
+
+        GifBuilder(int width, int height, boolean globalColorTable) {
+            this.width = width;
+            this.height = height;
+            raw('G', 'I', 'F', '8', '9', 'a');
+            writeShort(width);
+            writeShort(height);
+            // Global color table flag and a table of 4 colors.
+            raw(globalColorTable ? 0x81 : 0x00, 2, 0);
+            if (globalColorTable) {
+                colorTable(4);
+            }
+        }
+
+        GifBuilder netscape(int loopCount) {
+            raw(0x21, 0xff, 11);
+            ascii("NETSCAPE2.0");
+            raw(3, 1);
+            writeShort(loopCount);
+            return raw(0);
+        }
+
+        GifBuilder application(String identifier) {
+            raw(0x21, 0xff, 11);
+            ascii(identifier);
+            raw(4, 'd', 'a', 't', 'a');
+            return raw(0);
+        }
+
+        GifBuilder comment(String comment) {
+            raw(0x21, 0xfe, comment.length());
+            ascii(comment);
+            return raw(0);
+        }
+
+        /**
+         * @param delay Delay in hundredths of a second, or -1 to omit the graphic control extension.
+         */
+        GifBuilder frame(int delay, boolean localColorTable, int dataLength) {
+            if (delay >= 0) {
+                // Graphic control extension with disposal method 2 and a transparent color.
+                raw(0x21, 0xf9, 4, 0x09);
+                writeShort(delay);
+                raw(1, 0);
+            }
+            raw(0x2c);
+            writeShort(1);
+            writeShort(2);
+            writeShort(width - 1);
+            writeShort(height - 2);
+            // Local color table flag, interlace flag and a table of 8 colors.
+            raw(localColorTable ? 0xc2 : 0x00);
+            if (localColorTable) {
+                colorTable(8);
+            }
+            // LZW minimum code size followed by data sub-blocks.
+            raw(2);
+            int remaining = dataLength;
+            while (remaining > 0) {
+                int size = Math.min(remaining, 255);
+                out.write(size);
+                for (int i = 0; i < size; i++) {
+                    out.write(i);
+                }
+                remaining -= size;
+            }
+            return raw(0);
+        }
+
+        GifBuilder trailer() {
+            return raw(0x3b);
+        }
+
+        GifBuilder raw(int... bytes) {
+            for (int b : bytes) {
+                out.write(b);
+            }
+            return this;
+        }
+
+        byte[] build() {
+            return out.toByteArray();
+        }
+
+        private void colorTable(int colors) {
+            for (int i = 0; i < colors * 3; i++) {
+                out.write(i * 7);
+            }
+        }
+
+        private void writeShort(int value) {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+        }
+
+        private void ascii(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                out.write(value.charAt(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.bumptech.glide.gifencoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import com.bumptech.glide.gifdecoder.GifDecoder;
+import com.bumptech.glide.gifdecoder.GifHeader;
+import com.bumptech.glide.gifdecoder.StreamGifHeaderParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes generated animations with {@link AnimatedGifEncoder} and decodes them back with {@link GifDecoder}.
+ */
+@RunWith(JUnit4.class)
+public class AnimatedGifEncoderTest {
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testExecutorOutputMatchesInline() {
+        List<int[]> frames = movingSquare(12);
+
+        byte[] inline = encode(frames, new Settings());
+        byte[] parallel = encode(frames, new Settings().executor(executor, 3));
+
+        assertArrayEquals(inline, parallel);
+    }
+
+    @Test
+    public void testExecutorOutputMatchesInlineWithOctree() {
+        List<int[]> frames = movingSquare(12);
+
+        byte[] inline = encode(frames, new Settings().quantizer(ColorQuantizer.OCTREE));
+        byte[] parallel = encode(frames, new Settings().quantizer(ColorQuantizer.OCTREE).executor(executor, 3));
+
+        assertArrayEquals(inline, parallel);
+    }
+
+    @Test
+    public void testPaletteReuseRoundTrip() {
+        // Few enough colors for the octree to keep every one of them, so the frames come back exactly.
+        List<int[]> frames = fewColors(12);
+        CountingQuantizer quantizer = new CountingQuantizer(ColorQuantizer.OCTREE);
+
+        byte[] gif = encode(frames, new Settings().quality(1).quantizer(quantizer).paletteReuse(0));
+
+        assertFrames(frames, decode(gif));
+        // Only frames showing a color the previous palette lacks need a palette of their own.
+        assertTrue("palette built for " + quantizer.builds.get() + " frames",
+                quantizer.builds.get() < frames.size() / 2);
+    }
+
+    @Test
+    public void testPaletteReuseWithinError() {
+        List<int[]> frames = movingSquare(12);
+        CountingQuantizer reused = new CountingQuantizer(ColorQuantizer.OCTREE);
+        CountingQuantizer notReused = new CountingQuantizer(ColorQuantizer.OCTREE);
+
+        byte[] gif = encode(frames, new Settings().quantizer(reused).paletteReuse(16));
+        encode(frames, new Settings().quantizer(notReused));
+
+        assertEquals(frames.size(), decode(gif).size());
+        assertEquals(frames.size(), notReused.builds.get());
+        assertTrue("palette built for " + reused.builds.get() + " frames", reused.builds.get() < frames.size() / 2);
+    }
+
+    @Test
+    public void testExecutorOutputMatchesInlineWithPaletteReuse() {
+        List<int[]> frames = movingSquare(12);
+
+        for (ColorQuantizer.Factory quantizer : new ColorQuantizer.Factory[] {
+                ColorQuantizer.NEU_QUANT, ColorQuantizer.OCTREE }) {
+            byte[] inline = encode(frames, new Settings().quantizer(quantizer).paletteReuse(16));
+            byte[] parallel = encode(frames, new Settings().quantizer(quantizer).paletteReuse(16)
+                    .executor(executor, 3));
+
+            assertArrayEquals(inline, parallel);
+        }
+    }
+
+    @Test
+    public void testFrameDifferencingRoundTrip() {
+        List<int[]> frames = fewColors(12);
+
+        byte[] gif = encode(frames, new Settings().quality(1).quantizer(ColorQuantizer.OCTREE).differencing());
+        byte[] gifWithPaletteReuse = encode(frames, new Settings().quality(1).quantizer(ColorQuantizer.OCTREE)
+                .paletteReuse(0).differencing());
+
+        assertFrames(frames, decode(gif));
+        assertFrames(frames, decode(gifWithPaletteReuse));
+    }
+
+    @Test
+    public void testExecutorOutputMatchesInlineWithDifferencing() {
+        List<int[]> frames = movingSquare(12);
+
+        byte[] inline = encode(frames, new Settings().differencing());
+        byte[] parallel = encode(frames, new Settings().differencing().executor(executor, 3));
+
+        assertArrayEquals(inline, parallel);
+    }
+
+    @Test
+    public void testFrameDifferencingShrinksMostlyStaticAnimation() {
+        // Only an 8x8 square of the 96x64 frames moves, the gradient behind it stays put.
+        List<int[]> frames = movingSquare(24);
+
+        byte[] full = encode(frames, new Settings());
+        byte[] differenced = encode(frames, new Settings().differencing());
+
+        System.out.println("Full frames: " + full.length + " bytes, differenced frames: " + differenced.length
+                + " bytes");
+        assertEquals(frames.size(), decode(differenced).size());
+        assertTrue(differenced.length < full.length / 2);
+    }
+
+    /**
+     * Returns opaque frames of a gradient background with a square moving across it.
+     */
+    private static List<int[]> movingSquare(int frameCount) {
+        List<int[]> frames = new ArrayList<int[]>();
+        for (int i = 0; i < frameCount; i++) {
+            int[] pixels = new int[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    pixels[y * WIDTH + x] = 0xff000000 | ((x * 2) << 16) | ((y * 3) << 8) | 0x40;
+                }
+            }
+            int left = (i * 3) % (WIDTH - 8);
+            int top = (i * 2) % (HEIGHT - 8);
+            for (int y = top; y < top + 8; y++) {
+                for (int x = left; x < left + 8; x++) {
+                    pixels[y * WIDTH + x] = 0xffff0000 | ((i * 20) & 0xff);
+                }
+            }
+            frames.add(pixels);
+        }
+        return frames;
+    }
+
+    /**
+     * Returns opaque frames of 64 colored blocks with a square moving across them, which changes color every fifth
+     * frame.
+     */
+    private static List<int[]> fewColors(int frameCount) {
+        List<int[]> frames = new ArrayList<int[]>();
+        for (int i = 0; i < frameCount; i++) {
+            int[] pixels = new int[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    pixels[y * WIDTH + x] = 0xff000000 | ((x / 12 * 32) << 16) | ((y / 8 * 32) << 8) | 0x40;
+                }
+            }
+            int left = (i * 3) % (WIDTH - 8);
+            int top = (i * 2) % (HEIGHT - 8);
+            int color = 0xffff0000 | (i / 5 * 80);
+            for (int y = top; y < top + 8; y++) {
+                for (int x = left; x < left + 8; x++) {
+                    pixels[y * WIDTH + x] = color;
+                }
+            }
+            frames.add(pixels);
+        }
+        return frames;
+    }
+
+    private static byte[] encode(List<int[]> frames, Settings settings) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        assertTrue(encoder.start(out));
+        encoder.setRepeat(0);
+        encoder.setDelay(100);
+        encoder.setQuality(settings.quality);
+        if (settings.quantizer != null) {
+            encoder.setQuantizer(settings.quantizer);
+        }
+        encoder.setPaletteReuse(settings.maxPaletteError);
+        encoder.setFrameDifferencing(settings.differencing);
+        if (settings.executor != null) {
+            encoder.setExecutor(settings.executor, settings.maxFramesInFlight);
+        }
+        for (int[] frame : frames) {
+            assertTrue(encoder.addFrame(frame, WIDTH, HEIGHT));
+        }
+        assertTrue(encoder.finish());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes every frame of the gif, reading its header from a stream as GifResourceDecoder does.
+     */
+    private static List<int[]> decode(byte[] gif) {
+        GifHeader header = new StreamGifHeaderParser().setData(new ByteArrayInputStream(gif)).parseHeader();
+        assertEquals(GifDecoder.STATUS_OK, header.getStatus());
+        GifDecoder decoder = new GifDecoder(new ArrayBitmapProvider());
+        decoder.setData(header, ByteBuffer.wrap(gif));
+        List<int[]> frames = new ArrayList<int[]>();
+        for (int i = 0; i < decoder.getFrameCount(); i++) {
+            decoder.advance();
+            int[] pixels = new int[decoder.getWidth() * decoder.getHeight()];
+            assertTrue(decoder.getNextFramePixels(pixels));
+            assertEquals(GifDecoder.STATUS_OK, decoder.getStatus());
+            frames.add(pixels);
+        }
+        return frames;
+    }
+
+    private static void assertFrames(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            int[] expectedPixels = expected.get(i);
+            int[] actualPixels = actual.get(i);
+            for (int j = 0; j < expectedPixels.length; j++) {
+                if (expectedPixels[j] != actualPixels[j]) {
+                    throw new AssertionError("frame " + i + " pixel " + (j % WIDTH) + "," + (j / WIDTH)
+                            + " expected " + Integer.toHexString(expectedPixels[j]) + " but was "
+                            + Integer.toHexString(actualPixels[j]));
+                }
+            }
+        }
+    }
+
+    private static class Settings {
+        int quality = 10;
+        ColorQuantizer.Factory quantizer;
+        double maxPaletteError = -1;
+        boolean differencing;
+        ExecutorService executor;
+        int maxFramesInFlight;
+
+        Settings quality(int quality) {
+            this.quality = quality;
+            return this;
+        }
+
+        Settings quantizer(ColorQuantizer.Factory quantizer) {
+            this.quantizer = quantizer;
+            return this;
+        }
+
+        Settings paletteReuse(double maxError) {
+            this.maxPaletteError = maxError;
+            return this;
+        }
+
+        Settings differencing() {
+            this.differencing = true;
+            return this;
+        }
+
+        Settings executor(ExecutorService executor, int maxFramesInFlight) {
+            this.executor = executor;
+            this.maxFramesInFlight = maxFramesInFlight;
+            return this;
+        }
+    }
+
+    /**
+     * Counts the palettes built by another factory.
+     */
+    private static class CountingQuantizer implements ColorQuantizer.Factory {
+        final AtomicInteger builds = new AtomicInteger();
+        private final ColorQuantizer.Factory factory;
+
+        CountingQuantizer(ColorQuantizer.Factory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public ColorQuantizer build(byte[] pixels, int len, int sample) {
+            builds.incrementAndGet();
+            return factory.build(pixels, len, sample);
+        }
+    }
+
+    /**
+     * Hands out new arrays and no Bitmaps, frames are only read through
+     * {@link GifDecoder#getNextFramePixels(int[])}.
+     */
+    private static class ArrayBitmapProvider implements GifDecoder.BitmapProvider {
+        @Override
+        public Bitmap obtain(int width, int height, Bitmap.Config config) {
+            return null;
+        }
+
+        @Override
+        public void release(Bitmap bitmap) {
+        }
+
+        @Override
+        public byte[] obtainByteArray(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] bytes) {
+        }
+
+        @Override
+        public int[] obtainIntArray(int size) {
+            return new int[size];
+        }
+
+        @Override
+        public void release(int[] array) {
+        }
+    }
+}
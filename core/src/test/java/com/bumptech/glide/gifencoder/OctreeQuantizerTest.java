@@ -0,0 +1,58 @@
+package com.bumptech.glide.gifencoder;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks the palettes {@link OctreeQuantizer} builds and how it maps colors to them.
+ */
+@RunWith(JUnit4.class)
+public class OctreeQuantizerTest {
+
+    @Test
+    public void testFewColorsAreKeptExactly() {
+        byte[] pixels = bgr(0x102030, 0x405060, 0x102030, 0xa0b0c0);
+        OctreeQuantizer quantizer = new OctreeQuantizer(pixels, pixels.length, 1);
+
+        byte[] colorMap = quantizer.process();
+
+        assertEquals(9, colorMap.length);
+        for (int i = 0; i < pixels.length; i += 3) {
+            int index = quantizer.map(pixels[i] & 0xff, pixels[i + 1] & 0xff, pixels[i + 2] & 0xff);
+            assertEquals(pixels[i], colorMap[3 * index]);
+            assertEquals(pixels[i + 1], colorMap[3 * index + 1]);
+            assertEquals(pixels[i + 2], colorMap[3 * index + 2]);
+        }
+    }
+
+    @Test
+    public void testMissingColorsMapToNearestRegardlessOfOrder() {
+        // Blue 98 and 102 share a cache bucket but are nearest to different entries.
+        byte[] pixels = bgr(0x000060, 0x000067);
+        OctreeQuantizer first = new OctreeQuantizer(pixels, pixels.length, 1);
+        first.process();
+        OctreeQuantizer second = new OctreeQuantizer(pixels, pixels.length, 1);
+        second.process();
+        int lower = first.map(0x60, 0, 0);
+        int upper = first.map(0x67, 0, 0);
+
+        assertEquals(lower, first.map(98, 0, 0));
+        assertEquals(upper, first.map(102, 0, 0));
+        assertEquals(upper, second.map(102, 0, 0));
+        assertEquals(lower, second.map(98, 0, 0));
+        assertEquals(upper, second.map(102, 0, 0));
+    }
+
+    private static byte[] bgr(int... colors) {
+        byte[] pixels = new byte[colors.length * 3];
+        for (int i = 0; i < colors.length; i++) {
+            pixels[3 * i] = (byte) colors[i];
+            pixels[3 * i + 1] = (byte) (colors[i] >> 8);
+            pixels[3 * i + 2] = (byte) (colors[i] >> 16);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,215 @@
+package com.bumptech.glide.load.engine.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.StringSignature;
+import com.bumptech.glide.util.LruCache;
+import com.bumptech.glide.util.Util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that {@link SafeKeyGenerator} returns the SHA-256 of a key however its cache is striped or evicted, and
+ * compares its throughput under contention with the single lock generator it replaced.
+ */
+@RunWith(JUnit4.class)
+public class SafeKeyGeneratorTest {
+
+    @Test
+    public void testSafeKeyIsSha256OfKey() throws Exception {
+        SafeKeyGenerator generator = new SafeKeyGenerator(10, 2);
+
+        assertEquals(sha256("key"), generator.getSafeKey(new StringSignature("key")));
+        assertEquals(sha256(""), generator.getSafeKey(new StringSignature("")));
+    }
+
+    @Test
+    public void testEqualKeysHaveEqualSafeKeys() {
+        SafeKeyGenerator generator = new SafeKeyGenerator(10, 2);
+
+        String first = generator.getSafeKey(new StringSignature("key"));
+        String second = generator.getSafeKey(new StringSignature("key"));
+
+        assertEquals(first, second);
+        assertNotEquals(first, generator.getSafeKey(new StringSignature("other")));
+    }
+
+    @Test
+    public void testStripeCountDoesNotChangeSafeKeys() {
+        SafeKeyGenerator single = new SafeKeyGenerator(1000, 1);
+        SafeKeyGenerator striped = new SafeKeyGenerator(1000, 16);
+
+        for (int i = 0; i < 200; i++) {
+            Key key = new StringSignature("key" + i);
+            assertEquals(single.getSafeKey(key), striped.getSafeKey(key));
+        }
+    }
+
+    @Test
+    public void testSafeKeysAreStableAfterEviction() throws Exception {
+        // Smaller than the number of stripes, each stripe still holds one key.
+        SafeKeyGenerator generator = new SafeKeyGenerator(2, 4);
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 50; i++) {
+                assertEquals(sha256("key" + i), generator.getSafeKey(new StringSignature("key" + i)));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentThreadsAgree() throws Exception {
+        final SafeKeyGenerator generator = new SafeKeyGenerator(64, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        List<String> safeKeys = new ArrayList<String>();
+                        for (int i = 0; i < 500; i++) {
+                            safeKeys.add(generator.getSafeKey(new StringSignature("key" + (i % 100))));
+                        }
+                        return safeKeys;
+                    }
+                }));
+            }
+            for (Future<List<String>> result : results) {
+                List<String> safeKeys = result.get();
+                for (int i = 0; i < safeKeys.size(); i++) {
+                    assertEquals(sha256("key" + (i % 100)), safeKeys.get(i));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testContentionBenchmark() throws Exception {
+        // More keys than either cache holds, so threads contend on both hits and misses like feed thumbnails do.
+        final Key[] keys = new Key[1500];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new StringSignature("http://example.com/gif/" + i);
+        }
+        final SafeKeyGenerator striped = new SafeKeyGenerator(1000, 16);
+        final SingleLockSafeKeyGenerator singleLock = new SingleLockSafeKeyGenerator();
+        SafeKeys stripedKeys = new SafeKeys() {
+            @Override
+            public String getSafeKey(Key key) {
+                return striped.getSafeKey(key);
+            }
+        };
+        SafeKeys singleLockKeys = new SafeKeys() {
+            @Override
+            public String getSafeKey(Key key) {
+                return singleLock.getSafeKey(key);
+            }
+        };
+        // Warm up the JIT for both before measuring.
+        measure(singleLockKeys, keys, 4);
+        measure(stripedKeys, keys, 4);
+
+        for (int threads : new int[] { 4, 8, 16 }) {
+            long singleLockOps = measure(singleLockKeys, keys, threads);
+            long stripedOps = measure(stripedKeys, keys, threads);
+            System.out.println(String.format(Locale.US,
+                    "SafeKeyGenerator %2d threads: single lock %,10d ops/s, striped %,10d ops/s (%.2fx)", threads,
+                    singleLockOps, stripedOps, (double) stripedOps / singleLockOps));
+            assertTrue(singleLockOps > 0);
+            assertTrue(stripedOps > 0);
+        }
+    }
+
+    /**
+     * Returns the number of safe keys {@code threads} threads generate per second between them.
+     */
+    private static long measure(final SafeKeys safeKeys, final Key[] keys, int threads) throws Exception {
+        final long durationNanos = TimeUnit.MILLISECONDS.toNanos(300);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (int thread = 0; thread < threads; thread++) {
+                final int offset = thread * 97;
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        start.await();
+                        long deadline = System.nanoTime() + durationNanos;
+                        long ops = 0;
+                        while (System.nanoTime() < deadline) {
+                            for (int i = 0; i < 64; i++) {
+                                assertNotNull(safeKeys.getSafeKey(keys[(int) ((offset + ops++) % keys.length)]));
+                            }
+                        }
+                        return ops;
+                    }
+                }));
+            }
+            start.countDown();
+            long ops = 0;
+            for (Future<Long> result : results) {
+                ops += result.get();
+            }
+            return ops * TimeUnit.SECONDS.toNanos(1) / durationNanos;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String sha256(String value) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        messageDigest.update(value.getBytes("UTF-8"));
+        return Util.sha256BytesToHex(messageDigest.digest());
+    }
+
+    private interface SafeKeys {
+        String getSafeKey(Key key);
+    }
+
+    /**
+     * The generator {@link SafeKeyGenerator} replaced: one lock around one cache and a new digest per miss.
+     */
+    private static class SingleLockSafeKeyGenerator {
+        private final LruCache<Key, String> loadIdToSafeHash = new LruCache<Key, String>(1000);
+
+        public String getSafeKey(Key key) {
+            String safeKey;
+            synchronized (loadIdToSafeHash) {
+                safeKey = loadIdToSafeHash.get(key);
+            }
+            if (safeKey == null) {
+                try {
+                    MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+                    key.updateDiskCacheKey(messageDigest);
+                    safeKey = Util.sha256BytesToHex(messageDigest.digest());
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+                synchronized (loadIdToSafeHash) {
+                    loadIdToSafeHash.put(key, safeKey);
+                }
+            }
+            return safeKey;
+        }
+    }
+}
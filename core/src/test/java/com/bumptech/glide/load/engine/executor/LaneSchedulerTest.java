@@ -0,0 +1,112 @@
+package com.bumptech.glide.load.engine.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that {@link LaneScheduler} runs as many tasks at once as its lanes allow.
+ */
+@RunWith(JUnit4.class)
+public class LaneSchedulerTest {
+    private LaneScheduler.Lane lane;
+
+    @Before
+    public void setUp() {
+        lane = newLane();
+    }
+
+    @After
+    public void tearDown() {
+        lane.shutdownNow();
+    }
+
+    @Test
+    public void testTasksQueuedWhileOneThreadIsIdleRunAtOnce() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            LaneScheduler.Lane lane = newLane();
+            try {
+                // Leave a single idle thread behind.
+                lane.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+                awaitIdle(lane);
+
+                // The second task is usually queued before the idle thread wakes up, it can only take one of them.
+                CountDownLatch started = new CountDownLatch(2);
+                CountDownLatch release = new CountDownLatch(1);
+                lane.execute(new BlockingTask(started, release));
+                lane.execute(new BlockingTask(started, release));
+
+                boolean bothStarted = started.await(2, TimeUnit.SECONDS);
+                release.countDown();
+                assertTrue("round " + i + ": second task waited for the first one", bothStarted);
+            } finally {
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testLaneConcurrencyIsLimited() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            lane.execute(new BlockingTask(started, release));
+        }
+
+        assertFalse(started.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, started.getCount());
+        assertEquals(2, lane.getStats().getActive());
+        release.countDown();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private static LaneScheduler.Lane newLane() {
+        // Plain threads, the default factory changes their Android thread priority.
+        return new LaneScheduler(Executors.defaultThreadFactory(),
+                FifoPriorityThreadPoolExecutor.UncaughtThrowableStrategy.THROW).newLane("test", 2);
+    }
+
+    private static void awaitIdle(LaneScheduler.Lane lane) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lane.getStats().getActive() > 0 || lane.getStats().getQueued() > 0) {
+            assertTrue("lane never went idle", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        // Give the threads time to get back to waiting for tasks.
+        Thread.sleep(20);
+    }
+
+    private static class BlockingTask implements Runnable {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingTask(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.bumptech.glide.load.resource.gif;
+
+import static org.junit.Assert.assertEquals;
+
+import com.bumptech.glide.gifdecoder.GifDecoder;
+import com.bumptech.glide.gifdecoder.GifHeader;
+import com.bumptech.glide.gifdecoder.GifHeaderParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks the sample size {@link GifResourceDecoder} picks for a gif header and a target size.
+ */
+@RunWith(JUnit4.class)
+public class GifResourceDecoderTest {
+
+    @Test
+    public void testOriginalSizeIsNotSampled() {
+        GifHeader header = header(400, 300);
+
+        assertEquals(1, GifResourceDecoder.getSampleSize(header, 0, 0));
+        assertEquals(1, GifResourceDecoder.getSampleSize(header, -1, -1));
+        assertEquals(1, GifResourceDecoder.getSampleSize(header, 100, 0));
+    }
+
+    @Test
+    public void testTargetLargerThanGifIsNotSampled() {
+        GifHeader header = header(400, 300);
+
+        assertEquals(1, GifResourceDecoder.getSampleSize(header, 400, 300));
+        assertEquals(1, GifResourceDecoder.getSampleSize(header, 1000, 1000));
+        assertEquals(1, GifResourceDecoder.getSampleSize(header, 201, 151));
+    }
+
+    @Test
+    public void testPowerOfTwoRatios() {
+        GifHeader header = header(400, 300);
+
+        assertEquals(2, GifResourceDecoder.getSampleSize(header, 200, 150));
+        assertEquals(4, GifResourceDecoder.getSampleSize(header, 100, 75));
+    }
+
+    @Test
+    public void testOtherRatiosRoundDownToPowerOfTwo() {
+        GifHeader header = header(400, 300);
+
+        // 400 / 130 == 3
+        assertEquals(2, GifResourceDecoder.getSampleSize(header, 130, 100));
+        // 400 / 50 == 8, 300 / 40 == 7
+        assertEquals(4, GifResourceDecoder.getSampleSize(header, 50, 40));
+    }
+
+    @Test
+    public void testSmallerRatioWins() {
+        GifHeader header = header(800, 100);
+
+        // The width alone would allow 8, but the frames must still cover the target height.
+        assertEquals(2, GifResourceDecoder.getSampleSize(header, 100, 50));
+        assertEquals(1, GifResourceDecoder.getSampleSize(header, 100, 100));
+    }
+
+    private static GifHeader header(int width, int height) {
+        byte[] data = new byte[] {
+                'G', 'I', 'F', '8', '9', 'a',
+                (byte) width, (byte) (width >> 8), (byte) height, (byte) (height >> 8),
+                // No global color table, background color index, pixel aspect ratio.
+                0, 0, 0,
+                // Trailer.
+                0x3B
+        };
+        GifHeader header = new GifHeaderParser().setData(data).parseHeader();
+        assertEquals(GifDecoder.STATUS_OK, header.getStatus());
+        assertEquals(width, header.getWidth());
+        assertEquals(height, header.getHeight());
+        return header;
+    }
+}
@@ -0,0 +1,233 @@
+package com.bumptech.glide.load.resource.gif;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import com.bumptech.glide.gifdecoder.GifDecoder;
+import com.bumptech.glide.gifdecoder.GifHeader;
+import com.bumptech.glide.gifdecoder.GifHeaderParser;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPoolAdapter;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks how {@link GifScratchArrayPool} hands out arrays and measures what it saves decoders that are created over
+ * and over, as they are for GIFs in a scrolling list.
+ */
+@RunWith(JUnit4.class)
+public class GifScratchArrayPoolTest {
+    // The GIFs shown in the project's README, relative to the core module.
+    private static final File GIF_DIR = new File("../screenshots");
+    // Frames decoded before a decoder is cleared, about what a GIF scrolled past in a list gets to show.
+    private static final int FRAMES_PER_DECODER = 8;
+
+    private GifScratchArrayPool pool;
+
+    @Before
+    public void setUp() {
+        pool = GifScratchArrayPool.get();
+        pool.clear();
+    }
+
+    @After
+    public void tearDown() {
+        pool.clear();
+    }
+
+    @Test
+    public void testArraysAreReusedByLength() {
+        byte[] bytes = pool.getBytes(16);
+        int[] ints = pool.getInts(16);
+        pool.put(bytes);
+        pool.put(ints);
+
+        assertNotSame(bytes, pool.getBytes(8));
+        assertSame(bytes, pool.getBytes(16));
+        assertSame(ints, pool.getInts(16));
+        assertNotSame(ints, pool.getInts(16));
+    }
+
+    @Test
+    public void testTrimMemory() {
+        byte[] bytes = pool.getBytes(16);
+        pool.put(bytes);
+
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertSame(bytes, pool.getBytes(16));
+
+        pool.put(bytes);
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertNotSame(bytes, pool.getBytes(16));
+    }
+
+    @Test
+    public void testDecodeBenchmark() throws IOException {
+        List<ByteBuffer> gifs = readGifs();
+        Assume.assumeTrue("no gifs in " + GIF_DIR.getAbsolutePath(), !gifs.isEmpty());
+        GifDecoder.BitmapProvider pooled = new GifBitmapProvider(new BitmapPoolAdapter());
+        GifDecoder.BitmapProvider unpooled = new AllocatingBitmapProvider();
+
+        // Warm up both before measuring.
+        measure(gifs, pooled, 200);
+        measure(gifs, unpooled, 200);
+        Result pooledResult = measure(gifs, pooled, 500);
+        Result unpooledResult = measure(gifs, unpooled, 500);
+
+        System.out.println(String.format(Locale.US,
+                "GifDecoder: unpooled %,6.0f frames/s %,9d bytes/frame, pooled %,6.0f frames/s %,9d bytes/frame",
+                unpooledResult.framesPerSecond(), unpooledResult.bytesPerFrame(),
+                pooledResult.framesPerSecond(), pooledResult.bytesPerFrame()));
+        if (pooledResult.allocatedBytes >= 0) {
+            assertTrue(pooledResult.bytesPerFrame() < unpooledResult.bytesPerFrame());
+        }
+    }
+
+    private static List<ByteBuffer> readGifs() throws IOException {
+        List<ByteBuffer> gifs = new ArrayList<ByteBuffer>();
+        File[] files = GIF_DIR.listFiles();
+        if (files == null) {
+            return gifs;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(".gif")) {
+                continue;
+            }
+            FileInputStream is = new FileInputStream(file);
+            try {
+                FileChannel channel = is.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // Keep reading until the whole file is in the buffer.
+                }
+                buffer.flip();
+                gifs.add(buffer);
+            } finally {
+                is.close();
+            }
+        }
+        return gifs;
+    }
+
+    /**
+     * Creates a decoder per GIF, decodes its first frames and clears it again, round robin for the given time.
+     */
+    private static Result measure(List<ByteBuffer> gifs, GifDecoder.BitmapProvider provider, long millis) {
+        List<GifHeader> headers = new ArrayList<GifHeader>();
+        for (ByteBuffer gif : gifs) {
+            GifHeader header = new GifHeaderParser().setData(gif.duplicate()).parseHeader();
+            assertEquals(GifDecoder.STATUS_OK, header.getStatus());
+            headers.add(header);
+        }
+        int[] pixels = new int[0];
+        long frames = 0;
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        for (int i = 0; System.nanoTime() < deadline; i = (i + 1) % gifs.size()) {
+            GifHeader header = headers.get(i);
+            GifDecoder decoder = new GifDecoder(provider);
+            decoder.setData(header, gifs.get(i));
+            if (pixels.length != header.getWidth() * header.getHeight()) {
+                pixels = new int[header.getWidth() * header.getHeight()];
+            }
+            for (int frame = 0; frame < Math.min(FRAMES_PER_DECODER, decoder.getFrameCount()); frame++) {
+                decoder.advance();
+                assertTrue(decoder.getNextFramePixels(pixels));
+                frames++;
+            }
+            decoder.clear();
+        }
+        long elapsed = System.nanoTime() - start;
+        long endBytes = allocatedBytes();
+        return new Result(frames, elapsed, startBytes >= 0 && endBytes >= 0 ? endBytes - startBytes : -1);
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM doesn't tell. Reflection because
+     * java.lang.management isn't part of the android.jar the tests are compiled against.
+     */
+    private static long allocatedBytes() {
+        try {
+            Object threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(threadBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static class Result {
+        final long frames;
+        final long nanos;
+        final long allocatedBytes;
+
+        Result(long frames, long nanos, long allocatedBytes) {
+            this.frames = frames;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double framesPerSecond() {
+            return frames * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        long bytesPerFrame() {
+            return allocatedBytes / Math.max(1, frames);
+        }
+    }
+
+    /**
+     * Allocates new arrays for every decoder, like GifDecoder did before the pool.
+     */
+    private static class AllocatingBitmapProvider implements GifDecoder.BitmapProvider {
+        @Override
+        public Bitmap obtain(int width, int height, Bitmap.Config config) {
+            return null;
+        }
+
+        @Override
+        public void release(Bitmap bitmap) {
+        }
+
+        @Override
+        public byte[] obtainByteArray(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] bytes) {
+        }
+
+        @Override
+        public int[] obtainIntArray(int size) {
+            return new int[size];
+        }
+
+        @Override
+        public void release(int[] array) {
+        }
+    }
+}
@@ -104,7 +104,7 @@ class CommentsAdapter(private val activity: CommentsActivity, private val commen
                 comment.goodsCount = ++goodsCount
                 event.type = GoodCommentEvent.GOOD_COMMENT
             }
-            notifyItemChanged(position)
+            notifyItemChanged(position, PAYLOAD_GOODS)
             GoodComment.getResponse(comment.commentId, null)
             event.goodsCount = goodsCount
             EventBus.getDefault().post(event)
@@ -146,6 +146,17 @@ class CommentsAdapter(private val activity: CommentsActivity, private val commen
         }
     }
 
+    /**
+     * 只有赞发生变化时只刷新赞相关的控件，避免重新加载头像。
+     */
+    override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int, payloads: List<Any>) {
+        if (holder is CommentHolder && payloads.isNotEmpty() && payloads.all { it == PAYLOAD_GOODS }) {
+            bindGoods(holder, comments[position])
+        } else {
+            onBindViewHolder(holder, position)
+        }
+    }
+
     private fun bindCommentsHolder(holder: CommentHolder, position: Int) {
         val comment = comments[position]
         val avatar = comment.avatar
@@ -159,7 +170,17 @@ class CommentsAdapter(private val activity: CommentsActivity, private val commen
         holder.nickname.text = comment.nickname
         holder.content.text = comment.content
         holder.postDate.text = DateUtil.getConvertedDate(comment.postDate)
+        bindGoods(holder, comment)
+
+        if (layoutManager != null) {
+            val visibleItemCount = layoutManager.childCount
+            if (visibleItemCount >= dataItemCount - 1) {
+                activity.onLoad()
+            }
+        }
+    }
 
+    private fun bindGoods(holder: CommentHolder, comment: Comment) {
         if (comment.goodsCount > 0) {
             holder.goodCount.visibility = View.VISIBLE
             holder.goodCount.text = GlobalUtil.getConvertedNumber(comment.goodsCount)
@@ -171,13 +192,6 @@ class CommentsAdapter(private val activity: CommentsActivity, private val commen
         } else {
             holder.goodImage.setImageResource(R.drawable.ic_good)
         }
-
-        if (layoutManager != null) {
-            val visibleItemCount = layoutManager.childCount
-            if (visibleItemCount >= dataItemCount - 1) {
-                activity.onLoad()
-            }
-        }
     }
 
     private fun bindLoadingMoreHolder(holder: LoadingMoreViewHolder) {
@@ -270,6 +284,11 @@ class CommentsAdapter(private val activity: CommentsActivity, private val commen
 
         private const val TAG = "CommentsAdapter"
 
+        /**
+         * 只有赞的数量和状态发生了变化。
+         */
+        const val PAYLOAD_GOODS = "payload_goods"
+
         private const val TYPE_COMMENTS = 0
 
         private const val TYPE_LOADING_MORE = 1
@@ -270,8 +270,9 @@ class CommentsActivity : BaseActivity(), LoadDataListener {
                 0 -> {
                     val comments = loadComments.comments
                     recyclerView.stopScroll()
+                    val position = commentList.size
                     commentList.addAll(comments)
-                    adapter.notifyDataSetChanged()
+                    adapter.notifyItemRangeInserted(position, comments.size)
                     loadFinished()
                 }
                 10004 -> {
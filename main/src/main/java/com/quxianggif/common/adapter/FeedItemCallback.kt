@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.common.adapter
+
+import com.quxianggif.core.model.BaseFeed
+import com.quxianggif.core.model.HotFeed
+import com.quxianggif.core.model.SimpleListFeed
+
+/**
+ * 比对Feed列表元素的回调。只有点赞数和点赞状态发生变化时，返回[PAYLOAD_LIKES]，适配器只需要刷新点赞相关的控件。
+ */
+class FeedItemCallback<T : BaseFeed> : ListDiffer.ItemCallback<T>() {
+
+    override fun areContentsTheSame(oldItem: T, newItem: T): Boolean {
+        return oldItem.likesCount == newItem.likesCount && oldItem.isLikedAlready == newItem.isLikedAlready
+                && isDisplayTheSame(oldItem, newItem)
+    }
+
+    override fun getChangePayload(oldItem: T, newItem: T): Any? {
+        return if (isDisplayTheSame(oldItem, newItem)) PAYLOAD_LIKES else null
+    }
+
+    override fun applyPayload(oldItem: T, newItem: T) {
+        oldItem.likesCount = newItem.likesCount
+        oldItem.isLikedAlready = newItem.isLikedAlready
+    }
+
+    /**
+     * 判断两条Feed除点赞之外显示的内容是否相同。
+     */
+    private fun isDisplayTheSame(oldFeed: BaseFeed, newFeed: BaseFeed): Boolean {
+        if (oldFeed.cover != newFeed.cover || oldFeed.gif != newFeed.gif || oldFeed.content != newFeed.content
+                || oldFeed.imgWidth != newFeed.imgWidth || oldFeed.imgHeight != newFeed.imgHeight
+                || oldFeed.nickname != newFeed.nickname || oldFeed.avatar != newFeed.avatar || oldFeed.bgImage != newFeed.bgImage
+                || oldFeed.userId != newFeed.userId || oldFeed.postDate != newFeed.postDate || oldFeed.fsize != newFeed.fsize) {
+            return false
+        }
+        if (oldFeed is HotFeed && newFeed is HotFeed) {
+            return oldFeed.commentsCount == newFeed.commentsCount
+        }
+        if (oldFeed is SimpleListFeed && newFeed is SimpleListFeed) {
+            if (oldFeed.feedType != newFeed.feedType) {
+                return false
+            }
+            val oldRefFeed = oldFeed.refFeed()
+            val newRefFeed = newFeed.refFeed()
+            if (oldRefFeed == null || newRefFeed == null) {
+                return oldRefFeed == null && newRefFeed == null
+            }
+            return oldRefFeed.feedId == newRefFeed.feedId && isDisplayTheSame(oldRefFeed, newRefFeed)
+        }
+        return true
+    }
+
+    companion object {
+
+        /**
+         * 只有点赞数和点赞状态发生了变化。
+         */
+        const val PAYLOAD_LIKES = "payload_likes"
+
+    }
+
+}
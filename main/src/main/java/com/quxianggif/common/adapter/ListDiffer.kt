@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.common.adapter
+
+import android.support.v7.util.DiffUtil
+import android.support.v7.util.ListUpdateCallback
+import android.support.v7.widget.RecyclerView
+import com.quxianggif.core.GifFun
+import com.quxianggif.core.model.Model
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * 在后台线程中比对列表新旧数据的差异，然后在主线程中将最小的变化集合通知给适配器，用于替代刷新时的clear()、addAll()加
+ * notifyDataSetChanged()。
+ *
+ * 新旧数据按照[Model.modelId]（feedId、commentId等）匹配：
+ * 1. 内容完全相同的元素继续使用列表中原有的实例，不会触发任何重新绑定，因此封面图不会重新加载，coverLoaded等只保存在内存中的状态也不会丢失。
+ * 2. 只有点赞数之类的字段发生变化的元素，同样继续使用原有的实例，只把变化的字段复制过去，并以[ItemCallback.getChangePayload]返回的
+ * payload通知适配器局部刷新。
+ * 3. 其它发生变化的元素使用新的实例，并通知适配器完整地重新绑定。
+ *
+ * 如果在计算差异期间列表被修改过（比如删除了某条Feed），计算结果已经不可信，这时会以修改后的列表为旧数据重新计算差异，不会用开始
+ * 计算时的快照覆盖掉这些修改。新旧数据其中一方为空时直接替换数据并调用notifyDataSetChanged()，因为此时没有需要保留的界面状态，
+ * 而且有的适配器会随着数据是否为空显示或隐藏底部的加载更多视图。
+ *
+ * 所有方法都必须在主线程中调用。
+ *
+ * @param adapter 列表的适配器。
+ * @param list 适配器的数据源，提交新数据时会被原地修改。
+ * @param callback 比对元素内容的回调。
+ * @param offset 数据源中第一个元素在适配器中的位置，即头部视图的数量。
+ */
+class ListDiffer<T>(private val adapter: RecyclerView.Adapter<*>, private val list: MutableList<T>,
+                    private val callback: ItemCallback<T>, private val offset: Int = 0) {
+
+    /**
+     * 每次提交时递增，用于丢弃之前还未计算完成的提交。
+     */
+    private var generation = 0
+
+    /**
+     * 提交一组新的数据，差异计算完成并通知给适配器之后，在主线程中回调onCommitted。
+     *
+     * 如果在计算完成之前又提交了新的数据，本次提交会被丢弃，onCommitted也不会被回调。
+     */
+    fun submit(newItems: List<T>, onCommitted: (() -> Unit)? = null) {
+        val submitGeneration = ++generation
+        val oldItems = ArrayList(list)
+        val items = ArrayList(newItems)
+        if (oldItems.isEmpty() || items.isEmpty()) {
+            replace(items)
+            adapter.notifyDataSetChanged()
+            onCommitted?.invoke()
+            return
+        }
+        executor.execute {
+            val result = calculate(oldItems, items)
+            GifFun.getHandler().post {
+                if (submitGeneration != generation) {
+                    return@post
+                }
+                if (!isUnchangedSince(oldItems)) {
+                    submit(items, onCommitted)
+                    return@post
+                }
+                for ((oldItem, newItem) in result.updates) {
+                    callback.applyPayload(oldItem, newItem)
+                }
+                replace(result.mergedItems)
+                result.diff.dispatchUpdatesTo(OffsetUpdateCallback())
+                onCommitted?.invoke()
+            }
+        }
+    }
+
+    /**
+     * 丢弃还未计算完成的提交，在不经过本类直接修改列表数据之前调用。
+     */
+    fun cancel() {
+        generation++
+    }
+
+    /**
+     * 在后台线程中计算差异。
+     */
+    private fun calculate(oldItems: List<T>, newItems: List<T>): Result<T> {
+        val oldIndexes = HashMap<Any, T>()
+        for (item in oldItems) {
+            oldIndexes[callback.getItemKey(item)] = item
+        }
+        val mergedItems = ArrayList<T>(newItems.size)
+        val updates = ArrayList<Pair<T, T>>()
+        for (newItem in newItems) {
+            val oldItem = oldIndexes[callback.getItemKey(newItem)]
+            when {
+                oldItem == null -> mergedItems.add(newItem)
+                callback.areContentsTheSame(oldItem, newItem) -> mergedItems.add(oldItem)
+                callback.getChangePayload(oldItem, newItem) != null -> {
+                    mergedItems.add(oldItem)
+                    updates.add(Pair(oldItem, newItem))
+                }
+                else -> mergedItems.add(newItem)
+            }
+        }
+        val diff = DiffUtil.calculateDiff(object : DiffUtil.Callback() {
+
+            override fun getOldListSize() = oldItems.size
+
+            override fun getNewListSize() = newItems.size
+
+            override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+                return callback.getItemKey(oldItems[oldItemPosition]) == callback.getItemKey(newItems[newItemPosition])
+            }
+
+            override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+                return oldItems[oldItemPosition] === mergedItems[newItemPosition]
+                        && callback.areContentsTheSame(oldItems[oldItemPosition], newItems[newItemPosition])
+            }
+
+            override fun getChangePayload(oldItemPosition: Int, newItemPosition: Int): Any? {
+                if (oldItems[oldItemPosition] !== mergedItems[newItemPosition]) {
+                    return null
+                }
+                return callback.getChangePayload(oldItems[oldItemPosition], newItems[newItemPosition])
+            }
+
+        }, false)
+        return Result(mergedItems, updates, diff)
+    }
+
+    /**
+     * 判断列表是否仍然和开始计算差异时的快照一致。
+     */
+    private fun isUnchangedSince(snapshot: List<T>): Boolean {
+        if (list.size != snapshot.size) {
+            return false
+        }
+        for (i in snapshot.indices) {
+            if (list[i] !== snapshot[i]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun replace(items: List<T>) {
+        list.clear()
+        list.addAll(items)
+    }
+
+    private class Result<T>(val mergedItems: List<T>, val updates: List<Pair<T, T>>, val diff: DiffUtil.DiffResult)
+
+    /**
+     * 将差异结果中的位置加上头部视图的数量之后再通知适配器。
+     */
+    private inner class OffsetUpdateCallback : ListUpdateCallback {
+
+        override fun onInserted(position: Int, count: Int) {
+            adapter.notifyItemRangeInserted(position + offset, count)
+        }
+
+        override fun onRemoved(position: Int, count: Int) {
+            adapter.notifyItemRangeRemoved(position + offset, count)
+        }
+
+        override fun onMoved(fromPosition: Int, toPosition: Int) {
+            adapter.notifyItemMoved(fromPosition + offset, toPosition + offset)
+        }
+
+        override fun onChanged(position: Int, count: Int, payload: Any?) {
+            adapter.notifyItemRangeChanged(position + offset, count, payload)
+        }
+    }
+
+    /**
+     * 比对列表元素的回调，除了[applyPayload]之外都在后台线程中调用。
+     */
+    abstract class ItemCallback<T> {
+
+        /**
+         * 获取元素的唯一标识，默认使用[Model.modelId]，不同类型的元素即使id相同也不会被视为同一个元素。
+         */
+        open fun getItemKey(item: T): Any {
+            return if (item is Model) Pair(item.javaClass, item.modelId) else item as Any
+        }
+
+        /**
+         * 同一个元素的新旧数据在界面上显示的内容是否完全相同。
+         */
+        abstract fun areContentsTheSame(oldItem: T, newItem: T): Boolean
+
+        /**
+         * 同一个元素的内容不同时，如果只是部分字段发生了变化，返回描述这部分变化的payload，适配器可以据此只刷新对应的控件。
+         * 返回null表示需要完整地重新绑定。
+         */
+        open fun getChangePayload(oldItem: T, newItem: T): Any? = null
+
+        /**
+         * 将payload对应的字段从新数据复制到列表中原有的实例上，在主线程中调用。
+         */
+        open fun applyPayload(oldItem: T, newItem: T) {
+        }
+
+    }
+
+    companion object {
+
+        /**
+         * 所有列表共用的差异计算线程，保证同一个列表的多次提交按顺序计算。
+         */
+        private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "list-differ")
+        }
+
+    }
+
+}
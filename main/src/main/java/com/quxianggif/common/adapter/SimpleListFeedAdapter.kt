@@ -38,6 +38,7 @@ import android.widget.AdapterView
 import android.widget.FrameLayout
 import android.widget.ImageView
 import android.widget.TextView
+import com.bumptech.glide.DrawableRequestBuilder
 import com.bumptech.glide.Glide
 import com.bumptech.glide.Priority
 import com.bumptech.glide.load.engine.DiskCacheStrategy
@@ -54,14 +55,13 @@ import com.quxianggif.core.extension.dp2px
 import com.quxianggif.core.extension.logWarn
 import com.quxianggif.core.extension.showToast
 import com.quxianggif.core.model.BaseFeed
-import com.quxianggif.core.model.FollowingFeed
 import com.quxianggif.core.model.SimpleListFeed
-import com.quxianggif.core.model.WorldFeed
 import com.quxianggif.core.util.AndroidVersion
 import com.quxianggif.core.util.GlobalUtil
 import com.quxianggif.event.DeleteFeedEvent
 import com.quxianggif.event.LikeFeedEvent
 import com.quxianggif.feeds.adapter.FollowingFeedAdapter
+import com.quxianggif.feeds.model.FeedCacheRepository
 import com.quxianggif.feeds.ui.FeedDetailActivity
 import com.quxianggif.feeds.ui.RepostFeedActivity
 import com.quxianggif.network.model.Callback
@@ -75,10 +75,9 @@ import com.quxianggif.util.DateUtil
 import com.quxianggif.util.PopupUtil
 import com.quxianggif.util.ViewUtils
 import com.quxianggif.util.glide.CustomUrl
+import com.quxianggif.util.glide.FeedPreloader
 import jp.wasabeef.glide.transformations.CropCircleTransformation
 import org.greenrobot.eventbus.EventBus
-import org.litepal.LitePal
-import org.litepal.extension.deleteAllAsync
 import java.util.*
 
 /**
@@ -88,7 +87,7 @@ import java.util.*
  * @since 17/10/15
  */
 abstract class SimpleListFeedAdapter<T : SimpleListFeed, A : Activity>(protected open var activity: A, protected val feedList: MutableList<T>, private val maxImageWidth: Int,
-                                                         private val layoutManager: RecyclerView.LayoutManager?) : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+                                                         private val layoutManager: RecyclerView.LayoutManager?) : RecyclerView.Adapter<RecyclerView.ViewHolder>(), FeedPreloader.Provider {
 
     private val maxImageHeight: Int = dp2px(250f)
 
@@ -182,7 +181,7 @@ abstract class SimpleListFeedAdapter<T : SimpleListFeed, A : Activity>(protected
                 feed.likesCount = ++likesCount
                 event.type = LikeFeedEvent.LIKE_FEED
             }
-            notifyItemChanged(position)
+            notifyItemChanged(position, FeedItemCallback.PAYLOAD_LIKES)
             LikeFeed.getResponse(feed.feedId, null)
             event.likesCount = likesCount
             EventBus.getDefault().post(event)
@@ -226,6 +225,29 @@ abstract class SimpleListFeedAdapter<T : SimpleListFeed, A : Activity>(protected
         }
     }
 
+    /**
+     * 所有的payload都能局部刷新时只刷新对应的控件，避免重新加载封面图，否则完整地重新绑定。
+     */
+    override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int, payloads: List<Any>) {
+        if (holder is SimpleListFeedViewHolder && payloads.isNotEmpty() && payloads.all { bindPayload(holder, position, it) }) {
+            return
+        }
+        onBindViewHolder(holder, position)
+    }
+
+    /**
+     * 根据payload局部刷新Feed。
+     *
+     * @return 能够处理此payload返回true，否则返回false。
+     */
+    protected open fun bindPayload(holder: SimpleListFeedViewHolder, position: Int, payload: Any): Boolean {
+        if (payload == FeedItemCallback.PAYLOAD_LIKES) {
+            bindLikes(holder, feedList[position])
+            return true
+        }
+        return false
+    }
+
     protected open fun bindFeedHolder(holder: FeedViewHolder, position: Int) {
         val feed = feedList[position]
         bindFeedCover(holder, feed)
@@ -284,18 +306,7 @@ abstract class SimpleListFeedAdapter<T : SimpleListFeed, A : Activity>(protected
         holder.nickname.text = feed.nickname
         holder.feedContent.text = feed.content
         holder.postDate.text = DateUtil.getConvertedDate(feed.postDate)
-        holder.likesCount.text = feed.likesCount.toString()
-
-        if (AndroidVersion.hasLollipop()) {
-            val imageButton = holder.likes as CheckableImageButton
-            imageButton.isChecked = feed.isLikedAlready
-        } else {
-            if (feed.isLikedAlready) {
-                holder.likes.setImageResource(R.drawable.ic_liked)
-            } else {
-                holder.likes.setImageResource(R.drawable.ic_like)
-            }
-        }
+        bindLikes(holder, feed)
         if (feed.avatar.isBlank()) {
             Glide.with(activity)
                  .load(R.drawable.avatar_default)
@@ -321,6 +332,23 @@ abstract class SimpleListFeedAdapter<T : SimpleListFeed, A : Activity>(protected
         }
     }
 
+    /**
+     * 加载Feed的点赞数和点赞状态。
+     */
+    private fun bindLikes(holder: SimpleListFeedViewHolder, feed: SimpleListFeed) {
+        holder.likesCount.text = feed.likesCount.toString()
+        if (AndroidVersion.hasLollipop()) {
+            val imageButton = holder.likes as CheckableImageButton
+            imageButton.isChecked = feed.isLikedAlready
+        } else {
+            if (feed.isLikedAlready) {
+                holder.likes.setImageResource(R.drawable.ic_liked)
+            } else {
+                holder.likes.setImageResource(R.drawable.ic_like)
+            }
+        }
+    }
+
     private fun bindLoadingMoreHolder(holder: LoadingMoreViewHolder) {
         when {
             isNoMoreData -> {
@@ -342,14 +370,37 @@ abstract class SimpleListFeedAdapter<T : SimpleListFeed, A : Activity>(protected
     }
 
     private fun calculateImageHeight(feed: BaseFeed) {
+        val size = calculateImageSize(feed)
+        imageWidth = size[0]
+        imageHeight = size[1]
+    }
+
+    /**
+     * 计算Feed封面的显示宽高，不会修改当前的imageWidth和imageHeight，因此可以在预加载时使用。
+     */
+    private fun calculateImageSize(feed: BaseFeed): IntArray {
         val originalWidth = feed.imgWidth
         val originalHeight = feed.imgHeight
-        imageWidth = maxImageWidth
-        imageHeight = imageWidth * originalHeight / originalWidth
-        if (imageHeight > maxImageHeight) {
-            imageHeight = maxImageHeight
-            imageWidth = imageHeight * originalWidth / originalHeight
+        var width = maxImageWidth
+        var height = width * originalHeight / originalWidth
+        if (height > maxImageHeight) {
+            height = maxImageHeight
+            width = height * originalWidth / originalHeight
         }
+        return intArrayOf(width, height)
+    }
+
+    override fun getPreloadFeed(position: Int): BaseFeed? {
+        if (position >= dataItemCount) return null
+        val feed = feedList[position]
+        return if (feed.feedType == 1) feed.refFeed() else feed
+    }
+
+    override fun getCoverRequest(feed: BaseFeed) = buildCoverRequest(feed)
+
+    override fun getCoverSize(feed: BaseFeed): IntArray? {
+        if (feed.imgWidth <= 0 || feed.imgHeight <= 0) return null
+        return calculateImageSize(feed)
     }
 
     /**
@@ -424,19 +475,25 @@ abstract class SimpleListFeedAdapter<T : SimpleListFeed, A : Activity>(protected
             })
             feedList.removeAt(position)
             notifyItemRemoved(position)
-            LitePal.deleteAllAsync<WorldFeed>("feedid = ?", feedId.toString()).listen(null)
-            LitePal.deleteAllAsync<FollowingFeed>("feedid = ?", feedId.toString()).listen(null)
+            FeedCacheRepository.delete(feedId)
         }
         builder.setNegativeButton(GlobalUtil.getString(R.string.cancel), null)
         builder.create().show()
     }
 
-    private fun loadFeedCover(feed: BaseFeed, holder: SimpleListFeedViewHolder) {
-        Glide.with(activity)
+    /**
+     * 构建加载Feed封面的请求，列表显示和预加载共用此请求，保证两者的缓存Key一致。
+     */
+    private fun buildCoverRequest(feed: BaseFeed): DrawableRequestBuilder<String> {
+        return Glide.with(activity)
                 .load(feed.cover)
-                .override(feed.imgWidth, feed.imgHeight)
-                .placeholder(R.drawable.loading_bg_rect)
                 .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+    }
+
+    private fun loadFeedCover(feed: BaseFeed, holder: SimpleListFeedViewHolder) {
+        buildCoverRequest(feed)
+                .override(imageWidth, imageHeight)
+                .placeholder(R.drawable.loading_bg_rect)
                 .priority(Priority.IMMEDIATE)
                 .listener(object : RequestListener<String, GlideDrawable> {
                     override fun onException(e: java.lang.Exception?, model: String?, target: Target<GlideDrawable>?, isFirstResource: Boolean): Boolean {
@@ -30,6 +30,7 @@ import android.view.ViewGroup
 import android.widget.ImageView
 import android.widget.LinearLayout
 import android.widget.TextView
+import com.bumptech.glide.DrawableRequestBuilder
 import com.bumptech.glide.Glide
 import com.bumptech.glide.Priority
 import com.bumptech.glide.load.engine.DiskCacheStrategy
@@ -40,6 +41,7 @@ import com.quxianggif.R
 import com.quxianggif.common.holder.LoadingMoreViewHolder
 import com.quxianggif.common.transitions.TransitionUtils
 import com.quxianggif.common.view.CheckableImageButton
+import com.quxianggif.core.model.BaseFeed
 import com.quxianggif.core.model.WaterFallFeed
 import com.quxianggif.core.util.AndroidVersion
 import com.quxianggif.core.util.GlobalUtil
@@ -51,6 +53,7 @@ import com.quxianggif.network.model.LikeFeed
 import com.quxianggif.user.ui.UserHomePageActivity
 import com.quxianggif.util.ViewUtils
 import com.quxianggif.util.glide.CustomUrl
+import com.quxianggif.util.glide.FeedPreloader
 import jp.wasabeef.glide.transformations.CropCircleTransformation
 import org.greenrobot.eventbus.EventBus
 import java.lang.Exception
@@ -61,7 +64,7 @@ import java.lang.Exception
  * @since 2018/2/15
  */
 abstract class WaterFallFeedAdapter<T : WaterFallFeed>(protected var activity: Activity, private val feedList: List<T>, private val imageWidth: Int,
-                                                       private val layoutManager: RecyclerView.LayoutManager?) : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+                                                       private val layoutManager: RecyclerView.LayoutManager?) : RecyclerView.Adapter<RecyclerView.ViewHolder>(), FeedPreloader.Provider {
 
     /**
      * 获取RecyclerView数据源中元素的数量。
@@ -99,6 +102,17 @@ abstract class WaterFallFeedAdapter<T : WaterFallFeed>(protected var activity: A
         }
     }
 
+    /**
+     * 只有点赞发生变化时只刷新点赞相关的控件，避免重新加载封面图。
+     */
+    override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int, payloads: List<Any>) {
+        if (holder is FeedViewHolder && payloads.isNotEmpty() && payloads.all { it == FeedItemCallback.PAYLOAD_LIKES }) {
+            bindLikes(holder, feedList[position])
+        } else {
+            onBindViewHolder(holder, position)
+        }
+    }
+
     protected fun baseCreateFeedHolder(holder: FeedViewHolder) {
         holder.cardView.setOnClickListener { v ->
             if (AndroidVersion.hasLollipopMR1()) {
@@ -140,7 +154,7 @@ abstract class WaterFallFeedAdapter<T : WaterFallFeed>(protected var activity: A
                 feed.likesCount = ++likesCount
                 event.type = LikeFeedEvent.LIKE_FEED
             }
-            notifyItemChanged(position)
+            notifyItemChanged(position, FeedItemCallback.PAYLOAD_LIKES)
             LikeFeed.getResponse(feed.feedId, null)
             event.likesCount = likesCount
             EventBus.getDefault().post(event)
@@ -158,21 +172,10 @@ abstract class WaterFallFeedAdapter<T : WaterFallFeed>(protected var activity: A
         val feed = feedList[position]
         holder.feedContent.text = feed.content
         holder.nickname.text = feed.nickname
-        holder.likesCount.text = GlobalUtil.getConvertedNumber(feed.likesCount)
         val imageHeight = calculateImageHeight(feed)
         holder.feedCover.layoutParams.width = imageWidth
         holder.feedCover.layoutParams.height = imageHeight
-
-        if (AndroidVersion.hasLollipop()) {
-            val imageButton = holder.likes as CheckableImageButton
-            imageButton.isChecked = feed.isLikedAlready
-        } else {
-            if (feed.isLikedAlready) {
-                holder.likes.setImageResource(R.drawable.ic_liked)
-            } else {
-                holder.likes.setImageResource(R.drawable.ic_like)
-            }
-        }
+        bindLikes(holder, feed)
 
         loadFeedCover(feed, holder, imageHeight)
         if (feed.avatar.isBlank()) {
@@ -200,6 +203,20 @@ abstract class WaterFallFeedAdapter<T : WaterFallFeed>(protected var activity: A
         }
     }
 
+    private fun bindLikes(holder: FeedViewHolder, feed: T) {
+        holder.likesCount.text = GlobalUtil.getConvertedNumber(feed.likesCount)
+        if (AndroidVersion.hasLollipop()) {
+            val imageButton = holder.likes as CheckableImageButton
+            imageButton.isChecked = feed.isLikedAlready
+        } else {
+            if (feed.isLikedAlready) {
+                holder.likes.setImageResource(R.drawable.ic_liked)
+            } else {
+                holder.likes.setImageResource(R.drawable.ic_like)
+            }
+        }
+    }
+
     private fun bindLoadingMoreHolder(holder: LoadingMoreViewHolder) {
         when {
             isNoMoreData -> {
@@ -220,7 +237,18 @@ abstract class WaterFallFeedAdapter<T : WaterFallFeed>(protected var activity: A
         }
     }
 
-    private fun calculateImageHeight(feed: WaterFallFeed): Int {
+    override fun getPreloadFeed(position: Int): BaseFeed? {
+        return if (position < dataItemCount) feedList[position] else null
+    }
+
+    override fun getCoverRequest(feed: BaseFeed) = buildCoverRequest(feed)
+
+    override fun getCoverSize(feed: BaseFeed): IntArray? {
+        if (feed.imgWidth <= 0) return null
+        return intArrayOf(imageWidth, calculateImageHeight(feed))
+    }
+
+    private fun calculateImageHeight(feed: BaseFeed): Int {
         val originalWidth = feed.imgWidth
         val originalHeight = feed.imgHeight
         return imageWidth * originalHeight / originalWidth
@@ -250,12 +278,19 @@ abstract class WaterFallFeedAdapter<T : WaterFallFeed>(protected var activity: A
         }
     }
 
-    private fun loadFeedCover(feed: T, holder: FeedViewHolder, imageHeight: Int) {
-        Glide.with(activity)
+    /**
+     * 构建加载Feed封面的请求，列表显示和预加载共用此请求，保证两者的缓存Key一致。
+     */
+    private fun buildCoverRequest(feed: BaseFeed): DrawableRequestBuilder<String> {
+        return Glide.with(activity)
                 .load(feed.cover)
+                .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+    }
+
+    private fun loadFeedCover(feed: T, holder: FeedViewHolder, imageHeight: Int) {
+        buildCoverRequest(feed)
                 .override(imageWidth, imageHeight)
                 .placeholder(R.drawable.loading_bg_rect)
-                .diskCacheStrategy(DiskCacheStrategy.SOURCE)
                 .priority(Priority.IMMEDIATE)
                 .listener(object : RequestListener<String, GlideDrawable> {
                     override fun onException(e: Exception?, model: String?, target: Target<GlideDrawable>?, isFirstResource: Boolean): Boolean {
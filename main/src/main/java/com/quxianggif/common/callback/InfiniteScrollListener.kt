@@ -20,16 +20,23 @@ package com.quxianggif.common.callback
 import android.support.v7.widget.LinearLayoutManager
 import android.support.v7.widget.RecyclerView
 import android.support.v7.widget.StaggeredGridLayoutManager
+import com.quxianggif.util.glide.FeedPreloader
 
 
 /**
  * A scroll listener for RecyclerView to load more items as you approach the end.
  *
  * Adapted from https://gist.github.com/ssinss/e06f12ef66c51252563e
+ *
+ * If a [FeedPreloader] is given, it is notified of every scroll in either direction so it can prefetch the items
+ * that are about to become visible.
  */
-abstract class InfiniteScrollListener(private val layoutManager: RecyclerView.LayoutManager) : RecyclerView.OnScrollListener() {
+abstract class InfiniteScrollListener(private val layoutManager: RecyclerView.LayoutManager,
+                                      private val preloader: FeedPreloader? = null) : RecyclerView.OnScrollListener() {
 
     override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+        preloader?.onScrolled(recyclerView, layoutManager, dy)
+
         // bail out if scrolling upward or already loading data
         if (dy < 0 || isDataLoading() || isNoMoreData()) return
 
@@ -43,7 +50,7 @@ abstract class InfiniteScrollListener(private val layoutManager: RecyclerView.La
             firstVisibleItem = items.min()
         }
         if (firstVisibleItem != null) {
-            if (totalItemCount - visibleItemCount <= firstVisibleItem + VISIBLE_THRESHOLD) {
+            if (totalItemCount - visibleItemCount <= firstVisibleItem + visibleThreshold()) {
                 onLoadMore()
             }
         }
@@ -55,6 +62,12 @@ abstract class InfiniteScrollListener(private val layoutManager: RecyclerView.La
 
     abstract fun isNoMoreData(): Boolean
 
+    /**
+     * The number of items remaining below the visible ones at which [onLoadMore] is triggered. Override this to start
+     * loading the next page earlier, e.g. when the last page is partially consumed.
+     */
+    open fun visibleThreshold() = VISIBLE_THRESHOLD
+
     companion object {
 
         private const val TAG = "InfiniteScrollListener"
@@ -35,6 +35,7 @@ import com.bumptech.glide.Glide
 import com.bumptech.glide.Priority
 import com.bumptech.glide.load.engine.DiskCacheStrategy
 import com.quxianggif.R
+import com.quxianggif.common.adapter.ListDiffer
 import com.quxianggif.common.holder.LoadingMoreViewHolder
 import com.quxianggif.core.extension.dp2px
 import com.quxianggif.core.model.BaseFeed
@@ -257,6 +258,26 @@ class SearchAdapter(var activity: SearchActivity, val searchItemList: MutableLis
 
     }
 
+    /**
+     * 比对搜索结果列表元素的回调。搜索结果中不显示点赞等会频繁变化的数据，因此没有局部刷新，内容相同的元素不会被重新绑定。
+     */
+    class SearchItemCallback : ListDiffer.ItemCallback<SearchItem>() {
+
+        override fun areContentsTheSame(oldItem: SearchItem, newItem: SearchItem): Boolean {
+            if (oldItem is User && newItem is User) {
+                return oldItem.nickname == newItem.nickname && oldItem.description == newItem.description
+                        && oldItem.avatar == newItem.avatar && oldItem.bgImage == newItem.bgImage
+            }
+            if (oldItem is BaseFeed && newItem is BaseFeed) {
+                return oldItem.cover == newItem.cover && oldItem.imgWidth == newItem.imgWidth && oldItem.imgHeight == newItem.imgHeight
+                        && oldItem.content == newItem.content && oldItem.postDate == newItem.postDate && oldItem.userId == newItem.userId
+                        && oldItem.nickname == newItem.nickname && oldItem.avatar == newItem.avatar && oldItem.bgImage == newItem.bgImage
+            }
+            return false
+        }
+
+    }
+
     companion object {
 
         private const val TAG = "SearchAdapter"
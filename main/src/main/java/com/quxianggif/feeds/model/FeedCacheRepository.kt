@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.feeds.model
+
+import android.os.SystemClock
+import com.quxianggif.core.extension.logDebug
+import com.quxianggif.core.extension.logWarn
+import com.quxianggif.core.model.BaseFeed
+import com.quxianggif.core.model.FollowingFeed
+import com.quxianggif.core.model.HotFeed
+import com.quxianggif.core.model.RefFeed
+import com.quxianggif.core.model.SimpleListFeed
+import com.quxianggif.core.model.WorldFeed
+import org.litepal.LitePal
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Feed数据库缓存的统一读写入口，负责WorldFeed、FollowingFeed以及其引用的RefFeed的缓存。
+ *
+ * 所有读写操作都在同一个串行的后台线程中按提交顺序执行，因此读取时一定能看到之前提交的写入，也不会阻塞主线程和网络回调线程。
+ * 每次写入都在一个事务中完成，并且会以feedId为主键和数据库中已有的数据进行比对：只插入新的Feed，只更新内容有变化的Feed，
+ * 刷新时再删除已经不在列表中的Feed，而不是每次都先全部删除再全部重新插入。
+ *
+ * 每次写入的耗时都会记录下来，可以通过[getStats]获取。
+ *
+ * 热门Feed由于服务器接口设计的原因不能缓存（加载更多依赖服务器端的状态），不过由于比对逻辑是通用的，HotFeed也可以使用。
+ */
+object FeedCacheRepository {
+
+    private const val TAG = "FeedCacheRepository"
+
+    private const val DELETE_BATCH_SIZE = 200
+
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "feed-cache")
+    }
+
+    private val statsLock = Any()
+
+    private var writeCount = 0
+
+    private var totalWriteTime = 0L
+
+    private var maxWriteTime = 0L
+
+    private var lastWriteTime = 0L
+
+    /**
+     * 按照Feed由新到旧的顺序读取缓存的Feed，读取完成后在后台线程中回调。
+     *
+     * @param clazz 要读取的Feed类型。
+     * @param callback 读取完成的回调，数据库中没有缓存时会回调一个空列表。
+     */
+    fun <T : BaseFeed> load(clazz: Class<T>, callback: (List<T>) -> Unit) {
+        executor.execute {
+            val feeds = LitePal.order("feedid desc").find(clazz, FollowingFeed::class.java.isAssignableFrom(clazz))
+            callback(feeds)
+        }
+    }
+
+    /**
+     * 用刷新得到的Feeds替换缓存，不在列表中的缓存数据会被删除。
+     */
+    fun <T : BaseFeed> replace(clazz: Class<T>, feeds: List<T>) {
+        write(clazz, copyOf(clazz, feeds), true)
+    }
+
+    /**
+     * 将加载更多得到的Feeds合并到缓存中。
+     */
+    fun <T : BaseFeed> append(clazz: Class<T>, feeds: List<T>) {
+        write(clazz, copyOf(clazz, feeds), false)
+    }
+
+    /**
+     * 从所有缓存中删除指定的Feed。
+     */
+    fun delete(feedId: Long) {
+        executor.execute {
+            LitePal.deleteAll(WorldFeed::class.java, "feedid = ?", feedId.toString())
+            LitePal.deleteAll(FollowingFeed::class.java, "feedid = ?", feedId.toString())
+        }
+    }
+
+    /**
+     * 清空所有的Feed缓存。
+     */
+    fun clear() {
+        executor.execute {
+            LitePal.deleteAll(WorldFeed::class.java)
+            LitePal.deleteAll(FollowingFeed::class.java)
+            LitePal.deleteAll(RefFeed::class.java)
+        }
+    }
+
+    /**
+     * 获取写入耗时的统计数据。
+     */
+    fun getStats(): Stats {
+        synchronized(statsLock) {
+            return Stats(writeCount, totalWriteTime, maxWriteTime, lastWriteTime)
+        }
+    }
+
+    /**
+     * 在调用线程中复制要写入的Feeds。后台写入时会修改被保存的对象（比如LitePal分配的id、替换成数据库中的RefFeed），这些修改只会
+     * 发生在副本上，不会影响到列表中正在显示的Feed。
+     */
+    private fun <T : BaseFeed> copyOf(clazz: Class<T>, feeds: List<T>): List<T> {
+        return feeds.map { copyFeed(clazz, it) }
+    }
+
+    private fun <T : BaseFeed> copyFeed(clazz: Class<T>, feed: BaseFeed): T {
+        val copy = clazz.newInstance()
+        copy.feedId = feed.feedId
+        copyContent(feed, copy)
+        if (feed is FollowingFeed && copy is FollowingFeed) {
+            copy.refFeed = feed.refFeed?.let { copyFeed(RefFeed::class.java, it) }
+        }
+        return copy
+    }
+
+    private fun <T : BaseFeed> write(clazz: Class<T>, feeds: List<T>, isReplace: Boolean) {
+        executor.execute {
+            val start = SystemClock.elapsedRealtime()
+            val db = LitePal.getDatabase()
+            val result = WriteResult()
+            db.beginTransaction()
+            try {
+                if (FollowingFeed::class.java.isAssignableFrom(clazz)) {
+                    upsertRefFeeds(feeds, isReplace, result)
+                }
+                upsert(clazz, feeds, isReplace, result)
+                db.setTransactionSuccessful()
+            } catch (e: Exception) {
+                logWarn(TAG, "Save ${clazz.simpleName} failed.", e)
+            } finally {
+                db.endTransaction()
+            }
+            val elapsed = SystemClock.elapsedRealtime() - start
+            recordWrite(elapsed)
+            logDebug(TAG, "Saved ${clazz.simpleName}: ${result.inserted} inserted, ${result.updated} updated, " +
+                    "${result.unchanged} unchanged, ${result.deleted} deleted in ${elapsed}ms")
+        }
+    }
+
+    private fun <T : BaseFeed> upsert(clazz: Class<T>, feeds: List<T>, isReplace: Boolean, result: WriteResult) {
+        val existing = HashMap<Long, T>()
+        for (row in LitePal.findAll(clazz, FollowingFeed::class.java.isAssignableFrom(clazz))) {
+            existing[row.feedId] = row
+        }
+        val inserts = ArrayList<T>()
+        val keptIds = HashSet<Long>()
+        for (feed in feeds) {
+            if (!keptIds.add(feed.feedId)) continue // 同一批数据中重复的Feed只保存一次
+            val row = existing[feed.feedId]
+            if (row == null) {
+                inserts.add(feed)
+            } else if (hasSameContent(row, feed)) {
+                result.unchanged++
+            } else {
+                copyContent(feed, row)
+                row.save()
+                result.updated++
+            }
+        }
+        if (inserts.isNotEmpty()) {
+            LitePal.saveAll(inserts)
+            result.inserted += inserts.size
+        }
+        if (isReplace) {
+            val staleIds = existing.values.filter { it.feedId !in keptIds }.map { it.baseObjId }
+            result.deleted += deleteRows(clazz, staleIds)
+        }
+    }
+
+    /**
+     * 保存FollowingFeed所引用的RefFeed，并将每个FollowingFeed的refFeed替换成已经保存在数据库中的对象，这样保存FollowingFeed时
+     * 就能正确地关联到对应的RefFeed。
+     */
+    private fun <T : BaseFeed> upsertRefFeeds(feeds: List<T>, isReplace: Boolean, result: WriteResult) {
+        val existing = HashMap<Long, RefFeed>()
+        for (row in LitePal.findAll(RefFeed::class.java)) {
+            existing[row.feedId] = row
+        }
+        val saved = HashMap<Long, RefFeed>()
+        for (feed in feeds) {
+            val followingFeed = feed as FollowingFeed
+            val refFeed = followingFeed.refFeed ?: continue
+            val savedRefFeed = saved[refFeed.feedId] ?: run {
+                val row = existing[refFeed.feedId]
+                when {
+                    row == null -> {
+                        refFeed.save()
+                        result.inserted++
+                        refFeed
+                    }
+                    hasSameContent(row, refFeed) -> {
+                        result.unchanged++
+                        row
+                    }
+                    else -> {
+                        copyContent(refFeed, row)
+                        row.save()
+                        result.updated++
+                        row
+                    }
+                }
+            }
+            saved[refFeed.feedId] = savedRefFeed
+            followingFeed.refFeed = savedRefFeed
+        }
+        if (isReplace) {
+            // 刷新之后缓存中只剩下这一批FollowingFeed，其它的RefFeed都不会再被引用了
+            val staleIds = existing.values.filter { it.feedId !in saved }.map { it.baseObjId }
+            result.deleted += deleteRows(RefFeed::class.java, staleIds)
+        }
+    }
+
+    private fun deleteRows(clazz: Class<out BaseFeed>, ids: List<Long>): Int {
+        var deleted = 0
+        // 分批删除，避免SQL语句过长
+        for (chunk in ids.chunked(DELETE_BATCH_SIZE)) {
+            deleted += LitePal.deleteAll(clazz, "id in (${chunk.joinToString(",")})")
+        }
+        return deleted
+    }
+
+    private fun hasSameContent(row: BaseFeed, feed: BaseFeed): Boolean {
+        if (row.cover != feed.cover || row.gif != feed.gif || row.content != feed.content
+                || row.imgWidth != feed.imgWidth || row.imgHeight != feed.imgHeight || row.nickname != feed.nickname
+                || row.avatar != feed.avatar || row.bgImage != feed.bgImage || row.userId != feed.userId
+                || row.postDate != feed.postDate || row.fsize != feed.fsize || row.likesCount != feed.likesCount
+                || row.isLikedAlready != feed.isLikedAlready) {
+            return false
+        }
+        if (row is SimpleListFeed && feed is SimpleListFeed && row.feedType != feed.feedType) {
+            return false
+        }
+        if (row is HotFeed && feed is HotFeed && row.commentsCount != feed.commentsCount) {
+            return false
+        }
+        if (row is FollowingFeed && feed is FollowingFeed && row.refFeed?.baseObjId != feed.refFeed?.baseObjId) {
+            return false
+        }
+        return true
+    }
+
+    private fun copyContent(from: BaseFeed, to: BaseFeed) {
+        to.cover = from.cover
+        to.gif = from.gif
+        to.content = from.content
+        to.imgWidth = from.imgWidth
+        to.imgHeight = from.imgHeight
+        to.nickname = from.nickname
+        to.avatar = from.avatar
+        to.bgImage = from.bgImage
+        to.userId = from.userId
+        to.postDate = from.postDate
+        to.fsize = from.fsize
+        to.likesCount = from.likesCount
+        to.isLikedAlready = from.isLikedAlready
+        if (from is SimpleListFeed && to is SimpleListFeed) {
+            to.feedType = from.feedType
+        }
+        if (from is HotFeed && to is HotFeed) {
+            to.commentsCount = from.commentsCount
+        }
+        if (from is FollowingFeed && to is FollowingFeed) {
+            to.refFeed = from.refFeed
+        }
+    }
+
+    private fun recordWrite(elapsed: Long) {
+        synchronized(statsLock) {
+            writeCount++
+            totalWriteTime += elapsed
+            maxWriteTime = Math.max(maxWriteTime, elapsed)
+            lastWriteTime = elapsed
+        }
+    }
+
+    private class WriteResult {
+        var inserted = 0
+        var updated = 0
+        var unchanged = 0
+        var deleted = 0
+    }
+
+    /**
+     * Feed缓存写入耗时的统计数据，时间单位都是毫秒。
+     */
+    class Stats(val writeCount: Int, val totalWriteTime: Long, val maxWriteTime: Long, val lastWriteTime: Long) {
+
+        val averageWriteTime: Long
+            get() = if (writeCount == 0) 0 else totalWriteTime / writeCount
+
+        override fun toString(): String {
+            return "Stats(writeCount=$writeCount, averageWriteTime=${averageWriteTime}ms, maxWriteTime=${maxWriteTime}ms, " +
+                    "lastWriteTime=${lastWriteTime}ms)"
+        }
+    }
+
+}
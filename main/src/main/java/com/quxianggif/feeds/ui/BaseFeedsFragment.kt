@@ -32,6 +32,7 @@ import com.quxianggif.core.extension.postDelayed
 import com.quxianggif.event.CleanCacheEvent
 import com.quxianggif.event.MessageEvent
 import com.quxianggif.event.RefreshMainActivityFeedsEvent
+import com.quxianggif.util.glide.FeedPreloader
 import org.greenrobot.eventbus.EventBus
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
@@ -87,7 +88,9 @@ abstract class BaseFeedsFragment : BaseFragment() {
         // setup configurations and events
         setupRecyclerView()
         swipeRefresh.setColorSchemeResources(R.color.colorAccent)
-        recyclerView.addOnScrollListener(object: InfiniteScrollListener(layoutManager) {
+        // 支持预加载的适配器会在滑动时提前加载即将显示的Feed封面
+        val preloader = (adapter as? FeedPreloader.Provider)?.let { FeedPreloader(activity, it) }
+        recyclerView.addOnScrollListener(object: InfiniteScrollListener(layoutManager, preloader) {
 
             override fun onLoadMore() {
                 loadDataListener.onLoad()
@@ -98,6 +101,8 @@ abstract class BaseFeedsFragment : BaseFragment() {
 
             override fun isNoMoreData() = isNoMoreData
 
+            override fun visibleThreshold() = prefetchDistance()
+
         })
         swipeRefresh.setOnRefreshListener { refreshFeeds() }
         loadFeedsFromDB()
@@ -189,7 +194,10 @@ abstract class BaseFeedsFragment : BaseFragment() {
 
     internal abstract fun setupRecyclerView()
 
-    internal abstract fun loadFeeds(lastFeed: Long)
+    /**
+     * 列表中剩余多少条未显示的Feed时开始加载下一页。
+     */
+    internal abstract fun prefetchDistance(): Int
 
     internal abstract fun refreshFeeds()
 
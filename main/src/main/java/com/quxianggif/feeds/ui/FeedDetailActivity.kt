@@ -25,12 +25,10 @@ import android.app.Activity
 import android.app.ActivityOptions
 import android.content.ContentValues
 import android.content.Intent
-import android.content.SharedPreferences
 import android.net.Uri
 import android.os.Build
 import android.os.Bundle
 import android.os.Environment
-import android.preference.PreferenceManager
 import android.provider.MediaStore
 import android.provider.Settings
 import android.support.v4.app.ActivityCompat
@@ -46,6 +44,7 @@ import com.bumptech.glide.Glide
 import com.bumptech.glide.Priority
 import com.bumptech.glide.load.engine.DiskCacheStrategy
 import com.bumptech.glide.load.resource.drawable.GlideDrawable
+import com.bumptech.glide.load.resource.gif.GifDrawable
 import com.bumptech.glide.request.RequestListener
 import com.bumptech.glide.request.animation.GlideAnimation
 import com.bumptech.glide.request.target.SimpleTarget
@@ -115,8 +114,6 @@ class FeedDetailActivity : BaseActivity(), View.OnClickListener {
 
     private lateinit var adapter: FeedDetailMoreAdapter
 
-    private lateinit var preferences: SharedPreferences
-
     private lateinit var gifPlayTarget: GifPlayTarget
 
     private lateinit var mGifUrl: String
@@ -199,17 +196,16 @@ class FeedDetailActivity : BaseActivity(), View.OnClickListener {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_feed_detail)
 
-        preferences = PreferenceManager.getDefaultSharedPreferences(this)
-        loopForeverInit = preferences.getBoolean(getString(R.string.key_loop_gif_play), true)
+        loopForeverInit = AppSettings.loopGifPlay
         loopForeverLast = loopForeverInit
-        gifPlaySpeedInit = preferences.getString(getString(R.string.key_gif_play_speed), "3") ?: ""
+        gifPlaySpeedInit = AppSettings.gifPlaySpeed
         gifPlaySpeedLast = gifPlaySpeedInit
     }
 
     override fun onResume() {
         super.onResume()
-        loopForever = preferences.getBoolean(getString(R.string.key_loop_gif_play), true)
-        gifPlaySpeed = preferences.getString(getString(R.string.key_gif_play_speed), "3") ?: ""
+        loopForever = AppSettings.loopGifPlay
+        gifPlaySpeed = AppSettings.gifPlaySpeed
         if (loopForever != loopForeverLast || gifPlaySpeed != gifPlaySpeedLast) {
             fetchGifUrl() // 当对GIF播放设置做成更改时，需要重新加载GIF图
             loopForeverLast = loopForever
@@ -741,8 +737,7 @@ class FeedDetailActivity : BaseActivity(), View.OnClickListener {
         } else {
             val network = NetworkUtil.checkNetwork()
             if (network == NetworkUtil.MOBILE) {
-                val prefs = PreferenceManager.getDefaultSharedPreferences(this@FeedDetailActivity)
-                val alertForBigGif = prefs.getBoolean(getString(R.string.key_alert_for_big_gif), true)
+                val alertForBigGif = AppSettings.alertForBigGif
                 logDebug(TAG, "alert for big gif " + alertForBigGif + " , gif size is " + mFeed.fsize)
                 val isBigGif = mFeed.fsize > 4 * 1024 * 1024 /* 大于4M的GIF图片被视为大图 */
                 if (alertForBigGif && isBigGif) {
@@ -754,7 +749,7 @@ class FeedDetailActivity : BaseActivity(), View.OnClickListener {
                             .setView(dialogView)
                             .setPositiveButton(GlobalUtil.getString(R.string.forward)) { _, _ ->
                                 if (isForwardAndDoNotAlertAgainChecked) {
-                                    prefs.edit().putBoolean(getString(R.string.key_alert_for_big_gif), false).apply()
+                                    AppSettings.alertForBigGif = false
                                 }
                                 sendFetchGifUrlRequest(url)
                             }
@@ -829,9 +824,7 @@ class FeedDetailActivity : BaseActivity(), View.OnClickListener {
 
     private fun loadGif(gifUrl: String) {
         mGifUrl = gifUrl
-        val loopForever = PreferenceManager.getDefaultSharedPreferences(this)
-                .getBoolean(getString(R.string.key_loop_gif_play), true)
-        gifPlayTarget = GifPlayTarget(feedGif, loopForever)
+        gifPlayTarget = GifPlayTarget(feedGif, AppSettings.loopGifPlay)
         gifPlayTarget.setGifPlaySpeed(gifPlaySpeed)
         gifPlayTarget.setProgressListener(gifUrl, object : ProgressListener {
             override fun onProgress(progress: Int) {
@@ -862,6 +855,8 @@ class FeedDetailActivity : BaseActivity(), View.OnClickListener {
 
                     override fun onResourceReady(resource: GlideDrawable, model: CustomUrl, target: Target<GlideDrawable>,
                                                  isFromMemoryCache: Boolean, isFirstResource: Boolean): Boolean {
+                        // 在开始播放之前设置，使再次打开同一个GIF时可以复用已经解码好的帧
+                        (resource as? GifDrawable)?.setFrameCacheKey(model.cacheKey)
                         gifLoadStatus = GIF_LOAD_SUCCESS
                         gifFrontLayout.visibility = View.INVISIBLE
                         return false
@@ -947,11 +942,8 @@ class FeedDetailActivity : BaseActivity(), View.OnClickListener {
             }
             builder.setNegativeButton(GlobalUtil.getString(R.string.ignore)) { _, _ ->
                 // 用户选择忽略，则需要将设置改回初始值
-                PreferenceManager.getDefaultSharedPreferences(this@FeedDetailActivity)
-                        .edit()
-                        .putBoolean(getString(R.string.key_loop_gif_play), loopForeverInit)
-                        .putString(getString(R.string.key_gif_play_speed), gifPlaySpeedInit)
-                        .apply()
+                AppSettings.loopGifPlay = loopForeverInit
+                AppSettings.gifPlaySpeed = gifPlaySpeedInit
                 finishSelf()
             }
             builder.create().show()
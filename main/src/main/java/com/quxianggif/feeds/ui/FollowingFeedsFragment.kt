@@ -27,6 +27,8 @@ import android.view.View
 import android.view.ViewGroup
 import android.view.WindowManager
 import com.quxianggif.R
+import com.quxianggif.common.adapter.FeedItemCallback
+import com.quxianggif.common.adapter.ListDiffer
 import com.quxianggif.common.callback.LoadDataListener
 import com.quxianggif.common.callback.PendingRunnable
 import com.quxianggif.core.GifFun
@@ -35,23 +37,17 @@ import com.quxianggif.core.extension.logWarn
 import com.quxianggif.core.extension.postDelayed
 import com.quxianggif.core.extension.searchModelIndex
 import com.quxianggif.core.model.FollowingFeed
-import com.quxianggif.core.model.RefFeed
 import com.quxianggif.core.util.GlobalUtil
 import com.quxianggif.event.*
 import com.quxianggif.feeds.adapter.FollowingFeedAdapter
+import com.quxianggif.feeds.model.FeedCacheRepository
 import com.quxianggif.network.model.FetchFollowingFeeds
-import com.quxianggif.network.model.OriginThreadCallback
-import com.quxianggif.network.model.Response
+import com.quxianggif.network.util.FeedPager
 import com.quxianggif.user.ui.RecommendFollowingActivity
 import com.quxianggif.util.ResponseHandler
 import org.greenrobot.eventbus.EventBus
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
-import org.litepal.LitePal
-import org.litepal.extension.deleteAll
-import org.litepal.extension.findAll
-import java.util.*
-import kotlin.concurrent.thread
 
 /**
  * 展示关注用户所发的Feeds。
@@ -59,12 +55,24 @@ import kotlin.concurrent.thread
  * @author guolin
  * @since 17/7/24
  */
-class FollowingFeedsFragment : BaseFeedsFragment(), LoadDataListener {
+class FollowingFeedsFragment : BaseFeedsFragment(), LoadDataListener, FeedPager.Listener<FollowingFeed, FetchFollowingFeeds> {
 
     /**
-     * RecyclerView的数据源，用于存储所有展示中的Feeds。
+     * 负责分页加载关注用户所发的Feeds。
      */
-    internal var feedList: MutableList<FollowingFeed> = ArrayList()
+    private val pager = FeedPager<FollowingFeed, FetchFollowingFeeds>({ cursor, callback ->
+        FetchFollowingFeeds.getResponse(cursor, callback)
+    }, { it.feeds }, this)
+
+    /**
+     * RecyclerView的数据源，用于存储所有展示中的Feeds，由pager负责填充。
+     */
+    internal val feedList: MutableList<FollowingFeed> = pager.feeds
+
+    /**
+     * 刷新时在后台线程中比对新旧Feeds，只把发生变化的部分通知给适配器。
+     */
+    private lateinit var differ: ListDiffer<FollowingFeed>
 
     /**
      * 通过获取屏幕宽度来计算出每张图片最大的宽度。
@@ -95,46 +103,24 @@ class FollowingFeedsFragment : BaseFeedsFragment(), LoadDataListener {
     override fun setupRecyclerView() {
         layoutManager = LinearLayoutManager(activity)
         adapter = FollowingFeedAdapter(this, feedList, maxImageWidth, layoutManager)
+        differ = ListDiffer(adapter, feedList, FeedItemCallback())
         recyclerView.layoutManager = layoutManager
         recyclerView.adapter = adapter
         recyclerView.setHasFixedSize(true)
         (recyclerView.itemAnimator as SimpleItemAnimator).supportsChangeAnimations = false
     }
 
-    override fun loadFeeds(lastFeed: Long) {
-        val isRefreshing = lastFeed <= 0
-        FetchFollowingFeeds.getResponse(lastFeed, object : OriginThreadCallback {
-            override fun onResponse(response: Response) {
-                handleFetchedFeeds(response, isRefreshing)
-                isLoadingMore = false
-            }
-
-            override fun onFailure(e: Exception) {
-                logWarn(TAG, e.message, e)
-                if (isRefreshing) {
-                    ResponseHandler.handleFailure(e)
-                }
-                activity.runOnUiThread {
-                    loadFailed(null)
-                    isLoadingMore = false
-                }
-            }
-        })
-    }
-
     override fun refreshFeeds() {
-        loadFeeds(0)
+        pager.refresh()
     }
 
     override fun loadFeedsFromDB() {
-        thread {
-            val feeds = LitePal.findAll<FollowingFeed>(true)
+        FeedCacheRepository.load(FollowingFeed::class.java) { feeds ->
             if (feeds.isEmpty()) {
-                refreshFeeds()
+                activity.runOnUiThread { refreshFeeds() }
             } else {
                 activity.runOnUiThread {
-                    feedList.clear()
-                    feedList.addAll(feeds)
+                    pager.restore(feeds)
                     recyclerView.recycledViewPool.clear()
                     adapter.notifyDataSetChanged()
                     loadFinished()
@@ -148,15 +134,12 @@ class FollowingFeedsFragment : BaseFeedsFragment(), LoadDataListener {
         }
     }
 
+    override fun prefetchDistance() = pager.prefetchDistance
+
     override fun onLoad() {
-        if (!isLoadingMore) {
-            if (feedList.isNotEmpty()) {
-                isLoadingMore = true
-                isLoadFailed = false
-                isNoMoreData = false
-                val lastFeed = feedList[feedList.size - 1].feedId
-                loadFeeds(lastFeed)
-            }
+        if (!isLoadingMore && pager.loadMore()) {
+            isLoadingMore = true
+            isLoadFailed = false
         }
     }
 
@@ -189,7 +172,7 @@ class FollowingFeedsFragment : BaseFeedsFragment(), LoadDataListener {
                         val feed = feedList[index]
                         feed.isLikedAlready = messageEvent.type == LikeFeedEvent.LIKE_FEED
                         feed.likesCount = messageEvent.likesCount
-                        adapter.notifyItemChanged(index)
+                        adapter.notifyItemChanged(index, FeedItemCallback.PAYLOAD_LIKES)
                     }
                 }
                 pendingRunnable.put(index, runnable)
@@ -215,63 +198,56 @@ class FollowingFeedsFragment : BaseFeedsFragment(), LoadDataListener {
         return feedList.size
     }
 
-    /**
-     *
-     * 处理获取关注列表feeds请求的返回结果。
-     *
-     * @param response
-     * 服务器响应的获取feeds请求的实体类。
-     * @param isRefreshing
-     * true表示刷新请求，false表示加载更多请求。
-     */
-    private fun handleFetchedFeeds(response: Response, isRefreshing: Boolean) {
+    override fun onPageLoaded(response: FetchFollowingFeeds, position: Int, feeds: List<FollowingFeed>, isRefresh: Boolean) {
         isNoMoreData = false
-        if (!ResponseHandler.handleResponse(response)) {
-            val fetchFollowingFeeds = response as FetchFollowingFeeds
-            val status = fetchFollowingFeeds.status
-            if (status == 0) {
-                val feeds = fetchFollowingFeeds.feeds
-                if (isRefreshing) {
-                    LitePal.deleteAll<FollowingFeed>()
-                    LitePal.deleteAll<RefFeed>()
-                    saveCachedFeeds(feeds)
-                    activity.runOnUiThread {
-                        feedList.clear()
-                        feedList.addAll(feeds)
-                        adapter.notifyDataSetChanged()
-                        recyclerView.scrollToPosition(0)
-                        loadFinished()
-                    }
-                } else {
-                    saveCachedFeeds(feeds)
-                    activity.runOnUiThread {
-                        feedList.addAll(feeds)
-                        recyclerView.stopScroll()
-                        adapter.notifyDataSetChanged()
-                        loadFinished()
-                    }
-                }
-            } else if (status == 10004) {
-                isNoMoreData = true
-                activity.runOnUiThread {
-                    if (isRefreshing) {
-                        feedList.clear()
-                    } else {
-                        adapter.notifyItemChanged(adapter.itemCount - 1)
-                    }
-                    loadFinished()
-                }
-            } else {
-                logWarn(TAG, "Fetch feeds failed. " + GlobalUtil.getResponseClue(status, fetchFollowingFeeds.msg))
-                activity.runOnUiThread {
-                    loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
-                }
+        if (isRefresh) {
+            FeedCacheRepository.replace(FollowingFeed::class.java, feeds)
+            isLoadingMore = true // 提交完成之前不能加载下一页，否则下一页会被添加到旧的数据后面
+            differ.submit(feeds) {
+                isLoadingMore = false
+                recyclerView.scrollToPosition(0)
+                loadFinished()
             }
         } else {
-            activity.runOnUiThread { loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status) }
+            isLoadingMore = false
+            FeedCacheRepository.append(FollowingFeed::class.java, feeds)
+            adapter.notifyItemRangeInserted(position, feeds.size)
+            loadFinished()
         }
     }
 
+    override fun onNoMoreData(response: FetchFollowingFeeds, isRefresh: Boolean) {
+        isLoadingMore = false
+        isNoMoreData = true
+        if (isRefresh) {
+            differ.cancel()
+            adapter.notifyDataSetChanged()
+        } else {
+            adapter.notifyItemChanged(adapter.itemCount - 1)
+        }
+        loadFinished()
+    }
+
+    override fun onLoadFailed(response: FetchFollowingFeeds?, e: Exception?, isRefresh: Boolean) {
+        isLoadingMore = false
+        if (response == null) {
+            logWarn(TAG, e?.message, e)
+            if (isRefresh && e != null) {
+                ResponseHandler.handleFailure(e)
+            }
+            loadFailed(null)
+        } else if (!ResponseHandler.handleResponse(response)) {
+            logWarn(TAG, "Fetch feeds failed. " + GlobalUtil.getResponseClue(response.status, response.msg))
+            loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
+        } else {
+            loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status)
+        }
+    }
+
+    override fun onPagesEvicted(count: Int) {
+        adapter.notifyItemRangeRemoved(0, count)
+    }
+
     override fun loadFinished() {
         super.loadFinished()
         if (feedList.isEmpty()) {
@@ -285,16 +261,6 @@ class FollowingFeedsFragment : BaseFeedsFragment(), LoadDataListener {
         }
     }
 
-    private fun saveCachedFeeds(feeds: List<FollowingFeed>) {
-        feeds.forEach {
-            if (it.feedType == 1) {
-                it.refFeed?.save()
-            }
-            it.save()
-        }
-        LitePal.saveAll(feeds)
-    }
-
     companion object {
 
         private const val TAG = "FollowingFeedsFragment"
@@ -18,6 +18,8 @@
 package com.quxianggif.feeds.ui
 
 import com.quxianggif.R
+import com.quxianggif.common.adapter.FeedItemCallback
+import com.quxianggif.common.adapter.ListDiffer
 import com.quxianggif.common.callback.LoadDataListener
 import com.quxianggif.common.callback.PendingRunnable
 import com.quxianggif.core.extension.logWarn
@@ -29,12 +31,10 @@ import com.quxianggif.event.*
 import com.quxianggif.feeds.adapter.HotFeedAdapter
 import com.quxianggif.feeds.view.SpaceItemDecoration
 import com.quxianggif.network.model.FetchHotFeeds
-import com.quxianggif.network.model.OriginThreadCallback
-import com.quxianggif.network.model.Response
+import com.quxianggif.network.util.FeedPager
 import com.quxianggif.util.ResponseHandler
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
-import java.util.*
 
 /**
  * 展示热门频道的Feeds内容。
@@ -42,54 +42,42 @@ import java.util.*
  * @author guolin
  * @since 18/2/20
  */
-class HotFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
+class HotFeedsFragment : WaterFallFeedsFragment(), LoadDataListener, FeedPager.Listener<HotFeed, FetchHotFeeds> {
 
     /**
-     * RecyclerView的数据源，用于存储所有展示中的Feeds。
+     * 负责分页加载热门频道的Feeds。热门Feeds的加载更多依赖服务器端的状态，因此游标只用于区分刷新和加载更多。
      */
-    internal var feedList: MutableList<HotFeed> = ArrayList()
+    private val pager = FeedPager<HotFeed, FetchHotFeeds>({ cursor, callback ->
+        if (cursor > 0) { // 此处cursor > 0表示加载更多热门feeds
+            FetchHotFeeds.getLoadingMoreResponse(callback)
+        } else { // cursor等于0表示刷新热门feeds
+            FetchHotFeeds.getResponse(callback)
+        }
+    }, { it.feeds }, this)
+
+    /**
+     * RecyclerView的数据源，用于存储所有展示中的Feeds，由pager负责填充。
+     */
+    internal val feedList: MutableList<HotFeed> = pager.feeds
+
+    /**
+     * 刷新时在后台线程中比对新旧Feeds，只把发生变化的部分通知给适配器。
+     */
+    private lateinit var differ: ListDiffer<HotFeed>
 
     override fun setupRecyclerView() {
         super.setupRecyclerView()
         adapter = HotFeedAdapter(this, feedList, imageWidth, layoutManager)
+        differ = ListDiffer(adapter, feedList, FeedItemCallback())
         recyclerView.adapter = adapter
         recyclerView.addItemDecoration(SpaceItemDecoration(adapter as HotFeedAdapter))
     }
 
-    /**
-     * 加载feeds。如果数据库有缓存则优先显示缓存内存，如果没有缓存则从网络获取feeds。
-     */
-    override fun loadFeeds(lastFeed: Long) {
-        val isRefreshing = lastFeed == 0L /* lastFeed等于0表示刷新 */
-        val callback = object : OriginThreadCallback {
-            override fun onResponse(response: Response) {
-                handleFetchedFeeds(response, isRefreshing)
-                isLoadingMore = false
-            }
-
-            override fun onFailure(e: Exception) {
-                logWarn(TAG, e.message, e)
-                if (isRefreshing) {
-                    ResponseHandler.handleFailure(e)
-                }
-                activity.runOnUiThread{
-                    loadFailed(null)
-                    isLoadingMore = false
-                }
-            }
-        }
-        if (lastFeed > 0) { // 此处lastFeed > 0表示加载更多热门feeds
-            FetchHotFeeds.getLoadingMoreResponse(callback)
-        } else { // lastFeed等于0表示刷新热门feeds
-            FetchHotFeeds.getResponse(callback)
-        }
-    }
-
     /**
      * 刷新feeds。
      */
     override fun refreshFeeds() {
-        loadFeeds(0)
+        pager.refresh()
     }
 
     override fun loadFeedsFromDB() {
@@ -101,14 +89,12 @@ class HotFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
         return feedList.size
     }
 
+    override fun prefetchDistance() = pager.prefetchDistance
+
     override fun onLoad() {
-        if (!isLoadingMore) {
-            if (feedList.isNotEmpty()) {
-                isLoadingMore = true
-                isLoadFailed = false
-                isLoadingMore = true
-                loadFeeds(1) // 此处lastFeed恒定为1，表示加载更多。
-            }
+        if (!isLoadingMore && pager.loadMore()) {
+            isLoadingMore = true
+            isLoadFailed = false
         }
     }
 
@@ -132,7 +118,7 @@ class HotFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
                         val feed = feedList[index]
                         feed.isLikedAlready = messageEvent.type == LikeFeedEvent.LIKE_FEED
                         feed.likesCount = messageEvent.likesCount
-                        adapter.notifyItemChanged(index)
+                        adapter.notifyItemChanged(index, FeedItemCallback.PAYLOAD_LIKES)
                     }
                 }
                 pendingRunnable.put(index, runnable)
@@ -163,57 +149,55 @@ class HotFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
         }
     }
 
-    /**
-     *
-     * 处理获取世界频道feeds请求的返回结果。
-     *
-     * @param response
-     * 服务器响应的获取feeds请求的实体类。
-     * @param isRefreshing
-     * true表示刷新请求，false表示加载更多请求。
-     */
-    private fun handleFetchedFeeds(response: Response, isRefreshing: Boolean) {
+    override fun onPageLoaded(response: FetchHotFeeds, position: Int, feeds: List<HotFeed>, isRefresh: Boolean) {
         isNoMoreData = false
-        if (!ResponseHandler.handleResponse(response)) {
-            val fetchHotFeeds = response as FetchHotFeeds
-            val status = fetchHotFeeds.status
-            if (status == 0) {
-                val feeds = fetchHotFeeds.feeds
-                if (isRefreshing) {
-                    activity.runOnUiThread {
-                        feedList.clear()
-                        feedList.addAll(feeds)
-                        adapter.notifyDataSetChanged()
-                        recyclerView.scrollToPosition(0)
-                        loadFinished()
-                    }
-                } else {
-                    val oldFeedsCount = feedList.size
-                    activity.runOnUiThread {
-                        feedList.addAll(feeds)
-                        recyclerView.stopScroll()
-                        adapter.notifyItemRangeInserted(oldFeedsCount, feeds.size)
-                        loadFinished()
-                    }
-                }
-            } else if (status == 10004) {
-                isNoMoreData = true
-                activity.runOnUiThread {
-                    adapter.notifyItemChanged(adapter.itemCount - 1)
-                    loadFinished()
-                }
-            } else {
-                logWarn(TAG, "Fetch feeds failed. " + GlobalUtil.getResponseClue(status, fetchHotFeeds.msg))
-                activity.runOnUiThread {
-                    showToast(GlobalUtil.getString(R.string.fetch_data_failed))
-                    loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
-                }
+        if (isRefresh) {
+            isLoadingMore = true // 提交完成之前不能加载下一页，否则下一页会被添加到旧的数据后面
+            differ.submit(feeds) {
+                isLoadingMore = false
+                recyclerView.scrollToPosition(0)
+                loadFinished()
             }
         } else {
-            activity.runOnUiThread { loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status) }
+            isLoadingMore = false
+            adapter.notifyItemRangeInserted(position, feeds.size)
+            loadFinished()
         }
     }
 
+    override fun onNoMoreData(response: FetchHotFeeds, isRefresh: Boolean) {
+        isLoadingMore = false
+        isNoMoreData = true
+        if (isRefresh) {
+            differ.cancel()
+            adapter.notifyDataSetChanged()
+        } else {
+            adapter.notifyItemChanged(adapter.itemCount - 1)
+        }
+        loadFinished()
+    }
+
+    override fun onLoadFailed(response: FetchHotFeeds?, e: Exception?, isRefresh: Boolean) {
+        isLoadingMore = false
+        if (response == null) {
+            logWarn(TAG, e?.message, e)
+            if (isRefresh && e != null) {
+                ResponseHandler.handleFailure(e)
+            }
+            loadFailed(null)
+        } else if (!ResponseHandler.handleResponse(response)) {
+            logWarn(TAG, "Fetch feeds failed. " + GlobalUtil.getResponseClue(response.status, response.msg))
+            showToast(GlobalUtil.getString(R.string.fetch_data_failed))
+            loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
+        } else {
+            loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status)
+        }
+    }
+
+    override fun onPagesEvicted(count: Int) {
+        adapter.notifyItemRangeRemoved(0, count)
+    }
+
     companion object {
 
         private const val TAG = "HotFeedsFragment"
@@ -24,7 +24,6 @@ import android.app.Activity
 import android.app.ActivityOptions
 import android.content.Intent
 import android.os.Bundle
-import android.preference.PreferenceManager
 import android.support.design.widget.NavigationView
 import android.support.design.widget.TabLayout
 import android.support.v4.app.Fragment
@@ -62,6 +61,7 @@ import com.quxianggif.user.ui.ModifyUserInfoActivity
 import com.quxianggif.user.ui.RecommendFollowingActivity
 import com.quxianggif.user.ui.UserHomePageActivity
 import com.quxianggif.util.AnimUtils
+import com.quxianggif.util.AppSettings
 import com.quxianggif.util.ColorUtils
 import com.quxianggif.util.UserUtil
 import com.quxianggif.util.glide.CustomUrl
@@ -169,9 +169,7 @@ class MainActivity : BaseActivity(), NavigationView.OnNavigationItemSelectedList
     }
 
     private fun checkIsNeedToRefresh() {
-        val autoRefresh = PreferenceManager.getDefaultSharedPreferences(this)
-                .getBoolean(GlobalUtil.getString(R.string.key_auto_refresh), true)
-        if (autoRefresh) {
+        if (AppSettings.autoRefresh) {
             val lastUseTime = SharedUtil.read(Const.Feed.MAIN_LAST_USE_TIME, 0L)
             val timeNotUsed = System.currentTimeMillis() - lastUseTime
             logDebug(TAG, "not used for " + timeNotUsed / 1000 + " seconds")
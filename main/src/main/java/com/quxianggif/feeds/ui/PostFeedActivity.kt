@@ -22,7 +22,6 @@ import android.app.ProgressDialog
 import android.content.Intent
 import android.net.Uri
 import android.os.Bundle
-import android.preference.PreferenceManager
 import android.support.v4.content.ContextCompat
 import android.support.v7.app.AlertDialog
 import android.view.KeyEvent
@@ -54,6 +53,7 @@ import com.quxianggif.network.exception.PostFeedException
 import com.quxianggif.network.model.PostFeed
 import com.quxianggif.network.model.ProgressCallback
 import com.quxianggif.network.model.Response
+import com.quxianggif.util.AppSettings
 import com.quxianggif.util.DateUtil
 import com.quxianggif.util.DeviceInfo
 import com.quxianggif.util.ResponseHandler
@@ -358,9 +358,7 @@ class PostFeedActivity : BaseActivity(), View.OnClickListener, TextView.OnEditor
             selectedGif.layoutParams.width = overrideWidth
             selectedGif.layoutParams.height = overrideHeight
 
-            val loopForever = PreferenceManager.getDefaultSharedPreferences(this)
-                    .getBoolean(getString(R.string.key_loop_gif_play), true)
-            gifPlayTarget = GifPlayTarget(selectedGif, imageUri, firstFrame, loopForever)
+            gifPlayTarget = GifPlayTarget(selectedGif, imageUri, firstFrame, AppSettings.loopGifPlay)
             Glide.with(this)
                     .load(imageUri)
                     .diskCacheStrategy(DiskCacheStrategy.NONE)
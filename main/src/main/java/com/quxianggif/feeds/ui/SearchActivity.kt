@@ -42,6 +42,7 @@ import android.widget.ImageView
 import android.widget.LinearLayout
 import android.widget.SearchView
 import com.quxianggif.R
+import com.quxianggif.common.adapter.ListDiffer
 import com.quxianggif.common.callback.InfiniteScrollListener
 import com.quxianggif.common.callback.LoadDataListener
 import com.quxianggif.common.transitions.CircularReveal
@@ -79,6 +80,11 @@ class SearchActivity : BaseActivity(), LoadDataListener {
 
     val searchItemList = ArrayList<SearchItem>()
 
+    /**
+     * 在后台线程中比对新旧搜索结果，只把发生变化的部分通知给适配器。
+     */
+    private lateinit var differ: ListDiffer<SearchItem>
+
     private val transitions = SparseArray<Transition>()
 
     var isLoadFailed = false
@@ -166,6 +172,7 @@ class SearchActivity : BaseActivity(), LoadDataListener {
     private fun setupRecyclerView() {
         layoutManager = LinearLayoutManager(activity)
         adapter = SearchAdapter(this@SearchActivity, searchItemList, maxImageWidth)
+        differ = ListDiffer(adapter, searchItemList, SearchAdapter.SearchItemCallback())
         searchResults.layoutManager = layoutManager
         searchResults.adapter = adapter
         searchResults.addItemDecoration(SearchItemDividerDecoration(this@SearchActivity, dp2px(65f)))
@@ -213,12 +220,16 @@ class SearchActivity : BaseActivity(), LoadDataListener {
     }
 
     private fun searchFor(query: String) {
+        // 重复搜索相同的关键字时保留当前的搜索结果，等新的结果返回之后再增量更新
+        val isSameKeyword = query == keyword && searchItemList.isNotEmpty()
         keyword = query
         if (keyword.isBlank()) {
             showToast(GlobalUtil.getString(R.string.search_keyword_can_not_be_blank))
         } else {
-            clearResults()
-            loading?.visibility = View.VISIBLE
+            if (!isSameKeyword) {
+                clearResults()
+                loading?.visibility = View.VISIBLE
+            }
             hideKeyboard()
 
             isLoading = true
@@ -229,22 +240,29 @@ class SearchActivity : BaseActivity(), LoadDataListener {
                         if (activity == null) {
                             return
                         }
-                        isLoading = false
                         if (!ResponseHandler.handleResponse(response)) {
                             val searchMixed = response as SearchMixed
                             val status = searchMixed.status
+                            if (status != 0) {
+                                isLoading = false
+                            }
                             when (status) {
                                 0 -> {
-                                    searchItemList.addAll(searchMixed.users)
-                                    searchItemList.addAll(searchMixed.feeds)
+                                    val searchItems = ArrayList<SearchItem>()
+                                    searchItems.addAll(searchMixed.users)
+                                    searchItems.addAll(searchMixed.feeds)
                                     if (searchMixed.feeds.size < 10) {
                                         isNoMoreData = true
                                     }
-                                    adapter.notifyDataSetChanged()
-                                    loadFinished()
+                                    differ.submit(searchItems) {
+                                        isLoading = false
+                                        loadFinished()
+                                    }
                                 }
                                 10004 -> {
-                                    loadFinished()
+                                    differ.submit(emptyList()) {
+                                        loadFinished()
+                                    }
                                 }
                                 10501 -> {
                                     loadFailed(GlobalUtil.getString(R.string.search_keyword_can_not_be_blank))
@@ -258,6 +276,7 @@ class SearchActivity : BaseActivity(), LoadDataListener {
                                 }
                             }
                         } else {
+                            isLoading = false
                             loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status)
                         }
                     }
@@ -286,8 +305,9 @@ class SearchActivity : BaseActivity(), LoadDataListener {
                     val status = searchFeeds.status
                     when (status) {
                         0 -> {
+                            val position = searchItemList.size
                             searchItemList.addAll(searchFeeds.data)
-                            adapter.notifyDataSetChanged()
+                            adapter.notifyItemRangeInserted(position, searchFeeds.data.size)
                             searchResults.stopScroll()
                         }
                         10004 -> {
@@ -313,6 +333,7 @@ class SearchActivity : BaseActivity(), LoadDataListener {
 
     private fun clearResults() {
         runAutoTransition()
+        differ.cancel()
         adapter.clear()
         searchResults.visibility = View.INVISIBLE
         loading?.visibility = View.GONE
@@ -18,6 +18,8 @@
 package com.quxianggif.feeds.ui
 
 import com.quxianggif.R
+import com.quxianggif.common.adapter.FeedItemCallback
+import com.quxianggif.common.adapter.ListDiffer
 import com.quxianggif.common.callback.LoadDataListener
 import com.quxianggif.common.callback.PendingRunnable
 import com.quxianggif.core.GifFun
@@ -31,17 +33,13 @@ import com.quxianggif.event.LikeFeedEvent
 import com.quxianggif.event.MessageEvent
 import com.quxianggif.event.ModifyUserInfoEvent
 import com.quxianggif.feeds.adapter.WorldFeedAdapter
+import com.quxianggif.feeds.model.FeedCacheRepository
 import com.quxianggif.feeds.view.SpaceItemDecoration
 import com.quxianggif.network.model.FetchWorldFeeds
-import com.quxianggif.network.model.OriginThreadCallback
-import com.quxianggif.network.model.Response
+import com.quxianggif.network.util.FeedPager
 import com.quxianggif.util.ResponseHandler
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
-import org.litepal.LitePal
-import org.litepal.extension.deleteAll
-import org.litepal.extension.findAll
-import java.util.*
 
 /**
  * 展示世界频道的Feeds内容。
@@ -49,60 +47,46 @@ import java.util.*
  * @author guolin
  * @since 17/7/24
  */
-class WorldFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
+class WorldFeedsFragment : WaterFallFeedsFragment(), LoadDataListener, FeedPager.Listener<WorldFeed, FetchWorldFeeds> {
 
     /**
-     * RecyclerView的数据源，用于存储所有展示中的Feeds。
+     * 负责分页加载世界频道的Feeds。
      */
-    internal var feedList: MutableList<WorldFeed> = ArrayList()
+    private val pager = FeedPager<WorldFeed, FetchWorldFeeds>({ cursor, callback -> FetchWorldFeeds.getResponse(cursor, callback) },
+            { it.feeds }, this)
+
+    /**
+     * RecyclerView的数据源，用于存储所有展示中的Feeds，由pager负责填充。
+     */
+    internal val feedList: MutableList<WorldFeed> = pager.feeds
+
+    /**
+     * 刷新时在后台线程中比对新旧Feeds，只把发生变化的部分通知给适配器。
+     */
+    private lateinit var differ: ListDiffer<WorldFeed>
 
     override fun setupRecyclerView() {
         super.setupRecyclerView()
         adapter = WorldFeedAdapter(this, feedList, imageWidth, layoutManager)
+        differ = ListDiffer(adapter, feedList, FeedItemCallback())
         recyclerView.adapter = adapter
         recyclerView.addItemDecoration(SpaceItemDecoration(adapter))
     }
 
-    /**
-     * 加载feeds。如果数据库有缓存则优先显示缓存内存，如果没有缓存则从网络获取feeds。
-     */
-    override fun loadFeeds(lastFeed: Long) {
-        val isRefreshing = lastFeed <= 0
-        FetchWorldFeeds.getResponse(lastFeed, object : OriginThreadCallback {
-            override fun onResponse(response: Response) {
-                handleFetchedFeeds(response, isRefreshing)
-                isLoadingMore = false
-            }
-
-            override fun onFailure(e: Exception) {
-                logWarn(TAG, e.message, e)
-                if (isRefreshing) {
-                    ResponseHandler.handleFailure(e)
-                }
-                activity.runOnUiThread {
-                    loadFailed(null)
-                    isLoadingMore = false
-                }
-            }
-        })
-    }
-
     /**
      * 刷新feeds。
      */
     override fun refreshFeeds() {
-        loadFeeds(0)
+        pager.refresh()
     }
 
     override fun loadFeedsFromDB() {
-        Thread(Runnable {
-            val feeds = LitePal.findAll<WorldFeed>()
+        FeedCacheRepository.load(WorldFeed::class.java) { feeds ->
             if (feeds.isEmpty()) {
-                refreshFeeds()
+                activity.runOnUiThread { refreshFeeds() }
             } else {
                 activity.runOnUiThread {
-                    feedList.clear()
-                    feedList.addAll(feeds)
+                    pager.restore(feeds)
                     adapter.notifyDataSetChanged()
                     loadFinished()
                 }
@@ -112,20 +96,19 @@ class WorldFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
                     GifFun.getHandler().postDelayed({ refreshFeeds() }, 1000) // 为了能看到刷新进度条，让刷新事件延迟1.5秒执行
                 }
             }
-        }).start()
+        }
     }
 
     override fun dataSetSize(): Int {
         return feedList.size
     }
 
+    override fun prefetchDistance() = pager.prefetchDistance
+
     override fun onLoad() {
-        if (!isLoadingMore && feedList.isNotEmpty()) {
+        if (!isLoadingMore && pager.loadMore()) {
             isLoadingMore = true
             isLoadFailed = false
-            isLoadingMore = true
-            val lastFeed = feedList[feedList.size - 1].feedId
-            loadFeeds(lastFeed)
         }
     }
 
@@ -149,7 +132,7 @@ class WorldFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
                         val feed = feedList[index]
                         feed.isLikedAlready = messageEvent.type == LikeFeedEvent.LIKE_FEED
                         feed.likesCount = messageEvent.likesCount
-                        adapter.notifyItemChanged(index)
+                        adapter.notifyItemChanged(index, FeedItemCallback.PAYLOAD_LIKES)
                     }
                 }
                 pendingRunnable.put(index, runnable)
@@ -164,60 +147,57 @@ class WorldFeedsFragment : WaterFallFeedsFragment(), LoadDataListener {
         }
     }
 
-    /**
-     *
-     * 处理获取世界频道feeds请求的返回结果。
-     *
-     * @param response
-     * 服务器响应的获取feeds请求的实体类。
-     * @param isRefreshing
-     * true表示刷新请求，false表示加载更多请求。
-     */
-    private fun handleFetchedFeeds(response: Response, isRefreshing: Boolean) {
+    override fun onPageLoaded(response: FetchWorldFeeds, position: Int, feeds: List<WorldFeed>, isRefresh: Boolean) {
         isNoMoreData = false
-        if (!ResponseHandler.handleResponse(response)) {
-            val fetchWorldFeeds = response as FetchWorldFeeds
-            val status = fetchWorldFeeds.status
-            if (status == 0) {
-                val feeds = fetchWorldFeeds.feeds
-                if (isRefreshing) {
-                    LitePal.deleteAll<WorldFeed>()
-                    LitePal.saveAll(feeds)
-                    activity.runOnUiThread {
-                        feedList.clear()
-                        feedList.addAll(feeds)
-                        adapter.notifyDataSetChanged()
-                        recyclerView.scrollToPosition(0)
-                        loadFinished()
-                    }
-                } else {
-                    val oldFeedsCount = feedList.size
-                    LitePal.saveAll(feeds)
-                    activity.runOnUiThread {
-                        feedList.addAll(feeds)
-                        recyclerView.stopScroll()
-                        adapter.notifyItemRangeInserted(oldFeedsCount, feeds.size)
-                        loadFinished()
-                    }
-                }
-            } else if (status == 10004) {
-                isNoMoreData = true
-                activity.runOnUiThread {
-                    adapter.notifyItemChanged(adapter.itemCount - 1)
-                    loadFinished()
-                }
-            } else {
-                logWarn(TAG, "Fetch feeds failed. ${GlobalUtil.getResponseClue(status, fetchWorldFeeds.msg)}")
-                activity.runOnUiThread {
-                    showToast(GlobalUtil.getString(R.string.fetch_data_failed))
-                    loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
-                }
+        if (isRefresh) {
+            FeedCacheRepository.replace(WorldFeed::class.java, feeds)
+            isLoadingMore = true // 提交完成之前不能加载下一页，否则下一页会被添加到旧的数据后面
+            differ.submit(feeds) {
+                isLoadingMore = false
+                recyclerView.scrollToPosition(0)
+                loadFinished()
             }
         } else {
-            activity.runOnUiThread { loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status) }
+            isLoadingMore = false
+            FeedCacheRepository.append(WorldFeed::class.java, feeds)
+            adapter.notifyItemRangeInserted(position, feeds.size)
+            loadFinished()
         }
     }
 
+    override fun onNoMoreData(response: FetchWorldFeeds, isRefresh: Boolean) {
+        isLoadingMore = false
+        isNoMoreData = true
+        if (isRefresh) {
+            differ.cancel()
+            adapter.notifyDataSetChanged()
+        } else {
+            adapter.notifyItemChanged(adapter.itemCount - 1)
+        }
+        loadFinished()
+    }
+
+    override fun onLoadFailed(response: FetchWorldFeeds?, e: Exception?, isRefresh: Boolean) {
+        isLoadingMore = false
+        if (response == null) {
+            logWarn(TAG, e?.message, e)
+            if (isRefresh && e != null) {
+                ResponseHandler.handleFailure(e)
+            }
+            loadFailed(null)
+        } else if (!ResponseHandler.handleResponse(response)) {
+            logWarn(TAG, "Fetch feeds failed. ${GlobalUtil.getResponseClue(response.status, response.msg)}")
+            showToast(GlobalUtil.getString(R.string.fetch_data_failed))
+            loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
+        } else {
+            loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status)
+        }
+    }
+
+    override fun onPagesEvicted(count: Int) {
+        adapter.notifyItemRangeRemoved(0, count)
+    }
+
     companion object {
 
         private const val TAG = "WorldFeedsFragment"
@@ -32,17 +32,14 @@ import com.quxianggif.common.ui.WebViewActivity
 import com.quxianggif.core.GifFun
 import com.quxianggif.core.extension.postDelayed
 import com.quxianggif.core.extension.showToast
-import com.quxianggif.core.model.FollowingFeed
-import com.quxianggif.core.model.RefFeed
-import com.quxianggif.core.model.WorldFeed
 import com.quxianggif.core.util.GlobalUtil
 import com.quxianggif.event.CleanCacheEvent
+import com.quxianggif.feeds.model.FeedCacheRepository
 import com.quxianggif.login.ui.LoginActivity
+import com.quxianggif.network.util.HttpClientManager
 import com.quxianggif.util.ActivityCollector
 import com.quxianggif.util.glide.GlideUtil
 import org.greenrobot.eventbus.EventBus
-import org.litepal.LitePal
-import org.litepal.extension.deleteAllAsync
 import java.util.*
 
 /**
@@ -151,9 +148,8 @@ class MainSettingsFragment : PreferenceFragmentCompat(), SharedPreferences.OnSha
                 .setMessage(GlobalUtil.getString(R.string.confirm_to_logout))
                 .setPositiveButton(GlobalUtil.getString(R.string.ok)) { _, _ ->
                     GifFun.logout()
-                    LitePal.deleteAllAsync<WorldFeed>().listen(null)
-                    LitePal.deleteAllAsync<FollowingFeed>().listen(null)
-                    LitePal.deleteAllAsync<RefFeed>().listen(null)
+                    FeedCacheRepository.clear()
+                    HttpClientManager.clearResponseCache()
                     ActivityCollector.finishAll()
                     LoginActivity.actionStart(settingsActivity, false, null)
                 }
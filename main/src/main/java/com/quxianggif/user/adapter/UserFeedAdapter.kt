@@ -51,6 +51,31 @@ class UserFeedAdapter(override var activity: UserHomePageActivity, feedList: Mut
         super.bindRefeedHolder(holder, position)
     }
 
+    override fun bindPayload(holder: SimpleListFeedAdapter.SimpleListFeedViewHolder, position: Int, payload: Any): Boolean {
+        if (payload == PAYLOAD_MARGIN) {
+            setupFirstItemMarginTop(holder.cardView, position)
+            return true
+        }
+        return super.bindPayload(holder, position, payload)
+    }
+
+    /**
+     * 第一条Feed的上边距和其它Feed不同。增量刷新之后如果第一条Feed发生了变化，原来的第一条Feed和现在的第一条Feed都不会被重新绑定，
+     * 需要单独刷新它们的边距。
+     *
+     * @param previousFirst 刷新之前的第一条Feed。
+     */
+    fun onFirstItemChanged(previousFirst: UserFeed?) {
+        if (feedList.isEmpty() || feedList[0] === previousFirst) {
+            return
+        }
+        notifyItemChanged(0, PAYLOAD_MARGIN)
+        val index = feedList.indexOfFirst { it === previousFirst }
+        if (index > 0) {
+            notifyItemChanged(index, PAYLOAD_MARGIN)
+        }
+    }
+
     override fun createFeedHolder(parent: ViewGroup): SimpleListFeedAdapter.FeedViewHolder {
         val view = LayoutInflater.from(activity).inflate(R.layout.user_feed_item, parent, false)
         val holder = SimpleListFeedAdapter.FeedViewHolder(view)
@@ -85,6 +110,8 @@ class UserFeedAdapter(override var activity: UserHomePageActivity, feedList: Mut
     companion object {
 
         private const val TAG = "UserFeedAdapter"
+
+        private const val PAYLOAD_MARGIN = "payload_margin"
     }
 
 }
\ No newline at end of file
@@ -40,6 +40,8 @@ import com.bumptech.glide.load.resource.drawable.GlideDrawable
 import com.bumptech.glide.request.RequestListener
 import com.bumptech.glide.request.target.Target
 import com.quxianggif.R
+import com.quxianggif.common.adapter.FeedItemCallback
+import com.quxianggif.common.adapter.ListDiffer
 import com.quxianggif.common.callback.InfiniteScrollListener
 import com.quxianggif.common.callback.LoadDataListener
 import com.quxianggif.common.ui.BaseActivity
@@ -50,6 +52,7 @@ import com.quxianggif.core.util.AndroidVersion
 import com.quxianggif.core.util.GlobalUtil
 import com.quxianggif.event.*
 import com.quxianggif.network.model.*
+import com.quxianggif.network.util.FeedPager
 import com.quxianggif.report.ReportActivity
 import com.quxianggif.user.adapter.UserFeedAdapter
 import com.quxianggif.util.ColorUtils
@@ -57,6 +60,7 @@ import com.quxianggif.util.ResponseHandler
 import com.quxianggif.util.UserUtil
 import com.quxianggif.util.ViewUtils
 import com.quxianggif.util.glide.CustomUrl
+import com.quxianggif.util.glide.FeedPreloader
 import jp.wasabeef.glide.transformations.BlurTransformation
 import jp.wasabeef.glide.transformations.CropCircleTransformation
 import kotlinx.android.synthetic.main.activity_user_home_page.*
@@ -70,16 +74,33 @@ import org.greenrobot.eventbus.ThreadMode
  * @author guolin
  * @since 17/7/15
  */
-class UserHomePageActivity : BaseActivity(), LoadDataListener {
+class UserHomePageActivity : BaseActivity(), LoadDataListener, FeedPager.Listener<UserFeed, FetchUserFeeds> {
 
     private lateinit var layoutManager: LinearLayoutManager
 
     private lateinit var adapter: UserFeedAdapter
 
     /**
-     * RecyclerView的数据源，用于存储所有展示中的Feeds。
+     * 负责分页加载当前主页用户所发的Feeds。
      */
-    private lateinit var feedList: MutableList<UserFeed>
+    private val pager = FeedPager<UserFeed, FetchUserFeeds>({ cursor, callback ->
+        FetchUserFeeds.getResponse(mUserId, cursor, callback)
+    }, { it.feeds }, this)
+
+    /**
+     * RecyclerView的数据源，用于存储所有展示中的Feeds，由pager负责填充。
+     */
+    private val feedList: MutableList<UserFeed> = pager.feeds
+
+    /**
+     * 刷新时在后台线程中比对新旧Feeds，只把发生变化的部分通知给适配器。
+     */
+    private lateinit var differ: ListDiffer<UserFeed>
+
+    /**
+     * 刷新的数据是否还在等待提交到列表中，提交完成之前不能加载下一页，否则下一页会被添加到旧的数据后面。
+     */
+    private var isCommitting = false
 
     /**
      * 当前主页用户的id。
@@ -137,11 +158,6 @@ class UserHomePageActivity : BaseActivity(), LoadDataListener {
 
     var isLoadFailed = false
 
-    /**
-     * 判断是否正在加载Feeds。
-     */
-    private var isLoading = false
-
     /**
      * 监听AppBarLayout的滑动，根据滑动的状态进行相应的界面效果切换。
      */
@@ -277,18 +293,20 @@ class UserHomePageActivity : BaseActivity(), LoadDataListener {
 
         // setup RecyclerView
         layoutManager = LinearLayoutManager(this)
-        feedList = ArrayList()
         adapter = UserFeedAdapter(this, feedList, maxImageWidth, layoutManager)
+        differ = ListDiffer(adapter, feedList, FeedItemCallback())
         recyclerView.layoutManager = layoutManager
         recyclerView.adapter = adapter
         recyclerView.setHasFixedSize(true)
         (recyclerView.itemAnimator as SimpleItemAnimator).supportsChangeAnimations = false
-        recyclerView.addOnScrollListener(object : InfiniteScrollListener(layoutManager) {
+        recyclerView.addOnScrollListener(object : InfiniteScrollListener(layoutManager, FeedPreloader(this, adapter)) {
             override fun onLoadMore() {
                 loadUserFeeds()
             }
 
-            override fun isDataLoading() = isLoading
+            override fun isDataLoading() = pager.isLoading || isCommitting
+
+            override fun visibleThreshold() = pager.prefetchDistance
 
             override fun isNoMoreData() = isNoMoreData
 
@@ -430,7 +448,7 @@ class UserHomePageActivity : BaseActivity(), LoadDataListener {
                 val feed = feedList[index]
                 feed.isLikedAlready = messageEvent.type == LikeFeedEvent.LIKE_FEED
                 feed.likesCount = messageEvent.likesCount
-                adapter.notifyItemChanged(index)
+                adapter.notifyItemChanged(index, FeedItemCallback.PAYLOAD_LIKES)
             }
         } else if (messageEvent is DeleteFeedEvent) {
             updateFeedCountAfterDelete()
@@ -454,8 +472,7 @@ class UserHomePageActivity : BaseActivity(), LoadDataListener {
                 setupUserInfo()
             }
             if (messageEvent.modifyNickname || messageEvent.modifyAvatar) {
-                feedList.clear()
-                loadUserFeeds()
+                pager.refresh()
             }
         } else if (messageEvent is LoadOriginAvatarEvent) {
             // 用户浏览了头像大图，此时可以将个人主页的头像更新为清晰版。
@@ -517,79 +534,76 @@ class UserHomePageActivity : BaseActivity(), LoadDataListener {
         ModifyUserInfoActivity.actionStart(this)
     }
 
+    /**
+     * 列表为空时刷新用户的Feeds，否则加载下一页。
+     */
     private fun loadUserFeeds() {
-        isLoading = true
-        var lastFeed: Long = 0
-        val isLoadMore: Boolean
-        if (!feedList.isEmpty()) {
-            lastFeed = feedList[feedList.size - 1].feedId
-            isLoadMore = true
+        if (isCommitting) {
+            return
+        }
+        if (feedList.isEmpty()) {
+            pager.refresh()
         } else {
-            isLoadMore = false
+            pager.loadMore()
         }
-        FetchUserFeeds.getResponse(mUserId, lastFeed, object : Callback {
-            override fun onResponse(response: Response) {
-                if (activity == null) {
-                    return
-                }
-                handleFetchedFeeds(response, isLoadMore)
-                isLoading = false
-            }
-
-            override fun onFailure(e: Exception) {
-                logWarn(TAG, e.message, e)
-                loadFailed(null)
-                if (!isLoadMore) {
-                    ResponseHandler.handleFailure(e)
-                }
-                isLoading = false
-            }
-        })
     }
 
-    /**
-     *
-     * 处理获取用户Feeds请求的返回结果。
-     *
-     * @param response
-     * 服务器响应的获取用户Feeds请求的实体类。
-     */
-    private fun handleFetchedFeeds(response: Response, isLoadMore: Boolean) {
+    override fun onPageLoaded(response: FetchUserFeeds, position: Int, feeds: List<UserFeed>, isRefresh: Boolean) {
+        if (activity == null) {
+            return
+        }
         isNoMoreData = false
-        if (!ResponseHandler.handleResponse(response)) {
-            val fetchUserFeeds = response as FetchUserFeeds
-            val status = fetchUserFeeds.status
-            when (status) {
-                0 -> {
-                    val feeds = fetchUserFeeds.feeds
-                    if (!isLoadMore) {
-                        showUserInformation(fetchUserFeeds)
-                        feedList.clear()
-                    } else {
-                        recyclerView.stopScroll()
-                    }
-                    feedList.addAll(feeds)
-                    adapter.notifyDataSetChanged()
-                    loadFinished()
-                }
-                10004 -> {
-                    if (!isLoadMore) {
-                        showUserInformation(fetchUserFeeds)
-                    }
-                    isNoMoreData = true
-                    adapter.notifyItemChanged(adapter.dataItemCount)
-                    loadFinished()
-                }
-                else -> {
-                    logWarn(TAG, "Load user feeds failed. " + GlobalUtil.getResponseClue(status, fetchUserFeeds.msg))
-                    loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
-                }
+        if (isRefresh) {
+            showUserInformation(response)
+            val previousFirst = feedList.firstOrNull()
+            isCommitting = true
+            differ.submit(feeds) {
+                isCommitting = false
+                adapter.onFirstItemChanged(previousFirst)
+                loadFinished()
             }
+        } else {
+            adapter.notifyItemRangeInserted(position, feeds.size)
+            loadFinished()
+        }
+    }
+
+    override fun onNoMoreData(response: FetchUserFeeds, isRefresh: Boolean) {
+        if (activity == null) {
+            return
+        }
+        if (isRefresh) {
+            showUserInformation(response)
+            differ.cancel()
+            isCommitting = false
+            adapter.notifyDataSetChanged()
+        }
+        isNoMoreData = true
+        adapter.notifyItemChanged(adapter.dataItemCount)
+        loadFinished()
+    }
+
+    override fun onLoadFailed(response: FetchUserFeeds?, e: Exception?, isRefresh: Boolean) {
+        if (response == null) {
+            logWarn(TAG, e?.message, e)
+            loadFailed(null)
+            if (isRefresh && e != null) {
+                ResponseHandler.handleFailure(e)
+            }
+        } else if (activity == null) {
+            return
+        } else if (!ResponseHandler.handleResponse(response)) {
+            logWarn(TAG, "Load user feeds failed. " + GlobalUtil.getResponseClue(response.status, response.msg))
+            loadFailed(GlobalUtil.getString(R.string.fetch_data_failed) + ": " + response.status)
         } else {
             loadFailed(GlobalUtil.getString(R.string.unknown_error) + ": " + response.status)
         }
     }
 
+    override fun onPagesEvicted(count: Int) {
+        adapter.notifyItemRangeRemoved(0, count)
+    }
+
     /**
      * 加载完成，将数据显示出来，将加载等待控件隐藏。
      */
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.util
+
+import com.quxianggif.R
+import com.quxianggif.core.util.GlobalUtil
+import com.quxianggif.core.util.SettingsStore
+
+/**
+ * 设置界面中各项设置的类型化访问入口。
+ *
+ * 每项设置的值都缓存在字段中，读取时不需要查找SharedPreferences。无论是通过这里修改，还是在设置界面中修改，
+ * SettingsStore都会通知这里更新缓存的值。
+ */
+object AppSettings : SettingsStore.OnSettingChangeListener {
+
+    private const val DEFAULT_GIF_PLAY_SPEED = "3"
+
+    private val store = SettingsStore.getInstance()
+
+    private val keyAutoRefresh = GlobalUtil.getString(R.string.key_auto_refresh)
+
+    private val keyLoopGifPlay = GlobalUtil.getString(R.string.key_loop_gif_play)
+
+    private val keyGifPlaySpeed = GlobalUtil.getString(R.string.key_gif_play_speed)
+
+    private val keyAlertForBigGif = GlobalUtil.getString(R.string.key_alert_for_big_gif)
+
+    @Volatile
+    private var autoRefreshValue = true
+
+    @Volatile
+    private var loopGifPlayValue = true
+
+    @Volatile
+    private var gifPlaySpeedValue = DEFAULT_GIF_PLAY_SPEED
+
+    @Volatile
+    private var alertForBigGifValue = true
+
+    /**
+     * 长时间未使用之后打开App是否自动刷新。
+     */
+    val autoRefresh: Boolean
+        get() = autoRefreshValue
+
+    /**
+     * GIF图是否循环播放。
+     */
+    var loopGifPlay: Boolean
+        get() = loopGifPlayValue
+        set(value) {
+            loopGifPlayValue = value
+            store.put(keyLoopGifPlay, value)
+        }
+
+    /**
+     * GIF图的播放速度，取值为1到5，3表示正常速度。
+     */
+    var gifPlaySpeed: String
+        get() = gifPlaySpeedValue
+        set(value) {
+            gifPlaySpeedValue = value
+            store.put(keyGifPlaySpeed, value)
+        }
+
+    /**
+     * 使用移动网络播放大图时是否提醒。
+     */
+    var alertForBigGif: Boolean
+        get() = alertForBigGifValue
+        set(value) {
+            alertForBigGifValue = value
+            store.put(keyAlertForBigGif, value)
+        }
+
+    init {
+        reload()
+        store.addListener(this)
+    }
+
+    override fun onSettingChanged(key: String?) {
+        reload()
+    }
+
+    /**
+     * 从SettingsStore的内存快照中重新读取所有的设置项。
+     */
+    private fun reload() {
+        autoRefreshValue = store.getBoolean(keyAutoRefresh, true)
+        loopGifPlayValue = store.getBoolean(keyLoopGifPlay, true)
+        gifPlaySpeedValue = store.getString(keyGifPlaySpeed, DEFAULT_GIF_PLAY_SPEED)
+        alertForBigGifValue = store.getBoolean(keyAlertForBigGif, true)
+    }
+
+}
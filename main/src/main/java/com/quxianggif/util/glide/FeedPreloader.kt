@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.util.glide
+
+import android.content.Context
+import android.os.SystemClock
+import android.support.v7.widget.LinearLayoutManager
+import android.support.v7.widget.RecyclerView
+import android.support.v7.widget.StaggeredGridLayoutManager
+import com.bumptech.glide.GenericRequestBuilder
+import com.bumptech.glide.Glide
+import com.bumptech.glide.ListPreloader
+import com.bumptech.glide.Priority
+import com.bumptech.glide.load.engine.DiskCacheStrategy
+import com.quxianggif.core.model.BaseFeed
+
+/**
+ * 基于Glide的ListPreloader对RecyclerView中的Feed封面进行预加载。
+ *
+ * 根据滑动方向和滑动速度计算需要预加载的数量，滑动越快预加载得越多，预加载的尺寸由适配器根据imgWidth和imgHeight计算，
+ * 和列表中实际显示的尺寸完全一致，从而可以直接命中内存缓存。当用户向反方向滑动时，会立即取消之前方向上尚未完成的预加载。
+ *
+ * 如果preloadGif为true，还会预先下载GIF图并解码第一帧，这样进入Feed详情界面时可以直接从磁盘缓存中读取GIF图。
+ *
+ * 由InfiniteScrollListener在每次滑动时调用[onScrolled]方法。
+ */
+class FeedPreloader(private val context: Context, private val provider: Provider, private val preloadGif: Boolean = false,
+                    private val maxPreload: Int = MAX_PRELOAD) : ListPreloader.PreloadModelProvider<FeedPreloader.Item>,
+        ListPreloader.PreloadSizeProvider<FeedPreloader.Item> {
+
+    private val listPreloader = ListPreloader(this, this, maxPreload * if (preloadGif) 2 else 1)
+
+    /**
+     * 平滑过的滑动速度，单位是像素/毫秒，正数表示向下滑动。
+     */
+    private var velocity = 0f
+
+    private var lastScrollTime = 0L
+
+    private var lastDirection = 0
+
+    fun onScrolled(recyclerView: RecyclerView, layoutManager: RecyclerView.LayoutManager, dy: Int) {
+        if (dy == 0) return
+        val direction = if (dy > 0) 1 else -1
+        if (lastDirection != 0 && direction != lastDirection) {
+            // 反方向滑动了，之前方向上的预加载已经没有意义了
+            listPreloader.cancelPreloads()
+            velocity = 0f
+        }
+        lastDirection = direction
+        updateVelocity(dy)
+
+        val range = findVisibleRange(layoutManager) ?: return
+        val firstVisible = range.first
+        val visibleCount = range.second - range.first + 1
+        listPreloader.setPreloadCount(calculatePreloadCount(recyclerView, visibleCount) * if (preloadGif) 2 else 1)
+        listPreloader.onScroll(null, firstVisible, visibleCount, layoutManager.itemCount)
+    }
+
+    override fun getPreloadItems(position: Int): List<Item> {
+        val feed = provider.getPreloadFeed(position) ?: return emptyList()
+        return if (preloadGif && feed.gif.isNotBlank()) {
+            listOf(Item(feed, false), Item(feed, true))
+        } else {
+            listOf(Item(feed, false))
+        }
+    }
+
+    override fun getPreloadRequestBuilder(item: Item): GenericRequestBuilder<*, *, *, *> {
+        return if (item.isGif) {
+            Glide.with(context)
+                    .load(CustomUrl(item.feed.gif))
+                    .asGif()
+                    .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+                    .priority(Priority.LOW)
+        } else {
+            provider.getCoverRequest(item.feed).priority(Priority.LOW)
+        }
+    }
+
+    override fun getPreloadSize(item: Item, adapterPosition: Int, perItemPosition: Int): IntArray? {
+        return provider.getCoverSize(item.feed)
+    }
+
+    private fun updateVelocity(dy: Int) {
+        val now = SystemClock.uptimeMillis()
+        val elapsed = now - lastScrollTime
+        lastScrollTime = now
+        if (elapsed <= 0 || elapsed > VELOCITY_RESET_MS) {
+            // 刚开始滑动，没有足够的数据计算速度
+            velocity = 0f
+            return
+        }
+        val current = dy.toFloat() / elapsed
+        velocity += (current - velocity) * VELOCITY_SMOOTHING
+    }
+
+    /**
+     * 计算在接下来PRELOAD_WINDOW_MS的时间内会滑入屏幕的元素数量，至少预加载MIN_PRELOAD个元素。
+     */
+    private fun calculatePreloadCount(recyclerView: RecyclerView, visibleCount: Int): Int {
+        val height = recyclerView.height
+        if (height <= 0 || visibleCount <= 0) return MIN_PRELOAD
+        val distance = Math.abs(velocity) * PRELOAD_WINDOW_MS
+        val count = MIN_PRELOAD + Math.ceil((distance * visibleCount / height).toDouble()).toInt()
+        return Math.min(maxPreload, count)
+    }
+
+    private fun findVisibleRange(layoutManager: RecyclerView.LayoutManager): Pair<Int, Int>? {
+        return when (layoutManager) {
+            is LinearLayoutManager -> {
+                val first = layoutManager.findFirstVisibleItemPosition()
+                val last = layoutManager.findLastVisibleItemPosition()
+                if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) null else Pair(first, last)
+            }
+            is StaggeredGridLayoutManager -> {
+                val first = layoutManager.findFirstVisibleItemPositions(null).filter { it != RecyclerView.NO_POSITION }.min()
+                val last = layoutManager.findLastVisibleItemPositions(null).max()
+                if (first == null || last == null || last < first) null else Pair(first, last)
+            }
+            else -> null
+        }
+    }
+
+    /**
+     * 由适配器实现，提供指定位置上需要预加载的Feed、封面的加载请求以及封面的显示尺寸。
+     */
+    interface Provider {
+
+        /**
+         * 获取指定位置上封面需要预加载的Feed，没有则返回null。
+         */
+        fun getPreloadFeed(position: Int): BaseFeed?
+
+        /**
+         * 获取加载Feed封面的请求，必须和列表中实际使用的请求一致，否则无法命中缓存。
+         */
+        fun getCoverRequest(feed: BaseFeed): GenericRequestBuilder<*, *, *, *>
+
+        /**
+         * 获取Feed封面在列表中显示的宽高，无法计算时返回null。
+         */
+        fun getCoverSize(feed: BaseFeed): IntArray?
+    }
+
+    class Item(val feed: BaseFeed, val isGif: Boolean)
+
+    companion object {
+
+        private const val TAG = "FeedPreloader"
+
+        /**
+         * 最多预加载的元素数量。
+         */
+        const val MAX_PRELOAD = 12
+
+        /**
+         * 慢速滑动时也至少预加载的元素数量。
+         */
+        private const val MIN_PRELOAD = 2
+
+        /**
+         * 预加载接下来多长时间内会显示的元素。
+         */
+        private const val PRELOAD_WINDOW_MS = 600
+
+        /**
+         * 两次滑动回调间隔超过这个时间就认为是一次新的滑动。
+         */
+        private const val VELOCITY_RESET_MS = 100
+
+        private const val VELOCITY_SMOOTHING = 0.3f
+    }
+
+}
@@ -23,10 +23,10 @@ import com.bumptech.glide.Glide
 import com.bumptech.glide.GlideBuilder
 import com.bumptech.glide.load.model.GlideUrl
 import com.bumptech.glide.module.GlideModule
+import com.quxianggif.network.util.HttpClientManager
 
 import java.io.InputStream
 
-import okhttp3.OkHttpClient
 import java.util.concurrent.TimeUnit
 
 /**
@@ -41,7 +41,7 @@ class GifFunModule : GlideModule {
     override fun applyOptions(context: Context, builder: GlideBuilder) {}
 
     override fun registerComponents(context: Context, glide: Glide) {
-        val builder = OkHttpClient.Builder()
+        val builder = HttpClientManager.newBuilder()
         builder.addInterceptor(ProgressInterceptor())
         builder.connectTimeout(3000, TimeUnit.MILLISECONDS)
         builder.readTimeout(6000, TimeUnit.MILLISECONDS)
@@ -21,6 +21,7 @@ import android.graphics.Bitmap
 import android.graphics.drawable.TransitionDrawable
 import android.widget.ImageView
 import com.bumptech.glide.Glide
+import com.bumptech.glide.disklrucache.SegmentedDiskLruCache
 import com.bumptech.glide.load.engine.OriginalKey
 import com.bumptech.glide.load.engine.cache.DiskCache
 import com.bumptech.glide.load.engine.cache.DiskLruCacheWrapper
@@ -47,6 +48,9 @@ object GlideUtil {
 
     private val TAG = "GlideUtil"
 
+    @Volatile
+    private var diskLruCacheWrapper: DiskLruCacheWrapper? = null
+
     /**
      * 获取Glide的图片缓存目录。
      * @return Glide的图片缓存目录。
@@ -57,6 +61,30 @@ object GlideUtil {
             return factory?.cacheDir
         }
 
+    /**
+     * 获取Glide磁盘缓存的包装对象，获取一次之后会保存下来，避免每次都去解析缓存目录。
+     * @return Glide磁盘缓存的包装对象，缓存目录不可用时返回null。
+     */
+    private fun getDiskLruCacheWrapper(): DiskLruCacheWrapper? {
+        var wrapper = diskLruCacheWrapper
+        if (wrapper == null) {
+            val cacheDir = cacheDir
+            if (cacheDir == null || !cacheDir.exists() || !cacheDir.isDirectory) {
+                return null
+            }
+            wrapper = DiskLruCacheWrapper.get(cacheDir, DiskCache.Factory.DEFAULT_DISK_CACHE_SIZE) as DiskLruCacheWrapper
+            diskLruCacheWrapper = wrapper
+        }
+        return wrapper
+    }
+
+    /**
+     * 获取已经打开的Glide磁盘缓存，它在内存中维护了所有已缓存Key的索引，查询时不需要访问文件系统。
+     * 如果磁盘缓存还没有被打开则返回null，此时不会触发任何文件操作。
+     */
+    private val openedDiskCache: SegmentedDiskLruCache?
+        get() = getDiskLruCacheWrapper()?.peekDiskCache()
+
     /**
      * 获取Glide当前的缓存大小，单位是字节。
      * @return Glide当前的缓存大小。
@@ -109,14 +137,14 @@ object GlideUtil {
      */
     fun removeImageCache(imageUrl: String): Boolean {
         try {
-            val cacheDir = cacheDir
-            if (cacheDir == null || !cacheDir.exists() || !cacheDir.isDirectory) {
-                return false
-            }
-            val diskLruCacheWrapper = DiskLruCacheWrapper.get(cacheDir, DiskCache.Factory.DEFAULT_DISK_CACHE_SIZE) as DiskLruCacheWrapper
-            val diskLruCache = diskLruCacheWrapper.diskCache
+            val diskLruCacheWrapper = getDiskLruCacheWrapper() ?: return false
             val keyUrl = CustomUrl(imageUrl).cacheKey // 获取实际缓存的URL，不受URL中带有不同参数的影响
-            return diskLruCache.remove(getCachedKey(keyUrl))
+            val key = getCachedKey(keyUrl)
+            val openedDiskCache = diskLruCacheWrapper.peekDiskCache()
+            if (openedDiskCache != null && !openedDiskCache.contains(key)) {
+                return false // 索引中没有这个Key，无需再访问磁盘缓存
+            }
+            return diskLruCacheWrapper.diskCache.remove(key)
         } catch (e: Exception) {
             logError(TAG, e.message, e)
         }
@@ -206,26 +234,37 @@ object GlideUtil {
 
     /**
      * 获取指定URL地址的图片的缓存File，注意此方法只对使用DiskCacheStrategy.SOURCE缓存策略的图片有效。
+     * 磁盘缓存已经打开时直接从内存索引中查询，图片未缓存则返回null。
      * @param url
      *          图片的url地址。
      * @return 图片的缓存File或者null。
      */
     fun getCacheFile(url: String): File? {
+        val key = getCachedKey(url)
+        val openedDiskCache = openedDiskCache
+        if (openedDiskCache != null) {
+            return if (openedDiskCache.contains(key)) openedDiskCache.getCleanFile(key, 0) else null
+        }
         val cacheDir = cacheDir
         if (cacheDir == null || !cacheDir.exists() || !cacheDir.isDirectory) {
             return null
         }
-        return File(cacheDir, getCachedKey(url)!! + ".0")
+        return File(cacheDir, "$key.0")
     }
 
     /**
      * 判断指定URL地址的图片是否已经缓存，注意此方法只对使用DiskCacheStrategy.SOURCE缓存策略的图片有效。
+     * 磁盘缓存已经打开时直接从内存索引中查询，不会访问文件系统。
      * @param url
      * 图片的url地址。
      * @return 已缓存返回true，否则返回false。
      */
     fun isSourceCached(url: String): Boolean {
-        return  getCacheFile(url)?.exists() ?: false
+        val openedDiskCache = openedDiskCache
+        if (openedDiskCache != null) {
+            return openedDiskCache.contains(getCachedKey(url))
+        }
+        return getCacheFile(url)?.exists() ?: false
     }
 
     /**
@@ -235,12 +274,7 @@ object GlideUtil {
      * @return 已缓存返回true，否则返回false。
      */
     fun isSourceCached(glideUrl: GlideUrl): Boolean {
-        val cacheDir = cacheDir
-        if (cacheDir == null || !cacheDir.exists() || !cacheDir.isDirectory) {
-            return false
-        }
-        val cacheFile = File(cacheDir, getCachedKey(glideUrl)!! + ".0")
-        return cacheFile.exists()
+        return isSourceCached(glideUrl.cacheKey)
     }
 
     /**
@@ -249,7 +283,7 @@ object GlideUtil {
      * 图片的url地址。
      * @return 指定URL地址图片的缓存Key。
      */
-    fun getCachedKey(url: String): String? {
+    fun getCachedKey(url: String): String {
         val originalKey = OriginalKey(url, EmptySignature.obtain())
         val safeKeyGenerator = SafeKeyGenerator.getInstance()
         return safeKeyGenerator.getSafeKey(originalKey)
@@ -261,7 +295,7 @@ object GlideUtil {
      * 包含图片url地址的GlideUrl对象。
      * @return 指定GlideUrl对象图片的缓存Key。
      */
-    fun getCachedKey(glideUrl: GlideUrl): String? {
+    fun getCachedKey(glideUrl: GlideUrl): String {
         return getCachedKey(glideUrl.cacheKey)
     }
 
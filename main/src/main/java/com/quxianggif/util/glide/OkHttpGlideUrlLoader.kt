@@ -24,6 +24,7 @@ import com.bumptech.glide.load.model.GenericLoaderFactory
 import com.bumptech.glide.load.model.GlideUrl
 import com.bumptech.glide.load.model.ModelLoader
 import com.bumptech.glide.load.model.ModelLoaderFactory
+import com.quxianggif.network.util.HttpClientManager
 
 import java.io.InputStream
 
@@ -45,7 +46,7 @@ internal class OkHttpGlideUrlLoader(private val okHttpClient: OkHttpClient) : Mo
         private val okHttpClient: OkHttpClient
             @Synchronized get() {
                 if (client == null) {
-                    client = OkHttpClient.Builder().build()
+                    client = HttpClientManager.baseClient
                 }
                 return client!!
             }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quxianggif.network.model
+
+import com.quxianggif.core.GifFun
+import com.quxianggif.core.extension.logWarn
+import com.quxianggif.network.util.MD5
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.util.Properties
+
+/**
+ * 下载任务的日志文件，记录了每个下载任务的地址、服务器校验值以及各个分段的下载进度。
+ * 日志文件存储在磁盘上，因此即使进程被杀死，下次启动同样的下载任务时也可以从上次中断的位置继续下载。
+ */
+internal class DownloadJournal(
+        val filePath: String,
+        val url: String,
+        val validator: String,
+        val totalLength: Long,
+        val resumable: Boolean,
+        val segments: List<Segment>) {
+
+    /**
+     * 已下载的总字节数。
+     */
+    val downloadedLength: Long
+        get() = segments.fold(0L) { total, segment -> total + segment.downloaded }
+
+    /**
+     * 将当前的下载进度写入到日志文件当中。先写入临时文件再重命名，保证日志文件不会只写入一半。
+     */
+    @Synchronized
+    fun save() {
+        val properties = Properties()
+        properties.setProperty(KEY_FILE_PATH, filePath)
+        properties.setProperty(KEY_URL, url)
+        properties.setProperty(KEY_VALIDATOR, validator)
+        properties.setProperty(KEY_TOTAL_LENGTH, totalLength.toString())
+        properties.setProperty(KEY_RESUMABLE, resumable.toString())
+        properties.setProperty(KEY_SEGMENTS, segments.joinToString(SEGMENT_SEPARATOR) { "${it.start},${it.end},${it.downloaded}" })
+        try {
+            val dir = journalDir
+            if (!dir.exists()) {
+                dir.mkdirs()
+            }
+            val journalFile = journalFile(filePath)
+            val tempFile = File(journalFile.path + ".tmp")
+            FileOutputStream(tempFile).use { properties.store(it, null) }
+            tempFile.renameTo(journalFile)
+        } catch (e: Exception) {
+            logWarn(TAG, "save download journal failed: $filePath", e)
+        }
+    }
+
+    /**
+     * 删除日志文件，在下载完成或者需要重新开始下载时调用。
+     */
+    fun delete() {
+        journalFile(filePath).delete()
+    }
+
+    /**
+     * 下载任务中的一个分段，start和end都是文件中的绝对位置（包含end），end为-1表示文件长度未知。
+     */
+    class Segment(val start: Long, val end: Long, downloaded: Long) {
+
+        @Volatile
+        var downloaded = downloaded
+
+        val isFinished: Boolean
+            get() = end >= 0 && start + downloaded > end
+
+    }
+
+    companion object {
+
+        private const val TAG = "DownloadJournal"
+
+        private const val KEY_FILE_PATH = "file_path"
+
+        private const val KEY_URL = "url"
+
+        private const val KEY_VALIDATOR = "validator"
+
+        private const val KEY_TOTAL_LENGTH = "total_length"
+
+        private const val KEY_RESUMABLE = "resumable"
+
+        private const val KEY_SEGMENTS = "segments"
+
+        private const val SEGMENT_SEPARATOR = ";"
+
+        private val journalDir: File
+            get() = File(GifFun.getContext().filesDir, "download_journal")
+
+        private fun journalFile(filePath: String) = File(journalDir, MD5.encrypt(filePath))
+
+        /**
+         * 读取指定文件路径所对应的下载日志。
+         * @param filePath
+         * 文件存储到本地的路径
+         * @return 下载日志，如果不存在或者已损坏则返回null。
+         */
+        fun load(filePath: String): DownloadJournal? {
+            val journalFile = journalFile(filePath)
+            if (!journalFile.exists()) {
+                return null
+            }
+            return read(journalFile)
+        }
+
+        private fun read(journalFile: File): DownloadJournal? {
+            try {
+                val properties = Properties()
+                FileInputStream(journalFile).use { properties.load(it) }
+                val segments = properties.getProperty(KEY_SEGMENTS, "")
+                        .split(SEGMENT_SEPARATOR)
+                        .filter { it.isNotEmpty() }
+                        .map {
+                            val values = it.split(",")
+                            Segment(values[0].toLong(), values[1].toLong(), values[2].toLong())
+                        }
+                if (segments.isEmpty()) {
+                    journalFile.delete()
+                    return null
+                }
+                return DownloadJournal(properties.getProperty(KEY_FILE_PATH),
+                        properties.getProperty(KEY_URL),
+                        properties.getProperty(KEY_VALIDATOR, ""),
+                        properties.getProperty(KEY_TOTAL_LENGTH).toLong(),
+                        properties.getProperty(KEY_RESUMABLE).toBoolean(),
+                        segments)
+            } catch (e: Exception) {
+                logWarn(TAG, "read download journal failed: ${journalFile.path}", e)
+                journalFile.delete()
+            }
+            return null
+        }
+
+    }
+
+}
@@ -14,25 +14,32 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.quxianggif.network.model
 
-import android.os.AsyncTask
 import android.text.TextUtils
+import com.quxianggif.core.GifFun
 import com.quxianggif.core.extension.logDebug
 import com.quxianggif.core.extension.logError
+import com.quxianggif.network.exception.ResponseCodeException
+import com.quxianggif.network.util.HttpClientManager
 import okhttp3.OkHttpClient
 import okhttp3.Request
-import okio.BufferedSink
+import okhttp3.Response
 import okio.BufferedSource
-import okio.Okio
 import java.io.File
 import java.io.IOException
-import java.util.concurrent.TimeUnit
+import java.io.RandomAccessFile
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 /**
  * 网络下载器，可以从网络上下载任意指定内容。
  *
+ * 下载过程中的数据会先写入到临时文件当中，并通过[DownloadJournal]记录下载进度。如果下载中断（包括进程被杀死），
+ * 再次对同样的文件路径发起下载时，会使用HTTP Range请求从中断的位置继续下载。中断的下载不会自动恢复，需要调用方重新发起。对于支持Range请求的大文件，
+ * 还会拆分成多个分段并行下载，每个分段直接写入到临时文件中对应的位置，全部完成后再重命名为目标文件。
+ *
  * @author guolin
  * @since 17/3/1
  */
@@ -40,8 +47,39 @@ object Downloader {
 
     private const val TAG = "Downloader"
 
+    private const val TEMP_SUFFIX = ".download"
+
+    /**
+     * 每次写入文件的缓冲区大小。
+     */
+    private const val BUFFER_SIZE = 64 * 1024
+
+    /**
+     * 文件大小超过此值并且服务器支持Range请求时，才会进行分段下载。
+     */
+    private const val SEGMENT_THRESHOLD = 4 * 1024 * 1024L
+
+    /**
+     * 分段下载时拆分的分段数量。
+     */
+    private const val SEGMENT_COUNT = 3
+
     /**
-     * 开始下载。
+     * 两次进度回调之间的最小时间间隔，单位毫秒。
+     */
+    private const val PROGRESS_INTERVAL = 200L
+
+    /**
+     * 每下载多少字节将下载进度写入一次日志文件。
+     */
+    private const val JOURNAL_INTERVAL = 512 * 1024L
+
+    private val taskExecutor = Executors.newFixedThreadPool(2)
+
+    private val segmentExecutor = Executors.newFixedThreadPool(SEGMENT_COUNT * 2)
+
+    /**
+     * 开始下载。如果该文件路径之前有未完成的下载任务，则会从中断的位置继续下载。
      *
      * @param url
      * 下载目标的url地址
@@ -56,141 +94,290 @@ object Downloader {
             logDebug(TAG, "param invalid: url=$url filePath=$filePath DownloadListener=$l")
             return null
         }
-        val task = DownloadTask(l)
-        task.execute(url, filePath)
+        val task = DownloadTask(url, filePath, l)
+        taskExecutor.execute(task)
         return task
     }
 
+    /**
+     * 当服务器不再接受之前记录的Range请求时（比如文件已变更），抛出此异常以便重新开始下载。
+     */
+    private class RangeNotSatisfiedException(code: Int) : IOException("Range request not satisfied, response code $code")
+
     /**
      * 在这里开始真正的下载任务，并实时回调下载进度。
      */
-    open class DownloadTask internal constructor(private var l: DownloadListener) : AsyncTask<String, Int, String>() {
+    open class DownloadTask internal constructor(private val url: String, private val filePath: String, private var l: DownloadListener) : Runnable {
+
+        @Volatile
+        private var interrupt = false
+
+        /**
+         * 某个分段下载失败时置为true，用于让其他正在下载的分段停止。
+         */
+        @Volatile
+        private var aborted = false
 
-        private var e: Exception? = null
+        private var lastPercent = -1
 
-        private var bufferSize = 2048
+        private var lastProgressTime = 0L
 
-        private var interrupt = false
+        private var unsavedLength = 0L
 
         /**
-         * 获取OkHttpClient的实例，用于操作OkHttp的所有功能。
+         * 获取全局共享的OkHttpClient实例，用于操作OkHttp的所有功能。
          *
          * @return OkHttpClient的实例
          */
         private val okHttpClient: OkHttpClient
-            get() = OkHttpClient.Builder()
-                    .connectTimeout(10, TimeUnit.SECONDS)
-                    .readTimeout(10, TimeUnit.SECONDS)
-                    .writeTimeout(10, TimeUnit.SECONDS)
-                    .build()
-
-        override fun doInBackground(vararg params: String): String? {
-            var sink: BufferedSink? = null
-            var source: BufferedSource? = null
+            get() = HttpClientManager.baseClient
+
+        override fun run() {
+            val file = File(filePath)
+            val tempFile = File(filePath + TEMP_SUFFIX)
             try {
-                val address = params[0]
-                val filePath = params[1]
-                val request = Request.Builder().url(address).build()
-                val response = okHttpClient.newCall(request).execute()
-                if (response != null && response.isSuccessful) {
-                    val fileDir = getFileDir(filePath)
-                    if (fileDir != null) {
-                        val dir = File(fileDir)
-                        if (!dir.exists()) {
-                            dir.mkdirs()
-                        }
-                    }
-                    val file = File(filePath)
-                    if (file.exists()) {
-                        file.delete()
-                    }
-                    sink = Okio.buffer(Okio.sink(file))
-                    val responseBody = response.body()
-                    if (responseBody != null) {
-                        source = responseBody.source()
-                        val contentLength = responseBody.contentLength()
-                        val buffer = ByteArray(bufferSize)
-                        var total = 0
-                        val downloadedLength: Long = 0
-                        var bytes = source.read(buffer)
-                        while (bytes >= 0) {
-                            if (!interrupt) {
-                                sink.write(buffer, 0, bytes)
-                                sink.flush()
-                                total += bytes
-                                val downloadPercent = ((total + downloadedLength) * 1.0 / ((contentLength + downloadedLength) * 1.0) * 100).toInt()
-                                publishProgress(downloadPercent)
-                                logDebug(TAG, "download percent is $downloadPercent")
-                                bytes = source.read(buffer)
-                            } else {
-                                file.delete()
-                                response.close()
-                                return null
-                            }
-                        }
-                    } else {
-                        file.delete()
-                        response.close()
-                        e = RuntimeException("OkHttp Response body is null")
-                        return null
+                file.parentFile?.let {
+                    if (!it.exists()) {
+                        it.mkdirs()
                     }
+                }
+                val journal = download(tempFile, true)
+                if (journal == null) {
+                    notifyFailure(RuntimeException("Canceled by user or server response failed."))
+                    return
+                }
+                if (journal.totalLength >= 0 && tempFile.length() != journal.totalLength) {
+                    throw IOException("Downloaded length ${tempFile.length()} doesn't match content length ${journal.totalLength}")
+                }
+                if (file.exists()) {
+                    file.delete()
+                }
+                if (!tempFile.renameTo(file)) {
+                    throw IOException("Rename ${tempFile.path} to $filePath failed")
+                }
+                journal.delete()
+                notifyCompleted(file.path)
+            } catch (e: Exception) {
+                logError(TAG, e.message, e)
+                notifyFailure(e)
+            }
+        }
+
+        /**
+         * 执行下载，所有数据都下载完成后返回对应的下载日志。
+         * @param tempFile
+         * 下载过程中写入数据的临时文件
+         * @param retry
+         * 当服务器不再接受记录的Range请求时，是否允许重新从头开始下载
+         * @return 下载完成时返回下载日志，下载被取消时返回null。
+         */
+        private fun download(tempFile: File, retry: Boolean): DownloadJournal? {
+            var firstResponse: Response? = null
+            var journal = DownloadJournal.load(filePath)
+            if (journal != null && (journal.url != url || !journal.resumable || !tempFile.exists())) {
+                journal.delete()
+                journal = null
+            }
+            if (journal == null) {
+                tempFile.delete()
+                val response = okHttpClient.newCall(Request.Builder().url(url).header("Range", "bytes=0-").build()).execute()
+                journal = prepare(response)
+                if (journal.segments.size > 1) {
+                    // 需要分段下载，第一次请求仅用于获取文件信息
                     response.close()
-                    return file.path
+                } else {
+                    firstResponse = response
                 }
-            } catch (ex: Exception) {
-                e = ex
-                logError(TAG, ex.message, ex)
-            } finally {
-                try {
-                    sink?.close()
-                    source?.close()
-                } catch (e1: IOException) {
-                    e1.printStackTrace()
+                journal.save()
+            }
+            try {
+                downloadSegments(journal, tempFile, firstResponse)
+            } catch (e: RangeNotSatisfiedException) {
+                if (!retry) {
+                    throw e
                 }
+                logDebug(TAG, "restart download: ${e.message}")
+                journal.delete()
+                tempFile.delete()
+                return download(tempFile, false)
+            } catch (e: Exception) {
+                journal.save()
+                throw e
+            }
+            if (interrupt) {
+                journal.save()
+                return null
+            }
+            return journal
+        }
 
+        /**
+         * 根据第一次请求的响应创建下载日志，决定是否支持断点续传以及是否需要分段下载。
+         */
+        private fun prepare(response: Response): DownloadJournal {
+            if (!response.isSuccessful) {
+                response.close()
+                throw ResponseCodeException(response.code())
             }
-            return null
+            val validator = response.header("ETag") ?: response.header("Last-Modified") ?: ""
+            val resumable = response.code() == 206
+            val totalLength = if (resumable) {
+                response.header("Content-Range")?.substringAfterLast("/")?.toLongOrNull() ?: -1L
+            } else {
+                response.body()?.contentLength() ?: -1L
+            }
+            val segments = ArrayList<DownloadJournal.Segment>()
+            if (resumable && totalLength >= SEGMENT_THRESHOLD) {
+                val segmentLength = totalLength / SEGMENT_COUNT
+                for (i in 0 until SEGMENT_COUNT) {
+                    val start = i * segmentLength
+                    val end = if (i == SEGMENT_COUNT - 1) totalLength - 1 else start + segmentLength - 1
+                    segments.add(DownloadJournal.Segment(start, end, 0))
+                }
+            } else {
+                segments.add(DownloadJournal.Segment(0, if (totalLength > 0) totalLength - 1 else -1, 0))
+            }
+            return DownloadJournal(filePath, url, validator, totalLength, resumable && totalLength > 0, segments)
         }
 
-        override fun onProgressUpdate(vararg values: Int?) {
-            val percent = values[0]
-            if (percent != null) {
-                l.onProgress(percent)
+        /**
+         * 下载所有未完成的分段。第一个分段在当前线程中下载，其余分段提交到分段线程池中并行下载。
+         */
+        private fun downloadSegments(journal: DownloadJournal, tempFile: File, firstResponse: Response?) {
+            val unfinished = journal.segments.filter { !it.isFinished }
+            if (unfinished.isEmpty()) {
+                firstResponse?.close()
+                return
+            }
+            aborted = false
+            val futures = ArrayList<Future<*>>()
+            for (i in 1 until unfinished.size) {
+                futures.add(segmentExecutor.submit { downloadSegment(journal, unfinished[i], tempFile, null) })
+            }
+            try {
+                downloadSegment(journal, unfinished[0], tempFile, firstResponse)
+                for (future in futures) {
+                    future.get()
+                }
+            } catch (e: Exception) {
+                // 任意一个分段失败时，通知其他分段尽快停止，并等待它们不再写入临时文件
+                aborted = true
+                for (future in futures) {
+                    try {
+                        future.get()
+                    } catch (ignored: Exception) {
+                    }
+                }
+                if (e is ExecutionException) {
+                    val cause = e.cause
+                    if (cause is Exception) {
+                        throw cause
+                    }
+                }
+                throw e
             }
         }
 
-        override fun onPostExecute(filePath: String?) {
-            if (filePath != null) {
-                l.onCompleted(filePath)
-            } else {
-                if (e != null) {
-                    e?.let {
-                        l.onFailure(it.message.toString(), it)
+        /**
+         * 下载一个分段的数据，并写入到临时文件中该分段对应的位置。
+         */
+        private fun downloadSegment(journal: DownloadJournal, segment: DownloadJournal.Segment, tempFile: File, response: Response?) {
+            val rangeResponse = response ?: requestRange(journal, segment)
+            rangeResponse.use {
+                val body = it.body() ?: throw IOException("OkHttp Response body is null")
+                RandomAccessFile(tempFile, "rw").use { raf ->
+                    raf.seek(segment.start + segment.downloaded)
+                    val source = body.source()
+                    val buffer = ByteArray(BUFFER_SIZE)
+                    while (!interrupt && !aborted && !segment.isFinished) {
+                        var bytes = read(source, buffer)
+                        if (bytes <= 0) {
+                            break
+                        }
+                        if (segment.end >= 0) {
+                            bytes = minOf(bytes.toLong(), segment.end - segment.start - segment.downloaded + 1).toInt()
+                        }
+                        raf.write(buffer, 0, bytes)
+                        segment.downloaded += bytes
+                        onDownloaded(journal, bytes)
                     }
-                } else {
-                    l.onFailure("Canceled by user or server response failed.", RuntimeException("Canceled by user or server response failed."))
                 }
             }
+            if (!interrupt && !aborted && segment.end >= 0 && !segment.isFinished) {
+                throw IOException("Segment ${segment.start}-${segment.end} ended early at ${segment.start + segment.downloaded}")
+            }
         }
 
         /**
-         * 获取当前文件路径所处的目录。
-         * @param filePath
-         * 完整的文件路径
-         * @return 文件路径所处的目录。
+         * 针对一个分段中未下载的部分发起Range请求。如果记录了服务器校验值，会通过If-Range保证文件没有发生变化。
          */
-        private fun getFileDir(filePath: String): String? {
-            if (!TextUtils.isEmpty(filePath)) {
-                val endIndex = filePath.lastIndexOf("/")
-                if (endIndex != -1) {
-                    return filePath.substring(0, endIndex)
+        private fun requestRange(journal: DownloadJournal, segment: DownloadJournal.Segment): Response {
+            val end = if (segment.end >= 0) segment.end.toString() else ""
+            val builder = Request.Builder()
+                    .url(url)
+                    .header("Range", "bytes=${segment.start + segment.downloaded}-$end")
+            if (journal.validator.isNotEmpty()) {
+                builder.header("If-Range", journal.validator)
+            }
+            val response = okHttpClient.newCall(builder.build()).execute()
+            if (response.code() != 206) {
+                response.close()
+                if (response.code() == 200 || response.code() == 416) {
+                    throw RangeNotSatisfiedException(response.code())
                 }
+                throw ResponseCodeException(response.code())
             }
-            return null
+            return response
+        }
+
+        /**
+         * 尽量将缓冲区填满后再返回，从而减少写入文件的次数。
+         * @return 读取到的字节数，如果已经读到末尾则返回-1。
+         */
+        private fun read(source: BufferedSource, buffer: ByteArray): Int {
+            var count = 0
+            while (count < buffer.size) {
+                val bytes = source.read(buffer, count, buffer.size - count)
+                if (bytes == -1) {
+                    break
+                }
+                count += bytes
+            }
+            return if (count == 0) -1 else count
+        }
+
+        /**
+         * 每写入一块数据后调用，按照时间间隔节流进度回调，并按照字节间隔将进度写入日志文件。
+         */
+        @Synchronized
+        private fun onDownloaded(journal: DownloadJournal, bytes: Int) {
+            unsavedLength += bytes
+            if (unsavedLength >= JOURNAL_INTERVAL) {
+                unsavedLength = 0
+                journal.save()
+            }
+            if (journal.totalLength > 0) {
+                val percent = (journal.downloadedLength * 100 / journal.totalLength).toInt()
+                val now = System.currentTimeMillis()
+                if (percent != lastPercent && (percent == 100 || now - lastProgressTime >= PROGRESS_INTERVAL)) {
+                    lastPercent = percent
+                    lastProgressTime = now
+                    logDebug(TAG, "download percent is $percent")
+                    GifFun.getHandler().post { l.onProgress(percent) }
+                }
+            }
+        }
+
+        private fun notifyCompleted(filePath: String) {
+            GifFun.getHandler().post { l.onCompleted(filePath) }
+        }
+
+        private fun notifyFailure(e: Exception) {
+            GifFun.getHandler().post { l.onFailure(e.message.toString(), e) }
         }
 
         /**
-         * 中断下载，会以失败为结果进行回调
+         * 中断下载，会以失败为结果进行回调。已下载的数据会被保留，再次下载同样的文件时可以继续下载。
          */
         fun cancel() {
             interrupt = true
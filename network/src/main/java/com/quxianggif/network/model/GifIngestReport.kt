@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quxianggif.network.model
+
+/**
+ * GIF图片导入的结果报告，在一次读取的过程中同时得到了文件拷贝、大小、MD5以及GIF格式校验的结果。
+ */
+class GifIngestReport(
+
+        /**
+         * GIF图片拷贝到本地之后的路径。
+         */
+        val path: String,
+
+        /**
+         * GIF图片的大小，单位是字节。如果超过了最大限制，这里只会记录到超出限制时已读取的字节数。
+         */
+        val size: Long,
+
+        /**
+         * GIF图片的MD5值，只有在图片完整读取之后才会有值。
+         */
+        val md5: String,
+
+        /**
+         * GIF图片的格式是否完全正确。
+         */
+        val isValidGif: Boolean,
+
+        /**
+         * GIF图片是否超过了允许上传的最大限制。
+         */
+        val isTooLarge: Boolean,
+
+        /**
+         * GIF图片逻辑屏幕的宽度。
+         */
+        val width: Int,
+
+        /**
+         * GIF图片逻辑屏幕的高度。
+         */
+        val height: Int,
+
+        /**
+         * GIF图片的帧数。
+         */
+        val frameCount: Int)
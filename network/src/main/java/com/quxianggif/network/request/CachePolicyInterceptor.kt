@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.request
+
+import com.quxianggif.network.util.CachePolicy
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.io.IOException
+import java.net.HttpURLConnection
+
+/**
+ * 根据请求声明的CachePolicy补全响应的缓存头，使得OkHttp的Cache能够按照请求类的策略缓存响应。
+ *
+ * 服务器返回了Cache-Control时不做任何修改。没有返回时，声明了缓存策略的GET请求会补上对应的max-age，其它请求则补上no-store，
+ * 避免不需要缓存的接口也被写入磁盘缓存。每次都需要验证的策略只有在服务器返回了ETag或Last-Modified时才会缓存。
+ * 304响应不做任何修改，缓存的响应继续沿用第一次写入时的缓存头。
+ */
+internal class CachePolicyInterceptor : Interceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val response = chain.proceed(request)
+        if (request.method() != "GET" || response.header(HEADER_CACHE_CONTROL) != null) {
+            return response
+        }
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // OkHttp会把304响应的头合并到缓存的响应上，这里补上的no-store会让原本可用的缓存被覆盖成不可缓存
+            return response
+        }
+        val policy = request.tag() as? CachePolicy ?: CachePolicy.NONE
+        val hasValidator = response.header(HEADER_ETAG) != null || response.header(HEADER_LAST_MODIFIED) != null
+        // 每次都需要验证但又没有验证器的响应，缓存下来也无法使用
+        val storable = policy.isCacheable && (policy.maxAge > 0 || policy.staleWhileRevalidate > 0 || hasValidator)
+        val cacheControl = if (storable) "max-age=${policy.maxAge}" else "no-store"
+        return response.newBuilder()
+                .removeHeader(HEADER_PRAGMA)
+                .header(HEADER_CACHE_CONTROL, cacheControl)
+                .build()
+    }
+
+    companion object {
+
+        private const val HEADER_CACHE_CONTROL = "Cache-Control"
+
+        private const val HEADER_PRAGMA = "Pragma"
+
+        private const val HEADER_ETAG = "ETag"
+
+        private const val HEADER_LAST_MODIFIED = "Last-Modified"
+
+    }
+
+}
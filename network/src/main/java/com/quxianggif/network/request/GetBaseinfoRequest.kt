@@ -20,6 +20,7 @@ package com.quxianggif.network.request
 import com.quxianggif.core.GifFun
 import com.quxianggif.network.model.Callback
 import com.quxianggif.network.model.GetBaseinfo
+import com.quxianggif.network.util.CachePolicy
 import com.quxianggif.network.util.NetworkConst
 
 import java.util.HashMap
@@ -42,6 +43,17 @@ class GetBaseinfoRequest : Request() {
         return Request.GET
     }
 
+    override fun cachePolicy(): CachePolicy {
+        return BASEINFO_CACHE_POLICY
+    }
+
+    /**
+     * 调用方只会读取响应中的用户信息并保存，可以共享同一个响应。
+     */
+    override fun coalesce(): Boolean {
+        return true
+    }
+
     override fun listen(callback: Callback?) {
         setListener(callback)
         inFlight(GetBaseinfo::class.java)
@@ -61,6 +73,11 @@ class GetBaseinfoRequest : Request() {
 
     companion object {
 
+        /**
+         * 用户基本信息变化不频繁，1分钟之内直接使用缓存，1天之内先显示缓存再在后台更新。
+         */
+        private val BASEINFO_CACHE_POLICY = CachePolicy(60, 24 * 60 * 60)
+
         private val URL = GifFun.BASE_URL + "/user/baseinfo"
     }
 }
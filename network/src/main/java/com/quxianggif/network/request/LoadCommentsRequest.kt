@@ -20,6 +20,7 @@ package com.quxianggif.network.request
 import com.quxianggif.core.GifFun
 import com.quxianggif.network.model.Callback
 import com.quxianggif.network.model.LoadComments
+import com.quxianggif.network.util.CachePolicy
 import com.quxianggif.network.util.NetworkConst
 
 import java.util.HashMap
@@ -56,6 +57,10 @@ class LoadCommentsRequest : Request() {
         return Request.GET
     }
 
+    override fun cachePolicy(): CachePolicy {
+        return CachePolicy.REVALIDATE
+    }
+
     override fun listen(callback: Callback?) {
         setListener(callback)
         inFlight(LoadComments::class.java)
@@ -28,18 +28,16 @@ import com.quxianggif.core.util.GlobalUtil
 import com.quxianggif.core.util.ImageUtil
 import com.quxianggif.network.exception.PostFeedException
 import com.quxianggif.network.model.Callback
+import com.quxianggif.network.model.GifIngestReport
 import com.quxianggif.network.model.PostFeed
 import com.quxianggif.network.model.ProgressCallback
 import com.quxianggif.network.model.Response
-import com.quxianggif.network.util.MD5
+import com.quxianggif.network.util.GifIngestor
 import com.quxianggif.network.util.NetworkConst
 import com.quxianggif.network.util.QiniuManager
 import com.quxianggif.network.util.ResHandler
 import okhttp3.Headers
-import java.io.BufferedInputStream
-import java.io.BufferedOutputStream
 import java.io.File
-import java.io.FileOutputStream
 import java.util.*
 import kotlin.concurrent.thread
 
@@ -98,6 +96,11 @@ class PostFeedRequest : Request() {
      */
     private var imgHeight: Int = 0
 
+    /**
+     * GIF图片拷贝到本地时生成的导入报告。
+     */
+    private var ingestReport: GifIngestReport? = null
+
     /**
      * 使用Uri来标识gif图片的本地路径，以适配10.0系统
      */
@@ -159,28 +162,23 @@ class PostFeedRequest : Request() {
 
     /**
      * 由于七牛云的上传API是接收图片的路径，因此需要将使用Uri表示的图片移动到应用程序的SD卡关联目录下，这样才能使用图片的路径来上传。
+     * 拷贝的同时会计算图片的大小和MD5值并校验GIF格式，结果保存在ingestReport当中，不需要再重复读取文件。
      */
     private fun moveGifToExternalStorage(): Boolean {
-        val inputStream = GifFun.getContext().contentResolver.openInputStream(uri)
-        if (inputStream == null) {
-            mCallback.onFailure(PostFeedException(PostFeedException.GIF_PATH_OR_FEED_CONTENT_IS_NULL))
-            return false
-        }
         return GifFun.getContext().externalCacheDir?.let {
             gifPath = "${it.path}/${System.currentTimeMillis()}.gif"
             logDebug("gifPath is $gifPath")
-            val bis = BufferedInputStream(inputStream)
-            val fos = FileOutputStream(gifPath)
-            val bos = BufferedOutputStream(fos)
-            val byteArray = ByteArray(1024)
-            var bytes = bis.read(byteArray)
-            while (bytes > 0) {
-                bos.write(byteArray, 0, bytes)
-                bos.flush()
-                bytes = bis.read(byteArray)
+            val report = try {
+                GifIngestor.ingest(uri, gifPath)
+            } catch (e: Exception) {
+                mCallback.onFailure(e)
+                return false
             }
-            bos.close()
-            fos.close()
+            if (report == null) {
+                mCallback.onFailure(PostFeedException(PostFeedException.GIF_PATH_OR_FEED_CONTENT_IS_NULL))
+                return false
+            }
+            ingestReport = report
             true
         } ?: false
     }
@@ -194,14 +192,20 @@ class PostFeedRequest : Request() {
             mCallback.onFailure(PostFeedException(PostFeedException.GIF_PATH_OR_FEED_CONTENT_IS_NULL))
             return false
         }
-        if (!ImageUtil.isGifValid(gifPath)) {
-            mCallback.onFailure(PostFeedException(PostFeedException.GIF_FORMAT_IS_INCORRECT))
+        val report = ingestReport
+        if (report == null) {
+            mCallback.onFailure(PostFeedException(PostFeedException.GIF_PATH_OR_FEED_CONTENT_IS_NULL))
             return false
         }
-        if (ImageUtil.getImageSize(gifPath) > GifFun.GIF_MAX_SIZE) {
+        // 超过大小限制时不会完整读取文件，因此需要先于格式校验进行判断
+        if (report.isTooLarge) {
             mCallback.onFailure(PostFeedException(PostFeedException.GIF_IS_LARGER_THAN_20_MB))
             return false
         }
+        if (!report.isValidGif) {
+            mCallback.onFailure(PostFeedException(PostFeedException.GIF_FORMAT_IS_INCORRECT))
+            return false
+        }
         firstFramePath = ImageUtil.saveBitmapAsFile(firstFrame) ?: ""
         if (firstFramePath.isBlank()) {
             mCallback.onFailure(PostFeedException(PostFeedException.GIF_COVER_IS_UNREACHABLE))
@@ -217,7 +221,7 @@ class PostFeedRequest : Request() {
             mCallback.onFailure(PostFeedException(PostFeedException.GIF_IS_TOO_WIDE_OR_TOO_NARROW))
             return false
         }
-        gifMD5 = MD5.getFileMD5(gifPath)
+        gifMD5 = report.md5
         if (gifMD5.isBlank()) {
             mCallback.onFailure(PostFeedException(PostFeedException.GIF_MD5_EXCEPTION))
             return false
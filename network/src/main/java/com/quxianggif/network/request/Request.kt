@@ -17,19 +17,22 @@
 
 package com.quxianggif.network.request
 
-import com.google.gson.GsonBuilder
+import com.google.gson.stream.JsonReader
 import com.quxianggif.core.GifFun
+import com.quxianggif.core.extension.isVerboseLoggable
+import com.quxianggif.core.extension.logWarn
 import com.quxianggif.core.extension.logVerbose
 import com.quxianggif.network.exception.ResponseCodeException
 import com.quxianggif.network.model.Callback
 import com.quxianggif.network.model.OriginThreadCallback
 import com.quxianggif.network.util.AuthUtil
+import com.quxianggif.network.util.CachePolicy
+import com.quxianggif.network.util.GsonManager
+import com.quxianggif.network.util.HttpClientManager
 import com.quxianggif.network.util.NetworkConst
-import com.quxianggif.network.util.SignUtil
-import com.quxianggif.network.util.Utility
+import com.quxianggif.network.util.SigningContext
 import okhttp3.*
 import java.io.IOException
-import java.util.concurrent.TimeUnit
 
 /**
  * 网络请求模式的基类，所有的请求封装都应该要继承此类。这里会提供网络模块的配置，以及请求的具体逻辑处理等。
@@ -41,7 +44,11 @@ abstract class Request {
 
     private lateinit var okHttpClient: OkHttpClient
 
-    private val okHttpBuilder: OkHttpClient.Builder = OkHttpClient.Builder().addNetworkInterceptor(LoggingInterceptor())
+    private var connectTimeout = HttpClientManager.DEFAULT_TIMEOUT
+
+    private var writeTimeout = HttpClientManager.DEFAULT_TIMEOUT
+
+    private var readTimeout = HttpClientManager.DEFAULT_TIMEOUT
 
     private var callback: Callback? = null
 
@@ -49,32 +56,32 @@ abstract class Request {
 
     var getParamsAlready = false
 
-    var deviceName: String
+    /**
+     * 构建本次请求时使用的签名信息，在创建请求时获取，保证请求头和请求参数使用的是同一份身份信息。
+     */
+    private val signingContext = SigningContext.get()
 
-    var deviceSerial: String
+    var deviceName: String = signingContext.deviceName
 
-    init {
-        connectTimeout(10)
-        writeTimeout(10)
-        readTimeout(10)
-        deviceName = Utility.deviceName
-        deviceSerial = Utility.getDeviceSerial()
-    }
+    var deviceSerial: String = signingContext.deviceSerial
 
+    /**
+     * 从HttpClientManager中获取全局共享的OkHttpClient，如果修改过超时时间，则会获取基于共享client派生出来的实例。
+     */
     private fun build() {
-        okHttpClient = okHttpBuilder.build()
+        okHttpClient = HttpClientManager.apiClient(connectTimeout, readTimeout, writeTimeout)
     }
 
     fun connectTimeout(seconds: Int) {
-        okHttpBuilder.connectTimeout(seconds.toLong(), TimeUnit.SECONDS)
+        connectTimeout = seconds
     }
 
     fun writeTimeout(seconds: Int) {
-        okHttpBuilder.writeTimeout(seconds.toLong(), TimeUnit.SECONDS)
+        writeTimeout = seconds
     }
 
     fun readTimeout(seconds: Int) {
-        okHttpBuilder.readTimeout(seconds.toLong(), TimeUnit.SECONDS)
+        readTimeout = seconds
     }
 
     /**
@@ -92,52 +99,143 @@ abstract class Request {
      * 网络请求对应的实体类
      */
     fun <T : com.quxianggif.network.model.Response> inFlight(requestModel: Class<T>) {
-        build()
-        val requestBuilder = okhttp3.Request.Builder()
-        if (method() == GET && getParams() != null) {
-            requestBuilder.url(urlWithParam())
-        } else {
-            requestBuilder.url(url())
+        val requestUrl = if (method() == GET && getParams() != null) urlWithParam() else url()
+        val coalesceKey = if (coalesce()) RequestCoalescer.keyOf(method(), requestUrl, requestModel) else null
+        if (coalesceKey != null && !RequestCoalescer.join(coalesceKey, this)) {
+            // 相同的请求正在进行中，等待它返回结果即可
+            return
         }
-        requestBuilder.headers(headers(Headers.Builder()).build())
-        when {
-            method() == POST -> requestBuilder.post(formBody())
-            method() == PUT -> requestBuilder.put(formBody())
-            method() == DELETE -> requestBuilder.delete(formBody())
+        try {
+            build()
+            val requestBuilder = okhttp3.Request.Builder()
+            requestBuilder.url(requestUrl)
+            requestBuilder.headers(headers(Headers.Builder()).build())
+            when {
+                method() == POST -> requestBuilder.post(formBody())
+                method() == PUT -> requestBuilder.put(formBody())
+                method() == DELETE -> requestBuilder.delete(formBody())
+            }
+            val policy = if (method() == GET) cachePolicy() else CachePolicy.NONE
+            requestBuilder.tag(policy)
+            val request = requestBuilder.build()
+            if (policy.isCacheable && policy.staleWhileRevalidate > 0) {
+                enqueueStaleWhileRevalidate(request, requestModel, coalesceKey)
+            } else {
+                enqueue(request, requestModel, coalesceKey)
+            }
+        } catch (e: Exception) {
+            // 组装请求失败时（比如URL或Header不合法）也要结束合并，否则之后相同的请求会一直等待一个不会返回的结果
+            logWarn(TAG, e.message, e)
+            dispatchFailure(coalesceKey, e)
         }
-        okHttpClient.newCall(requestBuilder.build()).enqueue(object : okhttp3.Callback {
+    }
+
+    /**
+     * 发起网络请求，如果缓存中有可用的响应，OkHttp会直接使用缓存或者发起条件请求。
+     */
+    private fun <T : com.quxianggif.network.model.Response> enqueue(request: okhttp3.Request, requestModel: Class<T>,
+                                                                     coalesceKey: String?) {
+        okHttpClient.newCall(request).enqueue(object : okhttp3.Callback {
 
             @Throws(IOException::class)
             override fun onResponse(call: Call, response: Response) {
-                try {
-                    if (response.isSuccessful) {
-                        val body = response.body()
-                        val result = if (body != null) {
-                            body.string()
-                        } else {
-                            ""
-                        }
-                        logVerbose(LoggingInterceptor.TAG, result)
-                        val gson = GsonBuilder().disableHtmlEscaping().create()
-                        val responseModel = gson.fromJson(result, requestModel)
-                        response.close()
-                        notifyResponse(responseModel)
-                    } else {
-                        notifyFailure(ResponseCodeException(response.code()))
-                    }
-                } catch (e: Exception) {
-                    notifyFailure(e)
+                handleResponse(response, requestModel, coalesceKey)
+            }
+
+            override fun onFailure(call: Call, e: IOException) {
+                dispatchFailure(coalesceKey, e)
+            }
+
+        })
+    }
+
+    /**
+     * 先只从缓存中读取响应，缓存中有未超出staleWhileRevalidate的响应时立即回调，如果响应已经过期，再在后台重新验证并更新缓存。
+     * 缓存中没有可用的响应时，按照正常的流程发起网络请求。
+     */
+    private fun <T : com.quxianggif.network.model.Response> enqueueStaleWhileRevalidate(request: okhttp3.Request,
+                                                                                         requestModel: Class<T>,
+                                                                                         coalesceKey: String?) {
+        val policy = request.tag() as CachePolicy
+        val cacheRequest = request.newBuilder().cacheControl(policy.staleCacheControl()).build()
+        okHttpClient.newCall(cacheRequest).enqueue(object : okhttp3.Callback {
+
+            @Throws(IOException::class)
+            override fun onResponse(call: Call, response: Response) {
+                if (response.cacheResponse() == null) {
+                    // 缓存中没有可用的响应，OkHttp返回的是504
+                    response.close()
+                    enqueue(request, requestModel, coalesceKey)
+                    return
                 }
+                val isStale = response.header(HEADER_WARNING)?.startsWith(WARNING_STALE) == true
+                handleResponse(response, requestModel, coalesceKey)
+                if (isStale) {
+                    revalidate(request)
+                }
+            }
 
+            override fun onFailure(call: Call, e: IOException) {
+                enqueue(request, requestModel, coalesceKey)
+            }
+
+        })
+    }
+
+    /**
+     * 在后台重新请求一次，由OkHttp负责发起条件请求并更新缓存，请求的结果不会再回调。
+     */
+    private fun revalidate(request: okhttp3.Request) {
+        okHttpClient.newCall(request).enqueue(object : okhttp3.Callback {
+
+            @Throws(IOException::class)
+            override fun onResponse(call: Call, response: Response) {
+                response.use {
+                    // 只有完整读取响应内容之后，OkHttp才会将其写入缓存
+                    it.body()?.bytes()
+                }
             }
 
             override fun onFailure(call: Call, e: IOException) {
-                notifyFailure(e)
+                logWarn(TAG, "Revalidate ${request.url()} failed.", e)
             }
 
         })
     }
 
+    /**
+     * 解析服务器的响应，并回调给本次请求以及所有合并到本次请求上的相同请求。
+     */
+    private fun <T : com.quxianggif.network.model.Response> handleResponse(response: Response, requestModel: Class<T>,
+                                                                            coalesceKey: String?) {
+        val result: Any = try {
+            if (response.isSuccessful) {
+                val body = response.body() ?: throw IOException("OkHttp Response body is null")
+                val responseModel = if (isVerboseLoggable) {
+                    // 只有在需要输出日志的时候才将完整的响应内容读取成字符串
+                    val result = body.string()
+                    logVerbose(LoggingInterceptor.TAG, result)
+                    GsonManager.gson.fromJson(result, requestModel)
+                } else {
+                    GsonManager.gson.fromJson<T>(JsonReader(body.charStream()), requestModel)
+                }
+                responseModel ?: throw IOException("Response content is empty")
+            } else {
+                ResponseCodeException(response.code())
+            }
+        } catch (e: Exception) {
+            e
+        } finally {
+            // 先关闭响应再回调，OkHttp在关闭时才会把读完的响应写入缓存，这样回调中紧接着发起的请求也能用上缓存
+            response.close()
+        }
+        if (result is com.quxianggif.network.model.Response) {
+            dispatchResponse(coalesceKey, result)
+        } else {
+            dispatchFailure(coalesceKey, result as Exception)
+        }
+    }
+
     abstract fun url(): String
 
     abstract fun method(): Int
@@ -151,12 +249,10 @@ abstract class Request {
      * @return 如果完成了身份认证参数构建返回true，否则返回false。
      */
     fun buildAuthParams(params: MutableMap<String, String>?): Boolean {
-        if (params != null && AuthUtil.isLogin) {
-            val userId = AuthUtil.userId.toString()
-            val token = AuthUtil.token
-            params[NetworkConst.UID] = userId
+        if (params != null && signingContext.isLogin) {
+            params[NetworkConst.UID] = signingContext.userId
             params[NetworkConst.DEVICE_SERIAL] = deviceSerial
-            params[NetworkConst.TOKEN] = token
+            params[NetworkConst.TOKEN] = signingContext.token
             return true
         }
         return false
@@ -193,8 +289,8 @@ abstract class Request {
      */
     open fun headers(builder: Headers.Builder): Headers.Builder {
         builder.add(NetworkConst.HEADER_USER_AGENT, NetworkConst.HEADER_USER_AGENT_VALUE)
-        builder.add(NetworkConst.HEADER_APP_VERSION, Utility.appVersion)
-        builder.add(NetworkConst.HEADER_APP_SIGN, Utility.appSign)
+        builder.add(NetworkConst.HEADER_APP_VERSION, signingContext.appVersion)
+        builder.add(NetworkConst.HEADER_APP_SIGN, signingContext.appSign)
         return builder
     }
 
@@ -202,6 +298,21 @@ abstract class Request {
         return null
     }
 
+    /**
+     * GET请求响应的缓存策略，默认不缓存，子类可以重写此方法声明自己的缓存策略。
+     */
+    open fun cachePolicy(): CachePolicy {
+        return CachePolicy.NONE
+    }
+
+    /**
+     * 是否将本次请求和正在进行中的相同请求合并，默认不合并。合并的请求会拿到同一个解析好的Response实例，所有Callback都只能读取
+     * 其中的数据而不能修改，因此只有Callback不会修改响应实体（比如把其中的列表交给适配器）的GET请求才应该重写此方法返回true。
+     */
+    open fun coalesce(): Boolean {
+        return false
+    }
+
     /**
      * 构建POST、PUT、DELETE请求的参数体。
      *
@@ -261,6 +372,28 @@ abstract class Request {
         return params
     }
 
+    /**
+     * 将服务器响应转换后的实体类回调给本次请求，以及所有合并到本次请求上的相同请求。
+     */
+    private fun dispatchResponse(coalesceKey: String?, response: com.quxianggif.network.model.Response) {
+        val followers = if (coalesceKey != null) RequestCoalescer.complete(coalesceKey) else emptyList()
+        notifyResponse(response)
+        for (follower in followers) {
+            follower.notifyResponse(response)
+        }
+    }
+
+    /**
+     * 将请求失败的异常回调给本次请求，以及所有合并到本次请求上的相同请求。
+     */
+    private fun dispatchFailure(coalesceKey: String?, e: Exception) {
+        val followers = if (coalesceKey != null) RequestCoalescer.complete(coalesceKey) else emptyList()
+        notifyFailure(e)
+        for (follower in followers) {
+            follower.notifyFailure(e)
+        }
+    }
+
     /**
      * 当请求响应成功的时候，将服务器响应转换后的实体类进行回调。
      * @param response
@@ -301,6 +434,15 @@ abstract class Request {
 
     companion object {
 
+        private const val TAG = "Request"
+
+        private const val HEADER_WARNING = "Warning"
+
+        /**
+         * OkHttp在使用过期的缓存时会添加的Warning头。
+         */
+        private const val WARNING_STALE = "110"
+
         const val GET = 0
 
         const val POST = 1
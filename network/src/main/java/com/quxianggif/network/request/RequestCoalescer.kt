@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.request
+
+/**
+ * 合并完全相同的并发请求。
+ *
+ * 以请求方法、带参数的URL以及响应实体类作为键，当一个请求还没有返回时，之后发起的相同请求不会再次访问网络，而是挂到正在进行中的
+ * 请求上，等到请求返回之后，将同一个解析好的Response（或者同一个异常）分发给所有请求的Callback。请求返回之后再发起的相同请求会
+ * 重新访问网络。由于Response是共享的，只有通过[Request.coalesce]声明了不会修改响应的请求才会参与合并。
+ *
+ * 通过[getStats]可以获取合并命中和未命中的次数。
+ */
+object RequestCoalescer {
+
+    private val inFlight = HashMap<String, MutableList<Request>>()
+
+    private var hitCount = 0L
+
+    private var missCount = 0L
+
+    /**
+     * 生成请求合并所使用的键。
+     */
+    fun keyOf(method: Int, url: String, requestModel: Class<*>): String {
+        return "$method $url ${requestModel.name}"
+    }
+
+    /**
+     * 尝试加入正在进行中的相同请求。
+     *
+     * @return 如果当前没有相同的请求，则由传入的请求负责发起网络请求，返回true。否则传入的请求会等待进行中的请求返回，返回false。
+     */
+    @Synchronized
+    fun join(key: String, request: Request): Boolean {
+        val followers = inFlight[key]
+        if (followers == null) {
+            inFlight[key] = ArrayList()
+            missCount++
+            return true
+        }
+        followers.add(request)
+        hitCount++
+        return false
+    }
+
+    /**
+     * 在发起网络请求的请求返回之后调用，结束本次合并。
+     *
+     * @return 所有等待本次请求结果的其它请求。
+     */
+    @Synchronized
+    fun complete(key: String): List<Request> {
+        return inFlight.remove(key) ?: emptyList()
+    }
+
+    /**
+     * 获取请求合并的统计数据。
+     */
+    @Synchronized
+    fun getStats(): Stats {
+        return Stats(hitCount, missCount, inFlight.size)
+    }
+
+    /**
+     * 请求合并的统计数据。
+     *
+     * @param hitCount 挂到进行中的请求上，没有访问网络的请求数量。
+     * @param missCount 实际访问了网络的请求数量。
+     * @param inFlightCount 当前正在进行中的请求数量。
+     */
+    class Stats(val hitCount: Long, val missCount: Long, val inFlightCount: Int) {
+
+        override fun toString(): String {
+            return "Stats(hitCount=$hitCount, missCount=$missCount, inFlightCount=$inFlightCount)"
+        }
+    }
+
+}
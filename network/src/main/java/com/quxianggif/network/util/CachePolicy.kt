@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.util
+
+import okhttp3.CacheControl
+import java.util.concurrent.TimeUnit
+
+/**
+ * GET请求响应的缓存策略，由每个请求类通过重写Request.cachePolicy()声明。
+ *
+ * 服务器返回了Cache-Control时以服务器为准，否则按照maxAge决定响应在多长时间内可以不经过网络直接使用。过期之后如果服务器返回过
+ * ETag或Last-Modified，会带上If-None-Match或If-Modified-Since发起条件请求，服务器返回304时直接使用缓存的响应内容。
+ *
+ * 如果staleWhileRevalidate大于0，那么在过期之后的这段时间内，会先立即回调缓存中过期的响应，同时在后台重新验证并更新缓存，
+ * 下一次请求就能拿到最新的数据。
+ *
+ * @param maxAge 响应在多少秒之内是新鲜的，小于0表示不缓存。
+ * @param staleWhileRevalidate 过期之后的多少秒之内可以先使用过期的响应。
+ */
+class CachePolicy(val maxAge: Int, val staleWhileRevalidate: Int = 0) {
+
+    /**
+     * 是否需要缓存响应。
+     */
+    val isCacheable: Boolean
+        get() = maxAge >= 0
+
+    /**
+     * 只从缓存中读取响应的CacheControl，允许读取过期时间在staleWhileRevalidate之内的响应。
+     */
+    internal fun staleCacheControl(): CacheControl {
+        return CacheControl.Builder()
+                .onlyIfCached()
+                .maxStale(staleWhileRevalidate, TimeUnit.SECONDS)
+                .build()
+    }
+
+    companion object {
+
+        /**
+         * 不缓存响应，所有请求默认使用这种策略。
+         */
+        @JvmField
+        val NONE = CachePolicy(-1)
+
+        /**
+         * 缓存响应，但每次使用之前都需要向服务器验证，适用于数据变化频繁，但希望通过304节省流量的接口。
+         */
+        @JvmField
+        val REVALIDATE = CachePolicy(0)
+    }
+
+}
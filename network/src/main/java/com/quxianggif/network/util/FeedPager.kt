@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.util
+
+import android.os.SystemClock
+import com.quxianggif.core.model.BaseFeed
+import com.quxianggif.network.model.Callback
+import com.quxianggif.network.model.Response
+import java.util.ArrayDeque
+
+/**
+ * 基于lastFeed游标的Feed分页加载器，世界、热门、关注以及用户个人主页的Feed列表都通过它来分页加载。
+ *
+ * 分页加载器持有列表的数据源[feeds]，并负责：
+ * 1. 记录服务器返回的每一页中的最后一条Feed，作为下一页的lastFeed游标。
+ * 2. 通过[prefetchDistance]告诉滑动监听器在最后一页还剩多少条没有显示时就开始加载下一页，而不是等到滑动到底部才加载。
+ * 3. 按照feedId去除重复的Feed，比如加载过程中服务器上有新的Feed导致分页边界发生偏移。
+ * 4. 内存中最多保留[maxPages]页数据，超出时移除列表顶部最早加载的页。服务器没有向前翻页的接口，被移除的页只能通过下拉刷新重新
+ * 加载，因此默认的页数足够大，正常浏览时不会触发，只用于防止长时间连续加载时内存无限增长。
+ * 5. 记录每一页的加载耗时，可以通过[getStats]获取。
+ *
+ * 加载更多时新的一页会直接添加到[feeds]的末尾。刷新时则不会修改[feeds]，而是把新的第一页交给[Listener.onPageLoaded]，由调用方
+ * 决定如何替换列表中的数据，比如在后台线程中计算新旧数据的差异之后再增量更新，避免整个列表重新绑定。
+ *
+ * 所有方法都必须在主线程中调用，所有回调也都在主线程中执行。
+ *
+ * @param fetchPage 发起一次分页请求，cursor为0时表示刷新。
+ * @param feedsOf 从响应中取出本页的Feeds。
+ * @param listener 分页加载结果的回调。
+ * @param maxPages 内存中最多保留的页数。
+ */
+class FeedPager<T : BaseFeed, R : Response>(private val fetchPage: (cursor: Long, callback: Callback) -> Unit,
+                                             private val feedsOf: (R) -> List<T>,
+                                             private val listener: Listener<T, R>,
+                                             private val maxPages: Int = MAX_PAGES) {
+
+    /**
+     * 列表的数据源，由分页加载器负责填充加载更多的数据，刷新的数据由调用方替换，列表中的删除等修改可以直接操作此集合。
+     */
+    val feeds: MutableList<T> = ArrayList()
+
+    /**
+     * 已经加载过的所有feedId，用于去重。被移除的页中的Feed仍然保留在这里，避免再次出现在列表中。
+     */
+    private val loadedIds = HashSet<Long>()
+
+    /**
+     * 内存中每一页的Feed数量，最早加载的页在最前面。
+     */
+    private val pageSizes = ArrayDeque<Int>()
+
+    /**
+     * 每次刷新或恢复数据时递增，用于丢弃在此之前发起的请求的结果。
+     */
+    private var generation = 0
+
+    private var loadCount = 0
+
+    private var totalLoadTime = 0L
+
+    private var maxLoadTime = 0L
+
+    private var lastLoadTime = 0L
+
+    /**
+     * 是否正在加载数据。
+     */
+    var isLoading = false
+        private set
+
+    /**
+     * 服务器端是否已经没有更多的Feeds。
+     */
+    var isNoMoreData = false
+        private set
+
+    /**
+     * 加载下一页时使用的lastFeed游标，即最后加载到的一条Feed的id，还没有加载任何数据时为0。
+     */
+    var cursor = 0L
+        private set
+
+    /**
+     * 当列表中剩余未显示的Feed数量不超过这个值时就应该开始加载下一页，即最后一页被浏览过一半时。
+     */
+    val prefetchDistance: Int
+        get() {
+            val lastPageSize = pageSizes.peekLast() ?: return MIN_PREFETCH_DISTANCE
+            return Math.max(MIN_PREFETCH_DISTANCE, Math.ceil(lastPageSize * (1 - PREFETCH_FRACTION)).toInt())
+        }
+
+    /**
+     * 使用缓存中的Feeds恢复列表数据，比如从数据库中读取到的缓存，恢复的数据视为一页。
+     */
+    fun restore(cachedFeeds: List<T>) {
+        generation++
+        isLoading = false
+        isNoMoreData = false
+        clear()
+        append(cachedFeeds)
+    }
+
+    /**
+     * 刷新列表，重新加载第一页，之前发起的还未返回的请求的结果会被丢弃。
+     */
+    fun refresh() {
+        generation++
+        isNoMoreData = false
+        load(0, true)
+    }
+
+    /**
+     * 加载下一页。
+     *
+     * @return 如果发起了加载返回true，如果正在加载、没有更多数据或者还没有任何数据则返回false。
+     */
+    fun loadMore(): Boolean {
+        if (isLoading || isNoMoreData || feeds.isEmpty()) {
+            return false
+        }
+        load(cursor, false)
+        return true
+    }
+
+    /**
+     * 获取分页加载耗时的统计数据。
+     */
+    fun getStats() = Stats(loadCount, totalLoadTime, maxLoadTime, lastLoadTime)
+
+    private fun load(cursor: Long, isRefresh: Boolean) {
+        isLoading = true
+        val requestGeneration = generation
+        val start = SystemClock.elapsedRealtime()
+        fetchPage(cursor, object : Callback {
+            override fun onResponse(response: Response) {
+                if (requestGeneration != generation) return
+                isLoading = false
+                recordLoad(SystemClock.elapsedRealtime() - start)
+                @Suppress("UNCHECKED_CAST")
+                handleResponse(response as R, isRefresh)
+            }
+
+            override fun onFailure(e: Exception) {
+                if (requestGeneration != generation) return
+                isLoading = false
+                listener.onLoadFailed(null, e, isRefresh)
+            }
+        })
+    }
+
+    private fun handleResponse(response: R, isRefresh: Boolean) {
+        val page = feedsOf(response)
+        // 服务器返回了空的一页时游标无法前进，按照没有更多数据处理，避免反复请求同一页
+        val status = if (response.status == 0 && page.isEmpty()) STATUS_NO_MORE_DATA else response.status
+        when (status) {
+            0 -> {
+                if (isRefresh) {
+                    val firstPage = reset(page)
+                    listener.onPageLoaded(response, 0, firstPage, true)
+                } else {
+                    val position = feeds.size
+                    val added = append(page)
+                    listener.onPageLoaded(response, position, added, false)
+                    evictPages()
+                }
+            }
+            STATUS_NO_MORE_DATA -> {
+                isNoMoreData = true
+                if (isRefresh) {
+                    clear()
+                }
+                listener.onNoMoreData(response, isRefresh)
+            }
+            else -> listener.onLoadFailed(response, null, isRefresh)
+        }
+    }
+
+    /**
+     * 将一页Feeds中没有加载过的部分添加到列表的末尾。游标取自服务器返回的原始一页，即使这一页的末尾或者整页都已经加载过，
+     * 游标也会前进。
+     *
+     * @return 实际添加到列表中的Feeds。
+     */
+    private fun append(page: List<T>): List<T> {
+        val added = page.filter { loadedIds.add(it.feedId) }
+        feeds.addAll(added)
+        pageSizes.addLast(added.size)
+        page.lastOrNull()?.let { cursor = it.feedId }
+        return added
+    }
+
+    /**
+     * 以新的第一页重新开始记录已加载的数据，但不修改[feeds]。
+     *
+     * @return 去重之后的第一页Feeds。
+     */
+    private fun reset(page: List<T>): List<T> {
+        loadedIds.clear()
+        pageSizes.clear()
+        val firstPage = page.filter { loadedIds.add(it.feedId) }
+        pageSizes.addLast(firstPage.size)
+        cursor = page.lastOrNull()?.feedId ?: 0
+        return firstPage
+    }
+
+    private fun clear() {
+        feeds.clear()
+        loadedIds.clear()
+        pageSizes.clear()
+        cursor = 0
+    }
+
+    /**
+     * 当内存中的页数超过maxPages时，从列表顶部移除最早加载的页。
+     */
+    private fun evictPages() {
+        var count = 0
+        while (pageSizes.size > maxPages) {
+            count += pageSizes.removeFirst()
+        }
+        // 列表中的Feed可能已经被删除了一部分
+        count = Math.min(count, feeds.size)
+        if (count > 0) {
+            feeds.subList(0, count).clear()
+            listener.onPagesEvicted(count)
+        }
+    }
+
+    private fun recordLoad(elapsed: Long) {
+        loadCount++
+        totalLoadTime += elapsed
+        maxLoadTime = Math.max(maxLoadTime, elapsed)
+        lastLoadTime = elapsed
+    }
+
+    /**
+     * 分页加载结果的回调，都在主线程中执行。
+     */
+    interface Listener<T : BaseFeed, R : Response> {
+
+        /**
+         * 加载到了一页数据。加载更多时本页数据已经添加到了[feeds]的末尾；刷新时[feeds]还保持原样，需要由调用方用本页数据替换。
+         *
+         * @param response 服务器的响应。
+         * @param position 本页数据在列表中的起始位置，刷新时为0。
+         * @param feeds 去重之后的本页Feeds。
+         * @param isRefresh 是否是刷新。
+         */
+        fun onPageLoaded(response: R, position: Int, feeds: List<T>, isRefresh: Boolean)
+
+        /**
+         * 服务器端没有更多的数据了，如果是刷新，列表已经被清空。
+         */
+        fun onNoMoreData(response: R, isRefresh: Boolean)
+
+        /**
+         * 加载失败，服务器返回了其它状态码时response不为null，请求异常时e不为null。
+         */
+        fun onLoadFailed(response: R?, e: Exception?, isRefresh: Boolean)
+
+        /**
+         * 列表顶部的count条Feed因为超出了内存中保留的页数而被移除。
+         */
+        fun onPagesEvicted(count: Int)
+    }
+
+    /**
+     * 分页加载耗时的统计数据，时间单位都是毫秒。
+     */
+    class Stats(val loadCount: Int, val totalLoadTime: Long, val maxLoadTime: Long, val lastLoadTime: Long) {
+
+        val averageLoadTime: Long
+            get() = if (loadCount == 0) 0 else totalLoadTime / loadCount
+
+        override fun toString(): String {
+            return "Stats(loadCount=$loadCount, averageLoadTime=${averageLoadTime}ms, maxLoadTime=${maxLoadTime}ms, " +
+                    "lastLoadTime=${lastLoadTime}ms)"
+        }
+    }
+
+    companion object {
+
+        /**
+         * 服务器端没有更多数据时返回的状态码。
+         */
+        const val STATUS_NO_MORE_DATA = 10004
+
+        /**
+         * 内存中默认最多保留的页数。只保存Feed的文本数据，图片由Glide的缓存管理，这个数量下占用的内存很少。
+         */
+        const val MAX_PAGES = 200
+
+        /**
+         * 最后一页被浏览过多少比例时开始加载下一页。
+         */
+        private const val PREFETCH_FRACTION = 0.5
+
+        private const val MIN_PREFETCH_DISTANCE = 1
+    }
+
+}
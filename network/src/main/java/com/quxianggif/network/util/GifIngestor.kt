@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quxianggif.network.util
+
+import android.net.Uri
+import com.bumptech.glide.gifdecoder.GifDecoder
+import com.bumptech.glide.gifdecoder.StreamGifHeaderParser
+import com.quxianggif.core.GifFun
+import com.quxianggif.core.extension.logWarn
+import com.quxianggif.network.model.GifIngestReport
+import java.io.*
+import java.math.BigInteger
+import java.security.MessageDigest
+
+/**
+ * GIF图片导入工具类。将用户选择的GIF图片拷贝到本地的同时，计算文件大小和MD5值，并校验GIF的格式，
+ * 整个过程只读取一次源文件，GIF格式通过StreamGifHeaderParser流式校验，不需要将文件完整地加载到内存当中。
+ */
+object GifIngestor {
+
+    private const val TAG = "GifIngestor"
+
+    private const val BUFFER_SIZE = 64 * 1024
+
+    /**
+     * 将Uri所对应的GIF图片拷贝到指定路径，并生成导入报告。
+     * @param uri
+     * GIF图片的Uri
+     * @param targetPath
+     * 拷贝到本地的路径
+     * @return GIF图片的导入报告，如果无法读取Uri则返回null。
+     */
+    fun ingest(uri: Uri, targetPath: String): GifIngestReport? {
+        val inputStream = GifFun.getContext().contentResolver.openInputStream(uri) ?: return null
+        val digest = MessageDigest.getInstance("MD5")
+        val target = File(targetPath)
+        // 在目标文件创建成功之前只需要关闭源文件的输入流
+        var stream: InputStream = inputStream
+        try {
+            val teeStream = TeeInputStream(inputStream, BufferedOutputStream(FileOutputStream(target), BUFFER_SIZE), digest)
+            stream = BufferedInputStream(teeStream, BUFFER_SIZE)
+            val header = StreamGifHeaderParser().setData(stream).parseHeader()
+            if (header.status == GifDecoder.STATUS_OPEN_ERROR && !teeStream.isTooLarge) {
+                throw IOException("Unable to read GIF data from $uri")
+            }
+            val isValidGif = header.status == GifDecoder.STATUS_OK
+            if (isValidGif) {
+                // GIF结束符之后可能还有数据，需要全部读取完才能得到完整的拷贝和MD5
+                val scratch = ByteArray(BUFFER_SIZE)
+                while (!teeStream.isTooLarge && stream.read(scratch) != -1) {
+                }
+            }
+            val isTooLarge = teeStream.isTooLarge
+            val md5 = if (isValidGif && !isTooLarge) BigInteger(1, digest.digest()).toString(16).toUpperCase() else ""
+            return GifIngestReport(targetPath, teeStream.count, md5, isValidGif, isTooLarge, header.width, header.height, header.numFrames)
+        } finally {
+            try {
+                stream.close()
+            } catch (e: IOException) {
+                logWarn(TAG, e.message, e)
+            }
+        }
+    }
+
+    /**
+     * 将读取到的数据同时写入到输出流并更新MD5的输入流。跳过的数据也会被真正读取，以保证拷贝和MD5的完整性。
+     * 当读取的数据超过GIF最大限制时，会停止读取并视为读到了末尾。
+     */
+    private class TeeInputStream(source: InputStream, private val output: OutputStream, private val digest: MessageDigest) : FilterInputStream(source) {
+
+        var count = 0L
+            private set
+
+        var isTooLarge = false
+            private set
+
+        override fun read(): Int {
+            val buffer = ByteArray(1)
+            return if (read(buffer, 0, 1) == -1) -1 else buffer[0].toInt() and 0xff
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            if (isTooLarge) {
+                return -1
+            }
+            val bytes = super.read(b, off, len)
+            if (bytes > 0) {
+                count += bytes
+                if (count > GifFun.GIF_MAX_SIZE) {
+                    isTooLarge = true
+                    return -1
+                }
+                output.write(b, off, bytes)
+                digest.update(b, off, bytes)
+            }
+            return bytes
+        }
+
+        override fun skip(n: Long): Long {
+            val scratch = ByteArray(minOf(n, BUFFER_SIZE.toLong()).toInt())
+            var skipped = 0L
+            while (skipped < n) {
+                val bytes = read(scratch, 0, minOf(n - skipped, scratch.size.toLong()).toInt())
+                if (bytes == -1) {
+                    break
+                }
+                skipped += bytes
+            }
+            return skipped
+        }
+
+        override fun markSupported() = false
+
+        override fun close() {
+            try {
+                output.close()
+            } finally {
+                super.close()
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quxianggif.network.util
+
+import com.google.gson.Gson
+import com.google.gson.GsonBuilder
+import com.quxianggif.core.model.*
+
+/**
+ * 全局共享的Gson管理类。Gson实例是线程安全的，并且会缓存已经解析过的TypeAdapter，因此整个网络模块只需要创建一次。
+ * 对于Feed、Comment、User这些数据量最大的实体类，这里注册了手写的TypeAdapter，避免在解析时使用反射。
+ */
+object GsonManager {
+
+    val gson: Gson by lazy {
+        GsonBuilder()
+                .disableHtmlEscaping()
+                .registerTypeAdapter(BaseFeed::class.java, BaseFeedTypeAdapter { BaseFeed() })
+                .registerTypeAdapter(WorldFeed::class.java, BaseFeedTypeAdapter { WorldFeed() })
+                .registerTypeAdapter(RefFeed::class.java, BaseFeedTypeAdapter { RefFeed() })
+                .registerTypeAdapter(HotFeed::class.java, HotFeedTypeAdapter())
+                .registerTypeAdapter(FollowingFeed::class.java, FollowingFeedTypeAdapter())
+                .registerTypeAdapter(UserFeed::class.java, UserFeedTypeAdapter())
+                .registerTypeAdapter(Comment::class.java, CommentTypeAdapter())
+                .registerTypeAdapter(User::class.java, UserTypeAdapter())
+                .create()
+    }
+
+}
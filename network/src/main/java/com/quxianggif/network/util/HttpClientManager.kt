@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quxianggif.network.util
+
+import com.quxianggif.core.GifFun
+import com.quxianggif.core.extension.logWarn
+import com.quxianggif.network.request.CachePolicyInterceptor
+import com.quxianggif.network.request.LoggingInterceptor
+import okhttp3.Cache
+import okhttp3.OkHttpClient
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+/**
+ * 全局共享的OkHttpClient管理类。整个App的网络请求、文件下载以及Glide图片加载都应该通过这里获取OkHttpClient，
+ * 从而共用同一个连接池和Dispatcher，使得keep-alive连接、HTTP/2多路复用和并发数限制能够在全局范围内生效。
+ */
+object HttpClientManager {
+
+    private const val TAG = "HttpClientManager"
+
+    /**
+     * 默认的连接、读取、写入超时时间，单位秒。
+     */
+    const val DEFAULT_TIMEOUT = 10
+
+    /**
+     * 接口响应磁盘缓存的最大容量。
+     */
+    private const val RESPONSE_CACHE_SIZE = 10L * 1024 * 1024
+
+    /**
+     * 根据超时时间派生出来的OkHttpClient缓存，派生出来的client与基础client共用连接池和Dispatcher。
+     */
+    private val derivedClients = ConcurrentHashMap<String, OkHttpClient>()
+
+    /**
+     * 最基础的OkHttpClient实例，不包含任何拦截器，所有其他的client都由它派生而来。
+     */
+    val baseClient: OkHttpClient by lazy {
+        OkHttpClient.Builder()
+                .connectTimeout(DEFAULT_TIMEOUT.toLong(), TimeUnit.SECONDS)
+                .readTimeout(DEFAULT_TIMEOUT.toLong(), TimeUnit.SECONDS)
+                .writeTimeout(DEFAULT_TIMEOUT.toLong(), TimeUnit.SECONDS)
+                .build()
+    }
+
+    /**
+     * 服务器接口响应的磁盘缓存，每个请求类通过CachePolicy声明自己的缓存策略。
+     */
+    private val responseCache: Cache by lazy {
+        Cache(File(GifFun.getContext().cacheDir, "api"), RESPONSE_CACHE_SIZE)
+    }
+
+    /**
+     * 用于请求服务器接口的OkHttpClient实例，会通过LoggingInterceptor记录所有请求以及响应的细节，并按照CachePolicy缓存GET请求的响应。
+     */
+    private val apiClient: OkHttpClient by lazy {
+        baseClient.newBuilder()
+                .cache(responseCache)
+                .addNetworkInterceptor(CachePolicyInterceptor())
+                .addNetworkInterceptor(LoggingInterceptor())
+                .build()
+    }
+
+    /**
+     * 获取用于请求服务器接口的OkHttpClient实例。如果指定了非默认的超时时间，会通过newBuilder()派生出一个新的client，
+     * 并按照超时时间进行缓存，以保证同样的配置只会创建一次。
+     *
+     * @param connectTimeout
+     * 连接超时时间，单位秒
+     * @param readTimeout
+     * 读取超时时间，单位秒
+     * @param writeTimeout
+     * 写入超时时间，单位秒
+     * @return 可用于请求服务器接口的OkHttpClient实例。
+     */
+    fun apiClient(connectTimeout: Int = DEFAULT_TIMEOUT, readTimeout: Int = DEFAULT_TIMEOUT, writeTimeout: Int = DEFAULT_TIMEOUT): OkHttpClient {
+        if (connectTimeout == DEFAULT_TIMEOUT && readTimeout == DEFAULT_TIMEOUT && writeTimeout == DEFAULT_TIMEOUT) {
+            return apiClient
+        }
+        val key = "$connectTimeout:$readTimeout:$writeTimeout"
+        var client = derivedClients[key]
+        if (client == null) {
+            client = apiClient.newBuilder()
+                    .connectTimeout(connectTimeout.toLong(), TimeUnit.SECONDS)
+                    .readTimeout(readTimeout.toLong(), TimeUnit.SECONDS)
+                    .writeTimeout(writeTimeout.toLong(), TimeUnit.SECONDS)
+                    .build()
+            val previous = derivedClients.putIfAbsent(key, client)
+            if (previous != null) {
+                client = previous
+            }
+        }
+        return client!!
+    }
+
+    /**
+     * 基于基础client创建一个新的Builder，用于在需要额外拦截器或者不同超时时间的场景下派生出新的client，
+     * 比如Glide的图片加载。派生出来的client仍然会共用同一个连接池和Dispatcher。
+     *
+     * @return 基于基础client的OkHttpClient.Builder。
+     */
+    fun newBuilder(): OkHttpClient.Builder = baseClient.newBuilder()
+
+    /**
+     * 在后台线程中清空接口响应的磁盘缓存，比如在用户注销的时候。
+     */
+    fun clearResponseCache() {
+        thread(name = "api-cache-clear") {
+            try {
+                responseCache.evictAll()
+            } catch (e: IOException) {
+                logWarn(TAG, "Clear response cache failed.", e)
+            }
+        }
+    }
+
+}
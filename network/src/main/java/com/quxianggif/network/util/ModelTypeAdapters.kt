@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quxianggif.network.util
+
+import com.google.gson.TypeAdapter
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import com.quxianggif.core.model.*
+
+/**
+ * 网络模块中高频解析的实体类所对应的TypeAdapter。这些TypeAdapter直接基于JsonReader和JsonWriter进行流式读写，
+ * 字段名与实体类中@SerializedName声明的名称保持一致。服务器返回null或者未知字段时会保留实体类中的默认值。
+ */
+
+/**
+ * BaseFeed以及其所有子类通用的TypeAdapter，子类可以通过重写readField()和writeFields()来处理额外的字段。
+ */
+internal open class BaseFeedTypeAdapter<T : BaseFeed>(private val creator: () -> T) : TypeAdapter<T>() {
+
+    override fun read(reader: JsonReader): T? {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull()
+            return null
+        }
+        val feed = creator()
+        reader.beginObject()
+        while (reader.hasNext()) {
+            val name = reader.nextName()
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull()
+            } else if (!readField(reader, name, feed)) {
+                reader.skipValue()
+            }
+        }
+        reader.endObject()
+        return feed
+    }
+
+    override fun write(writer: JsonWriter, feed: T?) {
+        if (feed == null) {
+            writer.nullValue()
+            return
+        }
+        writer.beginObject()
+        writeFields(writer, feed)
+        writer.endObject()
+    }
+
+    /**
+     * 读取一个字段的值并赋值给feed。
+     * @return 如果该字段被识别并处理了返回true，否则返回false。
+     */
+    protected open fun readField(reader: JsonReader, name: String, feed: T): Boolean {
+        when (name) {
+            "cover" -> feed.cover = reader.nextString()
+            "gif" -> feed.gif = reader.nextString()
+            "content" -> feed.content = reader.nextString()
+            "img_width" -> feed.imgWidth = reader.nextInt()
+            "img_height" -> feed.imgHeight = reader.nextInt()
+            "nickname" -> feed.nickname = reader.nextString()
+            "avatar" -> feed.avatar = reader.nextString()
+            "bg_image" -> feed.bgImage = reader.nextString()
+            "user_id" -> feed.userId = reader.nextLong()
+            "post_date" -> feed.postDate = reader.nextLong()
+            "feed_id" -> feed.feedId = reader.nextLong()
+            "fsize" -> feed.fsize = reader.nextLong()
+            "likes_count" -> feed.likesCount = reader.nextInt()
+            "liked_already" -> feed.isLikedAlready = reader.nextBoolean()
+            else -> return false
+        }
+        return true
+    }
+
+    protected open fun writeFields(writer: JsonWriter, feed: T) {
+        writer.name("cover").value(feed.cover)
+        writer.name("gif").value(feed.gif)
+        writer.name("content").value(feed.content)
+        writer.name("img_width").value(feed.imgWidth.toLong())
+        writer.name("img_height").value(feed.imgHeight.toLong())
+        writer.name("nickname").value(feed.nickname)
+        writer.name("avatar").value(feed.avatar)
+        writer.name("bg_image").value(feed.bgImage)
+        writer.name("user_id").value(feed.userId)
+        writer.name("post_date").value(feed.postDate)
+        writer.name("feed_id").value(feed.feedId)
+        writer.name("fsize").value(feed.fsize)
+        writer.name("likes_count").value(feed.likesCount.toLong())
+        writer.name("liked_already").value(feed.isLikedAlready)
+    }
+
+}
+
+internal class HotFeedTypeAdapter : BaseFeedTypeAdapter<HotFeed>({ HotFeed() }) {
+
+    override fun readField(reader: JsonReader, name: String, feed: HotFeed): Boolean {
+        if (name == "comments_count") {
+            feed.commentsCount = reader.nextInt()
+            return true
+        }
+        return super.readField(reader, name, feed)
+    }
+
+    override fun writeFields(writer: JsonWriter, feed: HotFeed) {
+        super.writeFields(writer, feed)
+        writer.name("comments_count").value(feed.commentsCount.toLong())
+    }
+
+}
+
+internal class FollowingFeedTypeAdapter : BaseFeedTypeAdapter<FollowingFeed>({ FollowingFeed() }) {
+
+    private val refFeedAdapter = BaseFeedTypeAdapter { RefFeed() }
+
+    override fun readField(reader: JsonReader, name: String, feed: FollowingFeed): Boolean {
+        when (name) {
+            "feed_type" -> feed.feedType = reader.nextInt()
+            "ref_feed" -> feed.refFeed = refFeedAdapter.read(reader)
+            else -> return super.readField(reader, name, feed)
+        }
+        return true
+    }
+
+    override fun writeFields(writer: JsonWriter, feed: FollowingFeed) {
+        super.writeFields(writer, feed)
+        writer.name("feed_type").value(feed.feedType.toLong())
+        writer.name("ref_feed")
+        refFeedAdapter.write(writer, feed.refFeed)
+    }
+
+}
+
+internal class UserFeedTypeAdapter : BaseFeedTypeAdapter<UserFeed>({ UserFeed() }) {
+
+    private val refFeedAdapter = BaseFeedTypeAdapter { RefFeed() }
+
+    override fun readField(reader: JsonReader, name: String, feed: UserFeed): Boolean {
+        when (name) {
+            "feed_type" -> feed.feedType = reader.nextInt()
+            "ref_feed" -> feed.refFeed = refFeedAdapter.read(reader)
+            else -> return super.readField(reader, name, feed)
+        }
+        return true
+    }
+
+    override fun writeFields(writer: JsonWriter, feed: UserFeed) {
+        super.writeFields(writer, feed)
+        writer.name("feed_type").value(feed.feedType.toLong())
+        writer.name("ref_feed")
+        refFeedAdapter.write(writer, feed.refFeed)
+    }
+
+}
+
+internal class CommentTypeAdapter : TypeAdapter<Comment>() {
+
+    override fun read(reader: JsonReader): Comment? {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull()
+            return null
+        }
+        val comment = Comment()
+        reader.beginObject()
+        while (reader.hasNext()) {
+            val name = reader.nextName()
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull()
+                continue
+            }
+            when (name) {
+                "comment_id" -> comment.commentId = reader.nextLong()
+                "content" -> comment.content = reader.nextString()
+                "user_id" -> comment.userId = reader.nextLong()
+                "nickname" -> comment.nickname = reader.nextString()
+                "avatar" -> comment.avatar = reader.nextString()
+                "bg_image" -> comment.bgImage = reader.nextString()
+                "post_date" -> comment.postDate = reader.nextLong()
+                "goods_count" -> comment.goodsCount = reader.nextInt()
+                "good_already" -> comment.isGoodAlready = reader.nextBoolean()
+                else -> reader.skipValue()
+            }
+        }
+        reader.endObject()
+        return comment
+    }
+
+    override fun write(writer: JsonWriter, comment: Comment?) {
+        if (comment == null) {
+            writer.nullValue()
+            return
+        }
+        writer.beginObject()
+        writer.name("comment_id").value(comment.commentId)
+        writer.name("content").value(comment.content)
+        writer.name("user_id").value(comment.userId)
+        writer.name("nickname").value(comment.nickname)
+        writer.name("avatar").value(comment.avatar)
+        writer.name("bg_image").value(comment.bgImage)
+        writer.name("post_date").value(comment.postDate)
+        writer.name("goods_count").value(comment.goodsCount.toLong())
+        writer.name("good_already").value(comment.isGoodAlready)
+        writer.endObject()
+    }
+
+}
+
+internal class UserTypeAdapter : TypeAdapter<User>() {
+
+    override fun read(reader: JsonReader): User? {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull()
+            return null
+        }
+        val user = User()
+        reader.beginObject()
+        while (reader.hasNext()) {
+            val name = reader.nextName()
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull()
+                continue
+            }
+            when (name) {
+                "user_id" -> user.userId = reader.nextLong()
+                "nickname" -> user.nickname = reader.nextString()
+                "avatar" -> user.avatar = reader.nextString()
+                "bg_image" -> user.bgImage = reader.nextString()
+                "description" -> user.description = reader.nextString()
+                "followers_count" -> user.followersCount = reader.nextInt()
+                "followings_count" -> user.followingsCount = reader.nextInt()
+                "feeds_count" -> user.feedsCount = reader.nextInt()
+                "is_following" -> user.isFollowing = reader.nextBoolean()
+                else -> reader.skipValue()
+            }
+        }
+        reader.endObject()
+        return user
+    }
+
+    override fun write(writer: JsonWriter, user: User?) {
+        if (user == null) {
+            writer.nullValue()
+            return
+        }
+        writer.beginObject()
+        writer.name("user_id").value(user.userId)
+        writer.name("nickname").value(user.nickname)
+        writer.name("avatar").value(user.avatar)
+        writer.name("bg_image").value(user.bgImage)
+        writer.name("description").value(user.description)
+        writer.name("followers_count").value(user.followersCount.toLong())
+        writer.name("followings_count").value(user.followingsCount.toLong())
+        writer.name("feeds_count").value(user.feedsCount.toLong())
+        writer.name("is_following").value(user.isFollowing)
+        writer.endObject()
+    }
+
+}
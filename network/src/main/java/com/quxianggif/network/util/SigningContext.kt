@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.util
+
+import com.quxianggif.core.GifFun
+
+/**
+ * 网络请求签名所需的设备、App以及用户身份信息的不可变快照。
+ *
+ * 设备序列号、App版本号以及App签名在进程的生命周期内都不会变化，但是获取它们需要调用PackageManager并计算MD5，因此只在第一次
+ * 使用时计算一次。用户身份信息直接取自GifFun中已经缓存的登录状态，每当登录状态刷新（登录、注销、token更新）之后，下一次获取时
+ * 会重新生成快照，因此构建请求头和请求参数时既不需要跨进程调用，也不需要读取SharedPreferences。
+ */
+class SigningContext private constructor(private val app: AppIdentity, private val loginStateVersion: Int) {
+
+    /**
+     * 设备的品牌和型号。
+     */
+    val deviceName: String
+        get() = app.deviceName
+
+    /**
+     * 设备的序列号。
+     */
+    val deviceSerial: String
+        get() = app.deviceSerial
+
+    /**
+     * 当前App的版本号。
+     */
+    val appVersion: String
+        get() = app.appVersion
+
+    /**
+     * App网络请求验证参数，用于辨识是不是官方渠道的App。
+     */
+    val appSign: String
+        get() = app.appSign
+
+    /**
+     * 生成快照时用户是否已登录。
+     */
+    val isLogin = GifFun.isLogin()
+
+    /**
+     * 当前登录用户的id，未登录时为空字符串。
+     */
+    val userId: String = if (isLogin) GifFun.getUserId().toString() else ""
+
+    /**
+     * 当前登录用户的token，未登录时为空字符串。
+     */
+    val token: String = if (isLogin) GifFun.getToken() else ""
+
+    private class AppIdentity {
+        val deviceName = Utility.deviceName
+        val deviceSerial = Utility.getDeviceSerial()
+        val appVersion = Utility.appVersion
+        val appSign: String = MD5.encrypt(SignUtil.getAppSignature() + appVersion)
+    }
+
+    companion object {
+
+        private val appIdentity by lazy { AppIdentity() }
+
+        @Volatile
+        private var current: SigningContext? = null
+
+        /**
+         * 获取当前的签名信息快照，如果登录状态在上次生成快照之后发生过变化，则会重新生成。
+         */
+        @JvmStatic
+        fun get(): SigningContext {
+            // 先读取版本号，保证之后读到的登录信息至少和这个版本一样新
+            val version = GifFun.getLoginStateVersion()
+            val context = current
+            if (context != null && context.loginStateVersion == version) {
+                return context
+            }
+            val newContext = SigningContext(appIdentity, version)
+            current = newContext
+            return newContext
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.model
+
+import android.content.ContextWrapper
+import android.os.Handler
+import android.os.Looper
+import com.quxianggif.core.GifFun
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okhttp3.mockwebserver.SocketPolicy
+import okio.Buffer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.Random
+
+/**
+ * 使用MockWebServer验证Downloader的断点续传、分段下载以及服务器不再接受Range请求时重新下载的逻辑。
+ *
+ * GifFun.initialize()需要读取SharedPreferences，在本地单元测试中无法调用，因此这里只设置下载用到的Context和Handler。
+ * 本地单元测试中Handler.post()不会执行任何代码，监听器不会收到回调，所以通过下载的文件、下载日志以及服务器收到的请求来验证结果。
+ */
+class DownloaderTest {
+
+    @get:Rule
+    val server = MockWebServer()
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private lateinit var dispatcher: RangeDispatcher
+
+    private lateinit var filePath: String
+
+    @Before
+    fun setUp() {
+        val filesDir = temporaryFolder.newFolder("files")
+        setGifFunField("context", object : ContextWrapper(null) {
+            override fun getFilesDir() = filesDir
+        })
+        setGifFunField("handler", Handler(Looper.getMainLooper()))
+        dispatcher = RangeDispatcher(randomBytes(200 * 1024), "\"v1\"")
+        server.setDispatcher(dispatcher)
+        filePath = File(temporaryFolder.root, "download/test.gif").path
+    }
+
+    @Test
+    fun downloadInOneRequest() {
+        runTask()
+
+        assertArrayEquals(dispatcher.content, File(filePath).readBytes())
+        assertFalse(File(filePath + TEMP_SUFFIX).exists())
+        assertNull(DownloadJournal.load(filePath))
+        assertEquals(1, server.requestCount)
+        assertEquals("bytes=0-", server.takeRequest().getHeader("Range"))
+    }
+
+    @Test
+    fun resumeFromJournal() {
+        val total = dispatcher.content.size
+        dispatcher.disconnectOnce("bytes=0-")
+        runTask()
+
+        assertFalse(File(filePath).exists())
+        val journal = DownloadJournal.load(filePath)
+        assertNotNull(journal)
+        val downloaded = journal!!.downloadedLength
+        assertTrue(downloaded in 1 until total)
+        assertEquals(total.toLong(), journal.totalLength)
+        assertEquals(downloaded, File(filePath + TEMP_SUFFIX).length())
+
+        runTask()
+
+        assertArrayEquals(dispatcher.content, File(filePath).readBytes())
+        assertNull(DownloadJournal.load(filePath))
+        assertEquals(2, server.requestCount)
+        server.takeRequest()
+        val resumed = server.takeRequest()
+        assertEquals("bytes=$downloaded-${total - 1}", resumed.getHeader("Range"))
+        assertEquals("\"v1\"", resumed.getHeader("If-Range"))
+    }
+
+    @Test
+    fun restartWhenIfRangeNotMatched() {
+        dispatcher.disconnectOnce("bytes=0-")
+        runTask()
+        val changed = randomBytes(100 * 1024)
+        dispatcher.content = changed
+        dispatcher.etag = "\"v2\""
+
+        runTask()
+
+        assertArrayEquals(changed, File(filePath).readBytes())
+        assertEquals(3, server.requestCount)
+        server.takeRequest()
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-Range"))
+        val restarted = server.takeRequest()
+        assertEquals("bytes=0-", restarted.getHeader("Range"))
+        assertNull(restarted.getHeader("If-Range"))
+    }
+
+    @Test
+    fun restartWhenRangeNotSatisfiable() {
+        dispatcher.disconnectOnce("bytes=0-")
+        runTask()
+        val downloaded = DownloadJournal.load(filePath)!!.downloadedLength
+        // 服务器上的文件变短了，但校验值没有变化，从已下载的位置继续请求会得到416
+        val shorter = randomBytes(1024)
+        assertTrue(downloaded > shorter.size)
+        dispatcher.content = shorter
+
+        runTask()
+
+        assertArrayEquals(shorter, File(filePath).readBytes())
+        assertNull(DownloadJournal.load(filePath))
+        assertEquals(3, server.requestCount)
+        server.takeRequest()
+        server.takeRequest()
+        assertEquals("bytes=0-", server.takeRequest().getHeader("Range"))
+    }
+
+    @Test
+    fun downloadSegmentsAndResume() {
+        val content = randomBytes(SEGMENT_THRESHOLD + 512 * 1024)
+        dispatcher.content = content
+        val segmentLength = content.size / SEGMENT_COUNT
+        dispatcher.disconnectOnce("bytes=$segmentLength-${segmentLength * 2 - 1}")
+        runTask()
+
+        assertFalse(File(filePath).exists())
+        val journal = DownloadJournal.load(filePath)!!
+        assertEquals(SEGMENT_COUNT, journal.segments.size)
+        assertEquals(content.size - 1L, journal.segments.last().end)
+        assertFalse(journal.segments[1].isFinished)
+        val expectedRanges = journal.segments
+                .filter { !it.isFinished }
+                .map { "bytes=${it.start + it.downloaded}-${it.end}" }
+                .toSet()
+        // 第一次请求只用于获取文件信息，之后每个分段各发起一次请求
+        assertEquals(1 + SEGMENT_COUNT, server.requestCount)
+        repeat(server.requestCount) { server.takeRequest() }
+
+        runTask()
+
+        assertArrayEquals(content, File(filePath).readBytes())
+        assertNull(DownloadJournal.load(filePath))
+        val resumed = List(expectedRanges.size) { server.takeRequest() }
+        assertEquals(expectedRanges, resumed.map { it.getHeader("Range") }.toSet())
+        for (request in resumed) {
+            assertEquals("\"v1\"", request.getHeader("If-Range"))
+        }
+        assertEquals(1 + SEGMENT_COUNT + expectedRanges.size, server.requestCount)
+    }
+
+    private fun runTask() {
+        Downloader.DownloadTask(server.url("/test.gif").toString(), filePath, NoOpListener).run()
+    }
+
+    private fun setGifFunField(name: String, value: Any) {
+        val field = GifFun::class.java.getDeclaredField(name)
+        field.isAccessible = true
+        field.set(null, value)
+    }
+
+    private fun randomBytes(size: Int): ByteArray {
+        val bytes = ByteArray(size)
+        Random(size.toLong()).nextBytes(bytes)
+        return bytes
+    }
+
+    /**
+     * 模拟支持Range和If-Range请求的文件服务器。
+     */
+    private class RangeDispatcher(@Volatile var content: ByteArray, @Volatile var etag: String) : Dispatcher() {
+
+        private val disconnectRanges = HashSet<String>()
+
+        /**
+         * 下一次收到指定的Range请求时，只返回一半的数据就断开连接。
+         */
+        fun disconnectOnce(range: String) {
+            synchronized(disconnectRanges) {
+                disconnectRanges.add(range)
+            }
+        }
+
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            val content = content
+            val range = request.getHeader("Range")
+            val ifRange = request.getHeader("If-Range")
+            if (range == null || (ifRange != null && ifRange != etag)) {
+                return MockResponse().setHeader("ETag", etag).setBody(Buffer().write(content))
+            }
+            val bounds = range.removePrefix("bytes=").split("-")
+            val start = bounds[0].toInt()
+            if (start >= content.size) {
+                return MockResponse().setResponseCode(416).setHeader("Content-Range", "bytes */${content.size}")
+            }
+            val end = if (bounds[1].isEmpty()) content.size - 1 else minOf(bounds[1].toInt(), content.size - 1)
+            val response = MockResponse()
+                    .setResponseCode(206)
+                    .setHeader("ETag", etag)
+                    .setHeader("Content-Range", "bytes $start-$end/${content.size}")
+                    .setBody(Buffer().write(content, start, end - start + 1))
+            synchronized(disconnectRanges) {
+                if (disconnectRanges.remove(range)) {
+                    response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY)
+                }
+            }
+            return response
+        }
+
+    }
+
+    private object NoOpListener : DownloadListener {
+
+        override fun onProgress(percent: Int) {
+        }
+
+        override fun onCompleted(filePath: String) {
+        }
+
+        override fun onFailure(errorMsg: String, tr: Throwable) {
+        }
+
+    }
+
+    companion object {
+
+        private const val TEMP_SUFFIX = ".download"
+
+        private const val SEGMENT_THRESHOLD = 4 * 1024 * 1024
+
+        private const val SEGMENT_COUNT = 3
+
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.request
+
+import com.quxianggif.network.util.CachePolicy
+import okhttp3.Cache
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.net.HttpURLConnection
+
+/**
+ * 使用MockWebServer验证CachePolicyInterceptor补全的缓存头能够让OkHttp的Cache按照CachePolicy工作。
+ */
+class CachePolicyInterceptorTest {
+
+    @get:Rule
+    val server = MockWebServer()
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private lateinit var client: OkHttpClient
+
+    @Before
+    fun setUp() {
+        client = OkHttpClient.Builder()
+                .cache(Cache(temporaryFolder.newFolder("api"), 1024 * 1024))
+                .addNetworkInterceptor(CachePolicyInterceptor())
+                .build()
+    }
+
+    @Test
+    fun revalidateWithETag() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody("feeds"))
+        server.enqueue(MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED).setHeader("ETag", "\"v1\""))
+
+        assertEquals("feeds", get(CachePolicy.REVALIDATE).body)
+        assertNull(server.takeRequest().getHeader("If-None-Match"))
+
+        val revalidated = get(CachePolicy.REVALIDATE)
+        assertEquals("feeds", revalidated.body)
+        assertEquals(HttpURLConnection.HTTP_OK, revalidated.code)
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, revalidated.networkCode)
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+    }
+
+    @Test
+    fun notModifiedWithoutValidatorKeepsCache() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody("feeds"))
+        server.enqueue(MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED))
+        server.enqueue(MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED))
+
+        get(CachePolicy.REVALIDATE)
+        assertEquals("feeds", get(CachePolicy.REVALIDATE).body)
+        // 304响应的头会合并到缓存中，如果被补上了no-store，第三次请求就不会再带上If-None-Match
+        assertEquals("feeds", get(CachePolicy.REVALIDATE).body)
+
+        server.takeRequest()
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+    }
+
+    @Test
+    fun revalidateWithoutValidatorIsNotStored() {
+        server.enqueue(MockResponse().setBody("feeds"))
+        server.enqueue(MockResponse().setBody("feeds"))
+
+        get(CachePolicy.REVALIDATE)
+        val response = get(CachePolicy.REVALIDATE)
+
+        assertEquals(HttpURLConnection.HTTP_OK, response.networkCode)
+        assertEquals(2, server.requestCount)
+        assertEquals(0, client.cache()!!.writeSuccessCount())
+    }
+
+    @Test
+    fun noneIsNotStored() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody("feeds"))
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody("feeds"))
+
+        get(CachePolicy.NONE)
+        get(CachePolicy.NONE)
+
+        server.takeRequest()
+        assertNull(server.takeRequest().getHeader("If-None-Match"))
+        assertEquals(0, client.cache()!!.writeSuccessCount())
+    }
+
+    @Test
+    fun serverCacheControlWins() {
+        server.enqueue(MockResponse().setHeader("Cache-Control", "max-age=60").setBody("feeds"))
+
+        get(CachePolicy.NONE)
+        val response = get(CachePolicy.NONE)
+
+        assertEquals("feeds", response.body)
+        assertNull(response.networkCode)
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun staleWhileRevalidateServesStaleResponse() {
+        val policy = CachePolicy(0, 60)
+        server.enqueue(MockResponse().setBody("feeds"))
+
+        get(policy)
+        val stale = client.newCall(request(policy).newBuilder().cacheControl(policy.staleCacheControl()).build()).execute()
+        stale.use {
+            assertEquals("feeds", it.body()!!.string())
+            assertNotNull(it.cacheResponse())
+            assertNull(it.networkResponse())
+            assertTrue(it.header("Warning")!!.startsWith("110"))
+        }
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun staleWhileRevalidateMissesEmptyCache() {
+        val policy = CachePolicy(0, 60)
+
+        val response = client.newCall(request(policy).newBuilder().cacheControl(policy.staleCacheControl()).build()).execute()
+        response.use {
+            assertNull(it.cacheResponse())
+            assertEquals(HttpURLConnection.HTTP_GATEWAY_TIMEOUT, it.code())
+        }
+        assertEquals(0, server.requestCount)
+    }
+
+    private fun request(policy: CachePolicy) = okhttp3.Request.Builder().url(server.url("/feeds")).tag(policy).build()
+
+    private fun get(policy: CachePolicy): Result {
+        client.newCall(request(policy)).execute().use {
+            return Result(it.code(), it.networkResponse()?.code(), it.body()!!.string())
+        }
+    }
+
+    private class Result(val code: Int, val networkCode: Int?, val body: String)
+
+}
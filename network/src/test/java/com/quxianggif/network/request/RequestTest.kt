@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) guolin, Suzhou Quxiang Inc. Open source codes for study only.
+ * Do not use for commercial purpose.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.quxianggif.network.request
+
+import android.content.ContextWrapper
+import com.quxianggif.core.GifFun
+import com.quxianggif.network.model.OriginThreadCallback
+import com.quxianggif.network.model.Response
+import com.quxianggif.network.util.CachePolicy
+import com.quxianggif.network.util.HttpClientManager
+import com.quxianggif.network.util.Utility
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import java.io.File
+import java.net.HttpURLConnection
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * 使用MockWebServer验证Request本身的缓存和合并逻辑：staleWhileRevalidate先回调过期的缓存再在后台重新验证，缓存中没有响应时
+ * 直接访问网络，以及相同的并发请求只访问一次网络。
+ *
+ * GifFun.initialize()需要读取SharedPreferences，在本地单元测试中无法调用，因此这里只设置接口缓存目录所在的Context，并预先
+ * 填好设备序列号。回调使用OriginThreadCallback，直接在OkHttp的线程中执行。
+ */
+class RequestTest {
+
+    @get:Rule
+    val server = MockWebServer()
+
+    private var cacheWritesBefore = 0
+
+    @Before
+    fun setUp() {
+        setField(GifFun::class.java, "context", object : ContextWrapper(null) {
+            override fun getCacheDir() = CACHE_DIR
+        })
+        setField(Utility::class.java, "deviceSerial", "test")
+        // 接口缓存是全局共享的，每个测试都从空的缓存开始
+        val cache = HttpClientManager.apiClient().cache()!!
+        cache.evictAll()
+        cacheWritesBefore = cache.writeSuccessCount()
+    }
+
+    @Test
+    fun serveStaleThenRevalidate() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody(body("v1")))
+        server.enqueue(MockResponse().setHeader("ETag", "\"v2\"").setBody(body("v2")))
+        server.enqueue(MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED).setHeader("ETag", "\"v2\""))
+
+        assertEquals("v1", send(STALE_WHILE_REVALIDATE).msg)
+        assertNull(server.takeRequest().getHeader("If-None-Match"))
+
+        // 缓存已经过期，先拿到旧的响应，同时在后台发起条件请求
+        assertEquals("v1", send(STALE_WHILE_REVALIDATE).msg)
+        assertEquals("\"v1\"", server.takeRequest(5, TimeUnit.SECONDS)!!.getHeader("If-None-Match"))
+        awaitCacheWrites(2)
+
+        // 后台重新验证的结果已经写入缓存
+        assertEquals("v2", send(STALE_WHILE_REVALIDATE).msg)
+        assertEquals("\"v2\"", server.takeRequest(5, TimeUnit.SECONDS)!!.getHeader("If-None-Match"))
+        assertEquals(3, server.requestCount)
+    }
+
+    @Test
+    fun cacheMissSkipsRevalidation() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody(body("v1")))
+
+        // 只读缓存的请求得到504之后，改为正常访问网络，拿到的是新鲜的响应，不需要再重新验证
+        assertEquals("v1", send(STALE_WHILE_REVALIDATE).msg)
+
+        assertNotNull(server.takeRequest())
+        assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS))
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun coalesceIdenticalRequests() {
+        server.enqueue(MockResponse().setBody(body("v1")).setBodyDelay(500, TimeUnit.MILLISECONDS))
+        val first = ResultCallback()
+        val second = ResultCallback()
+
+        TestRequest(CachePolicy.NONE, true).listen(first)
+        TestRequest(CachePolicy.NONE, true).listen(second)
+
+        val response = first.await()
+        assertEquals("v1", response.msg)
+        // 合并的请求拿到的是同一个解析好的Response
+        assertSame(response, second.await())
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun doNotCoalesceByDefault() {
+        server.enqueue(MockResponse().setBody(body("v1")).setBodyDelay(500, TimeUnit.MILLISECONDS))
+        server.enqueue(MockResponse().setBody(body("v2")))
+        val first = ResultCallback()
+        val second = ResultCallback()
+
+        TestRequest(CachePolicy.NONE).listen(first)
+        TestRequest(CachePolicy.NONE).listen(second)
+
+        // 没有声明可以合并的请求各自拿到自己的Response，可以随意修改
+        assertNotSame(first.await(), second.await())
+        assertEquals(2, server.requestCount)
+    }
+
+    private fun send(policy: CachePolicy): Response {
+        val callback = ResultCallback()
+        TestRequest(policy).listen(callback)
+        return callback.await()
+    }
+
+    /**
+     * 后台的重新验证不会回调，只能等到OkHttp把新的响应写入缓存。
+     */
+    private fun awaitCacheWrites(count: Int) {
+        val cache = HttpClientManager.apiClient().cache()!!
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (cache.writeSuccessCount() - cacheWritesBefore < count) {
+            if (System.nanoTime() > deadline) {
+                throw AssertionError("Expected $count cache writes but was ${cache.writeSuccessCount() - cacheWritesBefore}")
+            }
+            Thread.sleep(10)
+        }
+    }
+
+    private fun body(msg: String) = "{\"status\":0,\"msg\":\"$msg\"}"
+
+    private fun setField(clazz: Class<*>, name: String, value: Any) {
+        val field = clazz.getDeclaredField(name)
+        field.isAccessible = true
+        field.set(null, value)
+    }
+
+    private inner class TestRequest(private val policy: CachePolicy, private val coalesce: Boolean = false) : Request() {
+
+        override fun url() = server.url("/feeds").toString()
+
+        override fun method() = GET
+
+        override fun cachePolicy() = policy
+
+        override fun coalesce() = coalesce
+
+        override fun listen(callback: com.quxianggif.network.model.Callback?) {
+            setListener(callback)
+            inFlight(Response::class.java)
+        }
+    }
+
+    private class ResultCallback : OriginThreadCallback {
+
+        private val results = LinkedBlockingQueue<Any>()
+
+        override fun onResponse(response: Response) {
+            results.add(response)
+        }
+
+        override fun onFailure(e: Exception) {
+            results.add(e)
+        }
+
+        fun await(): Response {
+            val result = results.poll(5, TimeUnit.SECONDS) ?: throw AssertionError("No callback")
+            if (result is Exception) {
+                throw AssertionError(result)
+            }
+            return result as Response
+        }
+    }
+
+    companion object {
+
+        /**
+         * HttpClientManager只会创建一次接口缓存，所以所有测试共用同一个缓存目录。
+         */
+        private val CACHE_DIR: File by lazy { createTempDir("request-test") }
+
+        /**
+         * 立即过期，但过期之后的一分钟之内可以先使用缓存的响应。
+         */
+        private val STALE_WHILE_REVALIDATE = CachePolicy(0, 60)
+    }
+
+}